@@ -145,7 +145,7 @@ public class DefaultAuthorizationService implements AuthorizationService {
     public Set<StopTypeEnumeration> getBannedStopPlaceTypes(EntityStructure entity) {
 
 
-        if(hasNoAuthentications() || !dataScopedAuthorizationService.isAuthorized(ROLE_EDIT_STOPS, List.of(entity))) {
+        if(hasNoAuthentications() || !isAuthorized(ROLE_EDIT_STOPS, entity)) {
             return convertToStopTypeEnumeration(Set.of("*"));
         }
         final Set<String> stopType = getStopTypesOrSubmode(STOP_PLACE_TYPE, false, entity);
@@ -172,7 +172,7 @@ public class DefaultAuthorizationService implements AuthorizationService {
 
     @Override
     public Set<SubmodeEnumuration> getBannedSubmodes(EntityStructure entity) {
-        if(hasNoAuthentications() || !dataScopedAuthorizationService.isAuthorized(ROLE_EDIT_STOPS, List.of(entity))) {
+        if(hasNoAuthentications() || !isAuthorized(ROLE_EDIT_STOPS, entity)) {
             return convertToSubmodeEnumeration(Set.of("*"));
         }
         final Set<String> submode = getStopTypesOrSubmode(SUBMODE, false, entity);
@@ -239,26 +239,38 @@ public class DefaultAuthorizationService implements AuthorizationService {
         return !(auth instanceof JwtAuthenticationToken);
     }
 
+    /**
+     * Single entity checks are kept for the request, as the permissions of an entity check the same roles several times.
+     */
+    private boolean isAuthorized(String role, EntityStructure entity) {
+        return RequestPermissionMemo.isAuthorized(SecurityContextHolder.getContext().getAuthentication(), role, entity,
+                () -> dataScopedAuthorizationService.isAuthorized(role, List.of(entity)));
+    }
+
     private boolean canEditDeleteEntity(EntityStructure entity, String role) {
         if (hasNoAuthentications()) {
             return false;
         }
+        return RequestPermissionMemo.isAuthorized(SecurityContextHolder.getContext().getAuthentication(), "editDelete:" + role, entity,
+                () -> resolveCanEditDeleteEntity(entity, role));
+    }
 
+    private boolean resolveCanEditDeleteEntity(EntityStructure entity, String role) {
         if (entity instanceof GroupOfStopPlaces groupOfStopPlaces) {
             final List<StopPlace> gospMembers = groupOfStopPlacesMembersResolver.resolve(groupOfStopPlaces);
             return gospMembers.stream()
-                    .allMatch(stopPlace -> dataScopedAuthorizationService.isAuthorized(role, List.of(stopPlace)));
+                    .allMatch(stopPlace -> isAuthorized(role, stopPlace));
         } else {
             if(entity instanceof StopPlace stopPlace) {
                 if(!stopPlace.getChildren().isEmpty()) {
                     return stopPlace.getChildren().stream()
-                            .allMatch(child -> dataScopedAuthorizationService.isAuthorized(role, List.of(child)));
+                            .allMatch(child -> isAuthorized(role, child));
                 } else {
-                    return dataScopedAuthorizationService.isAuthorized(role, List.of(stopPlace));
+                    return isAuthorized(role, stopPlace);
                 }
 
             }
-            return dataScopedAuthorizationService.isAuthorized(role, List.of(entity));
+            return isAuthorized(role, entity);
         }
     }
 }
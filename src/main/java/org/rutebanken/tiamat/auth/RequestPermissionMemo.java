@@ -0,0 +1,79 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.auth;
+
+import org.rutebanken.tiamat.model.EntityInVersionStructure;
+import org.rutebanken.tiamat.model.EntityStructure;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Authorization results for versions of entities, kept for the current HTTP request.
+ * The permissions of each entity in a GraphQL response are resolved with several checks, which check the same roles again.
+ * Outside of requests, and for entities without netex ID, nothing is kept.
+ */
+final class RequestPermissionMemo {
+
+    private static final String ATTRIBUTE_NAME = RequestPermissionMemo.class.getName();
+
+    private RequestPermissionMemo() {
+    }
+
+    /**
+     * @param authentication the authenticated user
+     * @param check          name of the check, with the role checked
+     * @param entity         the entity checked. Results are kept by netex ID and version.
+     * @param authorization  resolves the result if not kept
+     */
+    static boolean isAuthorized(Authentication authentication, String check, EntityStructure entity, BooleanSupplier authorization) {
+        Map<PermissionKey, Boolean> results = currentResults();
+        if (results == null || authentication == null
+                || !(entity instanceof EntityInVersionStructure entityInVersion) || entityInVersion.getNetexId() == null) {
+            return authorization.getAsBoolean();
+        }
+
+        PermissionKey key = new PermissionKey(authentication.getName(), check, entityInVersion.getNetexId(), entityInVersion.getVersion());
+        Boolean result = results.get(key);
+        if (result == null) {
+            result = authorization.getAsBoolean();
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<PermissionKey, Boolean> currentResults() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return null;
+        }
+        Object results = requestAttributes.getAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+        if (results == null) {
+            results = new ConcurrentHashMap<PermissionKey, Boolean>();
+            requestAttributes.setAttribute(ATTRIBUTE_NAME, results, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (Map<PermissionKey, Boolean>) results;
+    }
+
+    private record PermissionKey(String user, String check, String netexId, long version) {
+    }
+}
@@ -119,19 +119,14 @@ public class StopPlaceAuthorizationService {
     }
 
     private boolean stopShouldBeAuthorized(StopPlace newVersionOfChild, StopPlace matchingExistingChild) {
-        try {
-            List<Difference> differenceList = tiamatObjectDiffer.compareObjects(matchingExistingChild, newVersionOfChild);
-
-            if (differenceList.isEmpty()) {
-                logger.info("Child has NOT changed {} {}", newVersionOfChild.getNetexId(), newVersionOfChild.getStopPlaceType());
-                // Disable authorization check for this stop. It has not been changed.
-                return false;
-            } else {
-                logger.info("Child has changed {} {}", newVersionOfChild.getNetexId(), newVersionOfChild.getStopPlaceType());
-                return true;
-            }
-        } catch (IllegalAccessException e) {
-            logger.warn("Could not compare children", e);
+        List<Difference> differenceList = tiamatObjectDiffer.compareObjects(matchingExistingChild, newVersionOfChild);
+
+        if (differenceList.isEmpty()) {
+            logger.info("Child has NOT changed {} {}", newVersionOfChild.getNetexId(), newVersionOfChild.getStopPlaceType());
+            // Disable authorization check for this stop. It has not been changed.
+            return false;
+        } else {
+            logger.info("Child has changed {} {}", newVersionOfChild.getNetexId(), newVersionOfChild.getStopPlaceType());
             return true;
         }
     }
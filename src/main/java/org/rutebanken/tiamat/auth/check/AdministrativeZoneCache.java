@@ -0,0 +1,128 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.auth.check;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.topic.ITopic;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Administrative zones of role assignments, by netex ID of the topographic place.
+ * Each zone is loaded once with the polygon of the newest version of the topographic place, prepared for repeated point checks.
+ * Unknown zones are remembered too.
+ * <p>
+ * {@link #reset()} must be called when topographic places change. The reset is published to the other nodes of the cluster
+ * when the transaction is committed, and they discard their loaded zones too.
+ */
+@Component
+public class AdministrativeZoneCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdministrativeZoneCache.class);
+
+    public static final String RESET_TOPIC = "administrativeZoneResets";
+
+    private final TopographicPlaceRepository topographicPlaceRepository;
+
+    private final ITopic<Long> resetTopic;
+
+    /**
+     * Replaced on reset. A zone loaded before a reset is put in the replaced map, and never seen again.
+     */
+    private volatile Map<String, Optional<AdministrativeZone>> zones = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AdministrativeZoneCache(TopographicPlaceRepository topographicPlaceRepository, HazelcastInstance hazelcastInstance) {
+        this.topographicPlaceRepository = topographicPlaceRepository;
+        this.resetTopic = hazelcastInstance.getTopic(RESET_TOPIC);
+        this.resetTopic.addMessageListener(message -> {
+            logger.debug("Discarding administrative zones, reset at {}", Instant.ofEpochMilli(message.getMessageObject()));
+            zones = new ConcurrentHashMap<>();
+        });
+    }
+
+    /**
+     * @return the zone, or empty if there is no topographic place with the netex ID
+     */
+    public Optional<AdministrativeZone> findZone(String netexId) {
+        Map<String, Optional<AdministrativeZone>> currentZones = zones;
+        Optional<AdministrativeZone> zone = currentZones.get(netexId);
+        if (zone == null) {
+            zone = loadZone(netexId);
+            currentZones.putIfAbsent(netexId, zone);
+        }
+        return zone;
+    }
+
+    /**
+     * Discard the loaded zones now, and again on all nodes when the current transaction is committed,
+     * so that zones loaded by other threads before the commit are not kept.
+     */
+    public void reset() {
+        zones = new ConcurrentHashMap<>();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    resetAllNodes();
+                }
+            });
+        } else {
+            resetAllNodes();
+        }
+    }
+
+    private void resetAllNodes() {
+        // The listener of this node gets the message too, but the zones are discarded at once
+        zones = new ConcurrentHashMap<>();
+        resetTopic.publish(Instant.now().toEpochMilli());
+    }
+
+    private Optional<AdministrativeZone> loadZone(String netexId) {
+        TopographicPlace topographicPlace = topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(netexId);
+        if (topographicPlace == null) {
+            return Optional.empty();
+        }
+        logger.debug("Loaded administrative zone {}-{}", topographicPlace.getNetexId(), topographicPlace.getVersion());
+        return Optional.of(new AdministrativeZone(topographicPlace.getNetexId(), topographicPlace.getVersion(),
+                topographicPlace.getPolygon() != null ? PreparedGeometryFactory.prepare(topographicPlace.getPolygon()) : null));
+    }
+
+    /**
+     * @param polygon prepared polygon of the topographic place, or null if it has none
+     */
+    public record AdministrativeZone(String netexId, long version, PreparedGeometry polygon) {
+
+        public boolean contains(Point point) {
+            return polygon != null && polygon.contains(point);
+        }
+    }
+}
@@ -16,51 +16,55 @@
 package org.rutebanken.tiamat.auth.check;
 
 import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.geom.Polygon;
 import org.rutebanken.helper.organisation.AdministrativeZoneChecker;
 import org.rutebanken.helper.organisation.RoleAssignment;
-import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.auth.check.AdministrativeZoneCache.AdministrativeZone;
 import org.rutebanken.tiamat.model.Zone_VersionStructure;
-import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
+/**
+ * Checks whether entities are within the administrative zone of a role assignment.
+ * Zones are looked up in the {@link AdministrativeZoneCache}, and not loaded for every check.
+ */
 @Service
 public class TopographicPlaceChecker implements AdministrativeZoneChecker {
 
     private static final Logger logger = LoggerFactory.getLogger(TopographicPlaceChecker.class);
 
-    private final TopographicPlaceRepository topographicPlaceRepository;
+    private final AdministrativeZoneCache administrativeZoneCache;
 
     @Autowired
-    public TopographicPlaceChecker(TopographicPlaceRepository topographicPlaceRepository) {
-        this.topographicPlaceRepository = topographicPlaceRepository;
+    public TopographicPlaceChecker(AdministrativeZoneCache administrativeZoneCache) {
+        this.administrativeZoneCache = administrativeZoneCache;
     }
 
     @Override
     public boolean entityMatchesAdministrativeZone(RoleAssignment roleAssignment, Object entity) {
 
         if (roleAssignment.getAdministrativeZone() != null) {
-            TopographicPlace topographicPlace = topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(roleAssignment.getAdministrativeZone());
-            if (topographicPlace == null) {
+            Optional<AdministrativeZone> administrativeZone = administrativeZoneCache.findZone(roleAssignment.getAdministrativeZone());
+            if (administrativeZone.isEmpty()) {
                 logger.warn("RoleAssignment contains unknown adminZone reference: {}. Will not allow authorization", roleAssignment.getAdministrativeZone());
                 return false;
             }
-            Polygon polygon = topographicPlace.getPolygon();
+            AdministrativeZone topographicPlace = administrativeZone.get();
 
             if (entity instanceof Zone_VersionStructure zone) {
                 if (zone.getCentroid() == null) {
-                    logger.warn("Centroid is null for entity, cannot match polygon for topographic place {}-{}, Returning true for entity: {}", topographicPlace.getNetexId(), topographicPlace.getVersion(), zone);
+                    logger.warn("Centroid is null for entity, cannot match polygon for topographic place {}-{}, Returning true for entity: {}", topographicPlace.netexId(), topographicPlace.version(), zone);
                     return true;
                 }
 
-                if (polygon.contains(zone.getCentroid())) {
-                    logger.debug("Polygon for topographic place {}-{} contains centroid for {}", topographicPlace.getNetexId(), topographicPlace.getVersion(), zone);
+                if (topographicPlace.contains(zone.getCentroid())) {
+                    logger.debug("Polygon for topographic place {}-{} contains centroid for {}", topographicPlace.netexId(), topographicPlace.version(), zone);
                     return true;
                 } else {
-                    logger.warn("No polygon match for topographic place {}-{} and centroid for zone {}", topographicPlace.getNetexId(), topographicPlace.getVersion(), zone);
+                    logger.warn("No polygon match for topographic place {}-{} and centroid for zone {}", topographicPlace.netexId(), topographicPlace.version(), zone);
                     return false;
                 }
             }
@@ -75,18 +79,18 @@ public class TopographicPlaceChecker implements AdministrativeZoneChecker {
 
     public boolean pointMatchesAdministrativeZone(RoleAssignment roleAssignment, Point point) {
         if (roleAssignment.getAdministrativeZone() != null) {
-            TopographicPlace topographicPlace = topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(roleAssignment.getAdministrativeZone());
-            if (topographicPlace == null) {
+            Optional<AdministrativeZone> administrativeZone = administrativeZoneCache.findZone(roleAssignment.getAdministrativeZone());
+            if (administrativeZone.isEmpty()) {
                 logger.warn("RoleAssignment contains unknown adminZone reference: {}. Will not allow authorization", roleAssignment.getAdministrativeZone());
                 return false;
             }
-            Polygon polygon = topographicPlace.getPolygon();
+            AdministrativeZone topographicPlace = administrativeZone.get();
 
-                if (polygon.contains(point)) {
-                    logger.debug("Polygon for topographic place {}-{} contains point for {}", topographicPlace.getNetexId(), topographicPlace.getVersion(), point);
+                if (topographicPlace.contains(point)) {
+                    logger.debug("Polygon for topographic place {}-{} contains point for {}", topographicPlace.netexId(), topographicPlace.version(), point);
                     return true;
                 } else {
-                    logger.warn("No polygon match for topographic place {}-{} and point {}", topographicPlace.getNetexId(), topographicPlace.getVersion(), point);
+                    logger.warn("No polygon match for topographic place {}-{} and point {}", topographicPlace.netexId(), topographicPlace.version(), point);
                     return false;
                 }
 
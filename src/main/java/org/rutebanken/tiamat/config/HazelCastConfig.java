@@ -1,10 +1,21 @@
 package org.rutebanken.tiamat.config;
 
 import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
 import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import org.rutebanken.tiamat.hazelcast.SecondLevelCacheRegion;
+import org.rutebanken.tiamat.hazelcast.TiamatHazelcastCacheRegionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 @Configuration
 public class HazelCastConfig {
@@ -24,6 +35,9 @@ public class HazelCastConfig {
     @Value("${tiamat.hazelcast.cluster.name:tiamat}")
     private String hazelcastClusterName;
 
+    @Autowired
+    private Environment environment;
+
 
     @Bean
     public Config hazelcastConfig() {
@@ -43,6 +57,45 @@ public class HazelCastConfig {
         joinConfig.getKubernetesConfig().setProperty("namespace", hazelcastNamespace);
         joinConfig.getKubernetesConfig().setProperty("service-name", hazelcastServiceName);
         joinConfig.getKubernetesConfig().setProperty("service-port", hazelcastServicePort);
+
+        for (SecondLevelCacheRegion region : SecondLevelCacheRegion.values()) {
+            config.addMapConfig(secondLevelCacheMapConfig(region));
+        }
         return config;
     }
+
+    /**
+     * Let the second level cache use the Hazelcast instance of the application, and the map configurations above.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheHazelcastInstance(HazelcastInstance hazelcastInstance) {
+        return hibernateProperties -> {
+            hibernateProperties.put(TiamatHazelcastCacheRegionFactory.INSTANCE_NAME_PROPERTY, hazelcastInstance.getName());
+            hibernateProperties.put(TiamatHazelcastCacheRegionFactory.SHUTDOWN_ON_STOP_PROPERTY, "false");
+        };
+    }
+
+    private MapConfig secondLevelCacheMapConfig(SecondLevelCacheRegion region) {
+        int maxSize = environment.getProperty(region.propertyPrefix() + ".max-size", Integer.class, region.getDefaultMaxSize());
+        int timeToLiveSeconds = environment.getProperty(region.propertyPrefix() + ".ttl-seconds", Integer.class, region.getDefaultTimeToLiveSeconds());
+
+        MapConfig mapConfig = new MapConfig(region.getRegionName())
+                .setTimeToLiveSeconds(timeToLiveSeconds)
+                .setEvictionConfig(new EvictionConfig()
+                        .setEvictionPolicy(EvictionPolicy.LRU)
+                        .setMaxSizePolicy(MaxSizePolicy.PER_NODE)
+                        .setSize(maxSize));
+
+        if (region.hasNearCache()) {
+            // Entries are invalidated in the near caches of all nodes when they change in the map
+            mapConfig.setNearCacheConfig(new NearCacheConfig(region.getRegionName())
+                    .setInvalidateOnChange(true)
+                    .setTimeToLiveSeconds(timeToLiveSeconds)
+                    .setEvictionConfig(new EvictionConfig()
+                            .setEvictionPolicy(EvictionPolicy.LRU)
+                            .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                            .setSize(maxSize)));
+        }
+        return mapConfig;
+    }
 }
@@ -19,6 +19,7 @@ package org.rutebanken.tiamat.config;
 import io.swagger.v3.jaxrs2.integration.resources.OpenApiResource;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
+import org.rutebanken.tiamat.filter.BlockingRequestLimitFilter;
 import org.rutebanken.tiamat.filter.LoggingFilter;
 import org.rutebanken.tiamat.jersey.JerseyJava8TimeConverterProvider;
 import org.rutebanken.tiamat.rest.dto.DtoJbvCodeMappingResource;
@@ -198,5 +199,19 @@ public class JerseyConfig {
         return registration;
     }
 
+    /**
+     * Limits concurrent requests to the services when running on virtual threads. Health checks are not limited.
+     */
+    @Bean
+    public FilterRegistrationBean blockingRequestLimitFilterRegistrationBean(@Autowired BlockingRequestLimitFilter blockingRequestLimitFilter) {
+
+        FilterRegistrationBean registration = new FilterRegistrationBean();
+        registration.setFilter(blockingRequestLimitFilter);
+        registration.addUrlPatterns(SERVICES_PATH + "/*");
+        registration.setName("blockingRequestLimitFilter");
+        registration.setOrder(2);
+        return registration;
+    }
+
 
 }
@@ -23,6 +23,8 @@ import org.springframework.boot.web.embedded.jetty.JettyServletWebServerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.Executors;
+
 @Configuration
 public class JettyConfig {
 
@@ -31,14 +33,21 @@ public class JettyConfig {
     @Bean
     public JettyServletWebServerFactory jettyEmbeddedServletContainerFactory(
             @Value("${jettyMinThreads:10}") int jettyMinThreads,
-            @Value("${jettyMaxThreads:40}") int jettyMaxThreads) {
+            @Value("${jettyMaxThreads:40}") int jettyMaxThreads,
+            @Value("${tiamat.virtual.threads.enabled:false}") boolean virtualThreads) {
+
+        logger.info("Configuring jetty with minThreads: {}, maxThreads: {} and virtual threads: {}", jettyMinThreads, jettyMaxThreads, virtualThreads);
 
-        logger.info("Configuring jetty with minThreads: {} and maxThreads: {}", jettyMinThreads, jettyMaxThreads);
+        final QueuedThreadPool threadPool = new QueuedThreadPool(jettyMaxThreads, jettyMinThreads);
+        if (virtualThreads) {
+            // Requests are handled on virtual threads, bounded by BlockingWorkLimiter. The pool threads are left for Jetty's own non-blocking tasks.
+            threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        }
 
         final JettyServletWebServerFactory factory = new JettyServletWebServerFactory() {
             @Override
             public QueuedThreadPool getThreadPool() {
-                return new QueuedThreadPool(jettyMaxThreads, jettyMinThreads);
+                return threadPool;
             }
         };
         return factory;
@@ -21,6 +21,8 @@ import org.rutebanken.tiamat.exporter.TiamatFareFrameExporter;
 import org.rutebanken.tiamat.exporter.TiamatResourceFrameExporter;
 import org.rutebanken.tiamat.exporter.TiamatServiceFrameExporter;
 import org.rutebanken.tiamat.exporter.TiamatSiteFrameExporter;
+import org.rutebanken.tiamat.exporter.async.NetexMappingExecutor;
+import org.rutebanken.tiamat.exporter.eviction.LoadedEntitiesListener;
 import org.rutebanken.tiamat.netex.id.NetexIdHelper;
 import org.rutebanken.tiamat.netex.mapping.NetexMapper;
 import org.rutebanken.tiamat.repository.FareZoneRepository;
@@ -87,6 +89,12 @@ public class StreamingPublicationDeliveryConfig {
     @Autowired
     private NetexIdHelper netexIdHelper;
 
+    @Autowired
+    private LoadedEntitiesListener loadedEntitiesListener;
+
+    @Autowired
+    private NetexMappingExecutor netexMappingExecutor;
+
     @Value("${asyncNetexExport.validateAgainstSchema:false}")
     private boolean validateAsyncExport;
 
@@ -106,6 +114,6 @@ public class StreamingPublicationDeliveryConfig {
     private StreamingPublicationDelivery createStreamingPublicationDelivery(boolean validate) throws IOException, SAXException {
         return new StreamingPublicationDelivery(stopPlaceRepository, parkingRepository, publicationDeliveryCreator,
                 tiamatSiteFrameExporter,tiamatServiceFrameExporter,tiamatFareFrameExporter,tiamatResourceFrameExporter, netexMapper, tariffZoneRepository, fareZoneRepository, topographicPlaceRepository,
-                groupOfStopPlacesRepository,groupOfTariffZonesRepository, netexIdHelper, validate, purposeOfGroupingRepository);
+                groupOfStopPlacesRepository,groupOfTariffZonesRepository, netexIdHelper, validate, purposeOfGroupingRepository, loadedEntitiesListener, netexMappingExecutor);
     }
 }
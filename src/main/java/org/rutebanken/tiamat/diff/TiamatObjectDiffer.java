@@ -54,7 +54,7 @@ public class TiamatObjectDiffer {
                 .build();
     }
 
-    public List<Difference> compareObjects(IdentifiedEntity oldObject, IdentifiedEntity newObject) throws IllegalAccessException {
+    public List<Difference> compareObjects(IdentifiedEntity oldObject, IdentifiedEntity newObject) {
         return genericObjectDiffer.compareObjects(oldObject, newObject, genericDiffConfig);
     }
 
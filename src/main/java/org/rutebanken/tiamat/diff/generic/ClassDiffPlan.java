@@ -0,0 +1,137 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.diff.generic;
+
+import javassist.util.proxy.MethodHandler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The fields to compare for one class, resolved once per class and diff config.
+ * Field values are read through method handles instead of looking up and opening fields for every object.
+ */
+class ClassDiffPlan {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    enum FieldKind {
+        COLLECTION, MAP, INSTANT, OBJECT
+    }
+
+    static class FieldAccessor {
+
+        final Field field;
+        final String name;
+        final FieldKind kind;
+
+        /**
+         * Resolved on first use. Plans are also built for classes like String, whose fields cannot be opened,
+         * but whose fields are never read.
+         */
+        private volatile MethodHandle getter;
+
+        private FieldAccessor(Field field, FieldKind kind) {
+            this.field = field;
+            this.name = field.getName();
+            this.kind = kind;
+        }
+
+        Object get(Object object) throws Throwable {
+            MethodHandle getter = this.getter;
+            if (getter == null) {
+                field.setAccessible(true);
+                getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+                this.getter = getter;
+            }
+            return (Object) getter.invokeExact(object);
+        }
+
+        /**
+         * @return true if the field is also present in the given object, which could be of another class than the plan.
+         */
+        boolean presentIn(Object object) {
+            return field.getDeclaringClass().isInstance(object);
+        }
+    }
+
+    final Class<?> type;
+
+    /**
+     * Fields of the class and its super classes, in the order they were compared by reflection.
+     */
+    final List<FieldAccessor> fields;
+
+    /**
+     * The first field with a name listed as identifier, or null if the class has none.
+     */
+    final FieldAccessor identifier;
+
+    private ClassDiffPlan(Class<?> type, List<FieldAccessor> fields, FieldAccessor identifier) {
+        this.type = type;
+        this.fields = fields;
+        this.identifier = identifier;
+    }
+
+    static ClassDiffPlan create(Class<?> type, Set<String> ignoreFields, Set<String> identifiers) {
+        List<FieldAccessor> fields = new ArrayList<>();
+        FieldAccessor identifier = null;
+
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (ignoreFields.contains(field.getName())) {
+                    continue;
+                }
+                if (Modifier.isStatic(field.getModifiers())) {
+                    // Static values are the same for both objects being compared
+                    continue;
+                }
+
+                FieldAccessor accessor = new FieldAccessor(field, kindOf(field.getType()));
+
+                if (identifier == null && identifiers.contains(field.getName())) {
+                    identifier = accessor;
+                }
+                if (field.getType().isAssignableFrom(MethodHandler.class)) {
+                    // Proxy handlers, and fields typed as Object, are not compared. They can still be identifiers.
+                    continue;
+                }
+                fields.add(accessor);
+            }
+        }
+        return new ClassDiffPlan(type, List.copyOf(fields), identifier);
+    }
+
+    private static FieldKind kindOf(Class<?> fieldType) {
+        if (Collection.class.isAssignableFrom(fieldType)) {
+            return FieldKind.COLLECTION;
+        } else if (Map.class.isAssignableFrom(fieldType)) {
+            return FieldKind.MAP;
+        } else if (Instant.class.isAssignableFrom(fieldType)) {
+            return FieldKind.INSTANT;
+        }
+        return FieldKind.OBJECT;
+    }
+}
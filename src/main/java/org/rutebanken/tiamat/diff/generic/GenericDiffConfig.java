@@ -15,22 +15,27 @@
 
 package org.rutebanken.tiamat.diff.generic;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GenericDiffConfig {
 
-    /**
-     * Current depth of recursive progression
-     * Actually, not a configuration, but a status.
-     */
-    protected int depth;
-
     protected Set<String> ignoreFields;
 
     protected Set<String> identifiers;
 
     protected Set<Class> onlyDoEqualsCheck;
 
+    /**
+     * Diff plans depend on the ignored fields and identifiers, so they are kept with the config they were built for.
+     */
+    private final Map<Class<?>, ClassDiffPlan> diffPlans = new ConcurrentHashMap<>();
+
+    ClassDiffPlan diffPlan(Class<?> clazz) {
+        return diffPlans.computeIfAbsent(clazz, type -> ClassDiffPlan.create(type, ignoreFields, identifiers));
+    }
+
     public static GenericDiffConfigBuilder builder() {
         return new GenericDiffConfigBuilder();
     }
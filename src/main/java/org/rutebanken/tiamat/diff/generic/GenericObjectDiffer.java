@@ -15,24 +15,23 @@
 
 package org.rutebanken.tiamat.diff.generic;
 
-import com.google.common.collect.Sets;
-import javassist.util.proxy.MethodHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Field;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * Compares objects field by field. The fields of each class are resolved once per config, see {@link ClassDiffPlan}.
+ * Collection items with identifiers are matched by looking up the identifier, instead of scanning the other collection.
+ */
 @Component
 public class GenericObjectDiffer {
 
@@ -40,220 +39,184 @@ public class GenericObjectDiffer {
 
     private static final Logger logger = LoggerFactory.getLogger(GenericObjectDiffer.class);
 
-    public List<Difference> compareObjects(Object oldObject, Object newObject, GenericDiffConfig genericDiffConfig) throws IllegalAccessException {
-        genericDiffConfig.depth = 0;
-        return compareObjects(null, oldObject, newObject, genericDiffConfig);
+    public List<Difference> compareObjects(Object oldObject, Object newObject, GenericDiffConfig genericDiffConfig) {
+        List<Difference> differences = new ArrayList<>();
+        compareObjects(null, oldObject, newObject, genericDiffConfig, 0, differences);
+        return differences;
     }
 
     public String diffListToString(List<Difference> differences) {
         return differences.stream().map(difference -> difference.toString()).collect(Collectors.joining("\n", "\n", "\n"));
     }
 
-    private List<Difference> compareObjects(String property, Object oldObject, Object newObject, GenericDiffConfig genericDiffConfig) throws IllegalAccessException {
+    private void compareObjects(String property, Object oldObject, Object newObject, GenericDiffConfig genericDiffConfig, int depth, List<Difference> differences) {
 
-        List<Difference> differences = new ArrayList<>();
-
-        if (genericDiffConfig.depth > MAX_DEPTH) {
+        if (depth > MAX_DEPTH) {
             logger.debug("Reached max depth of {}", MAX_DEPTH);
-            return differences;
+            return;
         }
-        genericDiffConfig.depth++;
 
-        Class clazz = oldObject.getClass();
-
-        Field[] fields = getAllFields(clazz, genericDiffConfig.ignoreFields);
-        Set<Field> newObjectFields = Sets.newHashSet(getAllFields(newObject.getClass(), genericDiffConfig.ignoreFields));
+        ClassDiffPlan diffPlan = genericDiffConfig.diffPlan(oldObject.getClass());
+        boolean sameClass = diffPlan.type == newObject.getClass();
         if (property == null) {
             property = oldObject.getClass().getSimpleName();
         }
 
-        for (Field field : fields) {
-
-            try {
-                if (!newObjectFields.contains(field)) {
-                    logger.debug("Ignoring field {} as it not present in newObject of type {}", field, newObject.getClass());
-                    continue;
-                }
-                if (field.getType().isAssignableFrom(MethodHandler.class)) {
-                    logger.debug("Ignoring field {} as its assignable from {}", field, MethodHandler.class);
-                    continue;
-                }
+        for (ClassDiffPlan.FieldAccessor field : diffPlan.fields) {
 
-                field.setAccessible(true);
+            if (!sameClass && !field.presentIn(newObject)) {
+                logger.debug("Ignoring field {} as it not present in newObject of type {}", field.field, newObject.getClass());
+                continue;
+            }
 
-                Object oldValue = field.get(oldObject);
-                Object newValue = field.get(newObject);
+            Object oldValue = read(field, oldObject, property, oldObject, newObject);
+            Object newValue = read(field, newObject, property, oldObject, newObject);
 
-                if (oldValue == null && newValue == null) {
-                    continue;
-                }
+            if (oldValue == null && newValue == null) {
+                continue;
+            }
 
-                if (oldValue == null && newValue != null || oldValue != null && newValue == null) {
-                    differences.add(new Difference(property + '.' + field.getName(), oldValue, newValue));
-                    continue;
-                }
+            String childProperty = property + '.' + field.name;
 
-                if (Collection.class.isAssignableFrom(field.getType())) {
-                    compareCollection(property + '.' + field.getName(), (Collection) oldValue, (Collection) newValue, differences, genericDiffConfig);
-                    continue;
+            if (oldValue == null || newValue == null) {
+                differences.add(new Difference(childProperty, oldValue, newValue));
+                continue;
+            }
 
-                } else if (Map.class.isAssignableFrom(field.getType())) {
-                    String mapPropertyName = property + "." + field.getName();
-                    compareMap((Map) oldValue, (Map) newValue, differences, false, mapPropertyName, genericDiffConfig);
-                    continue;
-                }
+            if (field.kind == ClassDiffPlan.FieldKind.COLLECTION) {
+                compareCollection(childProperty, (Collection) oldValue, (Collection) newValue, differences, genericDiffConfig, depth);
+                continue;
+            } else if (field.kind == ClassDiffPlan.FieldKind.MAP) {
+                compareMap((Map) oldValue, (Map) newValue, differences, childProperty, genericDiffConfig, depth);
+                continue;
+            }
 
-                if (oldValue == newValue) {
-                    continue;
-                }
+            if (oldValue == newValue) {
+                continue;
+            }
 
-                if (oldValue.equals(newValue)) {
-                    continue;
-                }
+            if (oldValue.equals(newValue)) {
+                continue;
+            }
 
-                String childProperty = property + '.' + field.getName();
-
-                if (isPrimitive(oldValue)) {
-                    differences.add(new Difference(childProperty, oldValue, newValue));
-                } else if (Instant.class.isAssignableFrom(field.getType())) {
-                    differences.add(new Difference(property + '.' + field.getName(), oldValue, newValue));
-                } else if (genericDiffConfig.onlyDoEqualsCheck.stream().anyMatch(type -> type.isAssignableFrom(oldValue.getClass()))) {
-                    if (!oldValue.equals(newValue)) {
-                        differences.add(new Difference(childProperty, oldValue, newValue));
-                    }
-                } else {
-                    differences.addAll(compareObjects(property + '.' + field.getName(), oldValue, newValue, genericDiffConfig));
-                }
-            } catch (IllegalAccessException | IllegalArgumentException e) {
-                throw new RuntimeException("Could not compare property " + property
-                                                   + ", field '" + field + ". ex:\""
-                                                   + e.getMessage() + "\". old object "
-                                                   + oldObject + " new object " + newObject, e);
+            if (isPrimitive(oldValue) || field.kind == ClassDiffPlan.FieldKind.INSTANT) {
+                differences.add(new Difference(childProperty, oldValue, newValue));
+            } else if (onlyDoEqualsCheck(oldValue, genericDiffConfig)) {
+                differences.add(new Difference(childProperty, oldValue, newValue));
+            } else {
+                compareObjects(childProperty, oldValue, newValue, genericDiffConfig, depth + 1, differences);
             }
         }
+    }
 
-        return differences;
+    private Object read(ClassDiffPlan.FieldAccessor field, Object object, String property, Object oldObject, Object newObject) {
+        try {
+            return field.get(object);
+        } catch (Throwable e) {
+            throw new RuntimeException("Could not compare property " + property
+                                               + ", field '" + field.field + ". ex:\""
+                                               + e.getMessage() + "\". old object "
+                                               + oldObject + " new object " + newObject, e);
+        }
     }
 
     private boolean isPrimitive(Object value) {
         return value instanceof Number || value instanceof String || value instanceof Boolean;
     }
 
-    private void compareMap(Map<?, ?> map1, Map<?, ?> map2, List<Difference> differences, boolean reverse, String mapPropertyName, GenericDiffConfig genericDiffConfig) throws IllegalAccessException {
-
-        Map<?, ?> leftMap;
-        Map<?, ?> rightMap;
-
-        if (reverse) {
-            leftMap = map2;
-            rightMap = map1;
-        } else {
-            leftMap = map1;
-            rightMap = map2;
+    private boolean onlyDoEqualsCheck(Object value, GenericDiffConfig genericDiffConfig) {
+        for (Class type : genericDiffConfig.onlyDoEqualsCheck) {
+            if (type.isAssignableFrom(value.getClass())) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    private void compareMap(Map<?, ?> leftMap, Map<?, ?> rightMap, List<Difference> differences, String mapPropertyName, GenericDiffConfig genericDiffConfig, int depth) {
 
-        for (Object leftMapKey : leftMap.keySet()) {
+        for (Map.Entry<?, ?> leftEntry : leftMap.entrySet()) {
 
-            Object leftMapValue = leftMap.get(leftMapKey);
+            Object leftMapKey = leftEntry.getKey();
+            Object leftMapValue = leftEntry.getValue();
 
             if (!rightMap.containsKey(leftMapKey)) {
                 logger.debug("right map does not contain key {}", leftMapKey);
 
                 differences.add(new Difference(mapPropertyName + "{" + leftMapKey + "}", leftMapValue, null));
 
-            } else if (rightMap.containsKey(leftMapKey)) {
+            } else {
 
                 logger.debug("right map contain key {}", leftMapKey);
 
                 String childProperty = mapPropertyName + "{" + leftMapKey + "}";
-                differences.addAll(compareObjects(childProperty, leftMapValue, rightMap.get(leftMapKey), genericDiffConfig));
+                compareObjects(childProperty, leftMapValue, rightMap.get(leftMapKey), genericDiffConfig, depth + 1, differences);
             }
         }
     }
 
-    private void compareCollection(final String propertyName, Collection oldCollection, Collection newCollection, List<Difference> differences, GenericDiffConfig genericDiffConfig) throws IllegalAccessException {
+    private void compareCollection(final String propertyName, Collection oldCollection, Collection newCollection, List<Difference> differences, GenericDiffConfig genericDiffConfig, int depth) {
 
-        if (oldCollection == null && newCollection == null) {
+        if (oldCollection.isEmpty() && newCollection.isEmpty()) {
             return;
         }
 
-        if (oldCollection == null && newCollection != null) {
-            differences.add(new Difference(propertyName, null, newCollection.size()));
-        } else if (oldCollection != null && newCollection == null) {
-            differences.add(new Difference(propertyName, oldCollection.size(), null));
-        } else if (oldCollection.isEmpty() && newCollection.isEmpty()) {
-            return;
-        } else {
-            Set<Object> ignoreIdentifiers = new HashSet<>();
-            compareCollectionItems(propertyName, oldCollection, newCollection, differences, ignoreIdentifiers, false, genericDiffConfig);
-            compareCollectionItems(propertyName, newCollection, oldCollection, differences, ignoreIdentifiers, true, genericDiffConfig);
-
-        }
+        Set<Object> ignoreIdentifiers = new HashSet<>();
+        compareCollectionItems(propertyName, oldCollection, newCollection, differences, ignoreIdentifiers, false, genericDiffConfig, depth);
+        compareCollectionItems(propertyName, newCollection, oldCollection, differences, ignoreIdentifiers, true, genericDiffConfig, depth);
     }
 
-    private void compareCollectionItems(String propertyName, Collection collectionLeft, Collection collectionRight, List<Difference> differences, Set<Object> ignoreIdentifiers, boolean reverse, GenericDiffConfig genericDiffConfig) throws IllegalAccessException {
+    private void compareCollectionItems(String propertyName, Collection<?> collectionLeft, Collection<?> collectionRight, List<Difference> differences, Set<Object> ignoreIdentifiers, boolean reverse, GenericDiffConfig genericDiffConfig, int depth) {
 
-        for (Object itemLeft : collectionLeft) {
-
-            Object itemLeftIdentifier;
-            // Get identifierField for left item.
-            Field identifierField = identifierField(genericDiffConfig.identifiers, getAllFields(itemLeft.getClass(), genericDiffConfig.ignoreFields));
-            if (identifierField != null) {
+        Map<Object, Object> rightItemsByIdentifier = null;
 
-                itemLeftIdentifier = identifierField.get(itemLeft);
-                if (ignoreIdentifiers.contains(itemLeftIdentifier)) {
-                    continue;
-                }
+        for (Object itemLeft : collectionLeft) {
 
-            } else {
-                itemLeftIdentifier = null;
+            Object itemLeftIdentifier = identifier(itemLeft, propertyName, genericDiffConfig);
+            if (itemLeftIdentifier != null && ignoreIdentifiers.contains(itemLeftIdentifier)) {
+                continue;
             }
 
-            boolean foundMatchOnId = false;
-            for (Object itemRight : collectionRight) {
-                if (identifierField != null && itemLeftIdentifier != null) {
-                    Object itemRightIdentifier = identifierField.get(itemRight);
-                    if (itemLeftIdentifier.equals(itemRightIdentifier)) {
-
-                        String newProperty = propertyName + "[" + itemRightIdentifier + "]";
-                        ignoreIdentifiers.add(itemLeftIdentifier);
-                        differences.addAll(compareObjects(newProperty, itemLeft, itemRight, genericDiffConfig));
-                        foundMatchOnId = true;
-                        break;
-                    }
+            Object itemRight = null;
+            if (itemLeftIdentifier != null) {
+                if (rightItemsByIdentifier == null) {
+                    rightItemsByIdentifier = itemsByIdentifier(propertyName, collectionRight, genericDiffConfig);
                 }
+                itemRight = rightItemsByIdentifier.get(itemLeftIdentifier);
             }
 
-            if (!foundMatchOnId) {
-                if (reverse && !collectionRight.contains(itemLeft)) {
-                    differences.add(new Difference(DiffType.COLLECTION_ADD, propertyName + "[]", null, itemLeft));
-                    break;
-
-                } else if (!collectionRight.contains(itemLeft)) {
-                    differences.add(new Difference(DiffType.COLLECTION_REMOVE, propertyName + "[]", itemLeft, null));
-                }
+            if (itemRight != null) {
+                String newProperty = propertyName + "[" + itemLeftIdentifier + "]";
+                ignoreIdentifiers.add(itemLeftIdentifier);
+                compareObjects(newProperty, itemLeft, itemRight, genericDiffConfig, depth + 1, differences);
+            } else if (reverse && !collectionRight.contains(itemLeft)) {
+                differences.add(new Difference(DiffType.COLLECTION_ADD, propertyName + "[]", null, itemLeft));
+                break;
+            } else if (!collectionRight.contains(itemLeft)) {
+                differences.add(new Difference(DiffType.COLLECTION_REMOVE, propertyName + "[]", itemLeft, null));
             }
         }
-
     }
 
-    private Field[] getAllFields(Class clazz, Set<String> ignoreFields) {
-        List<Field> fields = new ArrayList<>();
-        fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
-        if (clazz.getSuperclass() != null) {
-            fields.addAll(Arrays.asList(getAllFields(clazz.getSuperclass(), ignoreFields)));
+    /**
+     * Index the items by identifier. If several items share an identifier, the first one is used, like a scan would.
+     */
+    private Map<Object, Object> itemsByIdentifier(String propertyName, Collection<?> items, GenericDiffConfig genericDiffConfig) {
+        Map<Object, Object> itemsByIdentifier = new HashMap<>(items.size() * 2);
+        for (Object item : items) {
+            Object identifier = identifier(item, propertyName, genericDiffConfig);
+            if (identifier != null) {
+                itemsByIdentifier.putIfAbsent(identifier, item);
+            }
         }
-        return fields.stream()
-                       .filter(field -> !ignoreFields.contains(field.getName()))
-                       .collect(Collectors.toList()).toArray(new Field[]{});
+        return itemsByIdentifier;
     }
 
-    private Field identifierField(Set<String> identifiers, Field[] fields) {
-        return Stream.of(fields)
-                       .filter(field -> identifiers.contains(field.getName()))
-                       .peek(identifierField -> identifierField.setAccessible(true))
-                       .findFirst()
-                       .orElse(null);
+    private Object identifier(Object item, String propertyName, GenericDiffConfig genericDiffConfig) {
+        ClassDiffPlan.FieldAccessor identifierField = genericDiffConfig.diffPlan(item.getClass()).identifier;
+        if (identifierField == null) {
+            return null;
+        }
+        return read(identifierField, item, propertyName, item, null);
     }
-
 }
@@ -26,6 +26,12 @@ public class IdMappingDto {
     public Instant validTo;
     public StopTypeEnumeration stopType;
 
+    /**
+     * Position of the mapping in the result, to fetch the next page after it. Not part of the mapping itself.
+     */
+    public Long entityId;
+    public Long keyValuesId;
+
 
     public IdMappingDto(String originalId, String netexId, Instant validFrom, Instant validTo, StopTypeEnumeration stopType) {
         this.originalId = originalId;
@@ -35,5 +41,11 @@ public class IdMappingDto {
         this.validTo = validTo;
     }
 
+    public IdMappingDto(String originalId, String netexId, Instant validFrom, Instant validTo, StopTypeEnumeration stopType, Long entityId, Long keyValuesId) {
+        this(originalId, netexId, validFrom, validTo, stopType);
+        this.entityId = entityId;
+        this.keyValuesId = keyValuesId;
+    }
+
 
 }
@@ -15,9 +15,9 @@
 
 package org.rutebanken.tiamat.exporter;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.rutebanken.tiamat.exporter.async.ExportJobWorker;
 import org.rutebanken.tiamat.exporter.params.ExportParams;
+import org.rutebanken.tiamat.general.BlockingWorkLimiter;
 import org.rutebanken.tiamat.model.job.ExportJob;
 import org.rutebanken.tiamat.model.job.JobStatus;
 import org.rutebanken.tiamat.netex.validation.NetexXmlReferenceValidator;
@@ -28,10 +28,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.InputStream;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -50,8 +48,7 @@ public class AsyncPublicationDeliveryExporter {
 
     private static final Logger logger = LoggerFactory.getLogger(AsyncPublicationDeliveryExporter.class);
 
-    private static final ExecutorService exportService = Executors.newFixedThreadPool(3, new ThreadFactoryBuilder()
-            .setNameFormat("exporter-%d").build());
+    private static final int MAX_CONCURRENT_EXPORTS = 3;
 
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
@@ -65,31 +62,20 @@ public class AsyncPublicationDeliveryExporter {
 
     private final ExportTimeZone exportTimeZone;
 
-    private final String localExportPath;
+    private final ExecutorService exportService;
 
     @Autowired
     public AsyncPublicationDeliveryExporter(ExportJobRepository exportJobRepository,
                                             BlobStoreService blobStoreService,
                                             @Qualifier("asyncStreamingPublicationDelivery") StreamingPublicationDelivery streamingPublicationDelivery,
                                             NetexXmlReferenceValidator netexXmlReferenceValidator, ExportTimeZone exportTimeZone,
-                                            @Value("${async.export.path:/deployments/data/}") String localExportPath) {
+                                            BlockingWorkLimiter blockingWorkLimiter) {
         this.exportJobRepository = exportJobRepository;
         this.blobStoreService = blobStoreService;
         this.streamingPublicationDelivery = streamingPublicationDelivery;
         this.netexXmlReferenceValidator = netexXmlReferenceValidator;
         this.exportTimeZone = exportTimeZone;
-        this.localExportPath = localExportPath;
-
-        File exportFolder = new File(localExportPath);
-        if (!exportFolder.exists() && !exportFolder.mkdirs()) {
-            throw new TiamatPublicationDeliveryExportException("Cannot find or create export directory from path: " + localExportPath +
-                    ". Please create the directory with correct permissions, or configure a different path with the property async.export.path");
-        }
-        if (!exportFolder.canWrite()) {
-            throw new TiamatPublicationDeliveryExportException("Cannot write to path: " + localExportPath +
-                    ". Please create the directory with correct permissions, or configure a different path with the property async.export.path");
-        }
-        logger.info("Verified local export path {}", localExportPath);
+        this.exportService = Executors.newFixedThreadPool(MAX_CONCURRENT_EXPORTS, blockingWorkLimiter.threadFactory("exporter"));
     }
 
     /**
@@ -109,7 +95,7 @@ public class AsyncPublicationDeliveryExporter {
         String fileNameWithoutExtension = createFileNameWithoutExtension(exportJob.getId(), exportJob.getStarted());
         exportJob.setFileName(fileNameWithoutExtension + ".zip");
 
-        ExportJobWorker exportJobWorker = new ExportJobWorker(exportJob, streamingPublicationDelivery, localExportPath, fileNameWithoutExtension, blobStoreService, exportJobRepository, netexXmlReferenceValidator);
+        ExportJobWorker exportJobWorker = new ExportJobWorker(exportJob, streamingPublicationDelivery, fileNameWithoutExtension, blobStoreService, exportJobRepository, netexXmlReferenceValidator);
         exportService.submit(exportJobWorker);
         logger.info("Returning started export job {}", exportJob);
         setJobUrl(exportJob);
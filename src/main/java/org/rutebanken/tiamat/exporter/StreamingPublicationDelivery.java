@@ -49,13 +49,14 @@ import org.rutebanken.netex.model.TopographicPlacesInFrame_RelStructure;
 import org.rutebanken.netex.model.ValidBetween;
 import org.rutebanken.netex.model.Zone_VersionStructure;
 import org.rutebanken.netex.validation.NeTExValidator;
+import org.rutebanken.tiamat.exporter.async.NetexMappingExecutor;
 import org.rutebanken.tiamat.exporter.async.NetexMappingIterator;
 import org.rutebanken.tiamat.exporter.async.NetexMappingIteratorList;
 import org.rutebanken.tiamat.exporter.async.NetexReferenceRemovingIterator;
 import org.rutebanken.tiamat.exporter.async.ParentStopFetchingIterator;
 import org.rutebanken.tiamat.exporter.async.ParentTreeTopographicPlaceFetchingIterator;
 import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
-import org.rutebanken.tiamat.exporter.eviction.SessionEntitiesEvictor;
+import org.rutebanken.tiamat.exporter.eviction.LoadedEntitiesListener;
 import org.rutebanken.tiamat.exporter.params.ExportParams;
 import org.rutebanken.tiamat.model.FareFrame;
 import org.rutebanken.tiamat.model.GroupOfStopPlaces;
@@ -71,6 +72,7 @@ import org.rutebanken.tiamat.repository.FareZoneRepository;
 import org.rutebanken.tiamat.repository.GroupOfStopPlacesRepository;
 import org.rutebanken.tiamat.repository.GroupOfTariffZonesRepository;
 import org.rutebanken.tiamat.repository.ParkingRepository;
+import org.rutebanken.tiamat.repository.PrimaryIds;
 import org.rutebanken.tiamat.repository.PurposeOfGroupingRepository;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
 import org.rutebanken.tiamat.repository.TariffZoneRepository;
@@ -128,6 +130,8 @@ public class StreamingPublicationDelivery {
     private final GroupOfTariffZonesRepository groupOfTariffZonesRepository;
     private final NeTExValidator neTExValidator = NeTExValidator.getNeTExValidator();
     private final NetexIdHelper netexIdHelper;
+    private final LoadedEntitiesListener loadedEntitiesListener;
+    private final NetexMappingExecutor netexMappingExecutor;
     /**
      * Validate against netex schema using the {@link NeTExValidator}
      * Enabling this for large xml files can lead to high memory consumption and/or massive performance impact.
@@ -154,7 +158,9 @@ public class StreamingPublicationDelivery {
                                         GroupOfTariffZonesRepository groupOfTariffZonesRepository,
                                         NetexIdHelper netexIdHelper,
                                         @Value("${asyncNetexExport.validateAgainstSchema:false}") boolean validateAgainstSchema,
-                                        PurposeOfGroupingRepository purposeOfGroupingRepository) throws IOException, SAXException {
+                                        PurposeOfGroupingRepository purposeOfGroupingRepository,
+                                        LoadedEntitiesListener loadedEntitiesListener,
+                                        NetexMappingExecutor netexMappingExecutor) throws IOException, SAXException {
         this.stopPlaceRepository = stopPlaceRepository;
         this.parkingRepository = parkingRepository;
         this.publicationDeliveryCreator = publicationDeliveryCreator;
@@ -171,6 +177,8 @@ public class StreamingPublicationDelivery {
         this.netexIdHelper = netexIdHelper;
         this.validateAgainstSchema = validateAgainstSchema;
         this.purposeOfGroupingRepository = purposeOfGroupingRepository;
+        this.loadedEntitiesListener = loadedEntitiesListener;
+        this.netexMappingExecutor = netexMappingExecutor;
     }
 
     private static JAXBContext createContext(Class clazz) {
@@ -216,7 +224,7 @@ public class StreamingPublicationDelivery {
         // To avoid marshalling empty parking element and to be able to gather relevant topographic places
         // The primary ID represents a stop place with a certain version
 
-        final Set<Long> stopPlacePrimaryIds = stopPlaceRepository.getDatabaseIds(exportParams, ignorePaging);
+        final PrimaryIds stopPlacePrimaryIds = stopPlaceRepository.getDatabaseIds(exportParams, ignorePaging);
         logger.info("Got {} stop place IDs from stop place search", stopPlacePrimaryIds.size());
 
         tiamatSiteFrameExporter.addRelevantPathLinks(stopPlacePrimaryIds, siteFrame);
@@ -265,7 +273,7 @@ public class StreamingPublicationDelivery {
 
     }
 
-    private void prepareFareZones(ExportParams exportParams,Set<Long> stopPlacePrimaryIds, AtomicInteger mappedFareZonesCount, AtomicInteger mappedGroupOfTariffZonesCount, SiteFrame netexSiteFrame, org.rutebanken.netex.model.FareFrame netexFareFrame, EntitiesEvictor evictor) {
+    private void prepareFareZones(ExportParams exportParams,PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedFareZonesCount, AtomicInteger mappedGroupOfTariffZonesCount, SiteFrame netexSiteFrame, org.rutebanken.netex.model.FareFrame netexFareFrame, EntitiesEvictor evictor) {
 
         boolean exportGroupOfTariffZones = false;
 
@@ -302,7 +310,7 @@ public class StreamingPublicationDelivery {
         }
     }
 
-    private void prepareTariffZones(ExportParams exportParams, Set<Long> stopPlacePrimaryIds, AtomicInteger mappedTariffZonesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
+    private void prepareTariffZones(ExportParams exportParams, PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedTariffZonesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
 
 
         Iterator<org.rutebanken.tiamat.model.TariffZone> tariffZoneIterator;
@@ -338,7 +346,7 @@ public class StreamingPublicationDelivery {
 
     }
 
-    private void prepareParkings(ExportParams exportParams, Set<Long> stopPlacePrimaryIds, AtomicInteger mappedParkingCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
+    private void prepareParkings(ExportParams exportParams, PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedParkingCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
 
         // ExportParams could be used for parkingExportMode.
 
@@ -347,7 +355,7 @@ public class StreamingPublicationDelivery {
             // Only set parkings if they will exist during marshalling.
             logger.info("Parking count is {}, will create parking in publication delivery", parkingsCount);
             ParkingsInFrame_RelStructure parkingsInFrame_relStructure = new ParkingsInFrame_RelStructure();
-            List<Parking> parkings = new NetexMappingIteratorList<>(() -> new NetexMappingIterator<>(netexMapper, parkingRepository.scrollParkings(stopPlacePrimaryIds),
+            List<Parking> parkings = new NetexMappingIteratorList<>(() -> netexMappingExecutor.mappingIterator(parkingRepository.scrollParkings(stopPlacePrimaryIds),
                     Parking.class, mappedParkingCount, evicter));
 
             setField(ParkingsInFrame_RelStructure.class, "parking", parkingsInFrame_relStructure, parkings);
@@ -357,7 +365,7 @@ public class StreamingPublicationDelivery {
         }
     }
 
-    private void prepareStopPlaces(ExportParams exportParams, Set<Long> stopPlacePrimaryIds, AtomicInteger mappedStopPlaceCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
+    private void prepareStopPlaces(ExportParams exportParams, PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedStopPlaceCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
         // Override lists with custom iterator to be able to scroll database results on the fly.
         if (!stopPlacePrimaryIds.isEmpty()) {
             logger.info("There are stop places to export");
@@ -367,7 +375,7 @@ public class StreamingPublicationDelivery {
 
             // Use Listening iterator to collect stop place IDs.
             ParentStopFetchingIterator parentStopFetchingIterator = new ParentStopFetchingIterator(stopPlaceIterator, stopPlaceRepository);
-            NetexMappingIterator<org.rutebanken.tiamat.model.StopPlace, StopPlace> netexMappingIterator = new NetexMappingIterator<>(netexMapper, parentStopFetchingIterator, StopPlace.class, mappedStopPlaceCount, evicter);
+            Iterator<StopPlace> netexMappingIterator = netexMappingExecutor.mappingIterator(parentStopFetchingIterator, StopPlace.class, mappedStopPlaceCount, evicter);
 
             List<StopPlace> stopPlaces = new NetexMappingIteratorList<>(() -> new NetexReferenceRemovingIterator(netexMappingIterator, exportParams));
             setField(StopPlacesInFrame_RelStructure.class, "stopPlace", stopPlacesInFrame_relStructure, stopPlaces);
@@ -377,7 +385,7 @@ public class StreamingPublicationDelivery {
         }
     }
 
-    private void prepareScheduledStopPoints(Set<Long> stopPlacePrimaryIds, org.rutebanken.netex.model.ServiceFrame netexServiceFrame) {
+    private void prepareScheduledStopPoints(PrimaryIds stopPlacePrimaryIds, org.rutebanken.netex.model.ServiceFrame netexServiceFrame) {
         if (!stopPlacePrimaryIds.isEmpty()) {
             logger.info("There are stop places to export");
 
@@ -490,7 +498,7 @@ public class StreamingPublicationDelivery {
         return netexScheduledStopPoint;
     }
 
-    private void prepareTopographicPlaces(ExportParams exportParams, Set<Long> stopPlacePrimaryIds, AtomicInteger mappedTopographicPlacesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
+    private void prepareTopographicPlaces(ExportParams exportParams, PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedTopographicPlacesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
 
         Iterator<TopographicPlace> relevantTopographicPlacesIterator;
 
@@ -521,7 +529,7 @@ public class StreamingPublicationDelivery {
         }
     }
 
-    private void prepareGroupOfStopPlaces(ExportParams exportParams, Set<Long> stopPlacePrimaryIds, AtomicInteger mappedGroupOfStopPlacesCount, SiteFrame netexSiteFrame, org.rutebanken.netex.model.ResourceFrame netexResourceFrame, EntitiesEvictor evicter) {
+    private void prepareGroupOfStopPlaces(ExportParams exportParams, PrimaryIds stopPlacePrimaryIds, AtomicInteger mappedGroupOfStopPlacesCount, SiteFrame netexSiteFrame, org.rutebanken.netex.model.ResourceFrame netexResourceFrame, EntitiesEvictor evicter) {
 
         Iterator<GroupOfStopPlaces> groupOfStopPlacesIterator;
 
@@ -568,7 +576,7 @@ public class StreamingPublicationDelivery {
         }
     }
 
-    private void prepareGroupOfTariffZones(ExportParams exportParams, Set<Long> stopPlaceIds, AtomicInteger mappedGroupOfTariffZonesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
+    private void prepareGroupOfTariffZones(ExportParams exportParams, PrimaryIds stopPlaceIds, AtomicInteger mappedGroupOfTariffZonesCount, SiteFrame netexSiteFrame, EntitiesEvictor evicter) {
         Iterator<GroupOfTariffZones> groupOfTariffZonesIterator;
         if (exportParams.getGroupOfTariffZonesExportMode() == null || exportParams.getGroupOfTariffZonesExportMode().equals(ExportParams.ExportMode.ALL)) {
             logger.info("Prepare scrolling for all group of tariff zones");
@@ -598,7 +606,7 @@ public class StreamingPublicationDelivery {
     private EntitiesEvictor instantiateEvictor() {
         if (entityManager != null) {
             SessionImpl currentSession = entityManager.unwrap(SessionImpl.class);
-            return new SessionEntitiesEvictor(currentSession);
+            return loadedEntitiesListener.startTracking(currentSession);
         } else {
             return new EntitiesEvictor() {
                 @Override
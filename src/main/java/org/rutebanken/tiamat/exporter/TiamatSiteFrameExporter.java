@@ -25,6 +25,7 @@ import org.rutebanken.tiamat.model.TariffZonesInFrame_RelStructure;
 import org.rutebanken.tiamat.model.VersionFrameDefaultsStructure;
 import org.rutebanken.tiamat.netex.id.NetexIdHelper;
 import org.rutebanken.tiamat.repository.PathLinkRepository;
+import org.rutebanken.tiamat.repository.PrimaryIds;
 import org.rutebanken.tiamat.repository.TariffZoneRepository;
 import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
 import org.rutebanken.tiamat.time.ExportTimeZone;
@@ -35,7 +36,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.Set;
 
 @Service
 public class TiamatSiteFrameExporter {
@@ -108,7 +108,7 @@ public class TiamatSiteFrameExporter {
         }
     }
 
-    public void addRelevantPathLinks(Set<Long> stopPlaceIds, SiteFrame siteFrame) {
+    public void addRelevantPathLinks(PrimaryIds stopPlaceIds, SiteFrame siteFrame) {
         List<org.rutebanken.tiamat.model.PathLink> pathLinks = pathLinkRepository.findByStopPlaceIds(stopPlaceIds);
         if (!pathLinks.isEmpty()) {
             logger.info("Adding {} path links", pathLinks);
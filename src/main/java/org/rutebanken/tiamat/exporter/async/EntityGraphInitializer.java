@@ -0,0 +1,175 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.ManyToMany;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Transient;
+import org.hibernate.Hibernate;
+import org.rutebanken.tiamat.model.EntityStructure;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Initializes the parts of an entity that are mapped to netex, so that it can be detached from the session
+ * and mapped to netex in a different thread.
+ *
+ * Only the aggregate owned by the entity is traversed: embeddables, element collections and associations cascading all
+ * operations, like quays, key values and accessibility assessments. Other associations, like the topographic place,
+ * are initialized themselves, as the mapper reads their netex id and version, but their own associations are not loaded.
+ * Associations to entities of the same type as the root, like children of a parent stop place, are skipped.
+ * They are separate roots of the export.
+ */
+public final class EntityGraphInitializer {
+
+    private static final String MODEL_PACKAGE = EntityStructure.class.getPackageName();
+
+    private static final Map<Class<?>, List<FieldInitialization>> fieldsByClass = new ConcurrentHashMap<>();
+
+    private EntityGraphInitializer() {
+    }
+
+    public static void initialize(Object entity) {
+        if (entity == null) {
+            return;
+        }
+        Object root = Hibernate.unproxy(entity);
+        initialize(root, root.getClass(), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static void initialize(Object object, Class<?> rootClass, Set<Object> visited) {
+        if (object == null) {
+            return;
+        }
+
+        if (!Hibernate.isInitialized(object)) {
+            Hibernate.initialize(object);
+        }
+
+        if (object instanceof Collection<?> collection) {
+            for (Object element : collection) {
+                initialize(element, rootClass, visited);
+            }
+            return;
+        }
+
+        if (object instanceof Map<?, ?> map) {
+            for (Object value : map.values()) {
+                initialize(value, rootClass, visited);
+            }
+            return;
+        }
+
+        Object target = Hibernate.unproxy(object);
+        if (!isModelClass(target.getClass()) || !visited.add(target)) {
+            return;
+        }
+
+        for (FieldInitialization fieldInitialization : fieldsOf(target.getClass())) {
+            Object value;
+            try {
+                value = fieldInitialization.field().get(target);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Cannot read field " + fieldInitialization.field().getName() + " of " + target.getClass(), e);
+            }
+            if (value == null || fieldInitialization.isOfType(rootClass)) {
+                continue;
+            }
+            if (fieldInitialization.owned()) {
+                initialize(value, rootClass, visited);
+            } else if (!Hibernate.isInitialized(value)) {
+                Hibernate.initialize(value);
+            }
+        }
+    }
+
+    private static boolean isModelClass(Class<?> clazz) {
+        return !clazz.isEnum() && clazz.getPackageName().startsWith(MODEL_PACKAGE);
+    }
+
+    private static List<FieldInitialization> fieldsOf(Class<?> clazz) {
+        return fieldsByClass.computeIfAbsent(clazz, key -> {
+            List<FieldInitialization> fields = new ArrayList<>();
+            for (Class<?> current = key; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive() || field.isAnnotationPresent(Transient.class)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(new FieldInitialization(field, isOwned(field), valueType(field)));
+                }
+            }
+            return fields;
+        });
+    }
+
+    /**
+     * Fields that are not associations are embeddables, element collections or basic values, and belong to the entity.
+     * Associations belong to the entity only if all operations are cascaded to them.
+     */
+    private static boolean isOwned(Field field) {
+        CascadeType[] cascade;
+        if (field.isAnnotationPresent(OneToMany.class)) {
+            cascade = field.getAnnotation(OneToMany.class).cascade();
+        } else if (field.isAnnotationPresent(OneToOne.class)) {
+            cascade = field.getAnnotation(OneToOne.class).cascade();
+        } else if (field.isAnnotationPresent(ManyToMany.class)) {
+            cascade = field.getAnnotation(ManyToMany.class).cascade();
+        } else if (field.isAnnotationPresent(ManyToOne.class)) {
+            cascade = field.getAnnotation(ManyToOne.class).cascade();
+        } else {
+            return true;
+        }
+        return Arrays.asList(cascade).contains(CascadeType.ALL);
+    }
+
+    /**
+     * The type of the field, or the element type of collection and map fields.
+     */
+    private static Class<?> valueType(Field field) {
+        Type genericType = field.getGenericType();
+        if ((Collection.class.isAssignableFrom(field.getType()) || Map.class.isAssignableFrom(field.getType()))
+                && genericType instanceof ParameterizedType parameterizedType) {
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (arguments[arguments.length - 1] instanceof Class<?> elementType) {
+                return elementType;
+            }
+        }
+        return field.getType();
+    }
+
+    private record FieldInitialization(Field field, boolean owned, Class<?> valueType) {
+
+        boolean isOfType(Class<?> rootClass) {
+            return valueType != Object.class && rootClass.isAssignableFrom(valueType);
+        }
+    }
+}
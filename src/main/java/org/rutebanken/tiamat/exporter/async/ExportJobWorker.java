@@ -16,10 +16,12 @@
 package org.rutebanken.tiamat.exporter.async;
 
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.xml.bind.JAXBException;
 import org.rutebanken.tiamat.exporter.StreamingPublicationDelivery;
 import org.rutebanken.tiamat.model.job.ExportJob;
 import org.rutebanken.tiamat.model.job.JobStatus;
+import org.rutebanken.tiamat.netex.validation.NetexReferenceValidatorException;
 import org.rutebanken.tiamat.netex.validation.NetexXmlReferenceValidator;
 import org.rutebanken.tiamat.repository.ExportJobRepository;
 import org.rutebanken.tiamat.service.BlobStoreService;
@@ -28,16 +30,30 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
 import javax.xml.stream.XMLStreamException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Export a publication delivery in one pass.
+ * The XML is written into a zip stream that is uploaded to the blob store while it is written.
+ * The same XML is validated for references at the same time, by another thread.
+ * <p>
+ * The zip file is uploaded under a temporary name and copied to the file name of the export job when the references are valid.
+ * If the blob store cannot copy within the store, the zip file is uploaded straight to the file name of the export job instead,
+ * so that it is not transferred twice. The file is not downloaded before the job has finished in either case.
+ * If the validation or the upload fails, the upload is stopped and the uploaded blob is deleted.
+ */
 public class ExportJobWorker implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(ExportJobWorker.class);
@@ -46,9 +62,23 @@ public class ExportJobWorker implements Runnable {
      * Ignore paging for async export, to not let the default value interfer.
      */
     public static final boolean IGNORE_PAGING = true;
+
+    /**
+     * Bytes buffered between the exporting thread and the upload and validation threads.
+     */
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final String TEMPORARY_SUFFIX = ".part";
+
+    private static final ExecutorService pipelineService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("export-pipeline-%d")
+            .setDaemon(true)
+            .build());
+
     private final ExportJob exportJob;
     private final StreamingPublicationDelivery streamingPublicationDelivery;
-    private final String localExportPath;
     private final String fileNameWithoutExtension;
     private final BlobStoreService blobStoreService;
     private final ExportJobRepository exportJobRepository;
@@ -56,14 +86,12 @@ public class ExportJobWorker implements Runnable {
 
     public ExportJobWorker(ExportJob exportJob,
                            StreamingPublicationDelivery streamingPublicationDelivery,
-                           String localExportPath,
                            String fileNameWithoutExtension,
                            BlobStoreService blobStoreService,
                            ExportJobRepository exportJobRepository,
                            NetexXmlReferenceValidator netexXmlReferenceValidator) {
         this.exportJob = exportJob;
         this.streamingPublicationDelivery = streamingPublicationDelivery;
-        this.localExportPath = localExportPath;
         this.fileNameWithoutExtension = fileNameWithoutExtension;
         this.blobStoreService = blobStoreService;
         this.exportJobRepository = exportJobRepository;
@@ -73,19 +101,9 @@ public class ExportJobWorker implements Runnable {
 
     public void run() {
         logger.info("Started export job: {}", exportJob);
-        final File localExportZipFile = new File(localExportPath + File.separator + exportJob.getFileName());
-        File localExportXmlFile = new File(localExportPath + File.separator + fileNameWithoutExtension + ".xml");
         try {
 
-            exportToLocalXmlFile(localExportXmlFile);
-
-            netexXmlReferenceValidator.validateNetexReferences(localExportXmlFile);
-
-            localExportZipFile.createNewFile();
-
-            exportToLocalZipFile(localExportZipFile, localExportXmlFile);
-
-            uploadToGcp(localExportZipFile);
+            exportAndUpload();
 
             exportJob.setStatus(JobStatus.FINISHED);
             exportJob.setFinished(Instant.now());
@@ -102,43 +120,164 @@ public class ExportJobWorker implements Runnable {
             }
         } finally {
             exportJobRepository.save(exportJob);
-            logger.info("Removing local files: {},{}", localExportZipFile, localExportXmlFile);
-            localExportZipFile.delete();
-            localExportXmlFile.delete();
         }
     }
 
-    private void exportToLocalXmlFile(File localExportXmlFile) throws InterruptedException, IOException, XMLStreamException, SAXException, JAXBException {
-        logger.info("Start streaming publication delivery to local file {}", localExportXmlFile);
-        FileOutputStream fileOutputStream = new FileOutputStream(localExportXmlFile);
-        streamingPublicationDelivery.stream(exportJob.getExportParams(), fileOutputStream, IGNORE_PAGING);
-    }
-
-    private void uploadToGcp(File localExportFile) throws FileNotFoundException {
-        logger.info("Uploading to gcp: {} in folder: {}", exportJob.getFileName(), exportJob.getSubFolder());
-        FileInputStream fileInputStream = new FileInputStream(localExportFile);
-        blobStoreService.upload(exportJob.getSubFolder() + "/" + exportJob.getFileName(), fileInputStream);
-    }
+    private void exportAndUpload() throws Exception {
+        String xmlFileName = fileNameWithoutExtension + ".xml";
+        String fileName = exportJob.getSubFolder() + "/" + exportJob.getFileName();
+        String uploadFileName = blobStoreService.hasNativeCopy() ? fileName + TEMPORARY_SUFFIX : fileName;
 
-    private void exportToLocalZipFile(File localZipFile, File localExportZipFile) throws IOException, InterruptedException, JAXBException, XMLStreamException, SAXException {
-        logger.info("Adding {} to zip file: {}", localExportZipFile, localZipFile);
+        PipedInputStream uploadInputStream = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream uploadOutputStream = new PipedOutputStream(uploadInputStream);
+        PipedInputStream validationInputStream = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream validationOutputStream = new PipedOutputStream(validationInputStream);
 
-        final FileOutputStream fileOutputStream = new FileOutputStream(localZipFile);
-        final ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream);
+        Future<?> upload = pipelineService.submit(() -> upload(uploadInputStream, uploadFileName));
+        Future<?> validation = pipelineService.submit(() -> validate(validationInputStream, xmlFileName));
 
         try {
-            zipOutputStream.putNextEntry(new ZipEntry(fileNameWithoutExtension + ".xml"));
+            ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(uploadOutputStream, ZIP_BUFFER_SIZE));
+            zipOutputStream.putNextEntry(new ZipEntry(xmlFileName));
+
+            logger.info("Start streaming publication delivery to {} in folder {}", exportJob.getFileName(), exportJob.getSubFolder());
+            exportToStreams(new TeeOutputStream(zipOutputStream, validationOutputStream));
+            validationOutputStream.close();
+
+            // Wait for the validation before completing the zip file
+            validation.get();
 
-            InputStream fileInputStream = new FileInputStream(localExportZipFile);
-            ByteStreams.copy(fileInputStream, zipOutputStream);
             zipOutputStream.closeEntry();
-            logger.info("Written to disk {}", localZipFile);
+            zipOutputStream.close();
+            upload.get();
+        } catch (Exception e) {
+            validation.cancel(true);
+            stopUpload(uploadOutputStream, upload);
+            Exception cause = rootCause(e, upload, validation);
+            deleteUploadedBlob(uploadFileName, cause);
+            throw cause;
+        }
+
+        if (uploadFileName.equals(fileName)) {
+            logger.info("Export is valid. Uploaded to {}", fileName);
+            return;
+        }
+        try {
+            logger.info("Export is valid. Copying {} to {}", uploadFileName, fileName);
+            blobStoreService.copy(uploadFileName, fileName);
         } finally {
-            try {
-                zipOutputStream.close();
-            } catch (IOException e) {
-                logger.error(String.format("Could not close zipoutput stream for file: %s", localZipFile), e);
+            deleteUploadedBlob(uploadFileName, null);
+        }
+    }
+
+    /**
+     * Close the pipe without completing the zip file, and wait for the upload to end.
+     * Then nothing is written to the uploaded blob after it has been deleted.
+     */
+    private void stopUpload(OutputStream uploadOutputStream, Future<?> upload) throws InterruptedException {
+        try {
+            uploadOutputStream.close();
+        } catch (IOException e) {
+            logger.debug("Could not close upload stream", e);
+        }
+        try {
+            upload.get();
+        } catch (ExecutionException e) {
+            logger.debug("Upload stopped", e.getCause());
+        }
+    }
+
+    private void deleteUploadedBlob(String uploadFileName, Exception cause) {
+        try {
+            blobStoreService.delete(uploadFileName);
+        } catch (RuntimeException e) {
+            logger.warn("Could not delete uploaded blob {}", uploadFileName, e);
+            if (cause != null) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private void exportToStreams(OutputStream outputStream) throws InterruptedException, IOException, XMLStreamException, SAXException, JAXBException {
+        streamingPublicationDelivery.stream(exportJob.getExportParams(), outputStream, IGNORE_PAGING);
+        outputStream.flush();
+    }
+
+    private Void upload(InputStream inputStream, String uploadFileName) throws IOException {
+        try (inputStream) {
+            logger.info("Uploading to blob store: {}", uploadFileName);
+            blobStoreService.upload(uploadFileName, inputStream);
+        }
+        return null;
+    }
+
+    private Void validate(InputStream inputStream, String xmlFileName) throws IOException, NetexReferenceValidatorException {
+        try (inputStream) {
+            netexXmlReferenceValidator.validateNetexReferences(inputStream, xmlFileName);
+            // Consume what is left after the end of the document, so that the exporting thread is never blocked
+            ByteStreams.exhaust(inputStream);
+        }
+        return null;
+    }
+
+    /**
+     * When one of the threads fails, the others fail because the pipes are closed.
+     * Report the failure that caused it.
+     */
+    private static Exception rootCause(Exception e, Future<?>... pipelineTasks) {
+        for (Future<?> task : pipelineTasks) {
+            if (task.isDone() && !task.isCancelled()) {
+                try {
+                    task.get();
+                } catch (ExecutionException executionException) {
+                    if (executionException.getCause() instanceof Exception cause) {
+                        if (cause != e) {
+                            cause.addSuppressed(e);
+                        }
+                        return cause;
+                    }
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
+        return e;
+    }
+
+    /**
+     * Write the same bytes to two streams. Closing it does not close the streams.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
+import org.rutebanken.tiamat.model.EntityStructure;
+import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.netex.mapping.mapper.TagKeyValuesMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates iterators mapping scrolled entities to netex.
+ * With parallelism above one, mapping is done by a shared pool of worker threads.
+ * Otherwise, entities are mapped one at a time in the marshalling thread.
+ */
+@Component
+public class NetexMappingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(NetexMappingExecutor.class);
+
+    private final NetexMapper netexMapper;
+    private final TagKeyValuesMapper tagKeyValuesMapper;
+    private final int parallelism;
+    private final int batchSize;
+    private final int queueDepth;
+    private final ExecutorService executorService;
+
+    @Autowired
+    public NetexMappingExecutor(NetexMapper netexMapper,
+                                TagKeyValuesMapper tagKeyValuesMapper,
+                                @Value("${asyncNetexExport.mapping.parallelism:1}") int parallelism,
+                                @Value("${asyncNetexExport.mapping.batchSize:100}") int batchSize,
+                                @Value("${asyncNetexExport.mapping.queueDepth:4}") int queueDepth) {
+        this.netexMapper = netexMapper;
+        this.tagKeyValuesMapper = tagKeyValuesMapper;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+
+        if (parallelism > 1) {
+            executorService = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("netex-mapper-%d")
+                    .setDaemon(true)
+                    .build());
+            logger.info("Mapping to netex with parallelism {}, batch size {} and queue depth {}", parallelism, batchSize, queueDepth);
+        } else {
+            executorService = null;
+            logger.info("Mapping to netex in the marshalling thread");
+        }
+    }
+
+    public <T extends EntityStructure, N extends org.rutebanken.netex.model.EntityStructure> Iterator<N> mappingIterator(Iterator<T> iterator, Class<N> netexClass,
+                                                                                                                     AtomicInteger mappedCount, EntitiesEvictor entitiesEvictor) {
+        if (executorService == null) {
+            return new NetexMappingIterator<>(netexMapper, iterator, netexClass, mappedCount, entitiesEvictor);
+        }
+        return new ParallelNetexMappingIterator<>(netexMapper, tagKeyValuesMapper, iterator, netexClass, mappedCount, entitiesEvictor, executorService, batchSize, queueDepth);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
+import org.rutebanken.tiamat.model.EntityStructure;
+import org.rutebanken.tiamat.model.tag.Tag;
+import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.netex.mapping.mapper.TagKeyValuesMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps entities to netex in parallel, while returning them in the same order as the source iterator.
+ *
+ * Scrolling must happen in the thread owning the hibernate session. Therefore, batches are read from the source iterator
+ * in the calling thread, initialized and evicted from the session, before being mapped by the executor service.
+ * Tags of the batch are loaded in the calling thread as well, so that workers do not use the database outside
+ * the export transaction. The number of batches read ahead is bounded by the queue depth.
+ */
+public class ParallelNetexMappingIterator<T extends EntityStructure, N extends org.rutebanken.netex.model.EntityStructure> implements Iterator<N> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelNetexMappingIterator.class);
+
+    private final Iterator<T> iterator;
+    private final NetexMapper netexMapper;
+    private final TagKeyValuesMapper tagKeyValuesMapper;
+    private final Class<N> netexClass;
+    private final AtomicInteger mappedCount;
+    private final EntitiesEvictor entitiesEvictor;
+    private final ExecutorService executorService;
+    private final int batchSize;
+    private final int queueDepth;
+    private final long startTime = System.currentTimeMillis();
+
+    private final Deque<Future<List<N>>> pendingBatches = new ArrayDeque<>();
+    private Iterator<N> currentBatch = Collections.emptyIterator();
+
+    private long iteratorNextDuration;
+    private long iteratorWaitDuration;
+
+    public ParallelNetexMappingIterator(NetexMapper netexMapper, TagKeyValuesMapper tagKeyValuesMapper, Iterator<T> iterator, Class<N> netexClass, AtomicInteger mappedCount,
+                                        EntitiesEvictor entitiesEvictor, ExecutorService executorService, int batchSize, int queueDepth) {
+        this.iterator = iterator;
+        this.netexMapper = netexMapper;
+        this.tagKeyValuesMapper = tagKeyValuesMapper;
+        this.netexClass = netexClass;
+        this.mappedCount = mappedCount;
+        this.entitiesEvictor = entitiesEvictor;
+        this.executorService = executorService;
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+
+        if (entitiesEvictor == null) {
+            throw new IllegalArgumentException("entitiesEvictor cannot be null");
+        }
+        if (batchSize < 1 || queueDepth < 1) {
+            throw new IllegalArgumentException("batchSize and queueDepth must be positive. Was: " + batchSize + ", " + queueDepth);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return advance();
+    }
+
+    @Override
+    public N next() {
+        if (!advance()) {
+            throw new NoSuchElementException();
+        }
+        N mapped = currentBatch.next();
+        mappedCount.incrementAndGet();
+        logStatus();
+        return mapped;
+    }
+
+    private boolean advance() {
+        while (!currentBatch.hasNext()) {
+            submitBatches();
+            if (pendingBatches.isEmpty()) {
+                return false;
+            }
+            currentBatch = await(pendingBatches.poll()).iterator();
+        }
+        return true;
+    }
+
+    private void submitBatches() {
+        while (pendingBatches.size() < queueDepth && iterator.hasNext()) {
+            List<T> batch = readBatch();
+            Map<String, Set<Tag>> tags = tagKeyValuesMapper.findTagsByIdReferences(batch.stream().map(EntityStructure::getNetexId).toList());
+            // Evict after the whole batch is initialized, as parents fetched during iteration can be part of the batch
+            batch.forEach(entitiesEvictor::evictKnownEntitiesFromSession);
+            pendingBatches.add(executorService.submit(() -> tagKeyValuesMapper.withPreloadedTags(tags, () -> mapBatch(batch))));
+        }
+    }
+
+    private List<T> readBatch() {
+        var startTimeNext = System.currentTimeMillis();
+        List<T> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext()) {
+            T next = iterator.next();
+            EntityGraphInitializer.initialize(next);
+            batch.add(next);
+        }
+        iteratorNextDuration += System.currentTimeMillis() - startTimeNext;
+        return batch;
+    }
+
+    private List<N> mapBatch(List<T> batch) {
+        List<N> mapped = new ArrayList<>(batch.size());
+        for (T entity : batch) {
+            mapped.add(netexMapper.getFacade().map(entity, netexClass));
+        }
+        return mapped;
+    }
+
+    private List<N> await(Future<List<N>> future) {
+        var startTimeWait = System.currentTimeMillis();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for mapped " + netexClass.getSimpleName() + "s", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not map " + netexClass.getSimpleName() + "s", e.getCause());
+        } finally {
+            iteratorWaitDuration += System.currentTimeMillis() - startTimeWait;
+        }
+    }
+
+    private void logStatus() {
+        if (mappedCount.get() % 1000 == 0 && logger.isInfoEnabled()) {
+            String entityPerSecond = "NA";
+            int count = mappedCount.get();
+
+            long duration = System.currentTimeMillis() - startTime;
+            if (duration >= 1000) {
+                entityPerSecond = String.valueOf(count / (duration / 1000f));
+            }
+            logger.info("{} {}s marshalled. {} per second", count, netexClass.getSimpleName(), entityPerSecond);
+
+            logger.info("iteratorNextDuration {}, waitForMappedDuration {}", iteratorNextDuration, iteratorWaitDuration);
+        }
+    }
+}
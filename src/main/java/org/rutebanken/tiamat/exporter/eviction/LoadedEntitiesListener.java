@@ -0,0 +1,91 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.eviction;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionEventListener;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.internal.SessionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hibernate post load listener that forwards loaded entities to the {@link TrackingEntitiesEvictor} registered for the session.
+ * Sessions without a registered evictor are ignored, so the listener adds nothing but a map lookup to normal requests.
+ */
+@Component
+public class LoadedEntitiesListener implements PostLoadEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadedEntitiesListener.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final Map<Object, TrackingEntitiesEvictor> evictorsBySession = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LoadedEntitiesListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void register() {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        sessionFactory.getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_LOAD, this);
+        logger.info("Registered post load listener for tracking entities loaded during export");
+    }
+
+    /**
+     * Start tracking entities loaded in the given session. Tracking stops when the session ends.
+     * If the session is already tracked, the existing evictor is returned.
+     */
+    public TrackingEntitiesEvictor startTracking(SessionImpl session) {
+        return evictorsBySession.computeIfAbsent(session, key -> {
+            session.addEventListeners(new SessionEventListener() {
+                @Override
+                public void end() {
+                    TrackingEntitiesEvictor removed = evictorsBySession.remove(session);
+                    if (removed != null) {
+                        removed.logStatus();
+                    }
+                }
+            });
+            return new TrackingEntitiesEvictor(session);
+        });
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        if (evictorsBySession.isEmpty()) {
+            return;
+        }
+        TrackingEntitiesEvictor evictor = evictorsBySession.get(event.getSession());
+        if (evictor != null) {
+            evictor.track(event.getEntity());
+        }
+    }
+}
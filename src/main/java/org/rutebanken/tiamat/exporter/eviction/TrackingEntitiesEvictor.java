@@ -0,0 +1,113 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.eviction;
+
+import org.hibernate.internal.SessionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evicts exactly the entities loaded since the previous eviction, instead of scanning the whole persistence context.
+ * Loaded entities are reported by {@link LoadedEntitiesListener}, so the cost of each eviction is proportional
+ * to the size of the scrolled root (quays, tags, key values, accessibility assessments), not the size of the session.
+ *
+ * Entities of the same type as the evicted root are kept for a few more rounds.
+ * Iterators like {@link org.rutebanken.tiamat.exporter.async.ParentStopFetchingIterator} load parents while handling
+ * a child, and return the parent as the next root. Evicting it early would break lazy loading when mapping the parent.
+ */
+public class TrackingEntitiesEvictor implements EntitiesEvictor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingEntitiesEvictor.class);
+
+    /**
+     * Number of evictions an entity of the same type as the root is kept in session before being evicted.
+     */
+    static final int PENDING_ROOT_MAX_ROUNDS = 10;
+
+    private final SessionImpl session;
+
+    private final List<Object> loadedSinceLastEviction = new ArrayList<>();
+    private final Map<Object, Integer> pendingRoots = new IdentityHashMap<>();
+
+    private int calledCount;
+    private int evictCalledCount;
+
+    TrackingEntitiesEvictor(SessionImpl session) {
+        this.session = session;
+    }
+
+    void track(Object entity) {
+        loadedSinceLastEviction.add(entity);
+    }
+
+    @Override
+    public void evictKnownEntitiesFromSession(Object entity) {
+        calledCount++;
+        try {
+            if (entity != null) {
+                pendingRoots.remove(entity);
+            }
+            for (Object loaded : loadedSinceLastEviction) {
+                if (loaded == entity) {
+                    continue;
+                }
+                if (entity != null && loaded.getClass() == entity.getClass()) {
+                    pendingRoots.putIfAbsent(loaded, calledCount);
+                } else {
+                    evictIfContained(loaded);
+                }
+            }
+            evictExpiredPendingRoots();
+        } catch (Exception e) {
+            logger.warn("Error evicting {} entities loaded for {}", loadedSinceLastEviction.size(), entity, e);
+        } finally {
+            loadedSinceLastEviction.clear();
+        }
+        evictIfContained(entity);
+
+        if (calledCount % 1000 == 0) {
+            logStatus();
+        }
+    }
+
+    void logStatus() {
+        logger.info("Status: called count: {}. Evict called count: {}. Pending roots: {}. {}", calledCount, evictCalledCount, pendingRoots.size(), session.getStatistics());
+    }
+
+    private void evictExpiredPendingRoots() {
+        Iterator<Map.Entry<Object, Integer>> iterator = pendingRoots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, Integer> pending = iterator.next();
+            if (calledCount - pending.getValue() >= PENDING_ROOT_MAX_ROUNDS) {
+                iterator.remove();
+                evictIfContained(pending.getKey());
+            }
+        }
+    }
+
+    private void evictIfContained(Object objectToEvict) {
+        if (objectToEvict != null && session.contains(objectToEvict)) {
+            session.evict(objectToEvict);
+            evictCalledCount++;
+        }
+    }
+}
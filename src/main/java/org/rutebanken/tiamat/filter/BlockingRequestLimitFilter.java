@@ -0,0 +1,73 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.filter;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.rutebanken.tiamat.general.BlockingWorkLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Requests take a permit from the {@link BlockingWorkLimiter} when handled on virtual threads.
+ * If no permit is available within the timeout, the request is rejected with 503 Service Unavailable,
+ * instead of waiting for a database connection that might not be available either.
+ */
+@Component
+public class BlockingRequestLimitFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockingRequestLimitFilter.class);
+
+    private final BlockingWorkLimiter blockingWorkLimiter;
+
+    @Autowired
+    public BlockingRequestLimitFilter(BlockingWorkLimiter blockingWorkLimiter) {
+        this.blockingWorkLimiter = blockingWorkLimiter;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+
+        boolean acquired;
+        try {
+            acquired = blockingWorkLimiter.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for permit", e);
+        }
+
+        if (!acquired) {
+            logger.warn("Rejecting request {}. No permit available", ((HttpServletRequest) servletRequest).getRequestURI());
+            ((HttpServletResponse) servletResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent requests");
+            return;
+        }
+
+        try {
+            filterChain.doFilter(servletRequest, servletResponse);
+        } finally {
+            blockingWorkLimiter.release();
+        }
+    }
+}
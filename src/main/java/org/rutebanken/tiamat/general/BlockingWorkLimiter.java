@@ -0,0 +1,105 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.general;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds blocking work when running on virtual threads.
+ * <p>
+ * With platform threads, the Jetty thread pool limits how many requests wait for database connections and Hazelcast locks
+ * at the same time. Virtual threads are not limited. Instead, each request takes a permit before doing blocking work.
+ * By default, there is a permit per database connection of the pool, except {@link #RESERVED_CONNECTIONS} connections
+ * left for export and background jobs, so that requests wait for a permit rather than for a connection.
+ * <p>
+ * Export and background jobs take no permits. They are still limited by the fixed number of threads of their executors,
+ * which are virtual threads when enabled.
+ * <p>
+ * Without virtual threads, no permits are taken, and executors use platform threads.
+ */
+@Component
+public class BlockingWorkLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockingWorkLimiter.class);
+
+    /**
+     * Connections not given to requests by default: three concurrent exports and three background job threads.
+     */
+    public static final int RESERVED_CONNECTIONS = 6;
+
+    private final boolean virtualThreads;
+
+    private final Semaphore permits;
+
+    private final long permitTimeoutMillis;
+
+    /**
+     * @param permits number of permits, or zero to have one per database connection except the reserved connections
+     */
+    @Autowired
+    public BlockingWorkLimiter(@Value("${tiamat.virtual.threads.enabled:false}") boolean virtualThreads,
+                               @Value("${tiamat.virtual.threads.permits:0}") int permits,
+                               @Value("${spring.datasource.hikari.maximumPoolSize:10}") int maximumPoolSize,
+                               @Value("${tiamat.virtual.threads.permit.timeout.millis:30000}") long permitTimeoutMillis) {
+        this(virtualThreads, permits > 0 ? permits : Math.max(1, maximumPoolSize - RESERVED_CONNECTIONS), permitTimeoutMillis);
+    }
+
+    public BlockingWorkLimiter(boolean virtualThreads, int permits, long permitTimeoutMillis) {
+        this.virtualThreads = virtualThreads;
+        this.permits = new Semaphore(permits, true);
+        this.permitTimeoutMillis = permitTimeoutMillis;
+
+        if (virtualThreads) {
+            logger.info("Running requests on virtual threads with {} permits", permits);
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Threads for executors of blocking tasks. Virtual if enabled, otherwise platform threads.
+     * The executor should have a fixed number of threads, as its tasks take no permits.
+     */
+    public ThreadFactory threadFactory(String name) {
+        return virtualThreads ? Thread.ofVirtual().name(name + "-", 1).factory() : Thread.ofPlatform().name(name + "-", 1).factory();
+    }
+
+    /**
+     * Wait for a permit, as long as the permit timeout.
+     * If true is returned, call {@link #release()} when done.
+     *
+     * @return false if no permit was available within the timeout
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        return !virtualThreads || permits.tryAcquire(permitTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void release() {
+        if (virtualThreads) {
+            permits.release();
+        }
+    }
+}
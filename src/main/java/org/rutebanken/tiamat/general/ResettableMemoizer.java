@@ -15,46 +15,182 @@
 
 package org.rutebanken.tiamat.general;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+/**
+ * Memoizes the value of a supplier until reset.
+ * Reading a loaded value only reads a volatile snapshot. Locking only happens when the value must be loaded.
+ * <p>
+ * {@link #reset()} discards the value, so that the next call to {@link #get()} loads it again.
+ * {@link #refresh()} loads a new value in the background, while the previous value is still served.
+ * {@link #refreshAfterCommit()} refreshes once the current transaction commits. Until then, the transaction
+ * sees a value of its own, loaded on its first call to {@link #get()}, while other threads see the previous value.
+ */
 public class ResettableMemoizer<T> {
 
+    private static final Logger logger = LoggerFactory.getLogger(ResettableMemoizer.class);
+
+    private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("memoizer-refresh-%d")
+            .setDaemon(true)
+            .build());
 
     private final Supplier<T> supplier;
+    private final Timer loadTimer;
+    private final Timer refreshTimer;
+    private final Executor executor;
 
-    private transient volatile boolean isEmpty = true;
+    /**
+     * Incremented on every reset. A value loaded before a reset is never stored.
+     */
+    private final AtomicLong generation = new AtomicLong();
 
-    private T value;
+    private volatile Snapshot<T> snapshot;
 
-    private final Lock lock = new ReentrantLock();
+    /**
+     * Number of transactions waiting for a refresh after commit.
+     * When zero, {@link #get()} does not look for a transaction local value.
+     */
+    private final AtomicInteger pendingTransactions = new AtomicInteger();
 
     public ResettableMemoizer(Supplier<T> supplier) {
+        this(supplier, null, null);
+    }
+
+    public ResettableMemoizer(Supplier<T> supplier, Timer loadTimer, Timer refreshTimer) {
+        this(supplier, loadTimer, refreshTimer, refreshExecutor);
+    }
+
+    ResettableMemoizer(Supplier<T> supplier, Timer loadTimer, Timer refreshTimer, Executor executor) {
         this.supplier = supplier;
+        this.loadTimer = loadTimer;
+        this.refreshTimer = refreshTimer;
+        this.executor = executor;
     }
 
     public T get() {
-        lock.lock();
-        try {
-            if(isEmpty) {
-                value = supplier.get();
-                isEmpty = false;
+        if (pendingTransactions.get() > 0) {
+            TransactionLocalValue<T> transactionLocalValue = transactionLocalValue();
+            if (transactionLocalValue != null) {
+                return transactionLocalValue.get(() -> timed(loadTimer));
             }
-            return value;
+        }
+        Snapshot<T> current = snapshot;
+        if (current != null) {
+            return current.value();
+        }
+        return loadOnMiss();
+    }
+
+    private synchronized T loadOnMiss() {
+        Snapshot<T> current = snapshot;
+        if (current != null) {
+            return current.value();
+        }
 
-        } finally {
-            lock.unlock();
+        long loadGeneration = generation.get();
+        T value = timed(loadTimer);
+        if (loadGeneration == generation.get()) {
+            snapshot = new Snapshot<>(value);
         }
+        return value;
     }
 
     public void reset() {
-        lock.lock();
-        try {
-            value = null;
-            isEmpty = true;
-        } finally {
-            lock.unlock();
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * Load a new value in the background. Until it is loaded, the previous value is returned by {@link #get()}.
+     * The new value is discarded if the memoizer is reset while loading.
+     */
+    public CompletableFuture<Void> refresh() {
+        final long refreshGeneration = generation.get();
+        return CompletableFuture.runAsync(() -> {
+            T value = timed(refreshTimer);
+            synchronized (this) {
+                if (refreshGeneration == generation.get()) {
+                    snapshot = new Snapshot<>(value);
+                } else {
+                    logger.debug("Discarding refreshed value, as the memoizer was reset while refreshing");
+                }
+            }
+        }, executor).exceptionally(throwable -> {
+            logger.warn("Could not refresh memoized value. Keeping previous value.", throwable);
+            return null;
+        });
+    }
+
+    /**
+     * Refresh in the background once the current transaction is committed, so that the refreshed value sees the changes.
+     * Until then, {@link #get()} in the same transaction loads and returns a value of its own, which sees the uncommitted changes.
+     * Without a transaction, the value is reset and loaded again on the next call to {@link #get()}.
+     */
+    public void refreshAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive() || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            reset();
+            return;
+        }
+        if (transactionLocalValue() != null) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, new TransactionLocalValue<T>());
+        pendingTransactions.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                refresh();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ResettableMemoizer.this);
+                pendingTransactions.decrementAndGet();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransactionLocalValue<T> transactionLocalValue() {
+        return (TransactionLocalValue<T>) TransactionSynchronizationManager.getResource(this);
+    }
+
+    private T timed(Timer timer) {
+        if (timer == null) {
+            return supplier.get();
+        }
+        return timer.record(supplier);
+    }
+
+    private record Snapshot<T>(T value) {
+    }
+
+    /**
+     * Value seen by a transaction waiting for a refresh after commit. Only used by the thread of that transaction.
+     */
+    private static class TransactionLocalValue<T> {
+
+        private Snapshot<T> snapshot;
+
+        T get(Supplier<T> loader) {
+            if (snapshot == null) {
+                snapshot = new Snapshot<>(loader.get());
+            }
+            return snapshot.value();
         }
     }
 }
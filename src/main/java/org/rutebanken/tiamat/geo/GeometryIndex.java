@@ -0,0 +1,109 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.geo;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Immutable spatial index of prepared geometries with an associated value.
+ * Looking up the values covering a geometry only tests the candidates with intersecting envelopes.
+ * Values are returned in the order they were added to the builder.
+ */
+public final class GeometryIndex<T> {
+
+    private final STRtree tree;
+    private final int size;
+
+    private GeometryIndex(STRtree tree, int size) {
+        this.tree = tree;
+        this.size = size;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public static <T> GeometryIndex<T> empty() {
+        return new Builder<T>().build();
+    }
+
+    /**
+     * @return values whose geometry covers the given geometry, in insertion order
+     */
+    public List<T> findCovering(Geometry geometry) {
+        return findCovering(geometry, value -> true);
+    }
+
+    public List<T> findCovering(Geometry geometry, Predicate<T> filter) {
+        if (geometry == null || size == 0) {
+            return List.of();
+        }
+
+        List<Entry<T>> matches = new ArrayList<>();
+        tree.query(geometry.getEnvelopeInternal(), item -> {
+            @SuppressWarnings("unchecked")
+            Entry<T> entry = (Entry<T>) item;
+            if (filter.test(entry.value()) && entry.geometry().covers(geometry)) {
+                matches.add(entry);
+            }
+        });
+
+        if (matches.size() > 1) {
+            matches.sort(Comparator.comparingInt(Entry::order));
+        }
+        return matches.stream().map(Entry::value).toList();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private record Entry<T>(int order, PreparedGeometry geometry, T value) {
+    }
+
+    public static final class Builder<T> {
+
+        private final List<Entry<T>> entries = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder<T> add(Geometry geometry, T value) {
+            if (geometry != null && !geometry.isEmpty()) {
+                entries.add(new Entry<>(entries.size(), PreparedGeometryFactory.prepare(geometry), value));
+            }
+            return this;
+        }
+
+        public GeometryIndex<T> build() {
+            STRtree tree = new STRtree();
+            for (Entry<T> entry : entries) {
+                tree.insert(entry.geometry().getGeometry().getEnvelopeInternal(), entry);
+            }
+            // Building the tree makes it immutable and safe to query from several threads
+            tree.build();
+            return new GeometryIndex<>(tree, entries.size());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package org.rutebanken.tiamat.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.LocalMapStats;
+import com.hazelcast.nearcache.NearCacheStats;
+import jakarta.annotation.PostConstruct;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Expose hit ratios of the second level cache regions as gauges, from the local statistics of the Hazelcast maps.
+ * <p>
+ * The statistics of a map only cover the partitions owned by this node, including requests from other nodes.
+ * They are exposed as the owned partitions hit ratio. The near cache statistics cover the requests of this node,
+ * and are exposed as the hit ratio. Regions without a near cache have no hit ratio for the requests of this node.
+ */
+@Component
+public class SecondLevelCacheMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecondLevelCacheMetrics.class);
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final PrometheusMetricsService metricsService;
+
+    private final boolean secondLevelCacheEnabled;
+
+    @Autowired
+    public SecondLevelCacheMetrics(HazelcastInstance hazelcastInstance, PrometheusMetricsService metricsService,
+                                   @Value("${spring.jpa.properties.hibernate.cache.use_second_level_cache:false}") boolean secondLevelCacheEnabled) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.metricsService = metricsService;
+        this.secondLevelCacheEnabled = secondLevelCacheEnabled;
+    }
+
+    @PostConstruct
+    public void registerGauges() {
+        if (!secondLevelCacheEnabled) {
+            return;
+        }
+        for (SecondLevelCacheRegion region : SecondLevelCacheRegion.values()) {
+            if (region.isWildcard()) {
+                // One map per matching region. They are created when first used.
+                continue;
+            }
+            IMap<Object, Object> map = hazelcastInstance.getMap(region.getRegionName());
+            metricsService.registerOwnedPartitionsCacheHitRatio(region.getRegionName(), map, SecondLevelCacheMetrics::ownedPartitionsHitRatio);
+            if (region.hasNearCache()) {
+                metricsService.registerCacheHitRatio(region.getRegionName(), map, SecondLevelCacheMetrics::nearCacheHitRatio);
+            }
+        }
+        logger.info("Registered hit ratio gauges for second level cache regions");
+    }
+
+    static double ownedPartitionsHitRatio(IMap<?, ?> map) {
+        LocalMapStats stats = map.getLocalMapStats();
+        return ratio(stats.getHits(), stats.getGetOperationCount());
+    }
+
+    static double nearCacheHitRatio(IMap<?, ?> map) {
+        NearCacheStats stats = map.getLocalMapStats().getNearCacheStats();
+        if (stats == null) {
+            return 0;
+        }
+        return ratio(stats.getHits(), stats.getHits() + stats.getMisses());
+    }
+
+    private static double ratio(long hits, long total) {
+        return total == 0 ? 0 : Math.min(1.0, (double) hits / total);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package org.rutebanken.tiamat.hazelcast;
+
+import org.rutebanken.tiamat.model.FareZone;
+import org.rutebanken.tiamat.model.Organisation;
+import org.rutebanken.tiamat.model.PurposeOfGrouping;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.TariffZone;
+import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.model.Value;
+import org.rutebanken.tiamat.model.tag.Tag;
+
+/**
+ * Hibernate second level cache regions, stored in Hazelcast maps with the same names.
+ * <p>
+ * Reference data changes rarely, and is also kept in a near cache on each node.
+ * Stop places, quays and key values change more often and are only kept in the distributed maps, with a shorter time to live.
+ * <p>
+ * Size and time to live can be changed per region with tiamat.cache.region.&lt;region&gt;.max-size and
+ * tiamat.cache.region.&lt;region&gt;.ttl-seconds, for example tiamat.cache.region.topographic-place.max-size.
+ */
+public enum SecondLevelCacheRegion {
+
+    TOPOGRAPHIC_PLACE(TopographicPlace.class.getName(), 20_000, 3600, true),
+    TARIFF_ZONE(TariffZone.class.getName(), 20_000, 3600, true),
+    FARE_ZONE(FareZone.class.getName(), 20_000, 3600, true),
+    ORGANISATION(Organisation.class.getName(), 5_000, 3600, true),
+    PURPOSE_OF_GROUPING(PurposeOfGrouping.class.getName(), 1_000, 3600, true),
+    TAG(Tag.class.getName(), 20_000, 3600, true),
+
+    STOP_PLACE(StopPlace.class.getName(), 50_000, 600, false),
+    QUAY(Quay.class.getName(), 100_000, 600, false),
+    /**
+     * The key values collection of each entity type has its own region.
+     */
+    KEY_VALUES("org.rutebanken.tiamat.model.*.keyValues", 200_000, 600, false),
+    VALUE(Value.class.getName(), 200_000, 600, false),
+    VALUE_ITEMS(Value.class.getName() + ".items", 200_000, 600, false);
+
+    private final String regionName;
+
+    private final int defaultMaxSize;
+
+    private final int defaultTimeToLiveSeconds;
+
+    private final boolean nearCache;
+
+    SecondLevelCacheRegion(String regionName, int defaultMaxSize, int defaultTimeToLiveSeconds, boolean nearCache) {
+        this.regionName = regionName;
+        this.defaultMaxSize = defaultMaxSize;
+        this.defaultTimeToLiveSeconds = defaultTimeToLiveSeconds;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * @return the region name, which is also the name of the Hazelcast map. Can be a wildcard pattern matching several regions.
+     */
+    public String getRegionName() {
+        return regionName;
+    }
+
+    public boolean isWildcard() {
+        return regionName.contains("*");
+    }
+
+    public int getDefaultMaxSize() {
+        return defaultMaxSize;
+    }
+
+    public int getDefaultTimeToLiveSeconds() {
+        return defaultTimeToLiveSeconds;
+    }
+
+    public boolean hasNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * @return prefix of the properties for this region, like tiamat.cache.region.topographic-place
+     */
+    public String propertyPrefix() {
+        return "tiamat.cache.region." + name().toLowerCase().replace('_', '-');
+    }
+}
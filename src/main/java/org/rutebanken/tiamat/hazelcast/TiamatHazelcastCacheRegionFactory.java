@@ -0,0 +1,53 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package org.rutebanken.tiamat.hazelcast;
+
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.hibernate.HazelcastCacheRegionFactory;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+
+import java.util.Map;
+
+/**
+ * Second level cache regions in the Hazelcast instance of the application, instead of an instance started by Hibernate.
+ * The regions are then configured by {@link org.rutebanken.tiamat.config.HazelCastConfig}, and are shared by the nodes of the cluster.
+ * Entries are written to the distributed maps when entities are saved, and near caches of other nodes are invalidated.
+ * <p>
+ * The name of the application instance is set in the Hibernate properties with {@link #INSTANCE_NAME_PROPERTY}.
+ */
+public class TiamatHazelcastCacheRegionFactory extends HazelcastCacheRegionFactory {
+
+    public static final String INSTANCE_NAME_PROPERTY = "hibernate.cache.hazelcast.instance_name";
+
+    /**
+     * The application instance is shut down by Spring, not when the session factory is closed.
+     */
+    public static final String SHUTDOWN_ON_STOP_PROPERTY = "hibernate.cache.hazelcast.shutdown_on_session_factory_close";
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+        Object instanceName = configValues.get(INSTANCE_NAME_PROPERTY);
+        if (instanceName == null) {
+            throw new IllegalStateException("Missing " + INSTANCE_NAME_PROPERTY + ". Cannot find the Hazelcast instance for the second level cache");
+        }
+        HazelcastInstance instance = Hazelcast.getHazelcastInstanceByName(instanceName.toString());
+        if (instance == null || !instance.getLifecycleService().isRunning()) {
+            throw new IllegalStateException("Hazelcast instance " + instanceName + " for the second level cache is not running");
+        }
+        super.prepareForUse(settings, configValues);
+    }
+}
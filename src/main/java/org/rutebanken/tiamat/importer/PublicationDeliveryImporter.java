@@ -95,9 +95,7 @@ public class PublicationDeliveryImporter {
 
     @SuppressWarnings("unchecked")
     public PublicationDeliveryStructure importPublicationDelivery(PublicationDeliveryStructure incomingPublicationDelivery, ImportParams importParams) {
-        if(authorizationEnabled && !authorizationService.canEditAllEntities()){
-                throw new AccessDeniedException("Insufficient privileges for operation");
-            }
+        verifyCanImport();
 
 
         if (incomingPublicationDelivery.getDataObjects() == null) {
@@ -157,7 +155,13 @@ public class PublicationDeliveryImporter {
     }
 
 
-    private void validate(ImportParams importParams) {
+    void verifyCanImport() {
+        if(authorizationEnabled && !authorizationService.canEditAllEntities()){
+            throw new AccessDeniedException("Insufficient privileges for operation");
+        }
+    }
+
+    void validate(ImportParams importParams) {
         if (importParams.targetTopographicPlaces != null && importParams.onlyMatchOutsideTopographicPlaces != null) {
             if (!importParams.targetTopographicPlaces.isEmpty() && !importParams.onlyMatchOutsideTopographicPlaces.isEmpty()) {
                 throw new IllegalArgumentException("targetTopographicPlaces and onlyMatchOutsideTopographicPlaces cannot be specified at the same time!");
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import org.rutebanken.netex.model.ObjectFactory;
+import org.rutebanken.netex.model.PublicationDeliveryStructure;
+import org.rutebanken.netex.model.StopPlace;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static jakarta.xml.bind.JAXBContext.newInstance;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Groups of parent stop places and their children, held back by a streaming import until all stop places have been read.
+ * The stop places are written to a temporary file, and only their positions in the file are kept in memory.
+ * The groups are read back one at a time, in the order they were first seen. The file is deleted when closed.
+ */
+class SpilledStopPlaceGroups implements Closeable {
+
+    private static final JAXBContext jaxbContext = getContext();
+
+    private static final ObjectFactory objectFactory = new ObjectFactory();
+
+    private static JAXBContext getContext() {
+        try {
+            return newInstance(PublicationDeliveryStructure.class, StopPlace.class);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final FileChannel channel;
+    private final Marshaller marshaller;
+    private final Unmarshaller unmarshaller;
+
+    /**
+     * Positions of the stop places in the file, by the ID of the parent, in the order they were read.
+     */
+    private final Map<String, List<Position>> groups = new LinkedHashMap<>();
+
+    private int size;
+
+    SpilledStopPlaceGroups() {
+        try {
+            channel = FileChannel.open(Files.createTempFile("tiamat-parent-stop-places-", ".xml"), READ, WRITE, DELETE_ON_CLOSE);
+            marshaller = jaxbContext.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            unmarshaller = jaxbContext.createUnmarshaller();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create file for parent stop places", e);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void add(String parentId, StopPlace stopPlace) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            marshaller.marshal(objectFactory.createStopPlace(stopPlace), output);
+            long offset = channel.size();
+            channel.write(ByteBuffer.wrap(output.toByteArray()), offset);
+            groups.computeIfAbsent(parentId, id -> new ArrayList<>()).add(new Position(offset, output.size()));
+            size++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write stop place " + stopPlace.getId() + " to file", e);
+        } catch (JAXBException e) {
+            throw new RuntimeException("Could not marshal stop place " + stopPlace.getId(), e);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the groups, read from the file one by one while iterating, with every parent in the same group as its children
+     */
+    Iterable<List<StopPlace>> groups() {
+        return () -> groups.values().stream().map(this::read).iterator();
+    }
+
+    private List<StopPlace> read(List<Position> positions) {
+        List<StopPlace> group = new ArrayList<>(positions.size());
+        for (Position position : positions) {
+            group.add(read(position));
+        }
+        return group;
+    }
+
+    private StopPlace read(Position position) {
+        ByteBuffer buffer = ByteBuffer.allocate(position.length());
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position.offset() + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file at " + position);
+                }
+            }
+            return unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(buffer.array())), StopPlace.class).getValue();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read stop place from file", e);
+        } catch (JAXBException e) {
+            throw new RuntimeException("Could not unmarshal stop place", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        groups.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete file for parent stop places", e);
+        }
+    }
+
+    private record Position(long offset, int length) {
+    }
+}
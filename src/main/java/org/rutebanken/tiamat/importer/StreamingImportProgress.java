@@ -0,0 +1,97 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a streaming import. Updated from the threads importing stop places and parkings.
+ * Only counters are kept, so that the memory used does not depend on the size of the import.
+ */
+public class StreamingImportProgress {
+
+    private final String siteFrameId;
+    private final long startTime = System.currentTimeMillis();
+
+    final AtomicInteger stopPlacesReceived = new AtomicInteger();
+    final AtomicInteger stopPlacesImported = new AtomicInteger();
+    final AtomicInteger parkingsReceived = new AtomicInteger();
+    final AtomicInteger parkingsImported = new AtomicInteger();
+    final AtomicInteger topographicPlacesImported = new AtomicInteger();
+    final AtomicInteger tariffZonesImported = new AtomicInteger();
+    final AtomicInteger pathLinksImported = new AtomicInteger();
+    final AtomicInteger batches = new AtomicInteger();
+
+    public StreamingImportProgress(String siteFrameId) {
+        this.siteFrameId = siteFrameId;
+    }
+
+    public String getSiteFrameId() {
+        return siteFrameId;
+    }
+
+    public int getStopPlacesReceived() {
+        return stopPlacesReceived.get();
+    }
+
+    public int getStopPlacesImported() {
+        return stopPlacesImported.get();
+    }
+
+    public int getParkingsReceived() {
+        return parkingsReceived.get();
+    }
+
+    public int getParkingsImported() {
+        return parkingsImported.get();
+    }
+
+    public int getTopographicPlacesImported() {
+        return topographicPlacesImported.get();
+    }
+
+    public int getTariffZonesImported() {
+        return tariffZonesImported.get();
+    }
+
+    public int getPathLinksImported() {
+        return pathLinksImported.get();
+    }
+
+    public int getBatches() {
+        return batches.get();
+    }
+
+    public long getDurationMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("siteFrameId", siteFrameId)
+                .add("stopPlaces", stopPlacesImported + "/" + stopPlacesReceived)
+                .add("parkings", parkingsImported + "/" + parkingsReceived)
+                .add("topographicPlaces", topographicPlacesImported)
+                .add("tariffZones", tariffZonesImported)
+                .add("pathLinks", pathLinksImported)
+                .add("batches", batches)
+                .add("durationMillis", getDurationMillis())
+                .toString();
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer;
+
+import jakarta.xml.bind.JAXBElement;
+import org.rutebanken.netex.model.EntityInVersionStructure;
+import org.rutebanken.netex.model.FareZone;
+import org.rutebanken.netex.model.ObjectFactory;
+import org.rutebanken.netex.model.Parking;
+import org.rutebanken.netex.model.ParkingsInFrame_RelStructure;
+import org.rutebanken.netex.model.PathLink;
+import org.rutebanken.netex.model.PathLinksInFrame_RelStructure;
+import org.rutebanken.netex.model.SiteFrame;
+import org.rutebanken.netex.model.StopPlace;
+import org.rutebanken.netex.model.StopPlacesInFrame_RelStructure;
+import org.rutebanken.netex.model.TariffZone;
+import org.rutebanken.netex.model.TariffZonesInFrame_RelStructure;
+import org.rutebanken.netex.model.Zone_VersionStructure;
+import org.rutebanken.tiamat.importer.handler.GroupOfTariffZonesImportHandler;
+import org.rutebanken.tiamat.importer.handler.ParkingsImportHandler;
+import org.rutebanken.tiamat.importer.handler.PathLinkImportHandler;
+import org.rutebanken.tiamat.importer.handler.StopPlaceImportHandler;
+import org.rutebanken.tiamat.importer.handler.TariffZoneImportHandler;
+import org.rutebanken.tiamat.importer.handler.TopographicPlaceImportHandler;
+import org.rutebanken.tiamat.netex.mapping.PublicationDeliveryHelper;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.EntityQueueProcessor;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.RunnableUnmarshaller;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.UnmarshalResult;
+import org.rutebanken.tiamat.service.batch.BackgroundJobs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.rutebanken.tiamat.importer.PublicationDeliveryImporter.IMPORT_CORRELATION_ID;
+import static org.rutebanken.tiamat.netex.mapping.NetexMappingContextThreadLocal.updateMappingContext;
+import static org.rutebanken.tiamat.netex.mapping.mapper.StopPlaceMapper.IS_PARENT_STOP_PLACE;
+
+/**
+ * Import a publication delivery while it is being unmarshalled in one pass by
+ * {@link org.rutebanken.tiamat.rest.netex.publicationdelivery.async.PublicationDeliveryPartialUnmarshaller#unmarshalInOnePass}.
+ * <p>
+ * Topographic places are imported first, from the site frame head. Stop places, parkings, and then tariff zones and path links
+ * are taken from the queues of the {@link UnmarshalResult} and imported in batches, with the same handlers as {@link PublicationDeliveryImporter}.
+ * The queues are bounded, so unmarshalling waits for the import, and only one batch is held in memory.
+ * Groups of tariff zones refer to the tariff zones, and are imported when the whole publication delivery has been read.
+ * <p>
+ * Parent stop places and their children are never split over batches, and the children of a parent can be anywhere among the stop places.
+ * They are held back in a temporary file, see {@link SpilledStopPlaceGroups}, and imported after the other stop places,
+ * with every parent in the same batch as its children.
+ * <p>
+ * Nothing is rolled back if a batch fails. The batches imported before the failure stay committed.
+ */
+@Service
+public class StreamingPublicationDeliveryImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingPublicationDeliveryImporter.class);
+
+    private static final ObjectFactory objectFactory = new ObjectFactory();
+
+    private final PublicationDeliveryImporter publicationDeliveryImporter;
+    private final PublicationDeliveryHelper publicationDeliveryHelper;
+    private final TopographicPlaceImportHandler topographicPlaceImportHandler;
+    private final TariffZoneImportHandler tariffZoneImportHandler;
+    private final GroupOfTariffZonesImportHandler groupOfTariffZonesImportHandler;
+    private final StopPlaceImportHandler stopPlaceImportHandler;
+    private final ParkingsImportHandler parkingsImportHandler;
+    private final PathLinkImportHandler pathLinkImportHandler;
+    private final BackgroundJobs backgroundJobs;
+    private final int batchSize;
+
+    @Autowired
+    public StreamingPublicationDeliveryImporter(PublicationDeliveryImporter publicationDeliveryImporter,
+                                                PublicationDeliveryHelper publicationDeliveryHelper,
+                                                TopographicPlaceImportHandler topographicPlaceImportHandler,
+                                                TariffZoneImportHandler tariffZoneImportHandler,
+                                                GroupOfTariffZonesImportHandler groupOfTariffZonesImportHandler,
+                                                StopPlaceImportHandler stopPlaceImportHandler,
+                                                ParkingsImportHandler parkingsImportHandler,
+                                                PathLinkImportHandler pathLinkImportHandler,
+                                                BackgroundJobs backgroundJobs,
+                                                @Value("${netex.import.streaming.batch.size:500}") int batchSize) {
+        this.publicationDeliveryImporter = publicationDeliveryImporter;
+        this.publicationDeliveryHelper = publicationDeliveryHelper;
+        this.topographicPlaceImportHandler = topographicPlaceImportHandler;
+        this.tariffZoneImportHandler = tariffZoneImportHandler;
+        this.groupOfTariffZonesImportHandler = groupOfTariffZonesImportHandler;
+        this.stopPlaceImportHandler = stopPlaceImportHandler;
+        this.parkingsImportHandler = parkingsImportHandler;
+        this.pathLinkImportHandler = pathLinkImportHandler;
+        this.backgroundJobs = backgroundJobs;
+        this.batchSize = batchSize;
+    }
+
+    public StreamingImportProgress importPublicationDelivery(UnmarshalResult unmarshalResult, ImportParams importParams) throws InterruptedException {
+        try {
+            publicationDeliveryImporter.verifyCanImport();
+        } catch (RuntimeException e) {
+            unmarshalResult.abort();
+            throw e;
+        }
+
+        SiteFrame netexSiteFrame = await(unmarshalResult.getSiteFrameHead(), unmarshalResult);
+        if (netexSiteFrame == null) {
+            unmarshalResult.abort();
+            String responseMessage = "Received publication delivery but it does not contain any data objects.";
+            logger.warn(responseMessage);
+            throw new RuntimeException(responseMessage);
+        }
+
+        final ImportParams params;
+        if (importParams == null) {
+            params = new ImportParams();
+        } else {
+            try {
+                publicationDeliveryImporter.validate(importParams);
+            } catch (RuntimeException e) {
+                unmarshalResult.abort();
+                throw e;
+            }
+            params = importParams;
+        }
+
+        // The unmarshalling thread keeps on filling in the site frame. Only what has been read before the head is used until it is done.
+        SiteFrame netexSiteFrameHead = batchSiteFrame(netexSiteFrame)
+                .withTopographicPlaces(netexSiteFrame.getTopographicPlaces());
+        StreamingImportProgress progress = new StreamingImportProgress(netexSiteFrameHead.getId());
+
+        try {
+            MDC.put(IMPORT_CORRELATION_ID, netexSiteFrameHead.getId());
+            updateMappingContext(netexSiteFrameHead);
+            logger.info("Starting streaming import of site frame {} in batches of {}", netexSiteFrameHead.getId(), batchSize);
+
+            SiteFrame responseSiteFrame = new SiteFrame();
+            topographicPlaceImportHandler.handleTopographicPlaces(netexSiteFrameHead, params, progress.topographicPlacesImported, responseSiteFrame);
+
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
+            Runnable abort = unmarshalResult::abort;
+
+            try (StopPlaceBatches stopPlaces = new StopPlaceBatches(batchSize, progress, failure, abort,
+                    batch -> importStopPlaces(batch, netexSiteFrameHead, params, progress))) {
+                processQueue(unmarshalResult.getStopPlaceQueue(), RunnableUnmarshaller.POISON_STOP_PLACE, stopPlaces, failure);
+                if (failure.get() == null && !Thread.currentThread().isInterrupted()) {
+                    stopPlaces.flushParentGroups();
+                }
+            }
+
+            BatchingConsumer<Parking> parkings = new BatchingConsumer<>(batchSize, progress, failure, abort,
+                    batch -> importParkings(batch, netexSiteFrameHead, params, progress));
+            if (failure.get() == null) {
+                processQueue(unmarshalResult.getParkingQueue(), RunnableUnmarshaller.POISON_PARKING, parkings, failure);
+            }
+
+            BatchingConsumer<EntityInVersionStructure> tariffZonesAndPathLinks = new TariffZoneAndPathLinkBatches(batchSize, progress, failure, abort,
+                    batch -> importTariffZonesOrPathLinks(batch, netexSiteFrameHead, params, progress, responseSiteFrame));
+            if (failure.get() == null) {
+                processQueue(unmarshalResult.getTariffZoneAndPathLinkQueue(), RunnableUnmarshaller.POISON_TARIFF_ZONE_OR_PATH_LINK,
+                        tariffZonesAndPathLinks, failure);
+            }
+
+            if (failure.get() != null) {
+                logger.warn("Streaming import failed after {}", progress);
+                throw failure.get();
+            }
+
+            // The site frame is complete when the whole publication delivery has been unmarshalled
+            await(unmarshalResult.getUnmarshalledPublicationDelivery(), unmarshalResult);
+
+            groupOfTariffZonesImportHandler.handleGroupOfTariffZones(netexSiteFrame, params, responseSiteFrame);
+
+            if (responseSiteFrame.getTariffZones() != null || responseSiteFrame.getTopographicPlaces() != null) {
+                backgroundJobs.triggerStopPlaceUpdate();
+            }
+            logger.info("Finished streaming import: {}", progress);
+            return progress;
+        } catch (InterruptedException e) {
+            unmarshalResult.abort();
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (RuntimeException e) {
+            unmarshalResult.abort();
+            throw e;
+        } finally {
+            MDC.remove(IMPORT_CORRELATION_ID);
+        }
+    }
+
+    private static <T> T await(Future<T> future, UnmarshalResult unmarshalResult) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            unmarshalResult.abort();
+            throw e;
+        } catch (ExecutionException e) {
+            unmarshalResult.abort();
+            throw new RuntimeException("Could not unmarshal publication delivery: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private <T extends EntityInVersionStructure> void processQueue(BlockingQueue<T> queue, T poison, BatchingConsumer<T> consumer,
+                                                                   AtomicReference<RuntimeException> failure) {
+        new EntityQueueProcessor<>(queue, new AtomicBoolean(), consumer, poison).run();
+        if (failure.get() == null && !Thread.currentThread().isInterrupted()) {
+            consumer.flush();
+        }
+    }
+
+    private void importStopPlaces(List<StopPlace> batch, SiteFrame netexSiteFrame, ImportParams importParams, StreamingImportProgress progress) {
+        SiteFrame batchSiteFrame = batchSiteFrame(netexSiteFrame)
+                .withStopPlaces(new StopPlacesInFrame_RelStructure().withStopPlace(batch));
+        stopPlaceImportHandler.handleStops(batchSiteFrame, importParams, progress.stopPlacesImported, new SiteFrame());
+        progress.batches.incrementAndGet();
+        logger.info("Imported batch of {} stop places: {}", batch.size(), progress);
+    }
+
+    private void importParkings(List<Parking> batch, SiteFrame netexSiteFrame, ImportParams importParams, StreamingImportProgress progress) {
+        SiteFrame batchSiteFrame = batchSiteFrame(netexSiteFrame)
+                .withParkings(new ParkingsInFrame_RelStructure().withParking(batch));
+        parkingsImportHandler.handleParkings(batchSiteFrame, importParams, progress.parkingsImported, new SiteFrame());
+        progress.batches.incrementAndGet();
+        logger.info("Imported batch of {} parkings: {}", batch.size(), progress);
+    }
+
+    /**
+     * Import a batch of either tariff and fare zones, or path links.
+     */
+    private void importTariffZonesOrPathLinks(List<EntityInVersionStructure> batch, SiteFrame netexSiteFrame, ImportParams importParams,
+                                              StreamingImportProgress progress, SiteFrame responseSiteFrame) {
+        SiteFrame batchSiteFrame = batchSiteFrame(netexSiteFrame);
+        if (batch.getFirst() instanceof PathLink) {
+            batchSiteFrame.withPathLinks(new PathLinksInFrame_RelStructure()
+                    .withPathLink(batch.stream().map(PathLink.class::cast).toList()));
+            pathLinkImportHandler.handlePathLinks(batchSiteFrame, importParams, progress.pathLinksImported, responseSiteFrame);
+            logger.info("Imported batch of {} path links: {}", batch.size(), progress);
+        } else {
+            batchSiteFrame.withTariffZones(new TariffZonesInFrame_RelStructure()
+                    .withTariffZone(batch.stream().map(StreamingPublicationDeliveryImporter::zoneElement).toList()));
+            tariffZoneImportHandler.handleTariffZones(batchSiteFrame, importParams, progress.tariffZonesImported, responseSiteFrame);
+            logger.info("Imported batch of {} tariff zones: {}", batch.size(), progress);
+        }
+        progress.batches.incrementAndGet();
+    }
+
+    private static JAXBElement<? extends Zone_VersionStructure> zoneElement(EntityInVersionStructure zone) {
+        if (zone instanceof FareZone fareZone) {
+            return objectFactory.createFareZone(fareZone);
+        }
+        return objectFactory.createTariffZone((TariffZone) zone);
+    }
+
+    private SiteFrame batchSiteFrame(SiteFrame netexSiteFrame) {
+        return new SiteFrame()
+                .withId(netexSiteFrame.getId())
+                .withVersion(netexSiteFrame.getVersion())
+                .withFrameDefaults(netexSiteFrame.getFrameDefaults());
+    }
+
+    /**
+     * Collects entities from a queue and imports them when a batch is full.
+     * If importing a batch fails, the failure is recorded and the whole import is aborted.
+     */
+    private static class BatchingConsumer<T extends EntityInVersionStructure> implements Consumer<T> {
+
+        final int batchSize;
+        private final StreamingImportProgress progress;
+        private final AtomicReference<RuntimeException> failure;
+        private final Runnable abort;
+        private final Consumer<List<T>> batchImporter;
+
+        List<T> batch;
+
+        private BatchingConsumer(int batchSize, StreamingImportProgress progress, AtomicReference<RuntimeException> failure,
+                                 Runnable abort, Consumer<List<T>> batchImporter) {
+            this.batchSize = batchSize;
+            this.progress = progress;
+            this.failure = failure;
+            this.abort = abort;
+            this.batchImporter = batchImporter;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void accept(T entity) {
+            if (entity instanceof StopPlace) {
+                progress.stopPlacesReceived.incrementAndGet();
+            } else if (entity instanceof Parking) {
+                progress.parkingsReceived.incrementAndGet();
+            }
+            add(entity);
+        }
+
+        void add(T entity) {
+            batch.add(entity);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<T> full = batch;
+            batch = new ArrayList<>(batchSize);
+            importBatch(full);
+        }
+
+        void importBatch(List<T> entities) {
+            try {
+                batchImporter.accept(entities);
+            } catch (RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        void fail(RuntimeException e) {
+            failure.compareAndSet(null, e);
+            abort.run();
+        }
+    }
+
+    /**
+     * Batches of tariff zones and path links, in the order they were read. A batch has either zones or path links.
+     */
+    private static class TariffZoneAndPathLinkBatches extends BatchingConsumer<EntityInVersionStructure> {
+
+        private TariffZoneAndPathLinkBatches(int batchSize, StreamingImportProgress progress, AtomicReference<RuntimeException> failure,
+                                             Runnable abort, Consumer<List<EntityInVersionStructure>> batchImporter) {
+            super(batchSize, progress, failure, abort, batchImporter);
+        }
+
+        @Override
+        void add(EntityInVersionStructure entity) {
+            if (!batch.isEmpty() && (batch.getFirst() instanceof PathLink) != (entity instanceof PathLink)) {
+                flush();
+            }
+            super.add(entity);
+        }
+    }
+
+    /**
+     * Batches of stop places, where parent stop places and their children are held back until all stop places have been read.
+     * A child refers to its parent with the parent site ref. A parent is marked with the key {@link org.rutebanken.tiamat.netex.mapping.mapper.StopPlaceMapper#IS_PARENT_STOP_PLACE}.
+     * Close to delete the held back stop places.
+     */
+    private class StopPlaceBatches extends BatchingConsumer<StopPlace> implements AutoCloseable {
+
+        private final SpilledStopPlaceGroups parentGroups = new SpilledStopPlaceGroups();
+
+        private StopPlaceBatches(int batchSize, StreamingImportProgress progress, AtomicReference<RuntimeException> failure,
+                                 Runnable abort, Consumer<List<StopPlace>> batchImporter) {
+            super(batchSize, progress, failure, abort, batchImporter);
+        }
+
+        @Override
+        void add(StopPlace stopPlace) {
+            String parentId = parentId(stopPlace);
+            if (parentId == null) {
+                super.add(stopPlace);
+            } else {
+                try {
+                    parentGroups.add(parentId, stopPlace);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Import the held back parents and children. Batches are filled with whole groups, so a batch is only larger than
+         * the batch size if one group is.
+         */
+        void flushParentGroups() {
+            flush();
+            logger.info("Importing {} held back parent stop places and children", parentGroups.size());
+            List<StopPlace> groupBatch = new ArrayList<>(batchSize);
+            try {
+                for (List<StopPlace> group : parentGroups.groups()) {
+                    if (!groupBatch.isEmpty() && groupBatch.size() + group.size() > batchSize) {
+                        importBatch(groupBatch);
+                        groupBatch = new ArrayList<>(batchSize);
+                    }
+                    groupBatch.addAll(group);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            if (!groupBatch.isEmpty()) {
+                importBatch(groupBatch);
+            }
+        }
+
+        @Override
+        public void close() {
+            parentGroups.close();
+        }
+
+        private String parentId(StopPlace stopPlace) {
+            if (stopPlace.getParentSiteRef() != null && stopPlace.getParentSiteRef().getRef() != null) {
+                return stopPlace.getParentSiteRef().getRef();
+            }
+            if ("true".equalsIgnoreCase(publicationDeliveryHelper.getValueByKey(stopPlace, IS_PARENT_STOP_PLACE))) {
+                return stopPlace.getId();
+            }
+            return null;
+        }
+    }
+}
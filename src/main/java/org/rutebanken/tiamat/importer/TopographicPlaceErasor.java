@@ -17,6 +17,7 @@ package org.rutebanken.tiamat.importer;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import org.rutebanken.tiamat.auth.check.AdministrativeZoneCache;
 import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
 import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
 import org.slf4j.Logger;
@@ -31,11 +32,14 @@ public class TopographicPlaceErasor {
 
     private final TopographicPlaceRepository topographicPlaceRepository;
 
+    private final AdministrativeZoneCache administrativeZoneCache;
+
     private static final Logger logger = LoggerFactory.getLogger(TopographicPlaceErasor.class);
 
     @Autowired
-    public TopographicPlaceErasor(TopographicPlaceRepository topographicPlaceRepository) {
+    public TopographicPlaceErasor(TopographicPlaceRepository topographicPlaceRepository, AdministrativeZoneCache administrativeZoneCache) {
         this.topographicPlaceRepository = topographicPlaceRepository;
+        this.administrativeZoneCache = administrativeZoneCache;
     }
 
     public void erase(String idPrefix, TopographicPlaceTypeEnumeration topographicPlaceType) {
@@ -49,6 +53,7 @@ public class TopographicPlaceErasor {
         topographicPlaceRepository.deleteAllByTopographicPlaceTypeAndNetexIdStartingWith(topographicPlaceType,idPrefix);
         logger.warn("Deleted {} topographic places with idPrefix {} and type {}", count, idPrefix, topographicPlaceType);
         topographicPlaceRepository.flush();
+        administrativeZoneCache.reset();
     }
 
 
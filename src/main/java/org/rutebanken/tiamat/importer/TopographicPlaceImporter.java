@@ -15,6 +15,7 @@
 
 package org.rutebanken.tiamat.importer;
 
+import org.rutebanken.tiamat.auth.check.AdministrativeZoneCache;
 import org.rutebanken.tiamat.model.TopographicPlace;
 import org.rutebanken.tiamat.model.TopographicPlaceRefStructure;
 import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
@@ -47,11 +48,15 @@ public class TopographicPlaceImporter {
 
     private final TopographicPlaceVersionedSaverService topographicPlaceVersionedSaverService;
 
+    private final AdministrativeZoneCache administrativeZoneCache;
+
     @Autowired
-    public TopographicPlaceImporter(NetexMapper netexMapper, TopographicPlaceRepository topographicPlaceRepository, TopographicPlaceVersionedSaverService topographicPlaceVersionedSaverService) {
+    public TopographicPlaceImporter(NetexMapper netexMapper, TopographicPlaceRepository topographicPlaceRepository, TopographicPlaceVersionedSaverService topographicPlaceVersionedSaverService,
+                                    AdministrativeZoneCache administrativeZoneCache) {
         this.netexMapper = netexMapper;
         this.topographicPlaceRepository = topographicPlaceRepository;
         this.topographicPlaceVersionedSaverService = topographicPlaceVersionedSaverService;
+        this.administrativeZoneCache = administrativeZoneCache;
     }
 
     public List<org.rutebanken.netex.model.TopographicPlace> importTopographicPlaces(List<TopographicPlace> topographicPlaces, AtomicInteger topographicPlacesCounter) {
@@ -118,6 +123,7 @@ public class TopographicPlaceImporter {
                 existingTopographicPlace.setChanged(Instant.now());
                 existingTopographicPlace.setPolygon(incomingTopographicPlace.getPolygon());
                 incomingTopographicPlace = topographicPlaceRepository.save(existingTopographicPlace);
+                administrativeZoneCache.reset();
             } else {
                 incomingTopographicPlace = topographicPlaceVersionedSaverService.saveNewVersion(incomingTopographicPlace);
             }
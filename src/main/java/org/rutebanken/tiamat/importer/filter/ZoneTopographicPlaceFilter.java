@@ -15,9 +15,9 @@
 
 package org.rutebanken.tiamat.importer.filter;
 
-import org.rutebanken.tiamat.model.TopographicPlace;
 import org.rutebanken.tiamat.model.Zone_VersionStructure;
 import org.rutebanken.tiamat.service.TopographicPlaceLookupService;
+import org.rutebanken.tiamat.service.TopographicPlaceLookupService.IndexedTopographicPlace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -72,9 +72,9 @@ public class ZoneTopographicPlaceFilter {
                     return true;
                 })
                 .filter(zone -> {
-                    Optional<TopographicPlace> topographicPlace = topographicPlaceLookupService.findTopographicPlaceByReference(topographicPlaceReferences, zone.getCentroid());
+                    Optional<IndexedTopographicPlace> topographicPlace = topographicPlaceLookupService.findTopographicPlaceByReference(topographicPlaceReferences, zone.getCentroid());
                     if(topographicPlace.isPresent()) {
-                        logger.debug("Found matching topographic place {} for zone {}. Negate: {}", topographicPlace.get().getNetexId(), zone, negate);
+                        logger.debug("Found matching topographic place {} for zone {}. Negate: {}", topographicPlace.get().netexId(), zone, negate);
                         return negate ? false : true;
                     } else if(negate){
                         logger.debug("Keeping {}. Negate: {}", zone, negate);
@@ -47,6 +47,7 @@ public class NearbyStopPlaceFinder {
 
     private final AlternativeStopTypes alternativeStopTypes;
 
+    private final NearbyStopPlaceIndex nearbyStopPlaceIndex;
 
     /**
      * Key is generated by using stop place's name, type and envelope.
@@ -58,9 +59,11 @@ public class NearbyStopPlaceFinder {
     public NearbyStopPlaceFinder(StopPlaceRepository stopPlaceRepository,
                                  @Value("${nearbyStopPlaceFinderCache.maxSize:50000}") int maximumSize,
                                  @Value("${nearbyStopPlaceFinderCache.expiresAfter:30}") int expiresAfter,
-                                 @Value("${nearbyStopPlaceFinderCache.expiresAfterTimeUnit:DAYS}") TimeUnit expiresAfterTimeUnit, PeriodicCacheLogger periodicCacheLogger, AlternativeStopTypes alternativeStopTypes) {
+                                 @Value("${nearbyStopPlaceFinderCache.expiresAfterTimeUnit:DAYS}") TimeUnit expiresAfterTimeUnit, PeriodicCacheLogger periodicCacheLogger, AlternativeStopTypes alternativeStopTypes,
+                                 NearbyStopPlaceIndex nearbyStopPlaceIndex) {
         this.stopPlaceRepository = stopPlaceRepository;
         this.alternativeStopTypes = alternativeStopTypes;
+        this.nearbyStopPlaceIndex = nearbyStopPlaceIndex;
         this.nearbyStopCache = CacheBuilder.newBuilder()
                 .maximumSize(maximumSize)
                 .expireAfterWrite(expiresAfter, expiresAfterTimeUnit)
@@ -85,36 +88,17 @@ public class NearbyStopPlaceFinder {
             return null;
         }
 
-        final String key = createKey(stopPlace);
+        final Envelope boundingBox = createBoundingBox(stopPlace.getCentroid());
+        final String key = createKey(stopPlace, boundingBox);
 
         try {
-            Optional<String> stopPlaceNetexId = nearbyStopCache.get(key, () -> {
-                Envelope boundingBox = createBoundingBox(stopPlace.getCentroid());
-
-                String matchingStopPlaceId;
-                if (stopPlace.getStopPlaceType().equals(StopTypeEnumeration.OTHER) && allowOther) {
-                    // Allow finding stop places of any type if stop place type is other and allowOther is true
-                    matchingStopPlaceId = stopPlaceRepository.findNearbyStopPlace(boundingBox, stopPlace.getName().getValue());
-                } else {
-                    matchingStopPlaceId = stopPlaceRepository.findNearbyStopPlace(boundingBox, stopPlace.getName().getValue(), stopPlace.getStopPlaceType());
-
-                    if (matchingStopPlaceId == null) {
-                        Set<StopTypeEnumeration> alternativeTypes = alternativeStopTypes.getAlternativeTypes(stopPlace.getStopPlaceType());
-
-                        if (alternativeTypes != null) {
-                            for (StopTypeEnumeration alternativeType : alternativeTypes) {
-                                matchingStopPlaceId = stopPlaceRepository.findNearbyStopPlace(boundingBox, stopPlace.getName().getValue(), alternativeType);
-                                if (matchingStopPlaceId != null) {
-                                    logger.info("Found matching stop place based on alternative type {} from type {}", alternativeType, stopPlace.getStopPlaceType());
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                return Optional.ofNullable(matchingStopPlaceId);
-            });
+            Optional<String> stopPlaceNetexId;
+            if (nearbyStopPlaceIndex.covers(boundingBox)) {
+                // Stop places of the current import are indexed, including the ones saved by it. No need to check the cache.
+                stopPlaceNetexId = Optional.ofNullable(findNearbyStopPlace(stopPlace, boundingBox, allowOther, true));
+            } else {
+                stopPlaceNetexId = nearbyStopCache.get(key, () -> Optional.ofNullable(findNearbyStopPlace(stopPlace, boundingBox, allowOther, false)));
+            }
             if (stopPlaceNetexId.isPresent()) {
                 // Update cache for incoming envelope, so the same key will hopefullly match again
                 nearbyStopCache.put(key, stopPlaceNetexId);
@@ -127,12 +111,45 @@ public class NearbyStopPlaceFinder {
         }
     }
 
+    private String findNearbyStopPlace(StopPlace stopPlace, Envelope boundingBox, boolean allowOther, boolean fromIndex) {
+        String name = stopPlace.getName().getValue();
+
+        if (stopPlace.getStopPlaceType().equals(StopTypeEnumeration.OTHER) && allowOther) {
+            // Allow finding stop places of any type if stop place type is other and allowOther is true
+            return fromIndex ? nearbyStopPlaceIndex.findNearbyStopPlace(boundingBox, name)
+                    : stopPlaceRepository.findNearbyStopPlace(boundingBox, name);
+        }
+
+        String matchingStopPlaceId = findNearbyStopPlace(boundingBox, name, stopPlace.getStopPlaceType(), fromIndex);
+
+        if (matchingStopPlaceId == null) {
+            Set<StopTypeEnumeration> alternativeTypes = alternativeStopTypes.getAlternativeTypes(stopPlace.getStopPlaceType());
+
+            if (alternativeTypes != null) {
+                for (StopTypeEnumeration alternativeType : alternativeTypes) {
+                    matchingStopPlaceId = findNearbyStopPlace(boundingBox, name, alternativeType, fromIndex);
+                    if (matchingStopPlaceId != null) {
+                        logger.info("Found matching stop place based on alternative type {} from type {}", alternativeType, stopPlace.getStopPlaceType());
+                        break;
+                    }
+                }
+            }
+        }
+        return matchingStopPlaceId;
+    }
+
+    private String findNearbyStopPlace(Envelope boundingBox, String name, StopTypeEnumeration stopPlaceType, boolean fromIndex) {
+        return fromIndex ? nearbyStopPlaceIndex.findNearbyStopPlace(boundingBox, name, stopPlaceType)
+                : stopPlaceRepository.findNearbyStopPlace(boundingBox, name, stopPlaceType);
+    }
+
     /**
-     * Update cache. For instance after modifying and saving stop place.
+     * Update cache, and the index if loaded for the current import. For instance after modifying and saving stop place.
      *
      * @param savedStopPlace
      */
     public void update(StopPlace savedStopPlace) {
+        nearbyStopPlaceIndex.update(savedStopPlace);
         if (savedStopPlace.hasCoordinates() && savedStopPlace.getStopPlaceType() != null) {
             nearbyStopCache.put(createKey(savedStopPlace), Optional.ofNullable(savedStopPlace.getNetexId()));
         }
@@ -0,0 +1,386 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer.finder;
+
+import com.google.common.primitives.Longs;
+import org.locationtech.jts.geom.Envelope;
+import org.rutebanken.tiamat.model.SiteRefStructure;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.StopTypeEnumeration;
+import org.rutebanken.tiamat.model.ValidBetween;
+import org.rutebanken.tiamat.repository.StopPlaceLocation;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * In memory index of the current stop places in the area of an import.
+ * <p>
+ * Loaded with one query before importing, from the envelope of the incoming stop places, and bound to the current transaction.
+ * Stop places saved by the import are updated in the index, so that later incoming stop places can be matched with them.
+ * The index only keeps netex IDs, locations, types and names. Matched stop places are fetched in the session of the caller.
+ * Updates made in a transaction that is rolled back, like an inner transaction of an import, are undone.
+ * Stop places are kept in a grid of cells, and nearby stop places are found by checking the cells intersecting the envelope.
+ * <p>
+ * The finders do the same matching as the nearby stop place queries of {@link StopPlaceRepository}, without querying the database,
+ * when the envelope is covered by the index. See {@link #covers(Envelope)}.
+ */
+@Component
+public class NearbyStopPlaceIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearbyStopPlaceIndex.class);
+
+    /**
+     * Degrees added around the incoming stop places when loading.
+     * Covers the bounding boxes of {@link NearbyStopPlaceFinder} and short distances of {@link NearbyStopsWithSameTypeFinder}.
+     */
+    static final double LOAD_BUFFER = 0.01;
+
+    /**
+     * Cell size in degrees.
+     */
+    private static final double CELL_SIZE = 0.004;
+
+    /**
+     * Same as the threshold of {@link StopPlaceRepository#findNearbyStopPlace(Envelope, String, StopTypeEnumeration)}
+     */
+    private static final float NAME_SIMILARITY_THRESHOLD = 0.6f;
+
+    private final StopPlaceRepository stopPlaceRepository;
+
+    @Autowired
+    public NearbyStopPlaceIndex(StopPlaceRepository stopPlaceRepository) {
+        this.stopPlaceRepository = stopPlaceRepository;
+    }
+
+    /**
+     * Load the current stop places around the incoming stop places, replacing stop places loaded earlier in the transaction.
+     * The index is discarded when the current transaction completes.
+     */
+    public void load(Collection<StopPlace> incomingStopPlaces) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            logger.warn("Cannot load nearby stop places without a transaction");
+            return;
+        }
+
+        Envelope envelope = new Envelope();
+        incomingStopPlaces.stream()
+                .filter(Objects::nonNull)
+                .filter(StopPlace::hasCoordinates)
+                .forEach(stopPlace -> envelope.expandToInclude(stopPlace.getCentroid().getCoordinate()));
+
+        StopPlaces stopPlaces = bindStopPlaces();
+        if (envelope.isNull()) {
+            stopPlaces.clear();
+            return;
+        }
+        envelope.expandBy(LOAD_BUFFER);
+
+        List<StopPlaceLocation> locations = stopPlaceRepository.findStopPlaceLocations(envelope, Instant.now());
+        stopPlaces.clear();
+        stopPlaces.envelope = envelope;
+        locations.forEach(location -> stopPlaces.add(new IndexedStopPlace(location.netexId(), location.x(), location.y(),
+                location.stopPlaceType(), location.name(), TrigramSimilarity.trigrams(location.name()))));
+
+        logger.info("Loaded {} nearby stop places for {} incoming stop places within {}", locations.size(), incomingStopPlaces.size(), envelope);
+    }
+
+    /**
+     * @return true if nearby stop places within the envelope can be found from the index in the current transaction
+     */
+    public boolean covers(Envelope envelope) {
+        StopPlaces stopPlaces = currentStopPlaces();
+        return stopPlaces != null && stopPlaces.envelope != null && stopPlaces.envelope.contains(envelope);
+    }
+
+    /**
+     * @return netex ID of the stop place of the type within the envelope, with the most similar name if similar enough, or null
+     */
+    public String findNearbyStopPlace(Envelope envelope, String name, StopTypeEnumeration stopTypeEnumeration) {
+        if (name == null) {
+            return null;
+        }
+        Set<String> trigrams = TrigramSimilarity.trigrams(name);
+
+        IndexedStopPlace mostSimilar = null;
+        float highestSimilarity = NAME_SIMILARITY_THRESHOLD;
+        for (IndexedStopPlace stopPlace : requireCovering(envelope).within(envelope)) {
+            if (stopPlace.stopPlaceType() != stopTypeEnumeration) {
+                continue;
+            }
+            float similarity = TrigramSimilarity.similarity(trigrams, stopPlace.trigrams());
+            if (similarity > highestSimilarity
+                    || (similarity == highestSimilarity && mostSimilar != null && stopPlace.netexId().compareTo(mostSimilar.netexId()) < 0)) {
+                mostSimilar = stopPlace;
+                highestSimilarity = similarity;
+            }
+        }
+        return mostSimilar == null ? null : mostSimilar.netexId();
+    }
+
+    /**
+     * @return netex ID of a stop place with the same name within the envelope, or null
+     */
+    public String findNearbyStopPlace(Envelope envelope, String name) {
+        return requireCovering(envelope).within(envelope).stream()
+                .filter(stopPlace -> name != null && name.equals(stopPlace.name()))
+                .map(IndexedStopPlace::netexId)
+                .sorted()
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @return netex IDs of stop places of the type within the envelope
+     */
+    public List<String> findNearbyStopPlace(Envelope envelope, StopTypeEnumeration stopTypeEnumeration) {
+        return requireCovering(envelope).within(envelope).stream()
+                .filter(stopPlace -> stopPlace.stopPlaceType() == stopTypeEnumeration)
+                .map(IndexedStopPlace::netexId)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Update the index with a saved stop place and its children, if loaded in the current transaction.
+     * The update is undone if the transaction it is made in is rolled back.
+     * <p>
+     * Validity is decided like in {@link StopPlaceRepository#findStopPlaceLocations(Envelope, Instant)}:
+     * a stop place with a parent is valid when the parent is valid, and other stop places when they are valid themselves.
+     */
+    public void update(StopPlace savedStopPlace) {
+        StopPlaces stopPlaces = currentStopPlaces();
+        if (stopPlaces == null || savedStopPlace.getNetexId() == null) {
+            return;
+        }
+
+        UndoOnRollback undo = undoOnRollback(stopPlaces);
+        boolean valid = isValidAt(validityOf(savedStopPlace), Instant.now());
+        update(stopPlaces, undo, savedStopPlace, valid);
+        if (savedStopPlace.getChildren() != null) {
+            savedStopPlace.getChildren().stream()
+                    .filter(child -> child.getNetexId() != null)
+                    .forEach(child -> update(stopPlaces, undo, child, valid));
+        }
+    }
+
+    private void update(StopPlaces stopPlaces, UndoOnRollback undo, StopPlace stopPlace, boolean valid) {
+        undo.remember(stopPlace.getNetexId());
+        stopPlaces.remove(stopPlace.getNetexId());
+        if (valid && stopPlace.hasCoordinates()) {
+            String name = stopPlace.getName() == null ? null : stopPlace.getName().getValue();
+            stopPlaces.add(new IndexedStopPlace(stopPlace.getNetexId(), stopPlace.getCentroid().getX(), stopPlace.getCentroid().getY(),
+                    stopPlace.getStopPlaceType(), name, TrigramSimilarity.trigrams(name)));
+        }
+    }
+
+    /**
+     * The index is bound to the transaction it was loaded in, but is also seen by inner transactions on the same thread.
+     * Each transaction that updates the index gets its own undo, registered with the synchronizations of that transaction.
+     */
+    private UndoOnRollback undoOnRollback(StopPlaces stopPlaces) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof UndoOnRollback undo && undo.stopPlaces == stopPlaces) {
+                return undo;
+            }
+        }
+        UndoOnRollback undo = new UndoOnRollback(stopPlaces);
+        TransactionSynchronizationManager.registerSynchronization(undo);
+        return undo;
+    }
+
+    /**
+     * @return validity of the parent of the stop place if it has one, otherwise validity of the stop place
+     */
+    private ValidBetween validityOf(StopPlace stopPlace) {
+        SiteRefStructure parentSiteRef = stopPlace.getParentSiteRef();
+        if (parentSiteRef != null && parentSiteRef.getRef() != null && parentSiteRef.getVersion() != null) {
+            Long parentVersion = Longs.tryParse(parentSiteRef.getVersion());
+            StopPlace parent = parentVersion == null ? null : stopPlaceRepository.findFirstByNetexIdAndVersion(parentSiteRef.getRef(), parentVersion);
+            if (parent != null) {
+                return parent.getValidBetween();
+            }
+        }
+        return stopPlace.getValidBetween();
+    }
+
+    /**
+     * Same as {@code org.rutebanken.tiamat.repository.StopPlaceRepositoryImpl#SQL_STOP_PLACE_OR_PARENT_IS_VALID_AT_POINT_IN_TIME} for the chosen validity.
+     */
+    static boolean isValidAt(ValidBetween validBetween, Instant pointInTime) {
+        return validBetween == null
+                || ((validBetween.getFromDate() == null || !validBetween.getFromDate().isAfter(pointInTime))
+                && (validBetween.getToDate() == null || validBetween.getToDate().isAfter(pointInTime)));
+    }
+
+    private StopPlaces requireCovering(Envelope envelope) {
+        if (!covers(envelope)) {
+            throw new IllegalStateException("Nearby stop places are not loaded for envelope " + envelope);
+        }
+        return currentStopPlaces();
+    }
+
+    private StopPlaces currentStopPlaces() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        return (StopPlaces) TransactionSynchronizationManager.getResource(this);
+    }
+
+    /**
+     * Bind stop places to the current transaction. They are discarded when it completes.
+     */
+    private StopPlaces bindStopPlaces() {
+        StopPlaces stopPlaces = currentStopPlaces();
+        if (stopPlaces != null) {
+            return stopPlaces;
+        }
+
+        StopPlaces newStopPlaces = new StopPlaces();
+        TransactionSynchronizationManager.bindResource(this, newStopPlaces);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(NearbyStopPlaceIndex.this);
+            }
+        });
+        return newStopPlaces;
+    }
+
+    /**
+     * @param trigrams of the name, computed once
+     */
+    private record IndexedStopPlace(String netexId, double x, double y, StopTypeEnumeration stopPlaceType, String name,
+                                    Set<String> trigrams) {
+
+        /**
+         * Like ST_Within, points on the boundary are not within the envelope.
+         */
+        boolean isWithin(Envelope envelope) {
+            return x > envelope.getMinX() && x < envelope.getMaxX() && y > envelope.getMinY() && y < envelope.getMaxY();
+        }
+    }
+
+    /**
+     * Stop places as they were before the first update in a transaction, restored if the transaction is rolled back.
+     */
+    private static class UndoOnRollback implements TransactionSynchronization {
+
+        private final StopPlaces stopPlaces;
+
+        /**
+         * Null values for stop places that were not in the index.
+         */
+        private final Map<String, IndexedStopPlace> previous = new HashMap<>();
+
+        private UndoOnRollback(StopPlaces stopPlaces) {
+            this.stopPlaces = stopPlaces;
+        }
+
+        private void remember(String netexId) {
+            if (!previous.containsKey(netexId)) {
+                previous.put(netexId, stopPlaces.byNetexId.get(netexId));
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status != STATUS_ROLLED_BACK) {
+                return;
+            }
+            previous.forEach((netexId, stopPlace) -> {
+                stopPlaces.remove(netexId);
+                if (stopPlace != null) {
+                    stopPlaces.add(stopPlace);
+                }
+            });
+            logger.debug("Undid updates of {} stop places in the index after rollback", previous.size());
+        }
+    }
+
+    /**
+     * Only used by the thread of the transaction it is bound to.
+     */
+    private static class StopPlaces {
+
+        private Envelope envelope;
+
+        private final Map<String, IndexedStopPlace> byNetexId = new HashMap<>();
+
+        private final Map<Long, List<IndexedStopPlace>> cells = new HashMap<>();
+
+        private void add(IndexedStopPlace stopPlace) {
+            remove(stopPlace.netexId());
+            byNetexId.put(stopPlace.netexId(), stopPlace);
+            cells.computeIfAbsent(cell(cellIndex(stopPlace.x()), cellIndex(stopPlace.y())), cell -> new ArrayList<>()).add(stopPlace);
+        }
+
+        private void remove(String netexId) {
+            IndexedStopPlace removed = byNetexId.remove(netexId);
+            if (removed != null) {
+                long cell = cell(cellIndex(removed.x()), cellIndex(removed.y()));
+                List<IndexedStopPlace> cellStopPlaces = cells.get(cell);
+                cellStopPlaces.removeIf(stopPlace -> stopPlace == removed);
+                if (cellStopPlaces.isEmpty()) {
+                    cells.remove(cell);
+                }
+            }
+        }
+
+        private List<IndexedStopPlace> within(Envelope envelope) {
+            List<IndexedStopPlace> within = new ArrayList<>();
+            for (long x = cellIndex(envelope.getMinX()); x <= cellIndex(envelope.getMaxX()); x++) {
+                for (long y = cellIndex(envelope.getMinY()); y <= cellIndex(envelope.getMaxY()); y++) {
+                    List<IndexedStopPlace> cellStopPlaces = cells.get(cell(x, y));
+                    if (cellStopPlaces != null) {
+                        cellStopPlaces.stream()
+                                .filter(stopPlace -> stopPlace.isWithin(envelope))
+                                .forEach(within::add);
+                    }
+                }
+            }
+            return within;
+        }
+
+        private void clear() {
+            envelope = null;
+            byNetexId.clear();
+            cells.clear();
+        }
+
+        private static long cellIndex(double degrees) {
+            return (long) Math.floor(degrees / CELL_SIZE);
+        }
+
+        private static long cell(long x, long y) {
+            return (x << 32) ^ (y & 0xffffffffL);
+        }
+    }
+}
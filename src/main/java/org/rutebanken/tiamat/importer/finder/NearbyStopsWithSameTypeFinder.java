@@ -60,6 +60,7 @@ public class NearbyStopsWithSameTypeFinder {
 
     private final StopPlaceRepository stopPlaceRepository;
     private final EnvelopeCreator envelopeCreator;
+    private final NearbyStopPlaceIndex nearbyStopPlaceIndex;
 
     private final ConcurrentHashMap<StopTypeEnumeration, Integer> typesLimitMap;
 
@@ -67,15 +68,18 @@ public class NearbyStopsWithSameTypeFinder {
      *
      * @param stopPlaceRepository
      * @param envelopeCreator
+     * @param nearbyStopPlaceIndex
      * @param limits map with limits per value of StopTypeEnumeration. In meters.
      */
     @Autowired
     private NearbyStopsWithSameTypeFinder(StopPlaceRepository stopPlaceRepository,
                                           EnvelopeCreator envelopeCreator,
+                                          NearbyStopPlaceIndex nearbyStopPlaceIndex,
                                           @Value("#{${nearbyStopsWithSameTypeFinder.limits:{airport:'3000',railStation:'1000'}}}") Map<String, Integer> limits) {
 
         this.envelopeCreator = envelopeCreator;
         this.stopPlaceRepository = stopPlaceRepository;
+        this.nearbyStopPlaceIndex = nearbyStopPlaceIndex;
 
         typesLimitMap = new ConcurrentHashMap<>();
 
@@ -91,8 +95,8 @@ public class NearbyStopsWithSameTypeFinder {
         logger.info("Limits configured: {}", typesLimitMap);
     }
 
-    public NearbyStopsWithSameTypeFinder(StopPlaceRepository stopPlaceRepository, EnvelopeCreator envelopeCreator) {
-        this(stopPlaceRepository, envelopeCreator, DEFAULT_LIMITS);
+    public NearbyStopsWithSameTypeFinder(StopPlaceRepository stopPlaceRepository, EnvelopeCreator envelopeCreator, NearbyStopPlaceIndex nearbyStopPlaceIndex) {
+        this(stopPlaceRepository, envelopeCreator, nearbyStopPlaceIndex, DEFAULT_LIMITS);
     }
 
     private int getLimit(StopPlace stopPlace) {
@@ -118,7 +122,9 @@ public class NearbyStopsWithSameTypeFinder {
             int limit = getLimit(stopPlace);
 
             Envelope envelope = envelopeCreator.createFromPoint(stopPlace.getCentroid(), limit);
-            List<String> stopPlacesNetexIds = stopPlaceRepository.findNearbyStopPlace(envelope, stopPlace.getStopPlaceType());
+            List<String> stopPlacesNetexIds = nearbyStopPlaceIndex.covers(envelope)
+                    ? nearbyStopPlaceIndex.findNearbyStopPlace(envelope, stopPlace.getStopPlaceType())
+                    : stopPlaceRepository.findNearbyStopPlace(envelope, stopPlace.getStopPlaceType());
             if(!stopPlacesNetexIds.isEmpty()) {
                 logger.debug("Found {} nearby matches on type with stop place ID", stopPlacesNetexIds.size());
 
@@ -15,6 +15,8 @@
 
 package org.rutebanken.tiamat.importer.finder;
 
+import com.google.common.collect.Iterables;
+import org.rutebanken.tiamat.model.Quay;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.netex.id.NetexIdHelper;
 import org.rutebanken.tiamat.repository.QuayRepository;
@@ -26,8 +28,12 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Function;
 
@@ -35,12 +41,18 @@ import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 @Component
 public class StopPlaceByIdFinder {
 
     private static final Logger logger = LoggerFactory.getLogger(StopPlaceByIdFinder.class);
 
+    /**
+     * Number of netex IDs resolved per query when finding stop places in bulk.
+     */
+    private static final int BATCH_SIZE = 1000;
+
     @Autowired
     private StopPlaceRepository stopPlaceRepository;
 
@@ -80,6 +92,88 @@ public class StopPlaceByIdFinder {
                 .collect(collectingAndThen(toCollection(() -> new TreeSet<>(comparing(org.rutebanken.tiamat.model.StopPlace::getNetexId))), ArrayList::new));
     }
 
+    /**
+     * Find existing stop places for all incoming stop places, like {@link #findStopPlace(StopPlace)} does for each of them.
+     * Original IDs, quay original IDs, netex IDs and quay netex IDs are resolved with a few queries for all stops.
+     * Must be called in a transaction, for the preloaded original IDs to be used.
+     *
+     * @return the existing stop places for each incoming stop place, in the same order
+     */
+    public List<List<StopPlace>> findStopPlaces(List<StopPlace> incomingStopPlaces) {
+        stopPlaceFromOriginalIdFinder.preload(incomingStopPlaces);
+        stopPlaceByQuayOriginalIdFinder.preload(incomingStopPlaces);
+
+        Set<String> quayNetexIds = new HashSet<>();
+        Set<String> stopPlaceNetexIds = new HashSet<>();
+        List<List<String>> quayOriginalIdMatches = new ArrayList<>(incomingStopPlaces.size());
+
+        for (StopPlace incomingStopPlace : incomingStopPlaces) {
+            boolean hasQuays = hasQuays(incomingStopPlace);
+            List<String> matches = stopPlaceByQuayOriginalIdFinder.findStopPlaceNetexIds(incomingStopPlace, hasQuays);
+            quayOriginalIdMatches.add(matches);
+            stopPlaceNetexIds.addAll(matches);
+
+            if (isNsrId(incomingStopPlace.getNetexId())) {
+                stopPlaceNetexIds.add(incomingStopPlace.getNetexId());
+            }
+            if (hasQuays) {
+                incomingStopPlace.getQuays().stream()
+                        .map(Quay::getNetexId)
+                        .filter(this::isNsrId)
+                        .forEach(quayNetexIds::add);
+            }
+        }
+
+        Map<String, StopPlace> newestVersions = new HashMap<>();
+        for (List<String> batch : Iterables.partition(stopPlaceNetexIds, BATCH_SIZE)) {
+            stopPlaceRepository.findNewestVersions(batch).forEach(stopPlace -> newestVersions.put(stopPlace.getNetexId(), stopPlace));
+        }
+
+        Map<String, StopPlace> stopPlacesByQuayNetexId = new HashMap<>();
+        for (List<String> batch : Iterables.partition(quayNetexIds, BATCH_SIZE)) {
+            Map<String, Long> stopPlaceIds = stopPlaceRepository.findStopPlaceIdsByNewestQuays(batch);
+            Map<Long, StopPlace> stopPlacesById = stopPlaceRepository.findAllById(new HashSet<>(stopPlaceIds.values())).stream()
+                    .collect(toMap(StopPlace::getId, Function.identity()));
+            stopPlaceIds.forEach((quayNetexId, stopPlaceId) -> stopPlacesByQuayNetexId.put(quayNetexId, stopPlacesById.get(stopPlaceId)));
+        }
+
+        logger.info("Resolved IDs of {} incoming stop places. Found {} stop places from netex IDs or quay original IDs, and {} from quay netex IDs",
+                incomingStopPlaces.size(), newestVersions.size(), stopPlacesByQuayNetexId.size());
+
+        List<List<StopPlace>> existingStopPlaces = new ArrayList<>(incomingStopPlaces.size());
+        for (int i = 0; i < incomingStopPlaces.size(); i++) {
+            StopPlace incomingStopPlace = incomingStopPlaces.get(i);
+            List<StopPlace> found = new ArrayList<>();
+
+            // Same order as the find functions used for single stop places
+            quayOriginalIdMatches.get(i).stream().map(newestVersions::get).forEach(found::add);
+            found.addAll(findByStopPlaceOriginalId(incomingStopPlace));
+            if (isNsrId(incomingStopPlace.getNetexId())) {
+                found.add(newestVersions.get(incomingStopPlace.getNetexId()));
+            }
+            if (hasQuays(incomingStopPlace)) {
+                incomingStopPlace.getQuays().stream()
+                        .map(Quay::getNetexId)
+                        .filter(this::isNsrId)
+                        .map(stopPlacesByQuayNetexId::get)
+                        .forEach(found::add);
+            }
+
+            existingStopPlaces.add(found.stream()
+                    .filter(Objects::nonNull)
+                    .collect(collectingAndThen(toCollection(() -> new TreeSet<>(comparing(StopPlace::getNetexId))), ArrayList::new)));
+        }
+        return existingStopPlaces;
+    }
+
+    private boolean hasQuays(StopPlace incomingStopPlace) {
+        return incomingStopPlace.getQuays() != null && !incomingStopPlace.getQuays().isEmpty();
+    }
+
+    private boolean isNsrId(String netexId) {
+        return netexId != null && netexIdHelper.isNsrId(netexId);
+    }
+
     public List<StopPlace> findByQuayNetexId(StopPlace incomingStopPlace, boolean hasQuays) {
         if (hasQuays) {
             logger.debug("Looking for stop by quay netex ID");
@@ -17,6 +17,7 @@ package org.rutebanken.tiamat.importer.finder;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.netex.id.NetexIdHelper;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
@@ -27,17 +28,28 @@ import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 @Component
 public class StopPlaceByQuayOriginalIdFinder {
 
     private static final Logger logger = LoggerFactory.getLogger(StopPlaceByQuayOriginalIdFinder.class);
 
+    /**
+     * Number of quay original ID lookup values resolved per query when preloading.
+     */
+    private static final int PRELOAD_BATCH_SIZE = 1000;
+
     private Cache<String, Optional<String>> originalQuayIdCache = CacheBuilder.newBuilder()
             .maximumSize(300000)
             .build();
@@ -50,6 +62,16 @@ public class StopPlaceByQuayOriginalIdFinder {
     private NetexIdHelper netexIdHelper;
 
     public List<StopPlace> find(StopPlace incomingStopPlace, boolean hasQuays) {
+        return findStopPlaceNetexIds(incomingStopPlace, hasQuays).stream()
+                .map(stopPlaceRepository::findFirstByNetexIdOrderByVersionDesc)
+                .filter(stopPlace -> stopPlace != null)
+                .collect(toList());
+    }
+
+    /**
+     * @return netex IDs of the stop places having quays with the original IDs of the incoming quays
+     */
+    public List<String> findStopPlaceNetexIds(StopPlace incomingStopPlace, boolean hasQuays) {
         if (hasQuays) {
             return incomingStopPlace.getQuays().stream()
                     .flatMap(quay -> quay.getOriginalIds().stream())
@@ -59,13 +81,48 @@ public class StopPlaceByQuayOriginalIdFinder {
                     .filter(Optional::isPresent)
                     .map(Optional::get)
                     .peek(stopPlaceNetexId -> logger.debug("Found stop place {}", stopPlaceNetexId))
-                    .map(stopPlaceRepository::findFirstByNetexIdOrderByVersionDesc)
-                    .filter(stopPlace -> stopPlace != null)
                     .collect(toList());
         }
         return new ArrayList<>();
     }
 
+    /**
+     * Resolve the quay original IDs of all incoming stop places with a few queries, and put the results in the cache.
+     * Original IDs without matches are cached as well, like when they are looked up one by one.
+     */
+    public void preload(Collection<StopPlace> incomingStopPlaces) {
+        Set<String> lookupValues = incomingStopPlaces.stream()
+                .filter(stopPlace -> stopPlace.getQuays() != null)
+                .flatMap(stopPlace -> stopPlace.getQuays().stream())
+                .flatMap(quay -> quay.getOriginalIds().stream())
+                .map(this::extractNumericValueIfPossible)
+                .filter(lookupValue -> originalQuayIdCache.getIfPresent(lookupValue) == null)
+                .collect(toSet());
+
+        if (lookupValues.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        int found = 0;
+        for (List<String> batch : Iterables.partition(lookupValues, PRELOAD_BATCH_SIZE)) {
+            Map<String, Set<String>> matches = stopPlaceRepository.findStopPlacesByQuayOriginalIds(new HashSet<>(batch), now);
+            for (String lookupValue : batch) {
+                Set<String> stopPlaceNetexIds = matches.get(lookupValue);
+                if (stopPlaceNetexIds == null || stopPlaceNetexIds.isEmpty()) {
+                    originalQuayIdCache.put(lookupValue, Optional.empty());
+                    continue;
+                }
+                if (stopPlaceNetexIds.size() > 1) {
+                    logger.warn("Found more than one stop place from quay imported ID: {} - {}", lookupValue, stopPlaceNetexIds);
+                }
+                originalQuayIdCache.put(lookupValue, Optional.of(new TreeSet<>(stopPlaceNetexIds).first()));
+                found++;
+            }
+        }
+        logger.info("Preloaded {} quay original ID lookup values. Found stop places for {} of them", lookupValues.size(), found);
+    }
+
     private String extractNumericValueIfPossible(String quayOriginalId) {
         try {
             // Extract last part of ID. Remove zero padding. Fall back to string ID.
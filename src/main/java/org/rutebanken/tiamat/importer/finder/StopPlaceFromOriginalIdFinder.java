@@ -17,6 +17,7 @@ package org.rutebanken.tiamat.importer.finder;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.rutebanken.tiamat.general.PeriodicCacheLogger;
@@ -28,8 +29,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -40,12 +49,19 @@ import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.ORIGINAL_
 /**
  * Helper class to find stop places based on saved original ID key.
  * It uses a guava cache to avoid expensive calls to the database.
+ * <p>
+ * The original IDs of a whole import can be resolved up front with {@link #preload(Collection)}.
  */
 @Component
 public class StopPlaceFromOriginalIdFinder {
 
     private static final Logger logger = LoggerFactory.getLogger(StopPlaceFromOriginalIdFinder.class);
 
+    /**
+     * Number of original ID lookup values, and stop places, resolved per query when preloading.
+     */
+    private static final int PRELOAD_BATCH_SIZE = 1000;
+
     private StopPlaceRepository stopPlaceRepository;
 
     /**
@@ -90,22 +106,80 @@ public class StopPlaceFromOriginalIdFinder {
             return;
         }
 
-        for(String originalId : stopPlace.getOrCreateValues(ORIGINAL_ID_KEY)) {
+        Set<String> lookupValues = lookupValues(stopPlace.getOrCreateValues(ORIGINAL_ID_KEY));
 
-            String cacheKey = keyValKey(ORIGINAL_ID_KEY, originalId);
+        for(String lookupValue : lookupValues) {
 
-            Set<String> cachedValue = keyValueCache.getIfPresent(cacheKey);
+            String cacheKey = keyValKey(ORIGINAL_ID_KEY, lookupValue);
 
-            if(cachedValue != null && !cachedValue.isEmpty()) {
+            // Replace instead of modifying the cached set, which might be read by other threads
+            Set<String> netexIds = new HashSet<>();
+            Set<String> cachedValue = keyValueCache.getIfPresent(cacheKey);
+            if(cachedValue != null) {
                 logger.debug("Found existing value cached.");
-                cachedValue.add(originalId);
-                keyValueCache.put(cacheKey, cachedValue);
-            } else {
-                keyValueCache.put(cacheKey, Sets.newHashSet(originalId));
+                netexIds.addAll(cachedValue);
             }
+            netexIds.add(stopPlace.getNetexId());
+            keyValueCache.put(cacheKey, netexIds);
+        }
+
+        PreloadedStopPlaces preloaded = currentPreload();
+        if (preloaded != null) {
+            preloaded.newestVersions.put(stopPlace.getNetexId(), stopPlace);
+            lookupValues.forEach(lookupValue -> preloaded.netexIdsByLookupValue
+                    .computeIfAbsent(lookupValue, v -> new HashSet<>())
+                    .add(stopPlace.getNetexId()));
         }
     }
 
+    /**
+     * Resolve the original IDs of all incoming stop places with a few queries, before importing them one by one.
+     * The matches, original IDs without matches and the newest versions of the matching stop places are kept until the current transaction completes.
+     * Finding stop places from preloaded original IDs does not query the database.
+     * Matches are also put in the cache.
+     */
+    public void preload(Collection<StopPlace> incomingStopPlaces) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            logger.warn("Cannot preload original IDs without a transaction");
+            return;
+        }
+
+        Set<String> lookupValues = lookupValues(incomingStopPlaces.stream()
+                .filter(Objects::nonNull)
+                .map(stopPlace -> stopPlace.getKeyValues().get(ORIGINAL_ID_KEY))
+                .filter(Objects::nonNull)
+                .flatMap(originalIds -> originalIds.getItems().stream())
+                .collect(Collectors.toSet()));
+
+        if (lookupValues.isEmpty()) {
+            return;
+        }
+
+        PreloadedStopPlaces preloaded = bindPreload();
+        Set<String> matchingNetexIds = new HashSet<>();
+
+        for (List<String> batch : Iterables.partition(lookupValues, PRELOAD_BATCH_SIZE)) {
+            Map<String, Set<String>> matches = stopPlaceRepository.findStopPlacesByOriginalIds(ORIGINAL_ID_KEY, new HashSet<>(batch), Instant.now());
+            for (String lookupValue : batch) {
+                Set<String> netexIds = new HashSet<>(matches.getOrDefault(lookupValue, Set.of()));
+                preloaded.netexIdsByLookupValue.put(lookupValue, netexIds);
+                if (!netexIds.isEmpty()) {
+                    keyValueCache.put(keyValKey(ORIGINAL_ID_KEY, lookupValue), new HashSet<>(netexIds));
+                    matchingNetexIds.addAll(netexIds);
+                }
+            }
+        }
+
+        for (List<String> batch : Iterables.partition(matchingNetexIds, PRELOAD_BATCH_SIZE)) {
+            stopPlaceRepository.findNewestVersions(batch)
+                    .forEach(stopPlace -> preloaded.newestVersions.put(stopPlace.getNetexId(), stopPlace));
+        }
+
+        logger.info("Preloaded {} original ID lookup values for {} incoming stop places. Found {} matching stop places",
+                lookupValues.size(), incomingStopPlaces.size(), matchingNetexIds.size());
+    }
+
     /**
      * If the postfix is numeric search for
      * A: colon prefixed numeric value
@@ -149,20 +223,30 @@ public class StopPlaceFromOriginalIdFinder {
         return ":" + postfix;
     }
 
-    private List<StopPlace> findByKeyValue(Set<String> originalIds) {
-
-        Set<String> zeroPaddedOrUnchangedOriginalIds = originalIds.stream()
+    private Set<String> lookupValues(Set<String> originalIds) {
+        return originalIds.stream()
                 .flatMap(this::zeroStrippedPostfixAndUnchanged)
                 .collect(Collectors.toSet());
+    }
+
+    private List<StopPlace> findByKeyValue(Set<String> originalIds) {
+
+        Set<String> zeroPaddedOrUnchangedOriginalIds = lookupValues(originalIds);
+
+        PreloadedStopPlaces preloaded = currentPreload();
 
         for (String zeroPaddedOrUnchangedOriginalId : zeroPaddedOrUnchangedOriginalIds) {
             String cacheKey = keyValKey(ORIGINAL_ID_KEY, zeroPaddedOrUnchangedOriginalId);
-            Set<String> matchingStopPlaceNetexIds = keyValueCache.getIfPresent(cacheKey);
+            Set<String> matchingStopPlaceNetexIds = preloaded == null ? null : preloaded.netexIdsByLookupValue.get(zeroPaddedOrUnchangedOriginalId);
+            if (matchingStopPlaceNetexIds == null || matchingStopPlaceNetexIds.isEmpty()) {
+                matchingStopPlaceNetexIds = keyValueCache.getIfPresent(cacheKey);
+            }
             if (matchingStopPlaceNetexIds != null) {
                 if (!matchingStopPlaceNetexIds.isEmpty()) {
                     List<StopPlace> stopPlaces = matchingStopPlaceNetexIds.stream()
                             .peek(matchingStopPlaceNetexId -> logger.debug("Cache match. Key {}, stop place id: {}", cacheKey, matchingStopPlaceNetexId))
-                            .map(matchingStopPlaceNetexId -> stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(matchingStopPlaceNetexId))
+                            .map(this::findNewestVersion)
+                            .filter(Objects::nonNull)
                             .collect(Collectors.toList());
 
                     if(!stopPlaces.isEmpty()) {
@@ -172,6 +256,11 @@ public class StopPlaceFromOriginalIdFinder {
             }
         }
 
+        if (preloaded != null && preloaded.netexIdsByLookupValue.keySet().containsAll(zeroPaddedOrUnchangedOriginalIds)) {
+            logger.debug("No stop places found for preloaded original IDs: {}", zeroPaddedOrUnchangedOriginalIds);
+            return Lists.newArrayList();
+        }
+
         logger.debug("Looking for stop places from original IDs: {}", zeroPaddedOrUnchangedOriginalIds);
 
         // No cache match
@@ -179,10 +268,60 @@ public class StopPlaceFromOriginalIdFinder {
         return stopPlaceNetexIds
                 .stream()
                 .map(stopPlaceNetexId -> stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(stopPlaceNetexId))
+                .filter(Objects::nonNull)
                 .peek(this::update)
                 .collect(Collectors.toList());
     }
 
+    private StopPlace findNewestVersion(String stopPlaceNetexId) {
+        PreloadedStopPlaces preloaded = currentPreload();
+        if (preloaded != null) {
+            StopPlace stopPlace = preloaded.newestVersions.get(stopPlaceNetexId);
+            if (stopPlace != null) {
+                return stopPlace;
+            }
+        }
+        return stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(stopPlaceNetexId);
+    }
+
+    private PreloadedStopPlaces currentPreload() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        return (PreloadedStopPlaces) TransactionSynchronizationManager.getResource(this);
+    }
+
+    /**
+     * Bind preloaded stop places to the current transaction. They are discarded when it completes.
+     */
+    private PreloadedStopPlaces bindPreload() {
+        PreloadedStopPlaces preloaded = currentPreload();
+        if (preloaded != null) {
+            return preloaded;
+        }
+
+        PreloadedStopPlaces newPreload = new PreloadedStopPlaces();
+        TransactionSynchronizationManager.bindResource(this, newPreload);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(StopPlaceFromOriginalIdFinder.this);
+            }
+        });
+        return newPreload;
+    }
+
+    /**
+     * Only used by the thread of the transaction it is bound to.
+     */
+    private static class PreloadedStopPlaces {
+        /**
+         * Empty set if the lookup value was preloaded without any match
+         */
+        private final Map<String, Set<String>> netexIdsByLookupValue = new HashMap<>();
+        private final Map<String, StopPlace> newestVersions = new HashMap<>();
+    }
+
     private String keyValKey(String key, String value) {
         return key + "-" + value;
     }
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer.finder;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Name similarity computed like the similarity function of the PostgreSQL pg_trgm extension.
+ * Names are lower cased and split into words of letters and digits.
+ * Each word is padded with two spaces before and one space after, and split into trigrams.
+ * The similarity is the number of shared trigrams divided by the number of distinct trigrams in both names.
+ * Like in PostgreSQL, it is a single precision value.
+ */
+final class TrigramSimilarity {
+
+    private TrigramSimilarity() {
+    }
+
+    static Set<String> trigrams(String name) {
+        Set<String> trigrams = new HashSet<>();
+        if (name == null) {
+            return trigrams;
+        }
+
+        int[] codePoints = name.toLowerCase(Locale.ROOT).codePoints().toArray();
+        int wordStart = -1;
+        for (int i = 0; i <= codePoints.length; i++) {
+            boolean wordCharacter = i < codePoints.length && Character.isLetterOrDigit(codePoints[i]);
+            if (wordCharacter && wordStart < 0) {
+                wordStart = i;
+            } else if (!wordCharacter && wordStart >= 0) {
+                addWordTrigrams(codePoints, wordStart, i, trigrams);
+                wordStart = -1;
+            }
+        }
+        return trigrams;
+    }
+
+    static float similarity(Set<String> trigrams, Set<String> otherTrigrams) {
+        if (trigrams.isEmpty() || otherTrigrams.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> smaller = trigrams.size() <= otherTrigrams.size() ? trigrams : otherTrigrams;
+        Set<String> larger = smaller == trigrams ? otherTrigrams : trigrams;
+        int shared = 0;
+        for (String trigram : smaller) {
+            if (larger.contains(trigram)) {
+                shared++;
+            }
+        }
+        return (float) shared / (trigrams.size() + otherTrigrams.size() - shared);
+    }
+
+    private static void addWordTrigrams(int[] codePoints, int start, int end, Set<String> trigrams) {
+        int[] padded = new int[end - start + 3];
+        padded[0] = ' ';
+        padded[1] = ' ';
+        System.arraycopy(codePoints, start, padded, 2, end - start);
+        padded[padded.length - 1] = ' ';
+
+        for (int i = 0; i + 3 <= padded.length; i++) {
+            trigrams.add(new String(padded, i, 3));
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.rutebanken.tiamat.importer.initial;
 import org.rutebanken.tiamat.importer.StopPlaceTopographicPlaceReferenceUpdater;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.versioning.save.BulkSaveMode;
 import org.rutebanken.tiamat.versioning.save.StopPlaceVersionedSaverService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +30,6 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.util.stream.Collectors.toList;
-
 @Component
 @Transactional
 public class ParallelInitialStopPlaceImporter {
@@ -46,6 +45,9 @@ public class ParallelInitialStopPlaceImporter {
     @Autowired
     private NetexMapper netexMapper;
 
+    @Autowired
+    private BulkSaveMode bulkSaveMode;
+
     @Value("${changelog.publish.enabled:false}")
     private boolean publishChangelog;
 
@@ -55,20 +57,18 @@ public class ParallelInitialStopPlaceImporter {
             throw new IllegalStateException("Initial import not allowed with changelog publishing enabled! Set changelog.publish.enabled=false");
         }
 
-        return tiamatStops.parallelStream()
-                .map(stopPlace -> {
+        // New stop places do not refer to each other, so they are saved in parallel chunks with batched inserts
+        return bulkSaveMode.saveInChunkTransactions(tiamatStops, stopPlace -> {
 
-                    if(stopPlace.getTariffZones() != null) {
-                        stopPlace.getTariffZones().forEach(tariffZoneRef -> tariffZoneRef.setVersion(null));
-                    }
+            if(stopPlace.getTariffZones() != null) {
+                stopPlace.getTariffZones().forEach(tariffZoneRef -> tariffZoneRef.setVersion(null));
+            }
 
-                    return stopPlace;
-                })
-                .peek(stopPlace -> stopPlaceTopographicPlaceReferenceUpdater.updateTopographicReference(stopPlace))
-                .map(stopPlace -> stopPlaceVersionedSaverService.saveNewVersion(stopPlace))
-                .peek(stopPlace -> stopPlacesCreated.incrementAndGet())
-                .map(stopPlace -> netexMapper.mapToNetexModel(stopPlace))
-                .collect(toList());
+            stopPlaceTopographicPlaceReferenceUpdater.updateTopographicReference(stopPlace);
+            StopPlace savedStopPlace = stopPlaceVersionedSaverService.saveNewVersion(stopPlace);
+            stopPlacesCreated.incrementAndGet();
+            return netexMapper.mapToNetexModel(savedStopPlace);
+        });
     }
 
 }
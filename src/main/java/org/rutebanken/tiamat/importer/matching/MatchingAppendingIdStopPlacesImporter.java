@@ -16,6 +16,7 @@
 package org.rutebanken.tiamat.importer.matching;
 
 import org.rutebanken.netex.model.StopPlace;
+import org.rutebanken.tiamat.importer.finder.NearbyStopPlaceIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,10 +41,15 @@ public class MatchingAppendingIdStopPlacesImporter {
     @Autowired
     private TransactionalMatchingAppendingStopPlaceImporter transactionalMatchingAppendingStopPlaceImporter;
 
+    @Autowired
+    private NearbyStopPlaceIndex nearbyStopPlaceIndex;
+
     public List<StopPlace> importStopPlaces(List<org.rutebanken.tiamat.model.StopPlace> tiamatStops, AtomicInteger stopPlacesCreatedOrUpdated) {
 
         List<StopPlace> matchedStopPlaces = new ArrayList<>();
 
+        nearbyStopPlaceIndex.load(tiamatStops);
+
         tiamatStops.forEach(incomingStopPlace -> {
 
             transactionalMatchingAppendingStopPlaceImporter.findAppendAndAdd(incomingStopPlace, matchedStopPlaces, stopPlacesCreatedOrUpdated);
@@ -25,7 +25,9 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -44,44 +46,45 @@ public class StopPlaceIdMatcher {
     @Autowired
     private NetexMapper netexMapper;
 
-
+    /**
+     * IDs of all incoming stops are resolved in bulk. Each matching stop place is mapped to netex once,
+     * even if it is matched by several incoming stops.
+     * Mapping is done on the calling thread, in the session of the import, and nothing is evicted from the session.
+     */
     public List<org.rutebanken.netex.model.StopPlace> matchStopPlaces(List<org.rutebanken.tiamat.model.StopPlace> tiamatStops, AtomicInteger stopPlaceMatched) {
 
-        List<org.rutebanken.netex.model.StopPlace> matchedStopPlaces = new ArrayList<>();
-
-        tiamatStops.forEach(incomingStopPlace -> {
-
-                    List<StopPlace> existingStopPlaces = stopPlaceByIdFinder.findStopPlace(incomingStopPlace);
+        List<List<StopPlace>> existingStopPlacesPerStop = stopPlaceByIdFinder.findStopPlaces(tiamatStops);
 
-                    if(existingStopPlaces.isEmpty()){
-                        logger.warn("Cannot find stop place from IDs: {}. StopPlace toString: {}.",
-                                incomingStopPlace.importedIdAndNameToString(),
-                                incomingStopPlace);
-                    }
+        Set<String> matchedKeys = new HashSet<>();
+        List<StopPlace> uniqueStopPlaces = new ArrayList<>();
 
-                    for (StopPlace stopPlaceFound : existingStopPlaces) {
-                        logger.debug("Found matching stop place {}", stopPlaceFound);
+        for (int i = 0; i < tiamatStops.size(); i++) {
+            StopPlace incomingStopPlace = tiamatStops.get(i);
+            List<StopPlace> existingStopPlaces = existingStopPlacesPerStop.get(i);
 
-                        boolean alreadyAdded = matchedStopPlaces
-                                .stream()
-                                .anyMatch(alreadyAddedStop -> alreadyAddedStop.getId().equals(stopPlaceFound.getNetexId()));
+            if (existingStopPlaces.isEmpty()) {
+                logger.warn("Cannot find stop place from IDs: {}. StopPlace toString: {}.",
+                        incomingStopPlace.importedIdAndNameToString(),
+                        incomingStopPlace);
+            }
 
-                        if (!alreadyAdded) {
-                            matchedStopPlaces.add(netexMapper.mapToNetexModel(stopPlaceFound));
-                        }
-                        stopPlaceMatched.incrementAndGet();
+            for (StopPlace stopPlaceFound : existingStopPlaces) {
+                logger.debug("Found matching stop place {}", stopPlaceFound);
 
-                    }
+                if (matchedKeys.add(stopPlaceFound.getNetexId() + "#" + stopPlaceFound.getVersion())) {
+                    uniqueStopPlaces.add(stopPlaceFound);
+                }
+                stopPlaceMatched.incrementAndGet();
+            }
+        }
 
+        logger.info("Matched {} unique stop places from {} incoming stops", uniqueStopPlaces.size(), tiamatStops.size());
 
-                }
-        );
+        List<org.rutebanken.netex.model.StopPlace> matchedStopPlaces = new ArrayList<>(uniqueStopPlaces.size());
+        for (StopPlace stopPlace : uniqueStopPlaces) {
+            matchedStopPlaces.add(netexMapper.mapToNetexModel(stopPlace));
+        }
 
         return matchedStopPlaces;
     }
-
-
-
-
-
 }
@@ -162,6 +162,7 @@ public class TransactionalMatchingAppendingStopPlaceImporter {
                 quayMerger.appendImportIds(incomingStopPlace, existingStopPlace, CREATE_NEW_QUAYS);
 
                 existingStopPlace = stopPlaceRepository.save(existingStopPlace);
+                stopPlaceRepository.updateOriginalIdLookup(existingStopPlace);
                 String netexId = incomingStopPlace.getNetexId();
 
                 matchedStopPlaces.removeIf(stopPlace -> stopPlace.getId().equals(netexId));
@@ -16,7 +16,10 @@
 package org.rutebanken.tiamat.importer.merging;
 
 import org.rutebanken.tiamat.importer.StopPlaceTopographicPlaceReferenceUpdater;
+import org.rutebanken.tiamat.importer.finder.NearbyStopPlaceIndex;
+import org.rutebanken.tiamat.importer.finder.StopPlaceFromOriginalIdFinder;
 import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.versioning.save.BulkSaveMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,28 +48,50 @@ public class TransactionalMergingStopPlacesImporter {
 
     private final StopPlaceTopographicPlaceReferenceUpdater topographicPlaceReferenceUpdater;
 
+    private final StopPlaceFromOriginalIdFinder stopPlaceFromOriginalIdFinder;
+
+    private final NearbyStopPlaceIndex nearbyStopPlaceIndex;
+
+    private final BulkSaveMode bulkSaveMode;
+
     @Autowired
-    public TransactionalMergingStopPlacesImporter(MergingStopPlaceImporter mergingStopPlaceImporter, StopPlaceTopographicPlaceReferenceUpdater topographicPlaceReferenceUpdater) {
+    public TransactionalMergingStopPlacesImporter(MergingStopPlaceImporter mergingStopPlaceImporter,
+                                                  StopPlaceTopographicPlaceReferenceUpdater topographicPlaceReferenceUpdater,
+                                                  StopPlaceFromOriginalIdFinder stopPlaceFromOriginalIdFinder,
+                                                  NearbyStopPlaceIndex nearbyStopPlaceIndex,
+                                                  BulkSaveMode bulkSaveMode) {
         this.mergingStopPlaceImporter = mergingStopPlaceImporter;
         this.topographicPlaceReferenceUpdater = topographicPlaceReferenceUpdater;
+        this.stopPlaceFromOriginalIdFinder = stopPlaceFromOriginalIdFinder;
+        this.nearbyStopPlaceIndex = nearbyStopPlaceIndex;
+        this.bulkSaveMode = bulkSaveMode;
     }
 
     public Collection<org.rutebanken.netex.model.StopPlace> importStopPlaces(List<StopPlace> stopPlaces, AtomicInteger stopPlacesCreated) {
 
-        List<org.rutebanken.netex.model.StopPlace> createdStopPlaces = stopPlaces
-                .stream()
+        // Resolve the original IDs of all stops with a few queries instead of querying for each stop
+        stopPlaceFromOriginalIdFinder.preload(stopPlaces);
+
+        // Match stop places by location, name and type in memory
+        nearbyStopPlaceIndex.load(stopPlaces);
+
+        List<StopPlace> incomingStopPlaces = stopPlaces.stream()
                 .filter(Objects::nonNull)
-                .map(stopPlace -> {
-                    org.rutebanken.netex.model.StopPlace importedStop = null;
-                    try {
-                        topographicPlaceReferenceUpdater.updateTopographicReference(stopPlace);
-                        importedStop = mergingStopPlaceImporter.importStopPlace(stopPlace);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Could not import stop place " + stopPlace, e);
-                    }
-                    stopPlacesCreated.incrementAndGet();
-                    return importedStop;
-                })
+                .collect(toList());
+
+        List<org.rutebanken.netex.model.StopPlace> importedStopPlaces = bulkSaveMode.saveInChunks(incomingStopPlaces, stopPlace -> {
+            org.rutebanken.netex.model.StopPlace importedStop = null;
+            try {
+                topographicPlaceReferenceUpdater.updateTopographicReference(stopPlace);
+                importedStop = mergingStopPlaceImporter.importStopPlace(stopPlace);
+            } catch (Exception e) {
+                throw new RuntimeException("Could not import stop place " + stopPlace, e);
+            }
+            stopPlacesCreated.incrementAndGet();
+            return importedStop;
+        });
+
+        List<org.rutebanken.netex.model.StopPlace> createdStopPlaces = importedStopPlaces.stream()
                 .filter(Objects::nonNull)
                 .collect(toList());
 
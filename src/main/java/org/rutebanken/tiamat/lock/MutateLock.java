@@ -15,16 +15,39 @@
 
 package org.rutebanken.tiamat.lock;
 
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
+import static java.util.stream.Collectors.toSet;
+
 /**
  * Prevent too long running mutations.
- * Avoid parallel mutations.
+ * Avoid parallel mutations of the same entities.
+ * <p>
+ * Locks are taken per entity, with the netex IDs of the entities the mutation changes.
+ * Stop places and quays are locked by the netex ID of their parent stop place, or of the stop place itself if it has no parent,
+ * so that mutations of a parent, its children and their quays exclude each other.
+ * The keys are locked in sorted order, so that mutations of overlapping sets of entities cannot deadlock.
+ * Mutations that only create new entities lock {@link #NEW_ENTITIES_LOCK_KEY}, so that creations wait for each other
+ * but not for mutations of existing entities.
  */
 @Component
 public class MutateLock {
@@ -38,18 +61,99 @@ public class MutateLock {
 
     private final int waitTimeoutSeconds;
     public static final String LOCK_NAME = "mutate-lock";
-    private final TimeoutMaxLeaseTimeLock timoutMaxLeaseTimeLock;
+
+    /**
+     * Key locked by mutations without IDs of existing entities.
+     */
+    public static final String NEW_ENTITIES_LOCK_KEY = "new-entities";
+    private final HazelcastInstance hazelcastInstance;
+    private final StopPlaceRepository stopPlaceRepository;
+    private final PrometheusMetricsService metricsService;
 
 
     @Autowired
-    public MutateLock(TimeoutMaxLeaseTimeLock timeoutMaxLeaseTimeLock) {
-        this.timoutMaxLeaseTimeLock = timeoutMaxLeaseTimeLock;
+    public MutateLock(HazelcastInstance hazelcastInstance, StopPlaceRepository stopPlaceRepository, PrometheusMetricsService metricsService) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.stopPlaceRepository = stopPlaceRepository;
+        this.metricsService = metricsService;
         this.waitTimeoutSeconds = WAIT_FOR_LOCK_SECONDS;
 
     }
 
-    public <T> T executeInLock(Supplier<T> supplier) {
-        return timoutMaxLeaseTimeLock.executeInLock(supplier, LOCK_NAME, waitTimeoutSeconds, LOCK_MAX_LEASE_TIME_SECONDS);
+    public <T> T executeInLock(String netexId, Supplier<T> supplier) {
+        return executeInLock(netexId == null ? List.of() : List.of(netexId), supplier);
+    }
+
+    /**
+     * @param netexIds netex IDs of the entities changed or referred to by the supplier. Null values are ignored.
+     *                 If there are no IDs, the supplier is expected to only create new entities, and {@link #NEW_ENTITIES_LOCK_KEY} is locked.
+     */
+    public <T> T executeInLock(Collection<String> netexIds, Supplier<T> supplier) {
+        SortedSet<String> keys = lockKeys(netexIds);
+        IMap<String, Object> locks = hazelcastInstance.getMap(LOCK_NAME);
+        Deque<String> lockedKeys = new ArrayDeque<>(keys.size());
+
+        logger.info("Waiting for locks {}", keys);
+        long waitStarted = System.nanoTime();
+        long deadline = waitStarted + TimeUnit.SECONDS.toNanos(waitTimeoutSeconds);
+        try {
+            for (String key : keys) {
+                long remainingNanos = Math.max(0, deadline - System.nanoTime());
+                if (!locks.tryLock(key, remainingNanos, TimeUnit.NANOSECONDS, LOCK_MAX_LEASE_TIME_SECONDS, TimeUnit.SECONDS)) {
+                    throw new LockException("Timed out waiting to aquire lock " + key + " after " + waitTimeoutSeconds + " seconds");
+                }
+                lockedKeys.push(key);
+            }
+        } catch (InterruptedException e) {
+            unlock(locks, lockedKeys, waitStarted);
+            Thread.currentThread().interrupt();
+            throw new LockException("Interrupted while waiting for locks " + keys, e);
+        } catch (RuntimeException e) {
+            unlock(locks, lockedKeys, waitStarted);
+            throw e;
+        }
+
+        long holdStarted = System.nanoTime();
+        metricsService.mutateLockTimer("wait").record(holdStarted - waitStarted, TimeUnit.NANOSECONDS);
+        logger.info("Got locks {}", keys);
+        try {
+            return supplier.get();
+        } finally {
+            metricsService.mutateLockTimer("hold").record(System.nanoTime() - holdStarted, TimeUnit.NANOSECONDS);
+            unlock(locks, lockedKeys, holdStarted);
+        }
+    }
+
+    /**
+     * Resolve stop places and quays to the stop places at the top of their hierarchy.
+     * Other IDs, and IDs of entities that are not saved yet, are used as they are.
+     * Without IDs, the key for new entities is used.
+     */
+    SortedSet<String> lockKeys(Collection<String> netexIds) {
+        SortedSet<String> keys = new TreeSet<>();
+        Set<String> ids = netexIds == null ? Set.of() : netexIds.stream().filter(Objects::nonNull).collect(toSet());
+        if (ids.isEmpty()) {
+            keys.add(NEW_ENTITIES_LOCK_KEY);
+            return keys;
+        }
+        Map<String, Set<String>> rootStopPlaceIds = stopPlaceRepository.findRootStopPlaceIds(ids);
+        for (String id : ids) {
+            keys.addAll(rootStopPlaceIds.getOrDefault(id, Set.of(id)));
+        }
+        return keys;
+    }
+
+    private void unlock(IMap<String, Object> locks, Deque<String> lockedKeys, long started) {
+        while (!lockedKeys.isEmpty()) {
+            String key = lockedKeys.pop();
+            try {
+                logger.info("Unlocking {}", key);
+                locks.unlock(key);
+            } catch (IllegalMonitorStateException ex) {
+                long timeSpent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                logger.warn("Could not unlock '{}'. Lease time could have been exeeded. Time spent {}ms", key, timeSpent, ex);
+            }
+        }
     }
 
 }
@@ -13,6 +13,7 @@ import java.util.function.Supplier;
 /**
  * A generic lock that waits for aquiring lock with a timeout. If the lock was aquired, there is a timeout for maximum lease time.
  * Current implementation is using hazelcast.
+ * Used so that only one instance runs a background job at a time. Mutations of entities are locked per entity with {@link MutateLock}.
  */
 @Component
 public class TimeoutMaxLeaseTimeLock {
@@ -15,6 +15,9 @@
 
 package org.rutebanken.tiamat.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import jakarta.persistence.CollectionTable;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
@@ -26,6 +29,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class FareZone extends Zone_VersionStructure {
 
@@ -15,8 +15,12 @@
 
 package org.rutebanken.tiamat.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import jakarta.persistence.Entity;
 
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Entity
 public class TariffZone extends Zone_VersionStructure {
 }
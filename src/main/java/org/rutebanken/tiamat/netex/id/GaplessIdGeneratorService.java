@@ -17,28 +17,35 @@ package org.rutebanken.tiamat.netex.id;
 
 import com.hazelcast.collection.ISet;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.Query;
-import org.hibernate.engine.jdbc.internal.BasicFormatterImpl;
+import org.hibernate.query.NativeQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 
 /**
@@ -50,6 +57,14 @@ import static java.util.stream.Collectors.toList;
  * This service is using Hazelcast to avoid generating the same IDs on multiple nodes.
  * There is a hazelcast lock for persisting these IDs from one node to a table in postgres.
  * The reason for not writing the IDs immediately is performance when importing many stops. For instance the initial population of stop places.
+ *
+ * With a lease size (netex.id.generator.lease.size), each node takes blocks of available IDs under the hazelcast lock,
+ * and hands them out without locking. A block is added to the claimed IDs when it is taken, so the lease is kept by the
+ * cluster and persisted with the other claimed IDs. If a node stops without returning its block, the unused IDs are left
+ * as a gap, but are never handed out again. Unused IDs are returned to the available IDs on shutdown.
+ * The leased IDs are also kept in a hazelcast map with the owner of the lease. A node removes each ID from the map before
+ * handing it out, and an explicit claim removes the ID from the map, so an ID is never both claimed and handed out from a lease.
+ * This costs one map operation per leased ID, but no lock.
  */
 @Service
 public class GaplessIdGeneratorService {
@@ -64,7 +79,10 @@ public class GaplessIdGeneratorService {
 
     public static final int INSERT_CLAIMED_ID_THRESHOLD = 1000;
 
-    private static BasicFormatterImpl basicFormatter = new BasicFormatterImpl();
+    /**
+     * Query space of native updates to the ID table, so that they do not invalidate the second level cache of entities.
+     */
+    private static final String ID_GENERATOR_TABLE = "id_generator";
 
     private final int fetchSize;
 
@@ -72,15 +90,29 @@ public class GaplessIdGeneratorService {
     private final HazelcastInstance hazelcastInstance;
     private final GeneratedIdState generatedIdState;
 
+    /**
+     * Number of IDs taken by this node at a time. Zero to take the lock for every ID.
+     */
+    private final int leaseSize;
+
+    private final ConcurrentMap<String, IdLease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * Owner of the leases of this service in the map of leased IDs.
+     */
+    private final String leaseOwner = UUID.randomUUID().toString();
+
     @Autowired
-    public GaplessIdGeneratorService(EntityManagerFactory entityManagerFactory, HazelcastInstance hazelcastInstance, GeneratedIdState generatedIdState) {
-        this.entityManagerFactory = entityManagerFactory;
-        this.hazelcastInstance = hazelcastInstance;
-        this.generatedIdState = generatedIdState;
-        this.fetchSize = DEFAULT_FETCH_SIZE;
+    public GaplessIdGeneratorService(EntityManagerFactory entityManagerFactory, HazelcastInstance hazelcastInstance, GeneratedIdState generatedIdState,
+                                     @Value("${netex.id.generator.lease.size:0}") int leaseSize) {
+        this(entityManagerFactory, hazelcastInstance, generatedIdState, DEFAULT_FETCH_SIZE, leaseSize);
     }
 
     public GaplessIdGeneratorService(EntityManagerFactory entityManagerFactory, HazelcastInstance hazelcastInstance, GeneratedIdState generatedIdState, int fetchSize) {
+        this(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, 0);
+    }
+
+    public GaplessIdGeneratorService(EntityManagerFactory entityManagerFactory, HazelcastInstance hazelcastInstance, GeneratedIdState generatedIdState, int fetchSize, int leaseSize) {
         this.entityManagerFactory = entityManagerFactory;
         this.hazelcastInstance = hazelcastInstance;
         this.generatedIdState = generatedIdState;
@@ -91,7 +123,11 @@ public class GaplessIdGeneratorService {
         }
 
         this.fetchSize = fetchSize;
+        this.leaseSize = leaseSize;
 
+        if (leaseSize > 0) {
+            logger.info("Leasing blocks of {} IDs per entity", leaseSize);
+        }
     }
 
     /**
@@ -114,6 +150,10 @@ public class GaplessIdGeneratorService {
      * @return the claimed ID
      */
     public long getNextIdForEntity(String entityTypeName, long claimedId) {
+        if (leaseSize > 0 && claimedId <= 0) {
+            return getNextLeasedId(entityTypeName);
+        }
+
         final Lock lock = hazelcastInstance.getCPSubsystem().getLock(entityLockString(entityTypeName));
         lock.lock();
         try {
@@ -122,6 +162,9 @@ public class GaplessIdGeneratorService {
 
 
             if (claimedId > 0) {
+                if (leaseSize > 0) {
+                    revokeLease(entityTypeName, claimedId);
+                }
                 if (availableIds.remove(claimedId)) {
                     logger.trace("Removed claimed ID {} from list of available IDs for entity {}: {}", claimedId, entityTypeName, availableIds.stream().collect(toList()));
                 }
@@ -151,6 +194,109 @@ public class GaplessIdGeneratorService {
         }
     }
 
+    /**
+     * Hand out an ID from the block leased by this node, without locking.
+     * Only one thread per entity and node takes a new block when the block is used up.
+     * An ID that has been claimed explicitly since it was leased is skipped.
+     */
+    private long getNextLeasedId(String entityTypeName) {
+        IdLease lease = leases.computeIfAbsent(entityTypeName, name -> new IdLease());
+        IMap<Long, String> leasedIds = generatedIdState.getLeasedIdsForEntity(entityTypeName);
+        while (true) {
+            Long id = lease.available.poll();
+            if (id == null) {
+                synchronized (lease) {
+                    if (lease.available.isEmpty()) {
+                        leaseBlock(entityTypeName, lease);
+                    }
+                }
+            } else if (leasedIds.remove(id, leaseOwner)) {
+                logger.trace("Returning leased ID for {}: {}", entityTypeName, id);
+                return id;
+            } else {
+                logger.debug("Skipping leased ID {} for {}, as it has been claimed", id, entityTypeName);
+            }
+        }
+    }
+
+    /**
+     * Take the next block of available IDs for this node, and add it to the claimed IDs.
+     */
+    private void leaseBlock(String entityTypeName, IdLease lease) {
+        final Lock lock = hazelcastInstance.getCPSubsystem().getLock(entityLockString(entityTypeName));
+        lock.lock();
+        try {
+            BlockingQueue<Long> availableIds = generatedIdState.getQueueForEntity(entityTypeName);
+            ISet<Long> claimedIds = generatedIdState.getClaimedIdListForEntity(entityTypeName);
+
+            boolean timeToGenerateAvailableIds = availableIds.size() < LOW_LEVEL_AVAILABLE_IDS;
+            if (timeToGenerateAvailableIds || claimedIds.size() > INSERT_CLAIMED_ID_THRESHOLD) {
+                writeClaimedIdsAndGenerateNew(entityTypeName, timeToGenerateAvailableIds);
+            }
+
+            List<Long> block = new ArrayList<>(leaseSize);
+            availableIds.drainTo(block, leaseSize);
+            claimedIds.addAll(block);
+            Map<Long, String> owners = block.stream().collect(toMap(id -> id, id -> leaseOwner));
+            generatedIdState.getLeasedIdsForEntity(entityTypeName).putAll(owners);
+            lease.available.addAll(block);
+            logger.debug("Leased {} IDs for {}", block.size(), entityTypeName);
+        } catch (Exception e) {
+            throw new IdGeneratorException("Caught exception when leasing IDs for entity " + entityTypeName, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an explicitly claimed ID from the leases of all nodes, before the claim returns.
+     * The node owning the lease skips the ID, and it is removed right away if this node owns the lease.
+     */
+    private void revokeLease(String entityTypeName, long claimedId) {
+        String owner = generatedIdState.getLeasedIdsForEntity(entityTypeName).remove(claimedId);
+        if (owner != null) {
+            logger.debug("Revoked claimed ID {} from leased IDs for {}", claimedId, entityTypeName);
+            IdLease lease = leases.get(entityTypeName);
+            if (leaseOwner.equals(owner) && lease != null) {
+                lease.available.remove(claimedId);
+            }
+        }
+    }
+
+    /**
+     * Return the unused leased IDs to the available IDs, so that the IDs stay close to gapless.
+     * They are no longer claimed, and are deleted from the table in case the claimed IDs have been persisted since they were leased.
+     * IDs claimed explicitly since they were leased are kept.
+     */
+    @PreDestroy
+    public void returnLeasedIds() {
+        leases.forEach((entityTypeName, lease) -> {
+            final Lock lock = hazelcastInstance.getCPSubsystem().getLock(entityLockString(entityTypeName));
+            lock.lock();
+            try {
+                IMap<Long, String> leasedIds = generatedIdState.getLeasedIdsForEntity(entityTypeName);
+                List<Long> unused = new ArrayList<>();
+                Long id;
+                while ((id = lease.available.poll()) != null) {
+                    if (leasedIds.remove(id, leaseOwner)) {
+                        unused.add(id);
+                    }
+                }
+                if (!unused.isEmpty()) {
+                    logger.info("Returning {} unused leased IDs for {}", unused.size(), entityTypeName);
+                    generatedIdState.getClaimedIdListForEntity(entityTypeName).removeAll(unused);
+                    EntityManager entityManager = entityManagerFactory.createEntityManager();
+                    executeInTransaction(() -> deleteIds(entityTypeName, unused, entityManager), entityManager);
+                    generatedIdState.getQueueForEntity(entityTypeName).addAll(unused);
+                }
+            } catch (Exception e) {
+                logger.warn("Could not return leased IDs for {}", entityTypeName, e);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
     /**
      * Write claimed IDs and generate new ones.
      */
@@ -221,50 +367,47 @@ public class GaplessIdGeneratorService {
     }
 
     /**
-     * This inserts a list of IDs ignoring duplicates
+     * This inserts a list of IDs ignoring duplicates.
+     * The IDs are bound as one array parameter, so the statement is the same regardless of the number of IDs.
      * @param tableName Entity name
      * @param list List of IDs
      * @param entityManager Entity manager to use
      */
-    private void insertIdsIgnoreDuplicates(String tableName, Set<Long> list, EntityManager entityManager) {
+    void insertIdsIgnoreDuplicates(String tableName, Set<Long> list, EntityManager entityManager) {
         if (list.isEmpty()) {
             throw new IllegalArgumentException("No IDs to insert");
         }
 
-        Iterator<Long> iterator = list.iterator();
-
-        StringBuilder insertUsedIdsSql = new StringBuilder("insert into id_generator(table_name, id_value) ")
-                .append("select id1.table_name, id1.id_value ")
-                .append("from ( ")
-                .append("select cast('")
-                .append(tableName)
-                .append("' as varchar) ")
-                .append("as table_name, ")
-                .append(iterator.next()) // First value
-                .append(" as id_value ");
-
-        while(iterator.hasNext()) {
-            insertUsedIdsSql.append("union all ")
-                    .append("select '")
-                    .append(tableName)
-                    .append("',")
-                    .append(iterator.next())
-                    .append(" ");
-        }
-
-        insertUsedIdsSql.append(" ) as id1 ")
-                .append("where not exists (select 1 from id_generator id2 where id2.id_value = id1.id_value and id2.table_name = id1.table_name)");
-
-        // Format the sql for logging
-        String sql = basicFormatter.format(insertUsedIdsSql.toString());
+        String sql = "INSERT INTO id_generator(table_name, id_value) " +
+                "SELECT :tableName, i.id_value FROM unnest(CAST(:ids AS bigint[])) AS i(id_value) " +
+                "ON CONFLICT ON CONSTRAINT id_constraint DO NOTHING";
 
-        Query query = entityManager.createNativeQuery(sql);
-        logger.trace(sql);
-        int result = query.executeUpdate();
+        int result = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ID_GENERATOR_TABLE)
+                .setParameter("tableName", tableName)
+                .setParameter("ids", list.toArray(Long[]::new))
+                .executeUpdate();
         logger.trace("Inserted {} ids for {}", result, tableName);
         entityManager.flush();
     }
 
+    /**
+     * Delete IDs that are no longer used.
+     * @param tableName Entity name
+     * @param ids IDs to delete
+     * @param entityManager Entity manager to use
+     */
+    private void deleteIds(String tableName, List<Long> ids, EntityManager entityManager) {
+        int result = entityManager.createNativeQuery("DELETE FROM id_generator WHERE table_name = :tableName AND id_value = ANY(CAST(:ids AS bigint[]))")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ID_GENERATOR_TABLE)
+                .setParameter("tableName", tableName)
+                .setParameter("ids", ids.toArray(Long[]::new))
+                .executeUpdate();
+        logger.trace("Deleted {} ids for {}", result, tableName);
+    }
+
     /**
      * Use SQL command genererate_series to be able to find new IDs, without selecting the ones already used.
      * @param tableName The name of the entity.
@@ -278,18 +421,22 @@ public class GaplessIdGeneratorService {
         long lastIdPlusOne = lastId + 1;
         long upperBound = lastId + fetchSize;
 
-        String sql = "SELECT * FROM generate_series(" + lastIdPlusOne + "," + upperBound + ")  " +
-                "EXCEPT (SELECT id_value FROM id_generator WHERE table_name='" + tableName + "') ";
+        String sql = "SELECT s.id_value FROM generate_series(CAST(:lowerBound AS bigint), CAST(:upperBound AS bigint)) AS s(id_value) " +
+                "EXCEPT SELECT id_value FROM id_generator WHERE table_name = :tableName";
 
-        Query sqlQuery = entityManager.createNativeQuery(sql);
+        Query sqlQuery = entityManager.createNativeQuery(sql)
+                .setParameter("lowerBound", lastIdPlusOne)
+                .setParameter("upperBound", upperBound)
+                .setParameter("tableName", tableName);
 
         @SuppressWarnings("unchecked")
-        List<Long> results = sqlQuery.getResultList();
+        List<Number> results = sqlQuery.getResultList();
 
         logger.trace("Got generated values: {}", results);
 
         return results.stream()
-                .sorted(Comparator.comparingLong(v -> v))
+                .map(Number::longValue)
+                .sorted()
                 .collect(toList());
     }
 
@@ -380,4 +527,10 @@ public class GaplessIdGeneratorService {
         return REENTRANT_LOCK_PREFIX + entityTypeName;
     }
 
+    /**
+     * IDs leased by this node for one entity.
+     */
+    private static class IdLease {
+        private final ConcurrentLinkedQueue<Long> available = new ConcurrentLinkedQueue<>();
+    }
 }
@@ -18,6 +18,7 @@ package org.rutebanken.tiamat.netex.id;
 import com.hazelcast.collection.IQueue;
 import com.hazelcast.collection.ISet;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -33,6 +34,7 @@ public class GeneratedIdState implements Serializable{
     public static final String LAST_IDS_FOR_ENTITY = "lastIdsForEntities";
     public static final String CLAIMED_IDS_FOR_ENTITY_PREFIX = "claimedIdsForEntities";
     public static final String ENTITY_NAMES_REGISTERED = "entityNamesRegistered";
+    public static final String LEASED_IDS_FOR_ENTITY_PREFIX = "leasedIdsForEntities";
 
     private final HazelcastInstance hazelcastInstance;
 
@@ -71,4 +73,11 @@ public class GeneratedIdState implements Serializable{
     public ISet getClaimedIdListForEntity(String entityTypeName) {
         return hazelcastInstance.getSet(CLAIMED_IDS_FOR_ENTITY_PREFIX + "-" + entityTypeName);
     }
+
+    /**
+     * IDs leased by nodes and not handed out yet, with the owner of the lease as value.
+     */
+    public IMap<Long, String> getLeasedIdsForEntity(String entityTypeName) {
+        return hazelcastInstance.getMap(LEASED_IDS_FOR_ENTITY_PREFIX + "-" + entityTypeName);
+    }
 }
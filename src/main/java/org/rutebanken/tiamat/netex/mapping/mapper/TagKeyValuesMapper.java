@@ -28,9 +28,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.rutebanken.tiamat.service.TagCreator.SUPPORTED_TAGGABLE_TYPES;
 
@@ -52,6 +54,12 @@ public class TagKeyValuesMapper {
 
     private final TagRepository tagRepository;
 
+    /**
+     * Tags loaded up front for the entities mapped by the current thread.
+     * Set while mapping in worker threads, which must not use the repository outside the export transaction.
+     */
+    private final ThreadLocal<Map<String, Set<Tag>>> preloadedTags = new ThreadLocal<>();
+
     @Autowired
     public TagKeyValuesMapper(TagRepository tagRepository) {
         this.tagRepository = tagRepository;
@@ -70,7 +78,8 @@ public class TagKeyValuesMapper {
             return;
         }
 
-        Set<Tag> tags = tagRepository.findByIdReference(tiamatEntity.getNetexId());
+        Map<String, Set<Tag>> preloaded = preloadedTags.get();
+        Set<Tag> tags = preloaded != null ? preloaded.get(tiamatEntity.getNetexId()) : tagRepository.findByIdReference(tiamatEntity.getNetexId());
 
         if (tags == null || tags.isEmpty()) {
             return;
@@ -84,6 +93,34 @@ public class TagKeyValuesMapper {
         }
     }
 
+    /**
+     * Load tags for the given references in one query. Must be called in the thread owning the transaction.
+     * Tags of each reference keep the order the query returned them in, like {@link TagRepository#findByIdReference(String)},
+     * so that tag keys are numbered the same as when looking tags up one reference at a time.
+     */
+    public Map<String, Set<Tag>> findTagsByIdReferences(Collection<String> idReferences) {
+        Map<String, Set<Tag>> tagsByIdReference = new HashMap<>();
+        if (!idReferences.isEmpty()) {
+            for (Tag tag : tagRepository.findByIdReferenceIn(idReferences)) {
+                tagsByIdReference.computeIfAbsent(tag.getIdReference(), key -> Sets.newLinkedHashSet()).add(tag);
+            }
+        }
+        return tagsByIdReference;
+    }
+
+    /**
+     * Map with tags from the given map instead of looking them up in the repository.
+     * References missing from the map are mapped without tags.
+     */
+    public <T> T withPreloadedTags(Map<String, Set<Tag>> tagsByIdReference, Supplier<T> mapping) {
+        preloadedTags.set(tagsByIdReference);
+        try {
+            return mapping.get();
+        } finally {
+            preloadedTags.remove();
+        }
+    }
+
     /**
      * Could have used reflection...
      *
@@ -15,7 +15,9 @@
 
 package org.rutebanken.tiamat.netex.validation;
 
-import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,15 +29,22 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Provides simple validation for references in netex file.
+ * <p>
+ * Identificators and references are kept as 64-bit hashes in primitive sets, so that national exports can be validated
+ * without keeping every identificator as a string. The names of unresolved references are only known after the whole
+ * document is read. For files, the document is read again to find the names of the first unresolved references.
+ * For streams, they are found among the first references read before the element they refer to.
  */
 @Component
 public class NetexXmlReferenceValidator {
@@ -48,17 +57,48 @@ public class NetexXmlReferenceValidator {
     public static final String ID_VERSION_SEPARATOR = "-";
     public static final String ID_ATTRIBUTE = "id";
 
+    /**
+     * Number of forward references kept by name when validating streams, to report unresolved references by name.
+     */
+    private static final int MAX_FORWARD_REFERENCE_NAMES = 10000;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
     private final boolean throwOnValidationError;
 
-    public NetexXmlReferenceValidator(@Value("${netexXmlReferenceValidator.throwOnValidationError:false}") boolean throwOnValidationError) {
+    private final int maxReportedNames;
+
+    private final PrometheusMetricsService metricsService;
+
+    public NetexXmlReferenceValidator(@Value("${netexXmlReferenceValidator.throwOnValidationError:false}") boolean throwOnValidationError,
+                                      @Value("${netexXmlReferenceValidator.maxReportedNames:100}") int maxReportedNames,
+                                      PrometheusMetricsService metricsService) {
         this.throwOnValidationError = throwOnValidationError;
+        this.maxReportedNames = maxReportedNames;
+        this.metricsService = metricsService;
     }
 
     public void validateNetexReferences(File file) throws NetexReferenceValidatorException {
+        long start = System.currentTimeMillis();
         try {
-            validateNetexReferences(new FileInputStream(file), file.getName());
-        } catch (FileNotFoundException e) {
+            ReferenceScan scan;
+            try (InputStream inputStream = new FileInputStream(file)) {
+                scan = scan(inputStream, file.getName());
+            }
+            LongHashSet unresolved = scan.unresolvedReferences();
+            Collection<String> unresolvedNames = List.of();
+            if (unresolved.size() > 0) {
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    unresolvedNames = findReferenceNames(inputStream, unresolved);
+                }
+            }
+            report(scan, unresolved, unresolvedNames, file.getName(), start);
+        } catch (IOException e) {
             throw new NetexReferenceValidatorException("Error reading file path " + file.getName(), e);
+        } catch (XMLStreamException e) {
+            throw new NetexReferenceValidatorException("Error streaming " + file.getName(), e);
+        } finally {
+            logger.info("Spent {} ms validating {}", System.currentTimeMillis() - start, file.getName());
         }
     }
 
@@ -67,74 +107,126 @@ public class NetexXmlReferenceValidator {
         long start = System.currentTimeMillis();
 
         try {
-            XMLStreamReader xmlStreamReader = null;
-            xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
-
-            Set<String> references = new HashSet<>();
+            ReferenceScan scan = scan(inputStream, xmlNameForLogging);
+            LongHashSet unresolved = scan.unresolvedReferences();
+            List<String> unresolvedNames = scan.forwardReferences.stream()
+                    .filter(name -> unresolved.contains(hash(name)))
+                    .limit(maxReportedNames)
+                    .toList();
+            report(scan, unresolved, unresolvedNames, xmlNameForLogging, start);
+        } catch (XMLStreamException e) {
+            throw new NetexReferenceValidatorException("Error streaming " + xmlNameForLogging, e);
+        } finally {
+            logger.info("Spent {} ms validating {}", System.currentTimeMillis() - start, xmlNameForLogging);
+        }
+    }
 
-            // List, because of intentions to detect and report duplicate identificators.
-            List<String> identificators = new ArrayList<>();
+    private void report(ReferenceScan scan, LongHashSet unresolved, Collection<String> unresolvedNames, String xmlNameForLogging, long start) throws NetexReferenceValidatorException {
+        boolean valid = unresolved.size() == 0;
+        metricsService.registerNetexReferenceValidation(valid, scan.identificators.size(), scan.references.size(), unresolved.size(),
+                scan.duplicates, System.currentTimeMillis() - start);
 
-            traverseXml(xmlStreamReader, references, identificators);
+        if (scan.duplicates > 0) {
+            logger.warn("{} contains {} duplicate identificators. First {}: {}", xmlNameForLogging, scan.duplicates, scan.duplicateNames.size(), scan.duplicateNames);
+        }
 
-            Set<String> distinctIdentificators = Sets.newHashSet(identificators);
-            Set<String> invalidReferences = Sets.difference(references, distinctIdentificators);
+        if (valid) {
+            logger.info("{} is valid. {} distinct identificators. {} references", xmlNameForLogging, scan.identificators.size(), scan.references.size());
+        } else {
+            String message = xmlNameForLogging + " is NOT valid. Invalid references detected: " + unresolved.size();
+            logger.warn("{}. First {}: {}", message, unresolvedNames.size(), unresolvedNames);
+            if (throwOnValidationError) {
+                throw new NetexReferenceValidatorException(message);
+            }
+        }
+    }
 
-            if (invalidReferences.isEmpty()) {
-                logger.info("{} is valid. {} distinct identificators. {} references", xmlNameForLogging, distinctIdentificators.size(), references.size());
-            } else {
-                String message = xmlNameForLogging + " is NOT valid. Invalid references detected: " + invalidReferences.size();
-                logger.warn("{}: {}", message, invalidReferences);
-                if (throwOnValidationError) {
-                    throw new NetexReferenceValidatorException(message);
+    private ReferenceScan scan(InputStream inputStream, String xmlNameForLogging) throws XMLStreamException {
+        logger.debug("Collecting identificators and references from {}", xmlNameForLogging);
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+        try {
+            ReferenceScan scan = new ReferenceScan();
+            while (xmlStreamReader.hasNext()) {
+                if (XMLStreamConstants.START_ELEMENT == xmlStreamReader.next()) {
+                    if (isReference(xmlStreamReader.getLocalName())) {
+                        processReference(xmlStreamReader, scan);
+                    } else {
+                        processId(xmlStreamReader, scan);
+                    }
                 }
             }
-
-        } catch (XMLStreamException e) {
-            throw new NetexReferenceValidatorException("Error streaming " + xmlNameForLogging, e);
+            return scan;
         } finally {
-            logger.info("Spent {} ms validating {}", System.currentTimeMillis() - start, xmlNameForLogging);
+            xmlStreamReader.close();
         }
     }
 
-    private void traverseXml(XMLStreamReader xmlStreamReader, Set<String> references, List<String> identificators) throws XMLStreamException {
-        while (xmlStreamReader.hasNext()) {
+    /**
+     * Read the document again to find the names of the first unresolved references.
+     */
+    private Collection<String> findReferenceNames(InputStream inputStream, LongHashSet unresolved) throws XMLStreamException {
+        Set<String> names = new LinkedHashSet<>();
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+        try {
+            while (xmlStreamReader.hasNext() && names.size() < maxReportedNames) {
+                if (XMLStreamConstants.START_ELEMENT == xmlStreamReader.next() && isReference(xmlStreamReader.getLocalName())) {
+                    String reference = getVersionedReference(xmlStreamReader);
+                    if (reference != null && unresolved.contains(hash(reference))) {
+                        names.add(reference);
+                    }
+                }
+            }
+        } finally {
+            xmlStreamReader.close();
+        }
+        return names;
+    }
 
-            int eventCode = xmlStreamReader.next();
+    private boolean isReference(String localName) {
+        return localName.contains(REF_ELEMENT_NAME_POSTFIX) && !localName.contains(COUNTRY_REF);
+    }
 
-            if ((XMLStreamConstants.START_ELEMENT == eventCode)) {
-                String localName = xmlStreamReader.getLocalName();
-                if (localName.contains(REF_ELEMENT_NAME_POSTFIX) && !localName.contains(COUNTRY_REF)) {
-                    processReference(xmlStreamReader, references);
-                } else {
-                    processId(xmlStreamReader, identificators);
-                }
+    private void processReference(XMLStreamReader xmlStreamReader, ReferenceScan scan) {
+        String reference = getVersionedReference(xmlStreamReader);
+        if (reference != null) {
+            long hash = hash(reference);
+            if (scan.references.add(hash) && !scan.identificators.contains(hash)
+                    && scan.forwardReferences.size() < MAX_FORWARD_REFERENCE_NAMES) {
+                scan.forwardReferences.add(reference);
             }
         }
     }
 
-    private void processReference(XMLStreamReader xmlStreamReader, Set<String> references) {
+    /**
+     * Only references with version are validated.
+     */
+    private String getVersionedReference(XMLStreamReader xmlStreamReader) {
         String value = getAttributeValue(REF_ATTRIBUTE, xmlStreamReader);
         if (value != null) {
             String version = getAttributeValue(VERSION_ATTRIBUTE, xmlStreamReader);
             if (version != null) {
-                references.add(value + ID_VERSION_SEPARATOR + version);
+                return value + ID_VERSION_SEPARATOR + version;
             }
         }
+        return null;
     }
 
-    private void processId(XMLStreamReader xmlStreamReader, List<String> identificators) {
+    private void processId(XMLStreamReader xmlStreamReader, ReferenceScan scan) {
         String id = getAttributeValue(ID_ATTRIBUTE, xmlStreamReader);
 
         if (id != null) {
+            // It should be possible for a reference to not have version.
+            // So both should be added
+            scan.identificators.add(hash(id));
             String version = getAttributeValue(VERSION_ATTRIBUTE, xmlStreamReader);
             if (version != null) {
-                // It should be possible for a reference to not have version.
-                // So both should be added
-                identificators.add(id);
-                identificators.add(id + ID_VERSION_SEPARATOR + version);
-            } else {
-                identificators.add(id);
+                String versionedId = id + ID_VERSION_SEPARATOR + version;
+                if (!scan.identificators.add(hash(versionedId))) {
+                    scan.duplicates++;
+                    if (scan.duplicateNames.size() < maxReportedNames) {
+                        scan.duplicateNames.add(versionedId);
+                    }
+                }
             }
         }
     }
@@ -142,5 +234,26 @@ public class NetexXmlReferenceValidator {
     private String getAttributeValue(String attribute, XMLStreamReader xmlStreamReader) {
         return xmlStreamReader.getAttributeValue(null, attribute);
     }
-}
 
+    private static long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static class ReferenceScan {
+        private final LongHashSet identificators = new LongHashSet();
+        private final LongHashSet references = new LongHashSet();
+        private final List<String> forwardReferences = new ArrayList<>();
+        private final List<String> duplicateNames = new ArrayList<>();
+        private long duplicates;
+
+        private LongHashSet unresolvedReferences() {
+            LongHashSet unresolved = new LongHashSet();
+            references.forEach(reference -> {
+                if (!identificators.contains(reference)) {
+                    unresolved.add(reference);
+                }
+            });
+            return unresolved;
+        }
+    }
+}
@@ -22,16 +22,15 @@ import org.rutebanken.tiamat.model.FareZone;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 
 public interface FareZoneRepositoryCustom extends DataManagedObjectStructureRepository<FareZone> {
 
     List<FareZone> findFareZones(FareZoneSearch search);
 
-    List<FareZone> getFareZonesFromStopPlaceIds(Set<Long> stopPlaceIds);
+    List<FareZone> getFareZonesFromStopPlaceIds(PrimaryIds stopPlaceIds);
 
-    Iterator<FareZone> scrollFareZones(Set<Long> stopPlaceDbIds);
+    Iterator<FareZone> scrollFareZones(PrimaryIds stopPlaceDbIds);
 
     Iterator<FareZone> scrollFareZones(ExportParams exportParams);
 
@@ -39,7 +38,7 @@ public interface FareZoneRepositoryCustom extends DataManagedObjectStructureRepo
 
     List<FareZone> findValidFareZones(List<String> netexIds);
 
-    int countResult(Set<Long> stopPlaceIds);
+    int countResult(PrimaryIds stopPlaceIds);
 
     public List<FareZone> findAllValidFareZones();
 
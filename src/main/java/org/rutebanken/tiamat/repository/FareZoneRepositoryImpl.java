@@ -20,7 +20,6 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import org.apache.commons.lang3.NotImplementedException;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -140,12 +139,13 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
     }
 
     @Override
-    public List<FareZone> getFareZonesFromStopPlaceIds(Set<Long> stopPlaceIds) {
+    public List<FareZone> getFareZonesFromStopPlaceIds(PrimaryIds stopPlaceIds) {
         if (stopPlaceIds == null || stopPlaceIds.isEmpty()) {
             return new ArrayList<>();
         }
 
-        Query query = entityManager.createNativeQuery(generateFareZoneQueryFromStopPlaceIds(stopPlaceIds), FareZone.class);
+        Query query = entityManager.createNativeQuery(generateFareZoneQueryFromStopPlaceIds(), FareZone.class);
+        stopPlaceIds.bind(query, "stopPlaceIds");
 
         @SuppressWarnings("unchecked")
         List<FareZone> fareZones = query.getResultList();
@@ -153,18 +153,23 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
     }
 
     @Override
-    public Iterator<FareZone> scrollFareZones(Set<Long> stopPlaceDbIds) {
+    public Iterator<FareZone> scrollFareZones(PrimaryIds stopPlaceDbIds) {
 
         if (stopPlaceDbIds == null || stopPlaceDbIds.isEmpty()) {
             return new ArrayList<FareZone>().iterator();
         }
-        return scrollFareZones(generateFareZoneQueryFromStopPlaceIds(stopPlaceDbIds));
+        Session session = entityManager.unwrap(Session.class);
+        NativeQuery sqlQuery = session.createNativeQuery(generateFareZoneQueryFromStopPlaceIds(), FareZone.class);
+        stopPlaceDbIds.bind(sqlQuery, "stopPlaceIds");
+        return scrollFareZones(sqlQuery, session);
     }
 
     public Iterator<FareZone> scrollFareZones(String sql) {
         Session session = entityManager.unwrap(Session.class);
-        NativeQuery sqlQuery = session.createNativeQuery(sql,FareZone.class);
+        return scrollFareZones(session.createNativeQuery(sql,FareZone.class), session);
+    }
 
+    private Iterator<FareZone> scrollFareZones(NativeQuery sqlQuery, Session session) {
         sqlQuery.addEntity(FareZone.class);
         sqlQuery.setReadOnly(true);
         sqlQuery.setFetchSize(100);
@@ -193,7 +198,7 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
         return scrollFareZones(sql.toString());
     }
 
-    private String generateFareZoneQueryFromStopPlaceIds(Set<Long> stopPlaceDbIds) {
+    private String generateFareZoneQueryFromStopPlaceIds() {
         var sql = "select" +
                 "        fz.* " +
                 "    from" +
@@ -204,8 +209,7 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
                 "        inner join" +
                 "            fare_zone fz1              " +
                 "                ON fz1.netex_id = sptz.ref         " +
-                "                AND  sptz.stop_place_id IN(" + StringUtils.join(stopPlaceDbIds,',') +
-                "                )            " +
+                "                AND  sptz.stop_place_id = ANY(:stopPlaceIds)            " +
                 "                AND (" +
                 "                    (" +
                 "                        sptz.version IS NOT NULL                          " +
@@ -236,9 +240,9 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
     }
 
     @Override
-    public int countResult(Set<Long> stopPlaceIds) {
+    public int countResult(PrimaryIds stopPlaceIds) {
 
-        StringBuilder sqlStringBuilder = new StringBuilder("SELECT COUNT(f.*) " +
+        String sql = "SELECT COUNT(f.*) " +
             "FROM " +
             "  ( SELECT " +
             "fz1.netex_id," +
@@ -246,25 +250,23 @@ public class FareZoneRepositoryImpl implements FareZoneRepositoryCustom {
             "   FROM fare_zone fz1 " +
             "   INNER JOIN stop_place_tariff_zones sptz ON fz1.netex_id = sptz.ref " +
             "   AND cast(fz1.version as text) = sptz.version " +
-            "   AND sptz.stop_place_id IN( ");
-
-        sqlStringBuilder.append(StringUtils.join(stopPlaceIds, ','));
-
-        sqlStringBuilder.append(") " +
-                "   GROUP BY fz1.netex_id,fz1.version ) fz " +
-                "JOIN fare_zone f ON fz.netex_id = f.netex_id AND fz.version=f.version");
+            "   AND sptz.stop_place_id = ANY(:stopPlaceIds) " +
+            "   GROUP BY fz1.netex_id,fz1.version ) fz " +
+            "JOIN fare_zone f ON fz.netex_id = f.netex_id AND fz.version=f.version";
 
-        String sql = sqlStringBuilder.toString();
         logger.info(sql);
 
         Session session = entityManager.unwrap(Session.class);
         NativeQuery query = session.createNativeQuery(sql,Long.class);
+        stopPlaceIds.bind(query, "stopPlaceIds");
         return ((Long) query.uniqueResult()).intValue();
     }
 
     public void updateStopPlaceTariffZoneRef() {
-        final Query explicitStopsQuery = entityManager.createNativeQuery(generateSqlQuery(true));
-        final Query implicitStopsQuery = entityManager.createNativeQuery(generateSqlQuery(false));
+        final NativeQuery explicitStopsQuery = entityManager.createNativeQuery(generateSqlQuery(true)).unwrap(NativeQuery.class);
+        final NativeQuery implicitStopsQuery = entityManager.createNativeQuery(generateSqlQuery(false)).unwrap(NativeQuery.class);
+        explicitStopsQuery.addSynchronizedQuerySpace(StopPlaceRepositoryImpl.STOP_PLACE_TARIFF_ZONES_TABLE);
+        implicitStopsQuery.addSynchronizedQuerySpace(StopPlaceRepositoryImpl.STOP_PLACE_TARIFF_ZONES_TABLE);
 
         explicitStopsQuery.executeUpdate();
         implicitStopsQuery.executeUpdate();
@@ -18,18 +18,27 @@ package org.rutebanken.tiamat.repository;
 import org.rutebanken.tiamat.exporter.params.GroupOfStopPlacesSearch;
 import org.rutebanken.tiamat.model.GroupOfStopPlaces;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public interface GroupOfStopPlacesRepositoryCustom {
 
     List<GroupOfStopPlaces> findGroupOfStopPlaces(GroupOfStopPlacesSearch search);
 
-    List<GroupOfStopPlaces> getGroupOfStopPlacesFromStopPlaceIds(Set<Long> stopPlaceIds);
+    List<GroupOfStopPlaces> getGroupOfStopPlacesFromStopPlaceIds(PrimaryIds stopPlaceIds);
+
+    /**
+     * Find the groups of several stop places in two queries, regardless of the number of stop places.
+     * Like {@link #findGroupOfStopPlaces(GroupOfStopPlacesSearch)} with a stop place ID, every version of the groups is included.
+     *
+     * @return groups by stop place netex ID. Stop places without groups are not included.
+     */
+    Map<String, List<GroupOfStopPlaces>> findGroupOfStopPlacesByStopPlaceIds(Collection<String> stopPlaceNetexIds);
 
     Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces();
 
-    Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(Set<Long> stopPlaceDbIds);
+    Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(PrimaryIds stopPlaceDbIds);
 }
 
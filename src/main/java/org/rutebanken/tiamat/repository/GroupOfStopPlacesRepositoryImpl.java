@@ -18,7 +18,6 @@ package org.rutebanken.tiamat.repository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -35,10 +34,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class GroupOfStopPlacesRepositoryImpl implements GroupOfStopPlacesRepositoryCustom {
 
@@ -69,18 +71,53 @@ public class GroupOfStopPlacesRepositoryImpl implements GroupOfStopPlacesReposit
     }
 
     @Override
-    public List<GroupOfStopPlaces> getGroupOfStopPlacesFromStopPlaceIds(Set<Long> stopPlaceIds) {
+    public List<GroupOfStopPlaces> getGroupOfStopPlacesFromStopPlaceIds(PrimaryIds stopPlaceIds) {
         if (stopPlaceIds == null || stopPlaceIds.isEmpty()) {
             return new ArrayList<>();
         }
 
-        Query query = entityManager.createNativeQuery(generateGroupOfStopPlacesQueryFromStopPlaceIds(stopPlaceIds), GroupOfStopPlaces.class);
+        Query query = entityManager.createNativeQuery(generateGroupOfStopPlacesQueryFromStopPlaceIds(), GroupOfStopPlaces.class);
+        stopPlaceIds.bind(query, "stopPlaceIds");
 
         @SuppressWarnings("unchecked")
         List<GroupOfStopPlaces> groupOfStopPlaces = query.getResultList();
         return groupOfStopPlaces;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, List<GroupOfStopPlaces>> findGroupOfStopPlacesByStopPlaceIds(Collection<String> stopPlaceNetexIds) {
+        Map<String, List<GroupOfStopPlaces>> groupsByStopPlaceId = new HashMap<>();
+        if (stopPlaceNetexIds == null || stopPlaceNetexIds.isEmpty()) {
+            return groupsByStopPlaceId;
+        }
+
+        List<Object[]> memberships = entityManager.createNativeQuery("SELECT m.ref, m.group_of_stop_places_id " +
+                        "FROM group_of_stop_places_members m " +
+                        "WHERE m.ref = ANY(:stopPlaceIds)")
+                .setParameter("stopPlaceIds", stopPlaceNetexIds.toArray(String[]::new))
+                .getResultList();
+        if (memberships.isEmpty()) {
+            return groupsByStopPlaceId;
+        }
+
+        List<Long> groupIds = memberships.stream().map(row -> ((Number) row[1]).longValue()).distinct().toList();
+        Map<Long, GroupOfStopPlaces> groupsById = entityManager
+                .createQuery("SELECT g FROM GroupOfStopPlaces g WHERE g.id IN :ids", GroupOfStopPlaces.class)
+                .setParameter("ids", groupIds)
+                .getResultList()
+                .stream()
+                .collect(Collectors.toMap(GroupOfStopPlaces::getId, Function.identity()));
+
+        for (Object[] membership : memberships) {
+            GroupOfStopPlaces group = groupsById.get(((Number) membership[1]).longValue());
+            if (group != null) {
+                groupsByStopPlaceId.computeIfAbsent((String) membership[0], ref -> new ArrayList<>()).add(group);
+            }
+        }
+        return groupsByStopPlaceId;
+    }
+
     @Override
     public Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces() {
 
@@ -89,18 +126,23 @@ public class GroupOfStopPlacesRepositoryImpl implements GroupOfStopPlacesReposit
     }
 
     @Override
-    public Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(Set<Long> stopPlaceDbIds) {
+    public Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(PrimaryIds stopPlaceDbIds) {
 
         if (stopPlaceDbIds == null || stopPlaceDbIds.isEmpty()) {
             return new ArrayList<GroupOfStopPlaces>().iterator();
         }
-        return scrollGroupOfStopPlaces(generateGroupOfStopPlacesQueryFromStopPlaceIds(stopPlaceDbIds));
+        Session session = entityManager.unwrap(Session.class);
+        NativeQuery sqlQuery = session.createNativeQuery(generateGroupOfStopPlacesQueryFromStopPlaceIds(), GroupOfStopPlaces.class);
+        stopPlaceDbIds.bind(sqlQuery, "stopPlaceIds");
+        return scrollGroupOfStopPlaces(sqlQuery, session);
     }
 
     private Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(String sql) {
         Session session = entityManager.unwrap(Session.class);
-        NativeQuery sqlQuery = session.createNativeQuery(sql, GroupOfStopPlaces.class);
+        return scrollGroupOfStopPlaces(session.createNativeQuery(sql, GroupOfStopPlaces.class), session);
+    }
 
+    private Iterator<GroupOfStopPlaces> scrollGroupOfStopPlaces(NativeQuery sqlQuery, Session session) {
         final int fetchSize = 100;
 
         sqlQuery.addEntity(GroupOfStopPlaces.class);
@@ -112,26 +154,21 @@ public class GroupOfStopPlacesRepositoryImpl implements GroupOfStopPlacesReposit
         return groupOfStopPlacesIterator;
     }
 
-    private String generateGroupOfStopPlacesQueryFromStopPlaceIds(Set<Long> stopPlaceDbIds) {
-        StringBuilder sqlStringBuilder = new StringBuilder("SELECT g.* FROM " +
+    private String generateGroupOfStopPlacesQueryFromStopPlaceIds() {
+        String sql = "SELECT g.* FROM " +
                 "   (SELECT gosp1.id, gosp1.netex_id " +
                 "       FROM stop_place s " +
                 "       INNER JOIN group_of_stop_places_members members ON members.ref = s.netex_id " +
                 "       INNER JOIN group_of_stop_places gosp1 ON members.group_of_stop_places_id = gosp1.id " +
-                "       WHERE s.id IN (");
-
-        sqlStringBuilder.append(StringUtils.join(stopPlaceDbIds, ','));
-
-        sqlStringBuilder.append("   ) " +
+                "       WHERE s.id = ANY(:stopPlaceIds) " +
                 "      AND gosp1.version = " +
                 "       (SELECT max(gospv.version) " +
                 "           FROM group_of_stop_places gospv " +
                 "           WHERE gospv.netex_id = gosp1.netex_id) " +
                 "      GROUP BY gosp1.id, gosp1.netex_id " +
                 "  ) gosp " +
-                "JOIN group_of_stop_places g ON gosp.netex_id = g.netex_id");
+                "JOIN group_of_stop_places g ON gosp.netex_id = g.netex_id";
 
-        String sql = sqlStringBuilder.toString();
         logger.info(sql);
         return sql;
     }
@@ -20,7 +20,6 @@ import org.rutebanken.tiamat.model.GroupOfTariffZones;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 public interface GroupOfTariffZonesRepositoryCustom {
 
@@ -28,7 +27,7 @@ public interface GroupOfTariffZonesRepositoryCustom {
 
     Iterator<GroupOfTariffZones> scrollGroupOfTariffZones();
 
-    Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(Set<Long> StopPlaceIds);
+    Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(PrimaryIds stopPlaceIds);
 
 
 }
@@ -17,7 +17,6 @@ package org.rutebanken.tiamat.repository;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -36,7 +35,6 @@ import org.springframework.data.util.Pair;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class GroupOfTariffZonesRepositoryImpl implements GroupOfTariffZonesRepositoryCustom {
 
@@ -76,7 +74,7 @@ public class GroupOfTariffZonesRepositoryImpl implements GroupOfTariffZonesRepos
     }
 
     @Override
-    public Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(Set<Long> stopPlaceDbIds) {
+    public Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(PrimaryIds stopPlaceDbIds) {
         var sql = "select" +
                 "        g.*" +
                 "    from" +
@@ -95,8 +93,7 @@ public class GroupOfTariffZonesRepositoryImpl implements GroupOfTariffZonesRepos
                 "                from" +
                 "                    stop_place_tariff_zones " +
                 "                where" +
-                "                    stop_place_id in (" + StringUtils.join(stopPlaceDbIds, ',') +
-                "                    )" +
+                "                    stop_place_id = ANY(:stopPlaceIds)" +
                 "            ) " +
                 "            and gotz1.version = (" +
                 "                select" +
@@ -115,13 +112,18 @@ public class GroupOfTariffZonesRepositoryImpl implements GroupOfTariffZonesRepos
                 "                and g.version = gotz.version ";
 
         logger.info(sql);
-        return scrollGroupOfTariffZones(sql);
+        Session session = entityManager.unwrap(Session.class);
+        NativeQuery sqlQuery = session.createNativeQuery(sql, GroupOfTariffZones.class);
+        stopPlaceDbIds.bind(sqlQuery, "stopPlaceIds");
+        return scrollGroupOfTariffZones(sqlQuery, session);
     }
 
     private Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(String sql) {
         Session session = entityManager.unwrap(Session.class);
-        NativeQuery sqlQuery = session.createNativeQuery(sql, GroupOfTariffZones.class);
+        return scrollGroupOfTariffZones(session.createNativeQuery(sql, GroupOfTariffZones.class), session);
+    }
 
+    private Iterator<GroupOfTariffZones> scrollGroupOfTariffZones(NativeQuery sqlQuery, Session session) {
         final int fetchSize = 100;
 
         sqlQuery.addEntity(GroupOfTariffZones.class);
@@ -1,7 +1,10 @@
 package org.rutebanken.tiamat.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.rutebanken.tiamat.model.InfoSpot;
+import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
 
 public interface InfoSpotRepositoryCustom extends DataManagedObjectStructureRepository<InfoSpot> {
 
@@ -12,4 +15,10 @@ public interface InfoSpotRepositoryCustom extends DataManagedObjectStructureRepo
      * Only returns InfoSpots whose locationRefs match both the netexId AND version.
      */
     List<InfoSpot> findForAssociationWithVersion(String netexId, Long version);
+
+    /**
+     * Same as {@link #findForAssociationWithVersion(String, Long)} for several entities, in two queries.
+     * Entities without InfoSpots are mapped to an empty list.
+     */
+    Map<VersionOfObjectRefStructure, List<InfoSpot>> findForAssociationsWithVersion(Collection<VersionOfObjectRefStructure> associations);
 }
@@ -2,11 +2,19 @@ package org.rutebanken.tiamat.repository;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import jakarta.transaction.Transactional;
 import org.apache.commons.lang3.NotImplementedException;
 import org.rutebanken.tiamat.model.InfoSpot;
+import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -56,4 +64,51 @@ public class InfoSpotRepositoryImpl implements InfoSpotRepositoryCustom {
                 .setParameter("version", version)
                 .getResultList();
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<VersionOfObjectRefStructure, List<InfoSpot>> findForAssociationsWithVersion(Collection<VersionOfObjectRefStructure> associations) {
+        Map<VersionOfObjectRefStructure, List<InfoSpot>> result = new HashMap<>();
+        if (associations.isEmpty()) {
+            return result;
+        }
+
+        String sql = """
+            SELECT isl.location_netex_id, isl.version, isl.info_spot_id
+            FROM info_spot_location isl
+            WHERE isl.location_netex_id = ANY(:netexIds)
+        """;
+
+        List<Object[]> locations = entityManager.createNativeQuery(sql)
+                .setParameter("netexIds", associations.stream().map(VersionOfObjectRefStructure::getRef).distinct().toArray(String[]::new))
+                .getResultList();
+
+        Map<Long, InfoSpot> infoSpotsById = new HashMap<>();
+        if (!locations.isEmpty()) {
+            List<Long> infoSpotIds = locations.stream().map(location -> ((Number) location[2]).longValue()).distinct().toList();
+            infoSpotsById = entityManager.createQuery("SELECT ip FROM InfoSpot ip WHERE ip.id IN :ids", InfoSpot.class)
+                    .setParameter("ids", infoSpotIds)
+                    .getResultList()
+                    .stream()
+                    .collect(Collectors.toMap(InfoSpot::getId, Function.identity()));
+        }
+
+        Map<String, List<Object[]>> locationsByNetexId = locations.stream()
+                .collect(Collectors.groupingBy(location -> (String) location[0]));
+
+        for (VersionOfObjectRefStructure association : associations) {
+            // Locations without version are associated with every version of the entity
+            Set<InfoSpot> infoSpots = new LinkedHashSet<>();
+            for (Object[] location : locationsByNetexId.getOrDefault(association.getRef(), List.of())) {
+                if (location[1] == null || location[1].equals(association.getVersion())) {
+                    InfoSpot infoSpot = infoSpotsById.get(((Number) location[2]).longValue());
+                    if (infoSpot != null) {
+                        infoSpots.add(infoSpot);
+                    }
+                }
+            }
+            result.put(association, new ArrayList<>(infoSpots));
+        }
+        return result;
+    }
 }
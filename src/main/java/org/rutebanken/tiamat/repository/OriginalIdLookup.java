@@ -0,0 +1,91 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.MERGED_ID_KEY;
+import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.ORIGINAL_ID_KEY;
+
+/**
+ * Rules for the original_id_lookup table, which holds the original and merged IDs of stop places and quays.
+ * Every ID is stored with its full value and its suffix (the part after the last colon).
+ * <p>
+ * Lookups keep the matching of the key value tables: a lookup value matches IDs that end with it (<code>LIKE '%value'</code>).
+ * If the lookup value has a colon, matching IDs must have the same suffix as the lookup value,
+ * so the suffix index narrows the rows before they are compared with <code>LIKE</code>.
+ * Lookup values without a colon can match the end of any suffix, and are compared with <code>LIKE</code> only.
+ */
+public final class OriginalIdLookup {
+
+    public static final Set<String> INDEXED_KEYS = Set.of(ORIGINAL_ID_KEY, MERGED_ID_KEY);
+
+    private OriginalIdLookup() {
+    }
+
+    public static boolean isIndexed(String key) {
+        return key != null && INDEXED_KEYS.contains(key);
+    }
+
+    /**
+     * @return the part of the ID after the last colon. The same as {@link org.rutebanken.tiamat.netex.id.NetexIdHelper#extractIdPostfix(String)}
+     */
+    public static String suffix(String id) {
+        return id.substring(id.lastIndexOf(':') + 1).trim();
+    }
+
+    /**
+     * @return the suffix that IDs ending with the lookup value must have, or null if the lookup value has no colon
+     */
+    public static String lookupSuffix(String lookupValue) {
+        return lookupValue.indexOf(':') < 0 ? null : suffix(lookupValue);
+    }
+
+    static String[] lookupSuffixes(Collection<String> lookupValues) {
+        return lookupValues.stream()
+                .map(OriginalIdLookup::lookupSuffix)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @return <code>LIKE</code> patterns for the lookup values with a colon if withColon is true, or else for those without
+     */
+    static String[] endsWithPatterns(Collection<String> lookupValues, boolean withColon) {
+        return lookupValues.stream()
+                .filter(lookupValue -> (lookupSuffix(lookupValue) != null) == withColon)
+                .distinct()
+                .map(lookupValue -> "%" + lookupValue)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Quay original IDs are matched on what follows a colon in the stored ID (<code>LIKE '%:value'</code>).
+     */
+    public static String quayOriginalIdEnding(String quayOriginalId) {
+        return ":" + quayOriginalId;
+    }
+
+    /**
+     * @return true if the stored ID is a match for the lookup value
+     */
+    public static boolean matches(String lookupValue, String value) {
+        return value.endsWith(lookupValue);
+    }
+}
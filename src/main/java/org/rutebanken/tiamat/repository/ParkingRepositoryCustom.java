@@ -28,11 +28,11 @@ public interface ParkingRepositoryCustom extends DataManagedObjectStructureRepos
 
     String findFirstByKeyValues(String key, Set<String> value);
 
-    Iterator<Parking> scrollParkings(Set<Long> stopPlaceIds);
+    Iterator<Parking> scrollParkings(PrimaryIds stopPlaceIds);
 
     int countResult(ParkingSearch parkingSearch);
 
-    int countResult(Set<Long> stopPlaceIds);
+    int countResult(PrimaryIds stopPlaceIds);
 
     String findNearbyParking(Envelope boundingBox, String value, ParkingTypeEnumeration parkingType);
 
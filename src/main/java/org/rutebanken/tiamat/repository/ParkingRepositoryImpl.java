@@ -21,7 +21,6 @@ import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -109,7 +108,7 @@ public class ParkingRepositoryImpl implements ParkingRepositoryCustom {
     }
 
     @Override
-    public Iterator<Parking> scrollParkings(Set<Long> stopPlaceIds) {
+    public Iterator<Parking> scrollParkings(PrimaryIds stopPlaceIds) {
         return scrollParkings(getParkingsByStopPlaceIdsSQL(stopPlaceIds));
     }
 
@@ -119,7 +118,7 @@ public class ParkingRepositoryImpl implements ParkingRepositoryCustom {
     }
 
     @Override
-    public int countResult(Set<Long> stopPlaceIds) {
+    public int countResult(PrimaryIds stopPlaceIds) {
         if(stopPlaceIds == null || stopPlaceIds.isEmpty()) {
             return 0;
         }
@@ -151,7 +150,7 @@ public class ParkingRepositoryImpl implements ParkingRepositoryCustom {
         return parkingEntityIterator;
     }
 
-    private Pair<String, Map<String, Object>> getParkingsByStopPlaceIdsSQL(Set<Long> stopPlaceIds) {
+    private Pair<String, Map<String, Object>> getParkingsByStopPlaceIdsSQL(PrimaryIds stopPlaceIds) {
 
         StringBuilder sql = new StringBuilder("SELECT p.* " +
                 "FROM (SELECT p2.id, " +
@@ -163,10 +162,8 @@ public class ParkingRepositoryImpl implements ParkingRepositoryCustom {
                 "           AND ( Cast(sp.version AS TEXT) = " +
                 "                   p2.parent_site_ref_version " +
                 "                 OR p2.parent_site_ref_version IS NULL ) " +
-                "      WHERE sp.id in (");
+                "      WHERE sp.id = ANY(:stopPlaceIds)");
 
-        sql.append(StringUtils.join(stopPlaceIds, ','));
-        sql.append(')');
         sql.append("   GROUP  BY p2.id) p2 ")
                 .append("JOIN parking p ")
                 .append("ON p2.id = p.id ")
@@ -174,7 +171,9 @@ public class ParkingRepositoryImpl implements ParkingRepositoryCustom {
                 .append(SQL_MAX_VERSION_OF_PARKING)
                 .append("ORDER BY p.netex_id, p.version");
 
-        return Pair.of(sql.toString(), new HashMap<String, Object>(0));
+        Map<String, Object> parameters = new HashMap<>(1);
+        parameters.put("stopPlaceIds", stopPlaceIds.array());
+        return Pair.of(sql.toString(), parameters);
     }
 
     @Override
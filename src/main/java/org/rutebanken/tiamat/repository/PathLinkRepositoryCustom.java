@@ -31,5 +31,5 @@ public interface PathLinkRepositoryCustom {
      */
     List<String> findByStopPlaceNetexId(String netexStopPlaceId);
 
-    List<PathLink> findByStopPlaceIds(Set<Long> stopPlaceIds);
+    List<PathLink> findByStopPlaceIds(PrimaryIds stopPlaceIds);
 }
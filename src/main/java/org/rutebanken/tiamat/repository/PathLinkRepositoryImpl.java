@@ -20,7 +20,6 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
-import org.apache.commons.lang3.StringUtils;
 import org.rutebanken.tiamat.model.PathLink;
 
 import java.math.BigInteger;
@@ -90,16 +89,16 @@ public class PathLinkRepositoryImpl implements PathLinkRepositoryCustom {
     }
 
     @Override
-    public List<PathLink> findByStopPlaceIds(Set<Long> stopPlaceIds) {
+    public List<PathLink> findByStopPlaceIds(PrimaryIds stopPlaceIds) {
 
         if(stopPlaceIds.isEmpty()) {
             return new ArrayList<>();
         }
 
-        String sql = createFindPathLinkFromStopPlaceIdsSQL(stopPlaceIds);
+        String sql = createFindPathLinkFromStopPlaceIdsSQL();
 
-        System.out.println(sql);
         Query query = entityManager.createNativeQuery(sql, PathLink.class);
+        stopPlaceIds.bind(query, "stopPlaceIds");
 
         try {
             @SuppressWarnings("unchecked")
@@ -111,7 +110,7 @@ public class PathLinkRepositoryImpl implements PathLinkRepositoryCustom {
         }
     }
 
-    public String createFindPathLinkFromStopPlaceIdsSQL(Set<Long> stopPlaceIds) {
+    public String createFindPathLinkFromStopPlaceIdsSQL() {
         return new StringBuilder(
                 "SELECT pl.* " +
                         "FROM (" +
@@ -126,9 +125,7 @@ public class PathLinkRepositoryImpl implements PathLinkRepositoryCustom {
                         "               AND (ple.place_version = cast(q.version AS TEXT) OR ple.place_version is NULL))" +
                         "       INNER JOIN path_link pl2 ON ple.id = pl2.from_id" +
                         "           OR ple.id = pl2.to_id" +
-                        "   WHERE s.id IN(")
-                .append(StringUtils.join(stopPlaceIds, ','))
-                .append(") ")
+                        "   WHERE s.id = ANY(:stopPlaceIds) ")
                 .append("GROUP BY pl2.id) pl2 ")
                 .append("JOIN path_link pl ON pl.id = pl2.id ")
                 .append("ORDER by pl.netex_id, pl.version")
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import jakarta.persistence.Query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable, sorted set of database primary IDs backed by a primitive long array.
+ * Bound to native queries as one bigint[] parameter, to be used with <code>= ANY(:param)</code>.
+ * The SQL text stays the same regardless of the number of IDs, so that planning cost does not grow with the export size.
+ */
+public final class PrimaryIds {
+
+    private static final PrimaryIds EMPTY = new PrimaryIds(new long[0]);
+
+    private final long[] ids;
+
+    private PrimaryIds(long[] sortedDistinctIds) {
+        this.ids = sortedDistinctIds;
+    }
+
+    public static PrimaryIds empty() {
+        return EMPTY;
+    }
+
+    public static PrimaryIds of(long... ids) {
+        return of(LongStream.of(ids));
+    }
+
+    public static PrimaryIds of(Collection<Long> ids) {
+        if (ids == null) {
+            return EMPTY;
+        }
+        return of(ids.stream().mapToLong(Long::longValue));
+    }
+
+    public static PrimaryIds of(LongStream ids) {
+        long[] sortedDistinctIds = ids.sorted().distinct().toArray();
+        return sortedDistinctIds.length == 0 ? EMPTY : new PrimaryIds(sortedDistinctIds);
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(ids);
+    }
+
+    /**
+     * Bind the IDs as a bigint[] parameter. The backing array is shared, not copied.
+     */
+    public void bind(Query query, String parameterName) {
+        query.setParameter(parameterName, ids);
+    }
+
+    /**
+     * @return the backing array, for parameter maps passed to {@link org.rutebanken.tiamat.repository.search.SearchHelper}. Must not be modified.
+     */
+    long[] array() {
+        return ids;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PrimaryIds)) return false;
+        return Arrays.equals(ids, ((PrimaryIds) o).ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public String toString() {
+        return "PrimaryIds{size=" + ids.length + '}';
+    }
+}
@@ -25,7 +25,10 @@ import java.util.Set;
 
 public interface QuayRepositoryCustom extends DataManagedObjectStructureRepository<Quay> {
 
-    List<IdMappingDto> findKeyValueMappingsForQuay(Instant validFrom, Instant validTo, int recordPosition, int recordsPerRoundTrip);
+    /**
+     * @param after the last mapping of the previous page, or null for the first page
+     */
+    List<IdMappingDto> findKeyValueMappingsForQuay(Instant validFrom, Instant validTo, IdMappingDto after, int recordsPerRoundTrip);
 
     Set<String> findUniqueQuayIds(Instant validFrom, Instant validTo);
 
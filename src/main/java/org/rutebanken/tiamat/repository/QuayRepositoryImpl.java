@@ -24,7 +24,6 @@ import org.rutebanken.tiamat.dtoassembling.dto.JbvCodeMappingDto;
 import org.rutebanken.tiamat.model.StopTypeEnumeration;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -81,8 +80,8 @@ public class QuayRepositoryImpl implements QuayRepositoryCustom {
     }
 
     @Override
-    public List<IdMappingDto> findKeyValueMappingsForQuay(Instant validFrom, Instant validTo, int recordPosition, int recordsPerRoundTrip) {
-        String sql = "SELECT vi.items, q.netex_id, s.stop_place_type, s.from_date sFrom, s.to_date sTo, p.from_date pFrom, p.to_date pTo " +
+    public List<IdMappingDto> findKeyValueMappingsForQuay(Instant validFrom, Instant validTo, IdMappingDto after, int recordsPerRoundTrip) {
+        String sql = "SELECT vi.items, q.netex_id, s.stop_place_type, s.from_date sFrom, s.to_date sTo, p.from_date pFrom, p.to_date pTo, q.id, qkv.key_values_id " +
                 "FROM quay_key_values qkv " +
                 "	INNER JOIN stop_place_quays spq " +
                 "		ON spq.quays_id = qkv.quay_id " +
@@ -95,10 +94,11 @@ public class QuayRepositoryImpl implements QuayRepositoryCustom {
                 SQL_LEFT_JOIN_PARENT_STOP +
                 "WHERE " +
                  SQL_STOP_PLACE_OR_PARENT_IS_VALID_IN_INTERVAL +
-                "ORDER BY q.id,qkv.key_values_id";
+                (after != null ? "AND (q.id, qkv.key_values_id, vi.items) > (:afterId, :afterKeyValuesId, :afterItem) " : "") +
+                "ORDER BY q.id, qkv.key_values_id, vi.items";
 
 
-        Query nativeQuery = entityManager.createNativeQuery(sql).setFirstResult(recordPosition).setMaxResults(recordsPerRoundTrip);
+        Query nativeQuery = entityManager.createNativeQuery(sql).setMaxResults(recordsPerRoundTrip);
 
         if (validTo == null) {
             // Assuming 1000 years into the future is the same as forever
@@ -108,28 +108,11 @@ public class QuayRepositoryImpl implements QuayRepositoryCustom {
         nativeQuery.setParameter("mappingIdKeys", Arrays.asList(ORIGINAL_ID_KEY, MERGED_ID_KEY));
         nativeQuery.setParameter("validFrom", Date.from(validFrom));
         nativeQuery.setParameter("validTo", Date.from(validTo));
+        StopPlaceRepositoryImpl.setIdMappingPosition(nativeQuery, after);
         @SuppressWarnings("unchecked")
         List<Object[]> result = nativeQuery.getResultList();
 
-        List<IdMappingDto> mappingResult = new ArrayList<>();
-        for (Object[] row : result) {
-            Instant mappingValidFrom = parseInstant(row[3]);
-            Instant mappingValidTo = parseInstant(row[4]);
-            if (mappingValidFrom == null && mappingValidTo == null) {
-                mappingValidFrom = parseInstant(row[5]);
-                mappingValidTo = parseInstant(row[6]);
-            }
-            mappingResult.add(new IdMappingDto(row[0].toString(), row[1].toString(), mappingValidFrom, mappingValidTo, parseStopType(row[2])));
-        }
-
-        return mappingResult;
-    }
-
-    private Instant parseInstant(Object timestampObject) {
-        if (timestampObject instanceof Timestamp) {
-            return ((Timestamp)timestampObject).toInstant();
-        }
-        return null;
+        return StopPlaceRepositoryImpl.toIdMappings(result);
     }
 
     @Override
@@ -165,13 +148,6 @@ public class QuayRepositoryImpl implements QuayRepositoryCustom {
         return ids;
     }
 
-    private StopTypeEnumeration parseStopType(Object o) {
-        if (o != null) {
-            return StopTypeEnumeration.valueOf(o.toString());
-        }
-        return null;
-    }
-
     /**
      * Return jbv code mapping for rail stations. The stop place contains jbc code mapping. The quay contains the public code.
      * @return
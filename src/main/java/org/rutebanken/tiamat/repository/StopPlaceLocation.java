@@ -0,0 +1,30 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import org.rutebanken.tiamat.model.StopTypeEnumeration;
+
+/**
+ * Location, type and name of a stop place. Used to match incoming stop places with nearby stop places without loading the entities.
+ *
+ * @param netexId       stop place netex ID
+ * @param x             longitude of the centroid
+ * @param y             latitude of the centroid
+ * @param stopPlaceType can be null, for instance for parent stop places
+ * @param name          name value, can be null
+ */
+public record StopPlaceLocation(String netexId, double x, double y, StopTypeEnumeration stopPlaceType, String name) {
+}
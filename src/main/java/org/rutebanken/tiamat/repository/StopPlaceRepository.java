@@ -25,7 +25,6 @@ import org.springframework.data.repository.query.Param;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 public interface StopPlaceRepository extends StopPlaceRepositoryCustom, EntityInVersionRepository<StopPlace> {
 
@@ -45,6 +44,6 @@ public interface StopPlaceRepository extends StopPlaceRepositoryCustom, EntityIn
     Iterator<StopPlace> scrollStopPlaces(ExportParams exportParams);
 
     @Override
-    Iterator<StopPlace> scrollStopPlaces(Set<Long> stopPlacePrimaryIds);
+    Iterator<StopPlace> scrollStopPlaces(PrimaryIds stopPlacePrimaryIds);
 }
 
@@ -27,6 +27,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,12 @@ public interface StopPlaceRepositoryCustom extends DataManagedObjectStructureRep
 
     List<String> findNearbyStopPlace(Envelope envelope, StopTypeEnumeration stopTypeEnumeration);
 
+    /**
+     * Stop places with centroid within the envelope, where the stop place or its parent is valid at the point in time.
+     * Only the newest version of each stop place is returned.
+     */
+    List<StopPlaceLocation> findStopPlaceLocations(Envelope envelope, Instant pointInTime);
+
     String findFirstByKeyValues(String key, Set<String> value);
 
     Set<String> findByKeyValues(String key, Set<String> values);
@@ -54,19 +61,55 @@ public interface StopPlaceRepositoryCustom extends DataManagedObjectStructureRep
 
     List<String> searchByKeyValue(String key, String value);
 
-    List<IdMappingDto> findKeyValueMappingsForStop(Instant validFrom, Instant validTo, int recordPosition, int recordsPerRoundTrip);
+    /**
+     * @param after the last mapping of the previous page, or null for the first page
+     */
+    List<IdMappingDto> findKeyValueMappingsForStop(Instant validFrom, Instant validTo, IdMappingDto after, int recordsPerRoundTrip);
+
+    /**
+     * A value that changes when stop places or quays are added or changed, or when a stop place becomes valid or expires at the point in time.
+     * Tells whether id mappings created earlier are still current.
+     * Costs a count of the stop place primary key, the other values are read from index ends.
+     */
+    String findIdMappingStateTag(Instant pointInTime);
 
     Set<String> findUniqueStopPlaceIds(Instant validFrom, Instant validTo);
 
     List<String> findStopPlaceFromQuayOriginalId(String quayOriginalId, Instant pointInTime);
 
+    /**
+     * Look up stop places valid at the point in time from their original or merged IDs in one query.
+     * See {@link OriginalIdLookup} for how lookup values are matched.
+     *
+     * @return netex IDs of matching stop places per lookup value. Lookup values without matches are left out.
+     */
+    Map<String, Set<String>> findStopPlacesByOriginalIds(String key, Set<String> lookupValues, Instant pointInTime);
+
+    /**
+     * Look up stop places valid at the point in time from the original IDs of their quays in one query.
+     * A lookup value matches quay IDs that end with a colon and the lookup value.
+     *
+     * @return netex IDs of matching stop places per lookup value. Lookup values without matches are left out.
+     */
+    Map<String, Set<String>> findStopPlacesByQuayOriginalIds(Set<String> lookupValues, Instant pointInTime);
+
+    void updateOriginalIdLookup(StopPlace stopPlace);
+
+    /**
+     * Replace the original ID lookup rows of many stop places with one delete and one insert.
+     * Like {@link #updateOriginalIdLookup(StopPlace)} for each of them, but written at once.
+     * The stop places and their quays must already be flushed, as this does not flush the session.
+     * The updates only name the lookup table as query space, so they do not evict stop places from the second level cache.
+     */
+    void updateOriginalIdLookups(Collection<StopPlace> stopPlaces);
+
     Iterator<StopPlace> scrollStopPlaces();
 
     Iterator<StopPlace> scrollStopPlaces(ExportParams exportParams);
 
     Set<String> getNetexIds(ExportParams exportParams);
 
-    Set<Long> getDatabaseIds(ExportParams exportParams, boolean ignorePaging);
+    PrimaryIds getDatabaseIds(ExportParams exportParams, boolean ignorePaging);
 
     Page<StopPlace> findStopPlace(ExportParams exportParams);
 
@@ -74,11 +117,32 @@ public interface StopPlaceRepositoryCustom extends DataManagedObjectStructureRep
 
     List<StopPlace> findAll(List<String> stopPlacesNetexIds);
 
+    /**
+     * @return the newest version of each of the stop places, in one query
+     */
+    List<StopPlace> findNewestVersions(Collection<String> stopPlaceNetexIds);
+
     StopPlace findByQuay(Quay quay);
 
+    /**
+     * Find the stop places having the newest versions of the quays, in one query.
+     * Like {@link #findByQuay(Quay)} for the newest version of each quay.
+     *
+     * @return primary IDs of the stop places by quay netex ID. Quays that are not found are not included.
+     */
+    Map<String, Long> findStopPlaceIdsByNewestQuays(Collection<String> quayNetexIds);
+
+    /**
+     * Find the stop places at the top of the parent-child hierarchy, for stop place or quay IDs.
+     * Looks in all versions, so that parents that have changed are included.
+     *
+     * @return the netex IDs of the parent stop places, or of the stop places without parents, by the given IDs. IDs that are not found are not included.
+     */
+    Map<String, Set<String>> findRootStopPlaceIds(Collection<String> stopPlaceOrQuayIds);
+
     List<JbvCodeMappingDto> findJbvCodeMappingsForStopPlace();
 
-    Iterator<StopPlace> scrollStopPlaces(Set<Long> stopPlacePrimaryIds);
+    Iterator<StopPlace> scrollStopPlaces(PrimaryIds stopPlacePrimaryIds);
 
     Map<String, Set<String>> listStopPlaceIdsAndQuayIds(Instant validFrom, Instant validTo);
 
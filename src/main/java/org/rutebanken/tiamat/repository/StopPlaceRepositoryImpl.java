@@ -36,6 +36,7 @@ import org.rutebanken.tiamat.exporter.params.ExportParams;
 import org.rutebanken.tiamat.model.Quay;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.model.StopTypeEnumeration;
+import org.rutebanken.tiamat.model.Value;
 import org.rutebanken.tiamat.repository.iterator.ScrollableResultIterator;
 import org.rutebanken.tiamat.repository.search.ChangedStopPlaceSearch;
 import org.rutebanken.tiamat.repository.search.SearchHelper;
@@ -48,21 +49,27 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.util.Pair;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.MERGED_ID_KEY;
 import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.ORIGINAL_ID_KEY;
@@ -75,6 +82,14 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
 
     private static final int SCROLL_FETCH_SIZE = 1000;
 
+    /**
+     * Native updates name the tables they change as query spaces.
+     * Otherwise Hibernate invalidates every second level cache region when they are executed.
+     */
+    private static final String ORIGINAL_ID_LOOKUP_TABLE = "original_id_lookup";
+
+    static final String STOP_PLACE_TARIFF_ZONES_TABLE = "stop_place_tariff_zones";
+
     private static BasicFormatterImpl basicFormatter = new BasicFormatterImpl();
 
     /**
@@ -131,6 +146,11 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
     @PersistenceContext
     private EntityManager entityManager;
 
+    /**
+     * Transaction resource key for stop places with original ID lookup rows that are not written yet.
+     */
+    private final Object pendingOriginalIdLookupsKey = new Object();
+
     @Autowired
     private GeometryFactory geometryFactory;
 
@@ -286,6 +306,30 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<StopPlaceLocation> findStopPlaceLocations(Envelope envelope, Instant pointInTime) {
+        Geometry geometryFilter = geometryFactory.toGeometry(envelope);
+
+        Query query = entityManager.createNativeQuery("SELECT DISTINCT ON (s.netex_id) s.netex_id, ST_X(s.centroid), ST_Y(s.centroid), s.stop_place_type, s.name_value " +
+                "FROM stop_place s " +
+                SQL_LEFT_JOIN_PARENT_STOP +
+                "WHERE ST_Within(s.centroid, :filter) = true " +
+                "AND " + SQL_STOP_PLACE_OR_PARENT_IS_VALID_AT_POINT_IN_TIME +
+                "ORDER BY s.netex_id, s.version DESC");
+
+        query.setParameter("filter", geometryFilter);
+        query.setParameter("pointInTime", Date.from(pointInTime));
+
+        List<Object[]> rows = query.getResultList();
+        List<StopPlaceLocation> locations = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            locations.add(new StopPlaceLocation((String) row[0], ((Number) row[1]).doubleValue(), ((Number) row[2]).doubleValue(),
+                    parseStopType(row[3]), (String) row[4]));
+        }
+        return locations;
+    }
+
     @Override
     public String findFirstByKeyValues(String key, Set<String> values) {
         Set<String> matches = findByKeyValues(key, values);
@@ -318,6 +362,21 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
      */
     @Override
     public Set<String> findByKeyValues(String key, Set<String> values, boolean exactMatch) {
+        if (!OriginalIdLookup.isIndexed(key)) {
+            return findByKeyValuesInKeyValueTables(key, values, exactMatch);
+        }
+
+        Set<String> netexIds = new HashSet<>();
+        findInOriginalIdLookup(key, exactMatch ? Set.of() : values, exactMatch ? values : Set.of(), false, Instant.now())
+                .forEach(row -> netexIds.add((String) row[1]));
+        return netexIds;
+    }
+
+    /**
+     * Find stop place netex IDs by key values that are not kept in the original ID lookup table.
+     * Scans the key value tables.
+     */
+    private Set<String> findByKeyValuesInKeyValueTables(String key, Set<String> values, boolean exactMatch) {
 
         StringBuilder sqlQuery = new StringBuilder("SELECT s.netex_id " +
                                                            "FROM stop_place s " +
@@ -387,7 +446,208 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         }
     }
 
-    private StopTypeEnumeration parseStopType(Object o) {
+    @Override
+    public Map<String, Set<String>> findStopPlacesByOriginalIds(String key, Set<String> lookupValues, Instant pointInTime) {
+        List<Object[]> rows = findInOriginalIdLookup(key, lookupValues, Set.of(), false, pointInTime);
+        return groupByLookupValue(lookupValues, lookupValue -> lookupValue, rows);
+    }
+
+    @Override
+    public Map<String, Set<String>> findStopPlacesByQuayOriginalIds(Set<String> lookupValues, Instant pointInTime) {
+        List<Object[]> rows = findInOriginalIdLookup(ORIGINAL_ID_KEY, quayOriginalIdEndings(lookupValues), Set.of(), true, pointInTime);
+        return groupByLookupValue(lookupValues, OriginalIdLookup::quayOriginalIdEnding, rows);
+    }
+
+    private static Set<String> quayOriginalIdEndings(Collection<String> quayOriginalIds) {
+        return quayOriginalIds.stream().map(OriginalIdLookup::quayOriginalIdEnding).collect(Collectors.toSet());
+    }
+
+    private Map<String, Set<String>> groupByLookupValue(Set<String> lookupValues, Function<String, String> toEnding, List<Object[]> rows) {
+        Map<String, Set<String>> netexIdsByLookupValue = new HashMap<>();
+        for (Object[] row : rows) {
+            for (String lookupValue : lookupValues) {
+                if (OriginalIdLookup.matches(toEnding.apply(lookupValue), (String) row[0])) {
+                    netexIdsByLookupValue.computeIfAbsent(lookupValue, v -> new HashSet<>()).add((String) row[1]);
+                }
+            }
+        }
+        return netexIdsByLookupValue;
+    }
+
+    /**
+     * One query for all values. IDs must end with one of the endings, or be equal to one of the full values.
+     * See {@link OriginalIdLookup} for how the indexes are used.
+     *
+     * @return rows of full value and stop place netex ID
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> findInOriginalIdLookup(String key, Collection<String> endings, Collection<String> fullValues, boolean quays, Instant pointInTime) {
+        writePendingOriginalIdLookups();
+
+        String[] suffixes = OriginalIdLookup.lookupSuffixes(endings);
+        String[] suffixPatterns = OriginalIdLookup.endsWithPatterns(endings, true);
+        String[] patterns = OriginalIdLookup.endsWithPatterns(endings, false);
+
+        List<String> conditions = new ArrayList<>();
+        if (!fullValues.isEmpty()) {
+            conditions.add("l.id_value = ANY(:fullValues)");
+        }
+        if (suffixes.length > 0) {
+            conditions.add("(l.id_suffix = ANY(:suffixes) AND l.id_value LIKE ANY(:suffixPatterns))");
+        }
+        if (patterns.length > 0) {
+            conditions.add("l.id_value LIKE ANY(:patterns)");
+        }
+        if (conditions.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT DISTINCT l.id_value, s.netex_id " +
+                "FROM original_id_lookup l " +
+                "INNER JOIN stop_place s " +
+                "ON s.id = l.stop_place_id " +
+                SQL_LEFT_JOIN_PARENT_STOP +
+                "WHERE l.id_key = :key " +
+                "AND l.quay_id IS " + (quays ? "NOT NULL " : "NULL ") +
+                "AND (" + String.join(" OR ", conditions) + ") " +
+                "AND " + SQL_STOP_PLACE_OR_PARENT_IS_VALID_AT_POINT_IN_TIME;
+
+        Query query = entityManager.createNativeQuery(sql);
+        query.setParameter("key", key);
+        if (!fullValues.isEmpty()) {
+            query.setParameter("fullValues", fullValues.toArray(String[]::new));
+        }
+        if (suffixes.length > 0) {
+            query.setParameter("suffixes", suffixes);
+            query.setParameter("suffixPatterns", suffixPatterns);
+        }
+        if (patterns.length > 0) {
+            query.setParameter("patterns", patterns);
+        }
+        query.setParameter("pointInTime", Date.from(pointInTime));
+
+        return query.getResultList();
+    }
+
+    /**
+     * Replace the rows in the original ID lookup table for the stop place and its quays.
+     * Must be called when saving a stop place with changed original or merged IDs.
+     * Children of parent stop places are not included, as they are saved separately.
+     * <p>
+     * The rows are written before the next original ID lookup in the transaction, or before the transaction is committed.
+     * The session is then flushed once for all stop places saved since the last write, instead of once per save.
+     */
+    @Override
+    public void updateOriginalIdLookup(StopPlace stopPlace) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            entityManager.flush();
+            updateOriginalIdLookups(List.of(stopPlace));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<StopPlace> pending = (Set<StopPlace>) TransactionSynchronizationManager.getResource(pendingOriginalIdLookupsKey);
+        if (pending == null) {
+            pending = Collections.newSetFromMap(new IdentityHashMap<>());
+            TransactionSynchronizationManager.bindResource(pendingOriginalIdLookupsKey, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    writePendingOriginalIdLookups();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingOriginalIdLookupsKey);
+                }
+            });
+        }
+        pending.add(stopPlace);
+    }
+
+    private void writePendingOriginalIdLookups() {
+        @SuppressWarnings("unchecked")
+        Set<StopPlace> pending = (Set<StopPlace>) TransactionSynchronizationManager.getResource(pendingOriginalIdLookupsKey);
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<StopPlace> stopPlaces = new ArrayList<>(pending);
+        pending.clear();
+
+        // Stop places and quays must be inserted before they can be referred to
+        entityManager.flush();
+        updateOriginalIdLookups(stopPlaces);
+    }
+
+    @Override
+    public void updateOriginalIdLookups(Collection<StopPlace> stopPlaces) {
+
+        if (stopPlaces.isEmpty()) {
+            return;
+        }
+
+        entityManager.createNativeQuery("DELETE FROM original_id_lookup WHERE stop_place_id = ANY(:stopPlaceIds)")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ORIGINAL_ID_LOOKUP_TABLE)
+                .setParameter("stopPlaceIds", stopPlaces.stream().map(StopPlace::getId).toArray(Long[]::new))
+                .executeUpdate();
+
+        List<Long> stopPlaceIds = new ArrayList<>();
+        List<Long> quayIds = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+
+        for (StopPlace stopPlace : stopPlaces) {
+            collectOriginalIds(null, stopPlace.getKeyValues(), quayIds, keys, values);
+            if (stopPlace.getQuays() != null) {
+                for (Quay quay : stopPlace.getQuays()) {
+                    collectOriginalIds(quay.getId(), quay.getKeyValues(), quayIds, keys, values);
+                }
+            }
+            while (stopPlaceIds.size() < values.size()) {
+                stopPlaceIds.add(stopPlace.getId());
+            }
+        }
+
+        if (values.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO original_id_lookup (stop_place_id, quay_id, id_key, id_value, id_suffix) " +
+                "SELECT i.stop_place_id, i.quay_id, i.id_key, i.id_value, i.id_suffix " +
+                "FROM unnest(CAST(:stopPlaceIds AS bigint[]), CAST(:quayIds AS bigint[]), CAST(:keys AS text[]), CAST(:values AS text[]), CAST(:suffixes AS text[])) " +
+                "AS i(stop_place_id, quay_id, id_key, id_value, id_suffix)";
+
+        int inserted = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ORIGINAL_ID_LOOKUP_TABLE)
+                .setParameter("stopPlaceIds", stopPlaceIds.toArray(Long[]::new))
+                .setParameter("quayIds", quayIds.toArray(Long[]::new))
+                .setParameter("keys", keys.toArray(String[]::new))
+                .setParameter("values", values.toArray(String[]::new))
+                .setParameter("suffixes", values.stream().map(OriginalIdLookup::suffix).toArray(String[]::new))
+                .executeUpdate();
+
+        logger.debug("Inserted {} original ID lookup rows for {} stop places", inserted, stopPlaces.size());
+    }
+
+    private void collectOriginalIds(Long quayId, Map<String, Value> keyValues, List<Long> quayIds, List<String> keys, List<String> values) {
+        for (String key : OriginalIdLookup.INDEXED_KEYS) {
+            Value value = keyValues.get(key);
+            if (value == null || value.getItems() == null) {
+                continue;
+            }
+            for (String item : value.getItems()) {
+                if (item != null && !item.isBlank()) {
+                    quayIds.add(quayId);
+                    keys.add(key);
+                    values.add(item);
+                }
+            }
+        }
+    }
+
+    private static StopTypeEnumeration parseStopType(Object o) {
         if (o != null) {
             return StopTypeEnumeration.valueOf(o.toString());
         }
@@ -396,8 +656,8 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
 
     @SuppressWarnings("unchecked")
     @Override
-    public List<IdMappingDto> findKeyValueMappingsForStop(Instant validFrom, Instant validTo, int recordPosition, int recordsPerRoundTrip) {
-        String sql = "SELECT v.items, s.netex_id, s.stop_place_type, s.from_date sFrom, s.to_date sTo, p.from_date pFrom, p.to_date pTo " +
+    public List<IdMappingDto> findKeyValueMappingsForStop(Instant validFrom, Instant validTo, IdMappingDto after, int recordsPerRoundTrip) {
+        String sql = "SELECT v.items, s.netex_id, s.stop_place_type, s.from_date sFrom, s.to_date sTo, p.from_date pFrom, p.to_date pTo, s.id, spkv.key_values_id " +
                              "FROM stop_place_key_values spkv " +
                              "  INNER JOIN value_items v " +
                              "      ON spkv.key_values_key in (:mappingIdKeys) AND spkv.key_values_id = v.value_id AND v.items NOT LIKE '' " +
@@ -405,10 +665,11 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
                              SQL_LEFT_JOIN_PARENT_STOP +
                              "WHERE " +
                               SQL_STOP_PLACE_OR_PARENT_IS_VALID_IN_INTERVAL +
-                             "ORDER BY s.id,spkv.key_values_id";
+                             (after != null ? "AND (s.id, spkv.key_values_id, v.items) > (:afterId, :afterKeyValuesId, :afterItem) " : "") +
+                             "ORDER BY s.id, spkv.key_values_id, v.items";
 
 
-        Query nativeQuery = entityManager.createNativeQuery(sql).setFirstResult(recordPosition).setMaxResults(recordsPerRoundTrip);
+        Query nativeQuery = entityManager.createNativeQuery(sql).setMaxResults(recordsPerRoundTrip);
 
         if (validTo == null) {
             // Assuming 1000 years into the future is the same as forever
@@ -418,9 +679,31 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         nativeQuery.setParameter("mappingIdKeys", Arrays.asList(ORIGINAL_ID_KEY, MERGED_ID_KEY));
         nativeQuery.setParameter("validFrom", Date.from(validFrom));
         nativeQuery.setParameter("validTo", Date.from(validTo));
+        setIdMappingPosition(nativeQuery, after);
 
-        List<Object[]> result = nativeQuery.getResultList();
+        return toIdMappings(nativeQuery.getResultList());
+    }
+
+    /**
+     * Keyset pagination for id mappings. The next page starts after the last mapping of the previous page,
+     * so that the database does not have to skip the rows of earlier pages like with an offset.
+     * <p>
+     * The position is entity id, key values id and original id. Value items have no unique column, so if the same
+     * original id is stored twice in one key value, the rows are equal and only one of them is returned.
+     * Paging with an offset returned both, as repeated lines in the dumps.
+     */
+    static void setIdMappingPosition(Query nativeQuery, IdMappingDto after) {
+        if (after != null) {
+            nativeQuery.setParameter("afterId", after.entityId);
+            nativeQuery.setParameter("afterKeyValuesId", after.keyValuesId);
+            nativeQuery.setParameter("afterItem", after.originalId);
+        }
+    }
 
+    /**
+     * Rows of original id, netex id, stop place type, stop validity, parent validity, entity id and key values id.
+     */
+    static List<IdMappingDto> toIdMappings(List<Object[]> result) {
         List<IdMappingDto> mappingResult = new ArrayList<>();
         for (Object[] row : result) {
             Instant mappingValidFrom = parseInstant(row[3]);
@@ -429,14 +712,34 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
                 mappingValidFrom = parseInstant(row[5]);
                 mappingValidTo = parseInstant(row[6]);
             }
-            mappingResult.add(new IdMappingDto(row[0].toString(), row[1].toString(), mappingValidFrom, mappingValidTo, parseStopType(row[2])));
+            mappingResult.add(new IdMappingDto(row[0].toString(), row[1].toString(), mappingValidFrom, mappingValidTo, parseStopType(row[2]),
+                    ((Number) row[7]).longValue(), ((Number) row[8]).longValue()));
         }
-
         return mappingResult;
     }
 
+    @Override
+    public String findIdMappingStateTag(Instant pointInTime) {
+        // The latest validity boundaries passed change when a stop place becomes valid or expires.
+        // Apart from the count, which catches deleted stop places, every value is read from the end of an index.
+        String sql = "SELECT (SELECT max(changed) FROM stop_place), " +
+                "(SELECT max(id) FROM stop_place), " +
+                "(SELECT count(*) FROM stop_place), " +
+                "(SELECT max(from_date) FROM stop_place WHERE from_date <= :pointInTime), " +
+                "(SELECT max(to_date) FROM stop_place WHERE to_date <= :pointInTime), " +
+                "(SELECT max(changed) FROM quay), " +
+                "(SELECT max(id) FROM quay)";
 
-    private Instant parseInstant(Object timestampObject) {
+        Query nativeQuery = entityManager.createNativeQuery(sql);
+        nativeQuery.setParameter("pointInTime", Date.from(pointInTime));
+
+        Object[] row = (Object[]) nativeQuery.getSingleResult();
+        return Arrays.stream(row)
+                .map(String::valueOf)
+                .collect(Collectors.joining(":"));
+    }
+
+    private static Instant parseInstant(Object timestampObject) {
         if (timestampObject instanceof Timestamp) {
             return ((Timestamp)timestampObject).toInstant();
         }
@@ -475,37 +778,11 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
 
     @Override
     public List<String> findStopPlaceFromQuayOriginalId(String quayOriginalId, Instant pointInTime) {
-        String sql = "SELECT DISTINCT s.netex_id " +
-                             "FROM stop_place s " +
-                             "  INNER JOIN stop_place_quays spq " +
-                             "    ON s.id = spq.stop_place_id " +
-                             "  INNER JOIN quay q " +
-                             "    ON spq.quays_id = q.id " +
-                             "  INNER JOIN quay_key_values qkv " +
-                             "    ON q.id = qkv.quay_id AND qkv.key_values_key in (:originalIdKey) " +
-                             "  INNER JOIN value_items vi " +
-                             "    ON vi.value_id = qkv.key_values_id AND vi.items LIKE :value " +
-                             SQL_LEFT_JOIN_PARENT_STOP +
-                             " WHERE " +
-                SQL_STOP_PLACE_OR_PARENT_IS_VALID_AT_POINT_IN_TIME;
-
-        Query query = entityManager.createNativeQuery(sql);
-
-        query.setParameter("value", "%:" + quayOriginalId);
-        query.setParameter("originalIdKey", ORIGINAL_ID_KEY);
-        query.setParameter("pointInTime",  Date.from(pointInTime));
-
-        try {
-            @SuppressWarnings("unchecked")
-            List<String> results = query.getResultList();
-            if (results.isEmpty()) {
-                return new ArrayList<>();
-            } else {
-                return results;
-            }
-        } catch (NoResultException noResultException) {
-            return null;
-        }
+        return findInOriginalIdLookup(ORIGINAL_ID_KEY, quayOriginalIdEndings(Set.of(quayOriginalId)), Set.of(), true, pointInTime)
+                .stream()
+                .map(row -> (String) row[1])
+                .distinct()
+                .collect(Collectors.toCollection(ArrayList::new));
     }
 
     @Override
@@ -580,10 +857,11 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
     }
 
     @Override
-    public Iterator<StopPlace> scrollStopPlaces(Set<Long> stopPlacePrimaryIds) {
+    public Iterator<StopPlace> scrollStopPlaces(PrimaryIds stopPlacePrimaryIds) {
         Session session = entityManager.unwrap(Session.class);
 
-        NativeQuery<StopPlace> sqlQuery = session.createNativeQuery(generateStopPlaceQueryFromStopPlaceIds(stopPlacePrimaryIds), StopPlace.class);
+        NativeQuery<StopPlace> sqlQuery = session.createNativeQuery("SELECT s.* FROM stop_place s WHERE s.id = ANY(:stopPlaceIds)", StopPlace.class);
+        stopPlacePrimaryIds.bind(sqlQuery, "stopPlaceIds");
 
         logger.info("Scrolling {} stop places", stopPlacePrimaryIds.size());
        return scrollStopPlaces(sqlQuery, session);
@@ -600,16 +878,6 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         return new ScrollableResultIterator<>(results, SCROLL_FETCH_SIZE, session);
     }
 
-    private String generateStopPlaceQueryFromStopPlaceIds(Set<Long> stopPlacePrimaryIds) {
-
-        Set<String> stopPlacePrimaryIdStrings = stopPlacePrimaryIds.stream().map(lvalue -> String.valueOf(lvalue)).collect(Collectors.toSet());
-        String joinedStopPlaceDbIds = String.join(",", stopPlacePrimaryIdStrings);
-        StringBuilder sql = new StringBuilder("SELECT s.* FROM stop_place s WHERE s.id IN(");
-        sql.append(joinedStopPlaceDbIds);
-        sql.append(")");
-        return sql.toString();
-    }
-
     @Override
     public Set<String> getNetexIds(ExportParams exportParams) {
         Pair<String, Map<String, Object>> pair = stopPlaceQueryFromSearchBuilder.buildQueryString(exportParams);
@@ -624,7 +892,7 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
     }
 
     @Override
-    public Set<Long> getDatabaseIds(ExportParams exportParams, boolean ignorePaging) {
+    public PrimaryIds getDatabaseIds(ExportParams exportParams, boolean ignorePaging) {
         Pair<String, Map<String, Object>> pair = stopPlaceQueryFromSearchBuilder.buildQueryString(exportParams);
         Session session = entityManager.unwrap(Session.class);
         NativeQuery query = session.createNativeQuery("SELECT sub.id from (" + pair.getFirst() + ") sub");
@@ -635,13 +903,12 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
             query.setMaxResults(exportParams.getStopPlaceSearch().getPageable().getPageSize());
         }
         searchHelper.addParams(query, pair.getSecond());
-        Set<Long> result = new HashSet<>();
-        for(Object object : query.list()) {
-            result.add((Long) object);
 
+        @SuppressWarnings("unchecked")
+        Stream<Long> ids = query.getResultStream();
+        try (ids) {
+            return PrimaryIds.of(ids.mapToLong(Long::longValue));
         }
-
-        return result;
     }
 
     @Override
@@ -668,6 +935,19 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         return typedQuery.getResultList();
     }
 
+    @Override
+    public List<StopPlace> findNewestVersions(Collection<String> stopPlaceNetexIds) {
+        if (stopPlaceNetexIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final String queryString = "SELECT stopPlace FROM StopPlace stopPlace " +
+                "WHERE stopPlace.netexId IN :netexIds " +
+                "AND stopPlace.version = (SELECT MAX(sv.version) FROM StopPlace sv WHERE sv.netexId = stopPlace.netexId)";
+        final TypedQuery<StopPlace> typedQuery = entityManager.createQuery(queryString, StopPlace.class);
+        typedQuery.setParameter("netexIds", stopPlaceNetexIds);
+        return typedQuery.getResultList();
+    }
+
     @Override
     public StopPlace findByQuay(Quay quay) {
         final String queryString = "select s from StopPlace s where :quay member of s.quays";
@@ -676,6 +956,56 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
         return getOneOrNull(typedQuery);
     }
 
+    @Override
+    public Map<String, Long> findStopPlaceIdsByNewestQuays(Collection<String> quayNetexIds) {
+        if (quayNetexIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        String sql = "SELECT q.netex_id, spq.stop_place_id " +
+                "FROM quay q " +
+                "INNER JOIN stop_place_quays spq ON spq.quays_id = q.id " +
+                "WHERE q.netex_id = ANY(:ids) " +
+                "AND q.version = (SELECT MAX(qv.version) FROM quay qv WHERE qv.netex_id = q.netex_id)";
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("ids", quayNetexIds.toArray(String[]::new))
+                .getResultList();
+
+        Map<String, Long> stopPlaceIds = new HashMap<>();
+        for (Object[] row : rows) {
+            stopPlaceIds.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return stopPlaceIds;
+    }
+
+    @Override
+    public Map<String, Set<String>> findRootStopPlaceIds(Collection<String> stopPlaceOrQuayIds) {
+        if (stopPlaceOrQuayIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        String sql = "SELECT s.netex_id, COALESCE(s.parent_site_ref, s.netex_id) " +
+                "FROM stop_place s " +
+                "WHERE s.netex_id = ANY(:ids) " +
+                "UNION " +
+                "SELECT q.netex_id, COALESCE(s.parent_site_ref, s.netex_id) " +
+                "FROM quay q " +
+                "INNER JOIN stop_place_quays spq ON spq.quays_id = q.id " +
+                "INNER JOIN stop_place s ON s.id = spq.stop_place_id " +
+                "WHERE q.netex_id = ANY(:ids)";
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("ids", stopPlaceOrQuayIds.toArray(String[]::new))
+                .getResultList();
+
+        Map<String, Set<String>> rootStopPlaceIds = new HashMap<>();
+        for (Object[] row : rows) {
+            rootStopPlaceIds.computeIfAbsent((String) row[0], id -> new HashSet<>()).add((String) row[1]);
+        }
+        return rootStopPlaceIds;
+    }
+
     /**
      * Returns parent stops only if multi modal stops
      * @param search
@@ -819,7 +1149,8 @@ public class StopPlaceRepositoryImpl implements StopPlaceRepositoryCustom {
                                     "AND (P.TO_DATE >= NOW() " +
                                     "OR P.TO_DATE IS NULL))))";
 
-        final Query nativeQuery = entityManager.createNativeQuery(sql);
+        final NativeQuery nativeQuery = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+        nativeQuery.addSynchronizedQuerySpace(STOP_PLACE_TARIFF_ZONES_TABLE);
         return nativeQuery.executeUpdate();
     }
 }
@@ -20,6 +20,7 @@ import org.rutebanken.tiamat.model.tag.Tag;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.QueryHints;
 
+import java.util.Collection;
 import java.util.Set;
 
 public interface TagRepository extends JpaRepository<Tag, Long> {
@@ -27,6 +28,8 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
     @QueryHints(value = {@QueryHint(name = "org.hibernate.cacheable", value = "true")}, forCounting = false)
     Set<Tag> findByIdReference(String ref);
 
+    Set<Tag> findByIdReferenceIn(Collection<String> refs);
+
     @QueryHints(value = {@QueryHint(name = "org.hibernate.cacheable", value = "true")}, forCounting = false)
     Set<Tag> findByNameContaining(String name);
 
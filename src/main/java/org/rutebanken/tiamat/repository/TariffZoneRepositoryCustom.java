@@ -22,16 +22,15 @@ import org.rutebanken.tiamat.model.TariffZone;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 
 public interface TariffZoneRepositoryCustom extends DataManagedObjectStructureRepository<TariffZone> {
 
     List<TariffZone> findTariffZones(TariffZoneSearch search);
 
-    List<TariffZone> getTariffZonesFromStopPlaceIds(Set<Long> stopPlaceIds);
+    List<TariffZone> getTariffZonesFromStopPlaceIds(PrimaryIds stopPlaceIds);
 
-    Iterator<TariffZone> scrollTariffZones(Set<Long> stopPlaceDbIds);
+    Iterator<TariffZone> scrollTariffZones(PrimaryIds stopPlaceDbIds);
 
     Iterator<TariffZone> scrollTariffZones(ExportParams exportParams);
 
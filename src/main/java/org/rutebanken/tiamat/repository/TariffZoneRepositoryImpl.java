@@ -20,7 +20,6 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import org.apache.commons.lang3.NotImplementedException;
-import org.apache.commons.lang3.StringUtils;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -141,12 +140,13 @@ public class TariffZoneRepositoryImpl implements TariffZoneRepositoryCustom {
     }
 
     @Override
-    public List<TariffZone> getTariffZonesFromStopPlaceIds(Set<Long> stopPlaceIds) {
+    public List<TariffZone> getTariffZonesFromStopPlaceIds(PrimaryIds stopPlaceIds) {
         if (stopPlaceIds == null || stopPlaceIds.isEmpty()) {
             return new ArrayList<>();
         }
 
-        Query query = entityManager.createNativeQuery(generateTariffZoneQueryFromStopPlaceIds(stopPlaceIds), TariffZone.class);
+        Query query = entityManager.createNativeQuery(generateTariffZoneQueryFromStopPlaceIds(), TariffZone.class);
+        stopPlaceIds.bind(query, "stopPlaceIds");
 
         @SuppressWarnings("unchecked")
         List<TariffZone> tariffZones = query.getResultList();
@@ -154,18 +154,23 @@ public class TariffZoneRepositoryImpl implements TariffZoneRepositoryCustom {
     }
 
     @Override
-    public Iterator<TariffZone> scrollTariffZones(Set<Long> stopPlaceDbIds) {
+    public Iterator<TariffZone> scrollTariffZones(PrimaryIds stopPlaceDbIds) {
 
         if (stopPlaceDbIds == null || stopPlaceDbIds.isEmpty()) {
             return new ArrayList<TariffZone>().iterator();
         }
-        return scrollTariffZones(generateTariffZoneQueryFromStopPlaceIds(stopPlaceDbIds));
+        Session session = entityManager.unwrap(Session.class);
+        NativeQuery sqlQuery = session.createNativeQuery(generateTariffZoneQueryFromStopPlaceIds());
+        stopPlaceDbIds.bind(sqlQuery, "stopPlaceIds");
+        return scrollTariffZones(sqlQuery, session);
     }
 
     public Iterator<TariffZone> scrollTariffZones(String sql) {
         Session session = entityManager.unwrap(Session.class);
-        NativeQuery sqlQuery = session.createNativeQuery(sql);
+        return scrollTariffZones(session.createNativeQuery(sql), session);
+    }
 
+    private Iterator<TariffZone> scrollTariffZones(NativeQuery sqlQuery, Session session) {
         sqlQuery.addEntity(TariffZone.class);
         sqlQuery.setReadOnly(true);
         sqlQuery.setFetchSize(100);
@@ -192,7 +197,7 @@ public class TariffZoneRepositoryImpl implements TariffZoneRepositoryCustom {
         return scrollTariffZones(sql.toString());
     }
 
-    private String generateTariffZoneQueryFromStopPlaceIds(Set<Long> stopPlaceDbIds) {
+    private String generateTariffZoneQueryFromStopPlaceIds() {
         var sql = "select" +
                 "        tz.* " +
                 "    from" +
@@ -203,8 +208,7 @@ public class TariffZoneRepositoryImpl implements TariffZoneRepositoryCustom {
                 "        inner join" +
                 "            tariff_zone tz1              " +
                 "                ON tz1.netex_id = sptz.ref         " +
-                "                AND  sptz.stop_place_id IN(" + StringUtils.join(stopPlaceDbIds,',') +
-                "                )            " +
+                "                AND  sptz.stop_place_id = ANY(:stopPlaceIds)            " +
                 "                AND (" +
                 "                    (" +
                 "                        sptz.version IS NOT NULL                          " +
@@ -289,7 +293,8 @@ public class TariffZoneRepositoryImpl implements TariffZoneRepositoryCustom {
                             )
                 """;
 
-        final Query query = entityManager.createNativeQuery(sql);
+        final NativeQuery query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+        query.addSynchronizedQuerySpace(StopPlaceRepositoryImpl.STOP_PLACE_TARIFF_ZONES_TABLE);
 
         return query.executeUpdate();
     }
@@ -21,7 +21,6 @@ import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 
 public interface TopographicPlaceRepositoryCustom extends DataManagedObjectStructureRepository<TopographicPlace> {
@@ -30,9 +29,9 @@ public interface TopographicPlaceRepositoryCustom extends DataManagedObjectStruc
 
     List<TopographicPlace> findByNetexIdOrNameAndTypeMaxVersion(String name, TopographicPlaceTypeEnumeration topographicPlaceType);
 
-    Iterator<TopographicPlace> scrollTopographicPlaces(Set<Long> stopPlaceDbIds);
+    Iterator<TopographicPlace> scrollTopographicPlaces(PrimaryIds stopPlaceDbIds);
 
     Iterator<TopographicPlace> scrollTopographicPlaces();
 
-    List<TopographicPlace> getTopographicPlacesFromStopPlaceIds(Set<Long> stopPlaceDbIds);
+    List<TopographicPlace> getTopographicPlacesFromStopPlaceIds(PrimaryIds stopPlaceDbIds);
 }
@@ -43,7 +43,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Repository
 @Transactional
@@ -102,13 +101,16 @@ public class TopographicPlaceRepositoryImpl implements TopographicPlaceRepositor
 	}
 
 	@Override
-	public Iterator<TopographicPlace> scrollTopographicPlaces(Set<Long> stopPlaceDbIds) {
+	public Iterator<TopographicPlace> scrollTopographicPlaces(PrimaryIds stopPlaceDbIds) {
 
 		if(stopPlaceDbIds == null || stopPlaceDbIds.isEmpty()) {
 			return new ArrayList<TopographicPlace>().iterator();
 		}
 
-		return scrollTopographicPlaces(generateTopographicPlacesQueryFromStopPlaceIds(stopPlaceDbIds));
+		Session session = entityManager.unwrap(Session.class);
+		NativeQuery sqlQuery = session.createNativeQuery(generateTopographicPlacesQueryFromStopPlaceIds());
+		stopPlaceDbIds.bind(sqlQuery, "stopPlaceIds");
+		return scrollTopographicPlaces(sqlQuery, session);
 	}
 
 	@Override
@@ -118,8 +120,10 @@ public class TopographicPlaceRepositoryImpl implements TopographicPlaceRepositor
 
 	public Iterator<TopographicPlace> scrollTopographicPlaces(String sql) {
 		Session session = entityManager.unwrap(Session.class);
-		NativeQuery sqlQuery = session.createNativeQuery(sql);
+		return scrollTopographicPlaces(session.createNativeQuery(sql), session);
+	}
 
+	private Iterator<TopographicPlace> scrollTopographicPlaces(NativeQuery sqlQuery, Session session) {
 		sqlQuery.addEntity(TopographicPlace.class);
 		sqlQuery.setReadOnly(true);
 		sqlQuery.setFetchSize(1000);
@@ -130,11 +134,12 @@ public class TopographicPlaceRepositoryImpl implements TopographicPlaceRepositor
 	}
 
 	@Override
-	public List<TopographicPlace> getTopographicPlacesFromStopPlaceIds(Set<Long> stopPlaceDbIds) {
+	public List<TopographicPlace> getTopographicPlacesFromStopPlaceIds(PrimaryIds stopPlaceDbIds) {
 		if(stopPlaceDbIds == null || stopPlaceDbIds.isEmpty()) {
 			return new ArrayList<>();
 		}
-		Query query = entityManager.createNativeQuery(generateTopographicPlacesQueryFromStopPlaceIds(stopPlaceDbIds), TopographicPlace.class);
+		Query query = entityManager.createNativeQuery(generateTopographicPlacesQueryFromStopPlaceIds(), TopographicPlace.class);
+		stopPlaceDbIds.bind(query, "stopPlaceIds");
 
 		try {
 			@SuppressWarnings("unchecked")
@@ -149,22 +154,16 @@ public class TopographicPlaceRepositoryImpl implements TopographicPlaceRepositor
 		}
 	}
 
-	private String generateTopographicPlacesQueryFromStopPlaceIds(Set<Long> stopPlaceDbIds) {
-
-		Set<String> stopPlaceStringDbIds = stopPlaceDbIds.stream().map(lvalue -> String.valueOf(lvalue)).collect(Collectors.toSet());
-		String joinedStopPlaceDbIds = String.join(",", stopPlaceStringDbIds);
-		StringBuilder sql = new StringBuilder("SELECT tp.* " +
+	private String generateTopographicPlacesQueryFromStopPlaceIds() {
+		return "SELECT tp.* " +
 				"FROM ( " +
 				"  SELECT tp1.id " +
 				"  FROM topographic_place tp1 " +
 				"  INNER JOIN stop_place sp " +
 				"    ON sp.topographic_place_id = tp1.id " +
-				"  WHERE sp.id IN(");
-		sql.append(joinedStopPlaceDbIds);
-		sql.append(") " +
+				"  WHERE sp.id = ANY(:stopPlaceIds) " +
 				"  GROUP BY tp1.id " +
 				") tp1 " +
-				"JOIN topographic_place tp ON tp.id = tp1.id");
-		return sql.toString();
+				"JOIN topographic_place tp ON tp.id = tp1.id";
 	}
 }
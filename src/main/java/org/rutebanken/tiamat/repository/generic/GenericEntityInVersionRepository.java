@@ -18,11 +18,19 @@ import org.rutebanken.tiamat.model.DataManagedObjectStructure;
 import org.rutebanken.tiamat.model.EntityInVersionStructure;
 import org.rutebanken.tiamat.repository.DataManagedObjectStructureRepository;
 import org.rutebanken.tiamat.repository.EntityInVersionRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.repository.support.Repositories;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -31,6 +39,9 @@ public class GenericEntityInVersionRepository {
 
     private Repositories repositories = null;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired
     public GenericEntityInVersionRepository(ApplicationContext appContext) {
         repositories = new Repositories(appContext);
@@ -49,6 +60,45 @@ public class GenericEntityInVersionRepository {
         return clazz.cast(getRepository(clazz).findFirstByNetexIdAndVersion(netexId, version));
     }
 
+    /**
+     * Find the newest version of each of the given netex IDs in one query.
+     */
+    public <T extends EntityInVersionStructure> List<T> findNewestVersions(Collection<String> netexIds, Class<T> clazz) {
+        if (netexIds.isEmpty()) {
+            return List.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(clazz);
+        Root<T> root = query.from(clazz);
+
+        Subquery<Long> maxVersion = query.subquery(Long.class);
+        Root<T> versions = maxVersion.from(clazz);
+        maxVersion.select(cb.max(versions.<Long>get("version")))
+                .where(cb.equal(versions.get("netexId"), root.get("netexId")));
+
+        query.select(root).where(
+                root.get("netexId").in(netexIds),
+                cb.equal(root.get("version"), maxVersion));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    /**
+     * Find all versions of the given netex IDs that have one of the given versions, in one query.
+     * The caller must pick the wanted combinations of netex ID and version from the result.
+     */
+    public <T extends EntityInVersionStructure> List<T> findByNetexIdsAndVersions(Collection<String> netexIds, Collection<Long> versions, Class<T> clazz) {
+        if (netexIds.isEmpty() || versions.isEmpty()) {
+            return List.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(clazz);
+        Root<T> root = query.from(clazz);
+        query.select(root).where(
+                root.get("netexId").in(netexIds),
+                root.get("version").in(versions));
+        return entityManager.createQuery(query).getResultList();
+    }
+
     public <T extends EntityInVersionStructure> T save(EntityInVersionStructure entityInVersionStructure, Class<T> clazz) {
         return clazz.cast(getRepository(clazz).save(entityInVersionStructure));
     }
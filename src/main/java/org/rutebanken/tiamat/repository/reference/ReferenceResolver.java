@@ -29,6 +29,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -88,6 +93,59 @@ public class ReferenceResolver {
 
     }
 
+    /**
+     * Resolve several references with one query per referenced type and per kind of reference (newest version or given version).
+     * References without a valid prefix are resolved one by one, as they must be looked up from original IDs.
+     *
+     * @return the resolved entities in the same order as the references. Null for references that could not be resolved.
+     */
+    public List<DataManagedObjectStructure> resolveAll(List<? extends VersionOfObjectRefStructure> references) {
+
+        Map<Class<? extends DataManagedObjectStructure>, Set<String>> newestByClass = new HashMap<>();
+        Map<Class<? extends DataManagedObjectStructure>, Set<String>> versionedByClass = new HashMap<>();
+        Map<Class<? extends DataManagedObjectStructure>, Set<Long>> versionsByClass = new HashMap<>();
+
+        for (VersionOfObjectRefStructure reference : references) {
+            if (!canResolveInBatch(reference)) {
+                continue;
+            }
+            Class<? extends DataManagedObjectStructure> clazz = typeFromIdResolver.resolveClassFromId(reference.getRef());
+            if (reference.getVersion() == null) {
+                newestByClass.computeIfAbsent(clazz, c -> new HashSet<>()).add(reference.getRef());
+            } else {
+                versionedByClass.computeIfAbsent(clazz, c -> new HashSet<>()).add(reference.getRef());
+                versionsByClass.computeIfAbsent(clazz, c -> new HashSet<>()).add(Long.valueOf(reference.getVersion()));
+            }
+        }
+
+        Map<VersionOfObjectRefStructure, DataManagedObjectStructure> resolved = new HashMap<>();
+        newestByClass.forEach((clazz, netexIds) ->
+                genericEntityInVersionRepository.findNewestVersions(netexIds, clazz)
+                        .forEach(entity -> resolved.put(new VersionOfObjectRefStructure(entity.getNetexId()), entity)));
+        versionedByClass.forEach((clazz, netexIds) ->
+                genericEntityInVersionRepository.findByNetexIdsAndVersions(netexIds, versionsByClass.get(clazz), clazz)
+                        .forEach(entity -> resolved.put(new VersionOfObjectRefStructure(entity.getNetexId(), String.valueOf(entity.getVersion())), entity)));
+
+        List<DataManagedObjectStructure> result = new ArrayList<>(references.size());
+        for (VersionOfObjectRefStructure reference : references) {
+            if (canResolveInBatch(reference)) {
+                String version = reference.getVersion() == null ? null : String.valueOf(Long.valueOf(reference.getVersion()));
+                result.add(resolved.get(new VersionOfObjectRefStructure(reference.getRef(), version)));
+            } else {
+                result.add(resolve(reference));
+            }
+        }
+        return result;
+    }
+
+    private boolean canResolveInBatch(VersionOfObjectRefStructure reference) {
+        String ref = reference.getRef();
+        if (ref == null || StringUtils.countMatches(ref, ":") != 2) {
+            return false;
+        }
+        return validPrefixList.isValidPrefixForType(netexIdHelper.extractIdPrefix(ref), netexIdHelper.extractIdType(ref));
+    }
+
     private void assertNotNull(VersionOfObjectRefStructure versionOfObjectRefStructure, String name, String fieldValue) {
         if (fieldValue == null) {
             throw new IllegalArgumentException(name + " value cannot be null: " + versionOfObjectRefStructure);
@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.BufferedWriter;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.List;
@@ -44,34 +45,37 @@ public class DtoJbvCodeMappingResource {
 
     @GET
     @Produces("text/plain")
-    public Response getJbvCodeMapping() throws InterruptedException {
-
-        dtoMappingSemaphore.aquire();
-        try {
-            logger.info("Fetching Quay mapping table for all Quays containg keyValue {}...", JBV_CODE);
-
-            return Response.ok().entity((StreamingOutput) output -> {
-
-                try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)))) {
-                    List<JbvCodeMappingDto> quayMappings = quayRepository.findJbvCodeMappingsForQuay();
-                    for (JbvCodeMappingDto mapping : quayMappings) {
-                        writer.println(mapping.toCsvString());
-                    }
-                    List<JbvCodeMappingDto> stopPlaceMappings = stopPlaceRepository.findJbvCodeMappingsForStopPlace();
-                    for (JbvCodeMappingDto mapping : stopPlaceMappings) {
-                        writer.println(mapping.toCsvString());
-                    }
-                    writer.flush();
-                    writer.close();
-                } catch (Exception e) {
-                    logger.warn("Catched exception when streaming id map for quay: {}", e.getMessage(), e);
-                    throw e;
+    public Response getJbvCodeMapping() {
+
+        logger.info("Fetching Quay mapping table for all Quays containg keyValue {}...", JBV_CODE);
+
+        return Response.ok().entity((StreamingOutput) output -> {
+
+            try {
+                dtoMappingSemaphore.aquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to write jbv code mapping");
+            }
+
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)))) {
+                List<JbvCodeMappingDto> quayMappings = quayRepository.findJbvCodeMappingsForQuay();
+                for (JbvCodeMappingDto mapping : quayMappings) {
+                    writer.println(mapping.toCsvString());
+                }
+                List<JbvCodeMappingDto> stopPlaceMappings = stopPlaceRepository.findJbvCodeMappingsForStopPlace();
+                for (JbvCodeMappingDto mapping : stopPlaceMappings) {
+                    writer.println(mapping.toCsvString());
                 }
-            }).build();
-        }
-        finally {
-            dtoMappingSemaphore.release();
-        }
+                writer.flush();
+                writer.close();
+            } catch (Exception e) {
+                logger.warn("Catched exception when streaming id map for quay: {}", e.getMessage(), e);
+                throw e;
+            } finally {
+                dtoMappingSemaphore.release();
+            }
+        }).build();
     }
 
 }
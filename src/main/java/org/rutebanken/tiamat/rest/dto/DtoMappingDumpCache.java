@@ -0,0 +1,254 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.rest.dto;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id mapping dumps are written with the {@link DtoMappingSemaphore} held for the whole stream.
+ * A finished dump is kept in memory with an ETag, until stop places or quays change.
+ * Clients polling with If-None-Match get 304 Not Modified, and other clients get the kept dump without querying the mappings again.
+ * <p>
+ * tiamat.dto.mapping.cache.max.bytes, 100 MB by default, limits the total size of the kept dumps.
+ * A dump larger than that is streamed, but not kept. While a dump is written, a copy of at most that size is held in memory.
+ * <p>
+ * The state tag telling whether a kept dump is current is looked up at most once per tiamat.dto.mapping.state.tag.cache.seconds,
+ * 10 by default, however often clients poll. A change is therefore noticed up to that many seconds late.
+ * Each lookup counts the stop places, which reads the whole primary key index, see {@link StopPlaceRepository#findIdMappingStateTag(Instant)}.
+ */
+@Component
+public class DtoMappingDumpCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DtoMappingDumpCache.class);
+
+    private final DtoMappingSemaphore dtoMappingSemaphore;
+
+    private final Cache<String, Dump> dumps;
+
+    private final long maxBytes;
+
+    private final Supplier<String> stateTag;
+
+    public DtoMappingDumpCache(StopPlaceRepository stopPlaceRepository, DtoMappingSemaphore dtoMappingSemaphore, long maxBytes) {
+        this(stopPlaceRepository, dtoMappingSemaphore, maxBytes, 0);
+    }
+
+    /**
+     * @param stateTagCacheSeconds how long to reuse a state tag, or 0 to look it up for every request
+     */
+    @Autowired
+    public DtoMappingDumpCache(StopPlaceRepository stopPlaceRepository, DtoMappingSemaphore dtoMappingSemaphore,
+                               @Value("${tiamat.dto.mapping.cache.max.bytes:104857600}") long maxBytes,
+                               @Value("${tiamat.dto.mapping.state.tag.cache.seconds:10}") long stateTagCacheSeconds) {
+        this.dtoMappingSemaphore = dtoMappingSemaphore;
+        this.maxBytes = maxBytes;
+        Supplier<String> findStateTag = () -> stopPlaceRepository.findIdMappingStateTag(Instant.now());
+        this.stateTag = stateTagCacheSeconds > 0 ? Suppliers.memoizeWithExpiration(findStateTag, stateTagCacheSeconds, TimeUnit.SECONDS) : findStateTag;
+        this.dumps = CacheBuilder.newBuilder()
+                // One segment, so that the whole weight is available to a single large dump
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .weigher((String dumpName, Dump dump) -> dump.content().length)
+                .build();
+    }
+
+    /**
+     * @param dumpName   identifies the dump, with the parameters that change its content
+     * @param request    the request, for If-None-Match. May be null.
+     * @param dumpWriter writes the dump when it is not kept
+     */
+    public Response response(String dumpName, Request request, DumpWriter dumpWriter) {
+        EntityTag entityTag = new EntityTag(Hashing.sha256().hashString(dumpName + "@" + stateTag.get(), StandardCharsets.UTF_8).toString());
+        if (request != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+            if (notModified != null) {
+                logger.debug("Dump {} not modified", dumpName);
+                return notModified.build();
+            }
+        }
+        return Response.ok().entity(stream(dumpName, entityTag, dumpWriter)).tag(entityTag).build();
+    }
+
+    private StreamingOutput stream(String dumpName, EntityTag entityTag, DumpWriter dumpWriter) {
+        return output -> {
+            Dump dump = keptDump(dumpName, entityTag);
+            if (dump != null) {
+                // Kept dumps are written without waiting for the semaphore
+                output.write(dump.content());
+                return;
+            }
+
+            try {
+                dtoMappingSemaphore.aquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to write " + dumpName);
+            }
+            try {
+                // Another request might have written the same dump while waiting
+                dump = keptDump(dumpName, entityTag);
+                if (dump != null) {
+                    output.write(dump.content());
+                    return;
+                }
+
+                CopyingOutputStream copyingOutput = new CopyingOutputStream(output, maxBytes);
+                dumpWriter.write(copyingOutput);
+                if (copyingOutput.failed) {
+                    // The writer did not notice, for instance a PrintWriter without checkError
+                    throw new IOException("Writing dump " + dumpName + " failed");
+                }
+                byte[] content = copyingOutput.content();
+                if (content != null) {
+                    dumps.put(dumpName, new Dump(entityTag, content));
+                    logger.info("Keeping dump {} of {} bytes", dumpName, content.length);
+                } else {
+                    logger.info("Dump {} is larger than {} bytes, and is not kept", dumpName, maxBytes);
+                }
+            } finally {
+                dtoMappingSemaphore.release();
+            }
+        };
+    }
+
+    private Dump keptDump(String dumpName, EntityTag entityTag) {
+        Dump dump = dumps.getIfPresent(dumpName);
+        return dump != null && dump.entityTag().equals(entityTag) ? dump : null;
+    }
+
+    /**
+     * PrintWriter does not throw when writing to the output fails, for instance when the client disconnects.
+     * Dump writers using it call this after each page, so that they stop instead of querying the rest of the dump.
+     */
+    public static void checkError(PrintWriter writer) throws IOException {
+        if (writer.checkError()) {
+            throw new IOException("Writing dump failed");
+        }
+    }
+
+    /**
+     * Only dumps written without exceptions are kept.
+     */
+    @FunctionalInterface
+    public interface DumpWriter {
+        void write(OutputStream output) throws IOException;
+    }
+
+    private record Dump(EntityTag entityTag, byte[] content) {
+    }
+
+    /**
+     * Writes to the response, and keeps a copy until it gets larger than max bytes.
+     * The copy is dropped if any write to the response fails, as the dump might then be incomplete.
+     */
+    private static class CopyingOutputStream extends OutputStream {
+
+        private final OutputStream output;
+
+        private final long maxBytes;
+
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private boolean failed;
+
+        private CopyingOutputStream(OutputStream output, long maxBytes) {
+            this.output = output;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                output.write(b);
+            } catch (IOException | RuntimeException e) {
+                fail();
+                throw e;
+            }
+            if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                output.write(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                fail();
+                throw e;
+            }
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                output.flush();
+            } catch (IOException | RuntimeException e) {
+                fail();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        byte[] content() {
+            return copy != null && !failed ? copy.toByteArray() : null;
+        }
+
+        private void fail() {
+            failed = true;
+            copy = null;
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxBytes) {
+                copy = null;
+            }
+        }
+    }
+}
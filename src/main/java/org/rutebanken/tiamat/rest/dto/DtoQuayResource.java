@@ -21,8 +21,9 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.StreamingOutput;
 import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDto;
 import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDtoCsvMapper;
 import org.rutebanken.tiamat.repository.QuayRepository;
@@ -32,6 +33,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -49,14 +51,14 @@ public class DtoQuayResource {
 
     private final QuayRepository quayRepository;
 
-    private final DtoMappingSemaphore dtoMappingSemaphore;
+    private final DtoMappingDumpCache dtoMappingDumpCache;
 
     private final IdMappingDtoCsvMapper csvMapper;
 
     @Autowired
-    public DtoQuayResource(QuayRepository quayRepository, DtoMappingSemaphore dtoMappingSemaphore, IdMappingDtoCsvMapper csvMapper) {
+    public DtoQuayResource(QuayRepository quayRepository, DtoMappingDumpCache dtoMappingDumpCache, IdMappingDtoCsvMapper csvMapper) {
         this.quayRepository = quayRepository;
-        this.dtoMappingSemaphore = dtoMappingSemaphore;
+        this.dtoMappingDumpCache = dtoMappingDumpCache;
         this.csvMapper = csvMapper;
     }
 
@@ -66,59 +68,54 @@ public class DtoQuayResource {
      * @param recordsPerRoundTrip batch size
      * @param includeStopType include the parent stop place type
      * @param includeFuture include future (not-yet-valid) quays
+     * @param request for If-None-Match with the ETag of an earlier response
      * @return A plain-text HTTP response listing the local references with their mappings to NSR IDs as a CSV file.
-     * @throws InterruptedException
      */
     @GET
     @Path("mapping/quay")
     @Produces("text/plain")
     public Response getIdMapping(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip,
-                                        @QueryParam("includeStopType") boolean includeStopType, @QueryParam("includeFuture") boolean includeFuture) throws InterruptedException {
+                                 @QueryParam("includeStopType") boolean includeStopType, @QueryParam("includeFuture") boolean includeFuture,
+                                 @Context Request request) {
 
         logger.info("Fetching Quay mapping table...");
 
-        dtoMappingSemaphore.aquire();
-        try {
-            return Response.ok().entity((StreamingOutput) output -> getMappings(recordsPerRoundTrip, includeStopType, includeFuture, includeFuture, true, output)).build();
-        } finally {
-            dtoMappingSemaphore.release();
-        }
+        String dumpName = "mapping/quay?includeStopType=" + includeStopType + "&includeFuture=" + includeFuture;
+        return dtoMappingDumpCache.response(dumpName, request, output -> getMappings(recordsPerRoundTrip, includeStopType, includeFuture, includeFuture, true, output));
     }
 
     /**
      * Return the list of all Quay local references in plain text format (one id per line)
      * @param recordsPerRoundTrip batch size
      * @param includeFuture include future (not-yet-valid) quays
+     * @param request for If-None-Match with the ETag of an earlier response
      * @return A plain-text HTTP response listing all the local references.
-     * @throws InterruptedException
      */
     @GET
     @Path("local_reference/quay")
     @Produces("text/plain")
-    public Response getQuayLocalReferences(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip, @QueryParam("includeFuture") boolean includeFuture) throws InterruptedException {
+    public Response getQuayLocalReferences(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip, @QueryParam("includeFuture") boolean includeFuture,
+                                           @Context Request request) {
 
         logger.info("Fetching Quay local references...");
-        dtoMappingSemaphore.aquire();
-        try {
-            return Response.ok().entity((StreamingOutput) output -> getMappings(recordsPerRoundTrip, false, includeFuture, false, false, output)).build();
-        } finally {
-            dtoMappingSemaphore.release();
-        }
+        String dumpName = "local_reference/quay?includeFuture=" + includeFuture;
+        return dtoMappingDumpCache.response(dumpName, request, output -> getMappings(recordsPerRoundTrip, false, includeFuture, false, false, output));
     }
 
-    private void getMappings(int recordsPerRoundTrip, boolean includeStopType, boolean includeFuture, boolean includeValidity, boolean includeNsrId, OutputStream output) {
-        int recordPosition = 0;
+    private void getMappings(int recordsPerRoundTrip, boolean includeStopType, boolean includeFuture, boolean includeValidity, boolean includeNsrId, OutputStream output) throws IOException {
+        IdMappingDto lastMapping = null;
         boolean lastEmpty = false;
         Instant validFrom = Instant.now();
         Instant validTo = includeFuture ? null : validFrom;
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)))) {
             while (!lastEmpty) {
-                List<IdMappingDto> quayMappings = quayRepository.findKeyValueMappingsForQuay(validFrom, validTo, recordPosition, recordsPerRoundTrip);
+                List<IdMappingDto> quayMappings = quayRepository.findKeyValueMappingsForQuay(validFrom, validTo, lastMapping, recordsPerRoundTrip);
                 for (IdMappingDto mapping : quayMappings) {
                     writer.println(csvMapper.toCsvString(mapping, includeStopType, includeValidity, includeNsrId));
-                    recordPosition++;
+                    lastMapping = mapping;
                 }
                 writer.flush();
+                DtoMappingDumpCache.checkError(writer);
                 if (quayMappings.isEmpty()) lastEmpty = true;
             }
         } catch (Exception e) {
@@ -21,8 +21,9 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.StreamingOutput;
 import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDto;
 import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDtoCsvMapper;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
@@ -33,6 +34,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -53,14 +55,14 @@ public class DtoStopPlaceResource {
 
     private final StopPlaceRepository stopPlaceRepository;
 
-    private final DtoMappingSemaphore dtoMappingSemaphore;
+    private final DtoMappingDumpCache dtoMappingDumpCache;
 
     private final IdMappingDtoCsvMapper csvMapper;
 
     @Autowired
-    public DtoStopPlaceResource(StopPlaceRepository stopPlaceRepository, DtoMappingSemaphore dtoMappingSemaphore, IdMappingDtoCsvMapper csvMapper) {
+    public DtoStopPlaceResource(StopPlaceRepository stopPlaceRepository, DtoMappingDumpCache dtoMappingDumpCache, IdMappingDtoCsvMapper csvMapper) {
         this.stopPlaceRepository = stopPlaceRepository;
-        this.dtoMappingSemaphore = dtoMappingSemaphore;
+        this.dtoMappingDumpCache = dtoMappingDumpCache;
         this.csvMapper = csvMapper;
     }
 
@@ -70,58 +72,52 @@ public class DtoStopPlaceResource {
      * @param recordsPerRoundTrip batch size.
      * @param includeStopType include the stop place type.
      * @param includeFuture include future (not-yet-valid) quays.
+     * @param request for If-None-Match with the ETag of an earlier response.
      * @return A plain-text HTTP response listing the local references with their mappings to NSR IDs as a CSV file.
-     * @throws InterruptedException
      */
     @GET
     @Path("/mapping/stop_place")
     @Produces("text/plain")
     public Response getIdMapping(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip,
-                                        @QueryParam("includeStopType") boolean includeStopType, @QueryParam("includeFuture") boolean includeFuture) throws InterruptedException {
-        dtoMappingSemaphore.aquire();
-        try {
-            logger.info("Fetching StopPlace mapping table...");
-            return Response.ok().entity((StreamingOutput) output -> getMappings(recordsPerRoundTrip, includeStopType, includeFuture, includeFuture, true, output)).build();
-        } finally {
-            dtoMappingSemaphore.release();
-        }
+                                 @QueryParam("includeStopType") boolean includeStopType, @QueryParam("includeFuture") boolean includeFuture,
+                                 @Context Request request) {
+        logger.info("Fetching StopPlace mapping table...");
+        String dumpName = "mapping/stop_place?includeStopType=" + includeStopType + "&includeFuture=" + includeFuture;
+        return dtoMappingDumpCache.response(dumpName, request, output -> getMappings(recordsPerRoundTrip, includeStopType, includeFuture, includeFuture, true, output));
     }
 
     /**
      * Return the list of all StopPlace local references in plain text format (one id per line).
      * @param recordsPerRoundTrip batch size.
      * @param includeFuture include future (not-yet-valid) quays .
+     * @param request for If-None-Match with the ETag of an earlier response.
      * @return A plain-text HTTP response listing all the local references.
-     * @throws InterruptedException
      */
     @GET
     @Path("/local_reference/stop_place")
     @Produces("text/plain")
-    public Response getStopPlaceLocalReferences(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip, @QueryParam("includeFuture") boolean includeFuture) throws InterruptedException {
-
-        dtoMappingSemaphore.aquire();
-        try {
-            logger.info("Fetching StopPlace local references...");
-            return Response.ok().entity((StreamingOutput) output -> getMappings(recordsPerRoundTrip, false, includeFuture, false, false, output)).build();
-        } finally {
-            dtoMappingSemaphore.release();
-        }
+    public Response getStopPlaceLocalReferences(@DefaultValue(value = "300000") @QueryParam(value = "recordsPerRoundTrip") int recordsPerRoundTrip, @QueryParam("includeFuture") boolean includeFuture,
+                                                @Context Request request) {
+        logger.info("Fetching StopPlace local references...");
+        String dumpName = "local_reference/stop_place?includeFuture=" + includeFuture;
+        return dtoMappingDumpCache.response(dumpName, request, output -> getMappings(recordsPerRoundTrip, false, includeFuture, false, false, output));
     }
 
-    private void getMappings(int recordsPerRoundTrip, boolean includeStopType, boolean includeFuture, boolean includeValidity, boolean includeNsrId, OutputStream output) {
-        int recordPosition = 0;
+    private void getMappings(int recordsPerRoundTrip, boolean includeStopType, boolean includeFuture, boolean includeValidity, boolean includeNsrId, OutputStream output) throws IOException {
+        IdMappingDto lastMapping = null;
         boolean lastEmpty = false;
         Instant validFrom = Instant.now();
         Instant validTo = includeFuture ? null : validFrom;
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)))) {
             while (!lastEmpty) {
 
-                List<IdMappingDto> stopPlaceMappings = stopPlaceRepository.findKeyValueMappingsForStop(validFrom, validTo, recordPosition, recordsPerRoundTrip);
+                List<IdMappingDto> stopPlaceMappings = stopPlaceRepository.findKeyValueMappingsForStop(validFrom, validTo, lastMapping, recordsPerRoundTrip);
                 for (IdMappingDto mapping : stopPlaceMappings) {
                     writer.println(csvMapper.toCsvString(mapping, includeStopType, includeValidity, includeNsrId));
-                    recordPosition++;
+                    lastMapping = mapping;
                 }
                 writer.flush();
+                DtoMappingDumpCache.checkError(writer);
                 if (stopPlaceMappings.isEmpty()) lastEmpty = true;
             }
         }
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.rest.graphql;
+
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
+import org.rutebanken.tiamat.rest.graphql.fetchers.EntityPermissionsFetcher;
+import org.rutebanken.tiamat.rest.graphql.fetchers.ReferenceFetcher;
+import org.rutebanken.tiamat.rest.graphql.fetchers.StopPlaceGroupsFetcher;
+import org.rutebanken.tiamat.rest.graphql.fetchers.StopPlaceInfoSpotsFetcher;
+import org.rutebanken.tiamat.rest.graphql.fetchers.TagFetcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the data loaders for a GraphQL request.
+ * Field fetchers load through these, so that a field is fetched for every parent object in a response with a constant number of queries.
+ * <p>
+ * The batch loaders run synchronously on the request thread, within the transaction of the request.
+ * A new registry must be created for each request, as the data loaders cache the loaded values.
+ */
+@Component
+public class GraphQLDataLoaders {
+
+    public static final String TAGS = "tags";
+    public static final String STOP_PLACE_GROUPS = "stopPlaceGroups";
+    public static final String REFERENCES = "references";
+    public static final String ENTITY_PERMISSIONS = "entityPermissions";
+    public static final String INFO_SPOTS = "infoSpots";
+
+    /**
+     * Upper limit for the number of keys bound as one query parameter.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    @Autowired
+    private TagFetcher tagFetcher;
+
+    @Autowired
+    private StopPlaceGroupsFetcher stopPlaceGroupsFetcher;
+
+    @Autowired
+    private ReferenceFetcher referenceFetcher;
+
+    @Autowired
+    private EntityPermissionsFetcher entityPermissionsFetcher;
+
+    @Autowired
+    private StopPlaceInfoSpotsFetcher stopPlaceInfoSpotsFetcher;
+
+    public DataLoaderRegistry newRegistry() {
+        DataLoaderOptions options = DataLoaderOptions.newOptions().setMaxBatchSize(MAX_BATCH_SIZE);
+
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        registry.register(TAGS, DataLoaderFactory.newDataLoader(tagFetcher::loadTags, options));
+        registry.register(STOP_PLACE_GROUPS, DataLoaderFactory.newDataLoader(stopPlaceGroupsFetcher::loadGroups, options));
+        registry.register(REFERENCES, DataLoaderFactory.newDataLoaderWithTry(referenceFetcher::loadReferences, options));
+        registry.register(ENTITY_PERMISSIONS, DataLoaderFactory.newDataLoaderWithTry(entityPermissionsFetcher::loadPermissions, options));
+        registry.register(INFO_SPOTS, DataLoaderFactory.newDataLoader(stopPlaceInfoSpotsFetcher::loadInfoSpots, options));
+        return registry;
+    }
+}
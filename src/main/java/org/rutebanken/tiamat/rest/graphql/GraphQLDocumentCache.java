@@ -0,0 +1,201 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.rest.graphql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.ApolloPersistedQuerySupport;
+import graphql.execution.preparsed.persisted.PersistedQueryCache;
+import graphql.execution.preparsed.persisted.PersistedQueryCacheMiss;
+import graphql.execution.preparsed.persisted.PersistedQueryError;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounded cache of parsed and validated GraphQL documents, keyed by the SHA-256 hash of the query.
+ * Requests with the same query and different variables are only parsed and validated once.
+ * <p>
+ * Documents are provided to graphql-java with {@link #preparsedDocumentProvider()}, which is graphql-java's
+ * {@link ApolloPersistedQuerySupport} backed by this cache.
+ * Clients can send the hash of the query in the extension <code>{"persistedQuery": {"sha256Hash": "..."}}</code>, without the query.
+ * If the hash is not known, the client gets a PersistedQueryNotFound error and must send the query with the hash.
+ * A query sent with a hash must have that hash, so that a hash can never refer to another query.
+ * Queries sent without a hash are cached by their own hash.
+ */
+@Component
+public class GraphQLDocumentCache implements PersistedQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphQLDocumentCache.class);
+
+    /**
+     * Query of execution inputs for persisted queries sent without the query.
+     */
+    public static final String PERSISTED_QUERY_MARKER = PersistedQuerySupport.PERSISTED_QUERY_MARKER;
+
+    public static final String PERSISTED_QUERY_EXTENSION = "persistedQuery";
+
+    private static final String SHA_256_HASH = "sha256Hash";
+
+    private final Cache<String, PreparsedDocumentEntry> documents;
+
+    private final PrometheusMetricsService metricsService;
+
+    private final PreparsedDocumentProvider preparsedDocumentProvider = new DocumentCacheQuerySupport(this);
+
+    public GraphQLDocumentCache(@Value("${graphql.document.cache.size:1000}") int maximumSize,
+                                PrometheusMetricsService metricsService) {
+        this.documents = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.metricsService = metricsService;
+        logger.info("Caching up to {} GraphQL documents", maximumSize);
+    }
+
+    public PreparsedDocumentProvider preparsedDocumentProvider() {
+        return preparsedDocumentProvider;
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getPersistedQueryDocumentAsync(Object persistedQueryId, ExecutionInput executionInput, PersistedQueryCacheMiss onCacheMiss) {
+        String queryHash = persistedQueryId.toString().toLowerCase();
+        String query = executionInput.getQuery();
+
+        if (getPersistedQueryHash(executionInput.getExtensions()) != null
+                && query != null && !query.isBlank() && !PERSISTED_QUERY_MARKER.equals(query)
+                && !queryHash.equals(hash(query))) {
+            throw new PersistedQueryIdMismatch(persistedQueryId);
+        }
+
+        PreparsedDocumentEntry entry = documents.getIfPresent(queryHash);
+        metricsService.registerGraphQLDocumentCacheAccess(entry != null);
+        if (entry == null) {
+            // Throws PersistedQueryNotFound if only the hash was sent
+            entry = onCacheMiss.apply(query);
+            // Documents with errors are not cached, to keep the cache for the queries that can be executed
+            if (!entry.hasErrors()) {
+                documents.put(queryHash, entry);
+            }
+        }
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    /**
+     * Detect whether the request only contains query operations, before it is executed.
+     * The cached document is used when present. Otherwise the query is parsed, without validation.
+     *
+     * @return false for mutations and subscriptions, and for requests that cannot be parsed
+     */
+    public boolean isQueryOperation(String query, Map<String, Object> extensions) {
+        if (query == null) {
+            return false;
+        }
+        String persistedQueryHash = getPersistedQueryHash(extensions);
+        String queryHash = persistedQueryHash != null ? persistedQueryHash : hash(query);
+
+        Document document;
+        PreparsedDocumentEntry entry = documents.getIfPresent(queryHash);
+        if (entry != null) {
+            document = entry.getDocument();
+        } else if (PERSISTED_QUERY_MARKER.equals(query)) {
+            return false;
+        } else {
+            try {
+                document = Parser.parse(query);
+            } catch (InvalidSyntaxException e) {
+                return false;
+            }
+        }
+
+        List<OperationDefinition> operations = document.getDefinitionsOfType(OperationDefinition.class);
+        return !operations.isEmpty() && operations.stream()
+                .allMatch(operation -> operation.getOperation() == OperationDefinition.Operation.QUERY);
+    }
+
+    public long size() {
+        return documents.size();
+    }
+
+    static String hash(String query) {
+        return Hashing.sha256().hashString(query, StandardCharsets.UTF_8).toString();
+    }
+
+    private static String getPersistedQueryHash(Map<String, Object> extensions) {
+        if (extensions != null && extensions.get(PERSISTED_QUERY_EXTENSION) instanceof Map<?, ?> persistedQuery
+                && persistedQuery.get(SHA_256_HASH) instanceof String hash) {
+            return hash.toLowerCase();
+        }
+        return null;
+    }
+
+    /**
+     * Apollo persisted queries, where queries sent without a hash are looked up by the hash of the query.
+     */
+    private static class DocumentCacheQuerySupport extends ApolloPersistedQuerySupport {
+
+        DocumentCacheQuerySupport(PersistedQueryCache persistedQueryCache) {
+            super(persistedQueryCache);
+        }
+
+        @Override
+        protected Optional<Object> getPersistedQueryId(ExecutionInput executionInput) {
+            Optional<Object> persistedQueryId = super.getPersistedQueryId(executionInput);
+            if (persistedQueryId.isPresent() || executionInput.getQuery() == null) {
+                return persistedQueryId;
+            }
+            return Optional.of(hash(executionInput.getQuery()));
+        }
+    }
+
+    /**
+     * The query was sent with the hash of another query.
+     */
+    public static class PersistedQueryIdMismatch extends PersistedQueryError {
+
+        private final Object persistedQueryId;
+
+        public PersistedQueryIdMismatch(Object persistedQueryId) {
+            this.persistedQueryId = persistedQueryId;
+        }
+
+        @Override
+        public String getMessage() {
+            return "The hash of the persisted query does not match the query: " + persistedQueryId;
+        }
+
+        @Override
+        public String toString() {
+            return "PersistedQueryIdMismatch";
+        }
+    }
+}
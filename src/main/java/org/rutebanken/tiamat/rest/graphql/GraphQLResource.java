@@ -30,6 +30,9 @@ import graphql.execution.AbortExecutionException;
 import graphql.execution.DataFetcherResult;
 import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
+import graphql.execution.preparsed.persisted.PersistedQueryError;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.PostConstruct;
 import jakarta.ws.rs.Consumes;
@@ -91,13 +94,31 @@ public class GraphQLResource {
     @Autowired
     private RequestLoggingInstrumentation requestLoggingInstrumentation;
 
+    @Autowired
+    private GraphQLDataLoaders graphQLDataLoaders;
+
+    @Autowired
+    private GraphQLDocumentCache graphQLDocumentCache;
+
+
+    /**
+     * Run queries in read-only transactions. Mutations always run in read-write transactions.
+     */
+    @Value("${graphql.query.read-only.enabled:true}")
+    private boolean readOnlyQueries = true;
 
     private final TransactionTemplate transactionTemplate;
 
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
 
     public GraphQLResource(PlatformTransactionManager transactionManager) {
         org.springframework.util.Assert.notNull(transactionManager, "The 'transactionManager' argument must not be null.");
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // With JPA, a read-only transaction sets FlushMode.MANUAL and the read-only hint on the Hibernate session,
+        // and marks the connection read-only. Read-only connections are routed to the replica database if configured.
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
     @PostConstruct
@@ -105,6 +126,7 @@ public class GraphQLResource {
         List<Instrumentation> chainedList = new ArrayList<>();
         chainedList.add(new MaxQueryDepthInstrumentation(MAX_DEPTH));
         chainedList.add(requestLoggingInstrumentation);
+        chainedList.add(new DataLoaderDispatcherInstrumentation());
 
         final ChainedInstrumentation chainedInstrumentation = new ChainedInstrumentation(chainedList);
 
@@ -112,6 +134,7 @@ public class GraphQLResource {
         logger.info(String.format("max query depth is: %d", MAX_DEPTH));
         graphQL = GraphQL.newGraphQL(stopPlaceRegisterGraphQLSchema.stopPlaceRegisterSchema)
                 .instrumentation(chainedInstrumentation)
+                .preparsedDocumentProvider(graphQLDocumentCache.preparsedDocumentProvider())
                 .build();
 
     }
@@ -142,14 +165,21 @@ public class GraphQLResource {
         } else {
             variables = new HashMap<>();
         }
-        return getGraphQLResponseInTransaction((String) query.get("query"), variables);
+
+        Map<String, Object> extensions = query.get("extensions") instanceof Map ? (Map) query.get("extensions") : new HashMap<>();
+        String queryString = (String) query.get("query");
+        if (queryString == null && extensions.containsKey(GraphQLDocumentCache.PERSISTED_QUERY_EXTENSION)) {
+            // Persisted query sent with only the hash
+            queryString = GraphQLDocumentCache.PERSISTED_QUERY_MARKER;
+        }
+        return getGraphQLResponseInTransaction(queryString, variables, extensions);
     }
 
     @POST
     @Consumes("application/graphql")
     @Produces(MediaType.APPLICATION_JSON)
     public Response getGraphQL(String query) {
-        return getGraphQLResponseInTransaction(query, new HashMap<>());
+        return getGraphQLResponseInTransaction(query, new HashMap<>(), new HashMap<>());
     }
 
     /**
@@ -157,9 +187,12 @@ public class GraphQLResource {
      * With multiple transaction interceptors (Transactional annotation), this causes the rolled back transaction (in case of errors) to be commed by the outer transaction interceptor.
      * NRP-1992
      */
-    private Response getGraphQLResponseInTransaction(String query, Map<String, Object> variables) {
+    private Response getGraphQLResponseInTransaction(String query, Map<String, Object> variables, Map<String, Object> extensions) {
+        TransactionTemplate template = readOnlyQueries && graphQLDocumentCache.isQueryOperation(query, extensions)
+                ? readOnlyTransactionTemplate
+                : transactionTemplate;
         try {
-            return (Response) transactionTemplate.execute((transactionStatus) -> getGraphQLResponse(query, variables, transactionStatus));
+            return (Response) template.execute((transactionStatus) -> getGraphQLResponse(query, variables, extensions, transactionStatus));
         } catch (JpaSystemException e) {
             var rootCause = e.getRootCause();
             for (HSLErrorCodeEnumeration hslError : HSLErrorCodeEnumeration.values()) {
@@ -191,7 +224,7 @@ public class GraphQLResource {
         return message.substring(message.indexOf(errorCodeEnumeration.name()), message.indexOf("\n"));
     }
 
-    private Response getGraphQLResponse(String query, Map<String, Object> variables, TransactionStatus transactionStatus) {
+    private Response getGraphQLResponse(String query, Map<String, Object> variables, Map<String, Object> extensions, TransactionStatus transactionStatus) {
         Response.ResponseBuilder res = Response.status(Response.Status.OK);
         HashMap<String, Object> content = new HashMap<>();
         try {
@@ -199,6 +232,8 @@ public class GraphQLResource {
                     .query(query)
                     .root(null)
                     .variables(variables)
+                    .extensions(extensions)
+                    .dataLoaderRegistry(graphQLDataLoaders.newRegistry())
                     .build();
             ExecutionResult executionResult = graphQL.execute(executionInput);
 
@@ -210,6 +245,11 @@ public class GraphQLResource {
                     final ErrorClassification errorClassification = error.getErrorType();
                     if (InvalidSyntax.equals(errorClassification) || ValidationError.equals(errorClassification)) {
                         status = Response.Status.BAD_REQUEST;
+                    } else if (errorClassification instanceof PersistedQueryNotFound) {
+                        // The client is expected to send the query again, together with its hash
+                        status = Response.Status.OK;
+                    } else if (errorClassification instanceof PersistedQueryError) {
+                        status = Response.Status.BAD_REQUEST;
                     } else if (DataFetchingException.equals(errorClassification)) {
                         ExceptionWhileDataFetching exceptionWhileDataFetching = ((ExceptionWhileDataFetching) error);
                         if (exceptionWhileDataFetching.getException() != null) {
@@ -127,6 +127,7 @@ import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static graphql.Scalars.GraphQLBoolean;
 import static graphql.Scalars.GraphQLInt;
@@ -342,13 +343,13 @@ public class StopPlaceRegisterGraphQLSchema {
     FareZoneAuthoritiesFetcher fareZoneAuthoritiesFetcher;
 
     @Autowired
-    private DataFetcher<List<GroupOfStopPlaces>> stopPlaceGroupsFetcher;
+    private DataFetcher<CompletableFuture<List<GroupOfStopPlaces>>> stopPlaceGroupsFetcher;
 
     @Autowired
-    private DataFetcher<List<InfoSpot>> stopPlaceInfoSpotsFetcher;
+    private DataFetcher<CompletableFuture<List<InfoSpot>>> stopPlaceInfoSpotsFetcher;
 
     @Autowired
-    private DataFetcher<List<InfoSpot>> quayInfoSpotsFetcher;
+    private DataFetcher<CompletableFuture<List<InfoSpot>>> quayInfoSpotsFetcher;
 
     @Autowired
     private KeyValuesDataFetcher keyValuesDataFetcher;
@@ -2,6 +2,7 @@ package org.rutebanken.tiamat.rest.graphql.fetchers;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.Try;
 import org.rutebanken.tiamat.auth.AuthorizationService;
 import org.rutebanken.tiamat.diff.generic.SubmodeEnumuration;
 import org.rutebanken.tiamat.model.EntityInVersionStructure;
@@ -11,11 +12,17 @@ import org.rutebanken.tiamat.model.StopTypeEnumeration;
 import org.rutebanken.tiamat.model.authorization.EntityPermissions;
 import org.rutebanken.tiamat.netex.id.TypeFromIdResolver;
 import org.rutebanken.tiamat.repository.generic.GenericEntityInVersionRepository;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Component
 public class EntityPermissionsFetcher implements DataFetcher {
@@ -41,14 +48,35 @@ public class EntityPermissionsFetcher implements DataFetcher {
             throw new IllegalArgumentException("Cannot find entity with ID: " + netexId);
         }
 
+        return environment.<String, EntityPermissions>getDataLoader(GraphQLDataLoaders.ENTITY_PERMISSIONS).load(netexId);
+    }
 
-        Class clazz = typeFromIdResolver.resolveClassFromId(netexId);
-        EntityInVersionStructure entityInVersionStructure = genericEntityInVersionRepository.findFirstByNetexIdOrderByVersionDesc(netexId, clazz);
-
-        if (entityInVersionStructure == null) {
-            throw new IllegalArgumentException("Cannot find entity with ID: " + netexId);
+    /**
+     * Batch loader for the permissions of the entities in a GraphQL response.
+     * The newest versions of the entities are loaded with one query per type.
+     */
+    public CompletionStage<List<Try<EntityPermissions>>> loadPermissions(List<String> netexIds) {
+        Map<Class<EntityInVersionStructure>, List<String>> netexIdsByClass = new HashMap<>();
+        for (String netexId : netexIds) {
+            netexIdsByClass.computeIfAbsent(typeFromIdResolver.resolveClassFromId(netexId), clazz -> new ArrayList<>()).add(netexId);
         }
 
+        Map<String, EntityInVersionStructure> newestVersions = new HashMap<>();
+        netexIdsByClass.forEach((clazz, ids) -> genericEntityInVersionRepository.findNewestVersions(ids, clazz)
+                .forEach(entity -> newestVersions.put(entity.getNetexId(), entity)));
+
+        return CompletableFuture.completedFuture(netexIds.stream()
+                .map(netexId -> {
+                    EntityInVersionStructure entityInVersionStructure = newestVersions.get(netexId);
+                    if (entityInVersionStructure == null) {
+                        return Try.<EntityPermissions>failed(new IllegalArgumentException("Cannot find entity with ID: " + netexId));
+                    }
+                    return Try.succeeded(getPermissions(entityInVersionStructure));
+                })
+                .toList());
+    }
+
+    private EntityPermissions getPermissions(EntityInVersionStructure entityInVersionStructure) {
         final boolean canEditEntities = authorizationService.canEditEntity(entityInVersionStructure);
         final boolean canDeleteEntity = authorizationService.canDeleteEntity(entityInVersionStructure);
         final Set<StopTypeEnumeration> allowedStopPlaceTypes = authorizationService.getAllowedStopPlaceTypes(entityInVersionStructure);
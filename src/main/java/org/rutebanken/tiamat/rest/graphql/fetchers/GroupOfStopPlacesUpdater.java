@@ -47,12 +47,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.ENTITY_REF_REF;
+import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.GROUP_OF_STOP_PLACES_MEMBERS;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.ID;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.MUTATE_GROUP_OF_STOP_PLACES;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.OUTPUT_TYPE_GROUP_OF_STOPPLACES;
+import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.PURPOSE_OF_GROUPING;
 
 @Service("groupOfStopPlacesUpdater")
 @Transactional
@@ -89,10 +93,10 @@ class GroupOfStopPlacesUpdater implements DataFetcher<GroupOfStopPlaces> {
 
 
     private GroupOfStopPlaces createOrUpdateGroupOfStopPlaces(DataFetchingEnvironment environment) {
-        return mutateLock.executeInLock(() -> {
+        Map input = environment.getArgument(OUTPUT_TYPE_GROUP_OF_STOPPLACES);
+        return mutateLock.executeInLock(lockIds(input), () -> {
             GroupOfStopPlaces updatedGroupOfStopPlaces;
             GroupOfStopPlaces existingVersion = null;
-            Map input = environment.getArgument(OUTPUT_TYPE_GROUP_OF_STOPPLACES);
 
             if (input != null) {
 
@@ -123,6 +127,34 @@ class GroupOfStopPlacesUpdater implements DataFetcher<GroupOfStopPlaces> {
         });
     }
 
+    /**
+     * The group, its purpose of grouping and the stop places that are members before and after the mutation.
+     * Without any of them, a new group without members is created.
+     */
+    private List<String> lockIds(Map input) {
+        List<String> ids = new ArrayList<>();
+        if (input == null) {
+            return ids;
+        }
+        String netexId = (String) input.get(ID);
+        if (netexId != null) {
+            ids.add(netexId);
+            GroupOfStopPlaces existingVersion = groupOfStopPlacesRepository.findFirstByNetexIdOrderByVersionDesc(netexId);
+            if (existingVersion != null) {
+                existingVersion.getMembers().forEach(member -> ids.add(member.getRef()));
+            }
+        }
+        if (input.get(PURPOSE_OF_GROUPING) != null) {
+            ids.add((String) ((Map) input.get(PURPOSE_OF_GROUPING)).get(ENTITY_REF_REF));
+        }
+        if (input.get(GROUP_OF_STOP_PLACES_MEMBERS) != null) {
+            for (Object member : (List) input.get(GROUP_OF_STOP_PLACES_MEMBERS)) {
+                ids.add((String) ((Map) member).get(ENTITY_REF_REF));
+            }
+        }
+        return ids;
+    }
+
     private GroupOfStopPlaces findAndVerify(String netexId) {
         GroupOfStopPlaces existingGroupOfStopPlaces = groupOfStopPlacesRepository.findFirstByNetexIdOrderByVersionDesc(netexId);
         verifyGroupOfStopPlacesNotNull(existingGroupOfStopPlaces, netexId);
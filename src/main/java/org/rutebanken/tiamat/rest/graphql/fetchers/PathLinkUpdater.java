@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.ID;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.MUTATE_PATH_LINK;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.OUTPUT_TYPE_PATH_LINK;
 
@@ -52,7 +53,7 @@ class PathLinkUpdater implements DataFetcher {
 
     @Override
     public Object get(DataFetchingEnvironment environment) {
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(pathLinkIds(environment), () -> {
             List<Field> fields = environment.getMergedField().getFields();
 
             logger.trace("Got fields {}", fields);
@@ -83,4 +84,15 @@ class PathLinkUpdater implements DataFetcher {
             return createdOrUpdated;
         });
     }
+
+    private List<String> pathLinkIds(DataFetchingEnvironment environment) {
+        List<String> pathLinkIds = new ArrayList<>();
+        List<Map> inputs = environment.getArgument(OUTPUT_TYPE_PATH_LINK);
+        if (inputs != null) {
+            for (Map input : inputs) {
+                pathLinkIds.add((String) input.get(ID));
+            }
+        }
+        return pathLinkIds;
+    }
 }
@@ -54,10 +54,10 @@ public class PurposeOfGroupingUpdater implements DataFetcher<PurposeOfGrouping>
     }
 
     private PurposeOfGrouping createOrUpdatePurposeOfGrouping(DataFetchingEnvironment environment) {
-        return mutateLock.executeInLock(() -> {
+        Map input = environment.getArgument(OUTPUT_TYPE_PURPOSE_OF_GROUPING);
+        return mutateLock.executeInLock(input != null ? (String) input.get(ID) : null, () -> {
             PurposeOfGrouping updatedPurposeOfGrouping;
             PurposeOfGrouping existingVersion = null;
-            Map input = environment.getArgument(OUTPUT_TYPE_PURPOSE_OF_GROUPING);
 
             if(input !=null){
                 String netexId = (String) input.get(ID);
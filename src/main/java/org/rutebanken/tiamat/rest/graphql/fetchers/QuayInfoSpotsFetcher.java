@@ -3,29 +3,23 @@ package org.rutebanken.tiamat.rest.graphql.fetchers;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.rutebanken.tiamat.model.InfoSpot;
 import org.rutebanken.tiamat.model.Quay;
-import org.rutebanken.tiamat.repository.InfoSpotRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.springframework.stereotype.Service;
 
 @Service("quayInfoSpotsFetcher")
-public class QuayInfoSpotsFetcher implements DataFetcher<List<InfoSpot>> {
-    private static final Logger logger = LoggerFactory.getLogger(QuayInfoSpotsFetcher.class);
-
-    @Autowired
-    InfoSpotRepository infoSpotRepository;
+public class QuayInfoSpotsFetcher implements DataFetcher<CompletableFuture<List<InfoSpot>>> {
 
     @Override
-    public List<InfoSpot> get(DataFetchingEnvironment environment) {
+    public CompletableFuture<List<InfoSpot>> get(DataFetchingEnvironment environment) {
 
         Quay quay = environment.getSource();
 
-        logger.info("Fetching info spots for quay {} version {}", quay.getNetexId(), quay.getVersion());
-
         // Use version-aware filtering to only return InfoSpots linked to this specific version
-        return infoSpotRepository.findForAssociationWithVersion(quay.getNetexId(), quay.getVersion());
+        return environment.<VersionOfObjectRefStructure, List<InfoSpot>>getDataLoader(GraphQLDataLoaders.INFO_SPOTS)
+                .load(new VersionOfObjectRefStructure(quay.getNetexId(), String.valueOf(quay.getVersion())));
     }
 }
@@ -19,16 +19,22 @@ import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.rutebanken.tiamat.model.DataManagedObjectStructure;
 import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
+import org.dataloader.Try;
 import org.rutebanken.tiamat.repository.reference.ReferenceResolver;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 @Service("referenceFetcher")
 @Transactional
-public class ReferenceFetcher implements DataFetcher<DataManagedObjectStructure> {
+public class ReferenceFetcher implements DataFetcher<CompletableFuture<DataManagedObjectStructure>> {
 
     private static final Logger logger = LoggerFactory.getLogger(ReferenceFetcher.class);
 
@@ -37,9 +43,37 @@ public class ReferenceFetcher implements DataFetcher<DataManagedObjectStructure>
 
     @Override
     @Transactional
-    public DataManagedObjectStructure get(DataFetchingEnvironment environment) {
+    public CompletableFuture<DataManagedObjectStructure> get(DataFetchingEnvironment environment) {
         VersionOfObjectRefStructure reference = (VersionOfObjectRefStructure) environment.getSource();
-        logger.info("Fetching reference: {}, version: {}", reference.getRef(), reference.getVersion());
-        return referenceResolver.resolve(reference);
+        return load(environment, reference);
+    }
+
+    /**
+     * Load the referenced entity with the request's data loader, so that references in the same response are resolved together.
+     */
+    public static CompletableFuture<DataManagedObjectStructure> load(DataFetchingEnvironment environment, VersionOfObjectRefStructure reference) {
+        // References are equal by ref and version whatever their subclass, so the same entity is loaded once per request
+        return environment.<VersionOfObjectRefStructure, DataManagedObjectStructure>getDataLoader(GraphQLDataLoaders.REFERENCES)
+                .load(reference);
+    }
+
+    /**
+     * Batch loader for references in a GraphQL response.
+     * If a reference is invalid, the references are resolved one by one, so that only the fields of the invalid reference fail.
+     */
+    @Transactional
+    public CompletionStage<List<Try<DataManagedObjectStructure>>> loadReferences(List<VersionOfObjectRefStructure> references) {
+        logger.info("Fetching {} references", references.size());
+        try {
+            return CompletableFuture.completedFuture(referenceResolver.resolveAll(references)
+                    .stream()
+                    .map(Try::succeeded)
+                    .toList());
+        } catch (IllegalArgumentException e) {
+            logger.info("Could not resolve references together, resolving them one by one: {}", e.getMessage());
+            return CompletableFuture.completedFuture(references.stream()
+                    .map(reference -> Try.tryCall(() -> referenceResolver.<DataManagedObjectStructure>resolve(reference)))
+                    .toList());
+        }
     }
 }
@@ -47,10 +47,10 @@ package org.rutebanken.tiamat.rest.graphql.fetchers;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
-import org.rutebanken.tiamat.exporter.params.GroupOfStopPlacesSearch;
 import org.rutebanken.tiamat.model.GroupOfStopPlaces;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.repository.GroupOfStopPlacesRepository;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,10 +58,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Service("stopPlaceGroupsFetcher")
 @Transactional
-public class StopPlaceGroupsFetcher implements DataFetcher<List<GroupOfStopPlaces>> {
+public class StopPlaceGroupsFetcher implements DataFetcher<CompletableFuture<List<GroupOfStopPlaces>>> {
 
     private static final Logger logger = LoggerFactory.getLogger(StopPlaceGroupsFetcher.class);
 
@@ -69,15 +72,22 @@ public class StopPlaceGroupsFetcher implements DataFetcher<List<GroupOfStopPlace
     private GroupOfStopPlacesRepository groupOfStopPlacesRepository;
 
     @Override
-    public List<GroupOfStopPlaces> get(DataFetchingEnvironment environment) {
+    public CompletableFuture<List<GroupOfStopPlaces>> get(DataFetchingEnvironment environment) {
 
         StopPlace stopPlace = environment.getSource();
 
-        logger.info("Fetching groups for stop place {}", stopPlace.getNetexId());
-        GroupOfStopPlacesSearch groupOfStopPlacesSearch = GroupOfStopPlacesSearch.newGroupOfStopPlacesSearchBuilder()
-                .stopPlaceId(stopPlace.getNetexId())
-                .build();
+        return environment.<String, List<GroupOfStopPlaces>>getDataLoader(GraphQLDataLoaders.STOP_PLACE_GROUPS)
+                .load(stopPlace.getNetexId());
+    }
 
-        return groupOfStopPlacesRepository.findGroupOfStopPlaces(groupOfStopPlacesSearch);
+    /**
+     * Batch loader for the groups of the stop places in a GraphQL response.
+     */
+    public CompletionStage<List<List<GroupOfStopPlaces>>> loadGroups(List<String> stopPlaceNetexIds) {
+        logger.info("Fetching groups for {} stop places", stopPlaceNetexIds.size());
+        Map<String, List<GroupOfStopPlaces>> groups = groupOfStopPlacesRepository.findGroupOfStopPlacesByStopPlaceIds(stopPlaceNetexIds);
+        return CompletableFuture.completedFuture(stopPlaceNetexIds.stream()
+                .map(netexId -> groups.getOrDefault(netexId, List.of()))
+                .toList());
     }
 }
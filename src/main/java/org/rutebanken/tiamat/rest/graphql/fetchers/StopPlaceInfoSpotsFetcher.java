@@ -3,16 +3,21 @@ package org.rutebanken.tiamat.rest.graphql.fetchers;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.rutebanken.tiamat.model.InfoSpot;
 import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
 import org.rutebanken.tiamat.repository.InfoSpotRepository;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service("stopPlaceInfoSpotsFetcher")
-public class StopPlaceInfoSpotsFetcher implements DataFetcher<List<InfoSpot>> {
+public class StopPlaceInfoSpotsFetcher implements DataFetcher<CompletableFuture<List<InfoSpot>>> {
 
     private static final Logger logger = LoggerFactory.getLogger(StopPlaceInfoSpotsFetcher.class);
 
@@ -20,13 +25,23 @@ public class StopPlaceInfoSpotsFetcher implements DataFetcher<List<InfoSpot>> {
     InfoSpotRepository infoSpotRepository;
 
     @Override
-    public List<InfoSpot> get(DataFetchingEnvironment environment) {
+    public CompletableFuture<List<InfoSpot>> get(DataFetchingEnvironment environment) {
 
         StopPlace stopPlace = environment.getSource();
 
-        logger.info("Fetching info spots for stop place {} version {}", stopPlace.getNetexId(), stopPlace.getVersion());
-
         // Use version-aware filtering to only return InfoSpots linked to this specific version
-        return infoSpotRepository.findForAssociationWithVersion(stopPlace.getNetexId(), stopPlace.getVersion());
+        return environment.<VersionOfObjectRefStructure, List<InfoSpot>>getDataLoader(GraphQLDataLoaders.INFO_SPOTS)
+                .load(new VersionOfObjectRefStructure(stopPlace.getNetexId(), String.valueOf(stopPlace.getVersion())));
+    }
+
+    /**
+     * Batch loader for the info spots of the stop place and quay versions in a GraphQL response.
+     */
+    public CompletionStage<List<List<InfoSpot>>> loadInfoSpots(List<VersionOfObjectRefStructure> locations) {
+        logger.info("Fetching info spots for {} stop place or quay versions", locations.size());
+        Map<VersionOfObjectRefStructure, List<InfoSpot>> infoSpots = infoSpotRepository.findForAssociationsWithVersion(locations);
+        return CompletableFuture.completedFuture(locations.stream()
+                .map(location -> infoSpots.getOrDefault(location, List.of()))
+                .toList());
     }
 }
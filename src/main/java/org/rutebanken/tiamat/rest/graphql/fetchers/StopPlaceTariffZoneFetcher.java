@@ -19,35 +19,36 @@ import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.model.TariffZone;
-import org.rutebanken.tiamat.repository.reference.ReferenceResolver;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.stream.Collectors.toList;
 
 /**
  * Fetches tariff zones for stop place.
- * Resolves tariff zone references to tariff zone entities.
+ * Resolves tariff zone references to tariff zone entities, with the same data loader as {@link ReferenceFetcher}.
  */
 @Component
 public class StopPlaceTariffZoneFetcher implements DataFetcher {
 
-    @Autowired
-    private ReferenceResolver referenceResolver;
-
     @Override
     public Object get(DataFetchingEnvironment dataFetchingEnvironment) {
         StopPlace stopPlace = (StopPlace) dataFetchingEnvironment.getSource();
         if(stopPlace.getTariffZones() != null) {
-            return stopPlace.getTariffZones()
+            List<CompletableFuture<?>> tariffZones = stopPlace.getTariffZones()
                     .stream()
-                    .map(tariffZoneRef -> referenceResolver.resolve(tariffZoneRef))
-                    .filter(Objects::nonNull)
-                    .filter(tz -> tz instanceof TariffZone)
-                    .collect(toList());
+                    .<CompletableFuture<?>>map(tariffZoneRef -> ReferenceFetcher.load(dataFetchingEnvironment, tariffZoneRef))
+                    .toList();
+            return CompletableFuture.allOf(tariffZones.toArray(CompletableFuture[]::new))
+                    .thenApply(done -> tariffZones.stream()
+                            .map(CompletableFuture::join)
+                            .filter(Objects::nonNull)
+                            .filter(tz -> tz instanceof TariffZone)
+                            .collect(toList()));
         }
         return new ArrayList<>();
     }
@@ -87,18 +87,14 @@ class StopPlaceUpdater implements DataFetcher {
 
 
     private StopPlace createOrUpdateStopPlaceInLock(DataFetchingEnvironment environment, boolean mutateParent) {
-        return mutateLock.executeInLock(() -> createOrUpdateStopPlace(environment, mutateParent));
-    }
-
-    private StopPlace createOrUpdateStopPlace(DataFetchingEnvironment environment, boolean mutateParent) {
-
         Map input = environment.getArgument(OUTPUT_TYPE_STOPPLACE);
         if (input == null) {
             input = environment.getArgument(OUTPUT_TYPE_PARENT_STOPPLACE);
         }
 
         if (input != null) {
-            return createOrUpdateStopPlace(input, mutateParent);
+            final Map stopPlaceInput = input;
+            return mutateLock.executeInLock((String) stopPlaceInput.get(ID), () -> createOrUpdateStopPlace(stopPlaceInput, mutateParent));
         }
         return null;
     }
@@ -21,38 +21,38 @@ import graphql.schema.DataFetchingEnvironment;
 import org.rutebanken.tiamat.model.identification.IdentifiedEntity;
 import org.rutebanken.tiamat.model.tag.Tag;
 import org.rutebanken.tiamat.repository.TagRepository;
+import org.rutebanken.tiamat.rest.graphql.GraphQLDataLoaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toSet;
 import static org.rutebanken.tiamat.rest.graphql.GraphQLNames.TAG_NAME;
 
 @Component
-public class TagFetcher implements DataFetcher<Set<Tag>> {
+public class TagFetcher implements DataFetcher<CompletableFuture<Set<Tag>>> {
 
     @Autowired
     private TagRepository tagRepository;
 
     @Override
-    public Set<Tag> get(DataFetchingEnvironment dataFetchingEnvironment) {
+    public CompletableFuture<Set<Tag>> get(DataFetchingEnvironment dataFetchingEnvironment) {
         if(dataFetchingEnvironment.getSource() instanceof IdentifiedEntity identifiedEntity) {
-            if (identifiedEntity != null) {
-                return tagRepository.findByIdReference(identifiedEntity.getNetexId())
-                        .stream()
-                        .filter(tag -> tag.getRemoved() == null)
-                        .collect(toSet());
-            }
-            return Sets.newHashSet();
+            return dataFetchingEnvironment.<String, Set<Tag>>getDataLoader(GraphQLDataLoaders.TAGS)
+                    .load(identifiedEntity.getNetexId());
         } else if (dataFetchingEnvironment.getArgument(TAG_NAME) != null) {
 
             String tagName = dataFetchingEnvironment.getArgument(TAG_NAME);
-            return tagRepository.findByNameContaining(tagName)
+            return CompletableFuture.completedFuture(tagRepository.findByNameContaining(tagName)
                     .stream()
                     .filter(tag -> tag.getRemoved() == null)
                     .filter(distinctByKey(Tag::getName))
@@ -62,12 +62,25 @@ public class TagFetcher implements DataFetcher<Set<Tag>> {
                         tagSuggestion.setName(tag.getName());
                         return tagSuggestion;
                     })
-                    .collect(toSet());
+                    .collect(toSet()));
         } else {
-            return Sets.newHashSet();
+            return CompletableFuture.completedFuture(Sets.newHashSet());
         }
     }
 
+    /**
+     * Batch loader for the tags of the entities in a GraphQL response.
+     */
+    public CompletionStage<List<Set<Tag>>> loadTags(List<String> netexIds) {
+        Map<String, Set<Tag>> tagsByNetexId = tagRepository.findByIdReferenceIn(netexIds)
+                .stream()
+                .filter(tag -> tag.getRemoved() == null)
+                .collect(groupingBy(Tag::getIdReference, toSet()));
+        return CompletableFuture.completedFuture(netexIds.stream()
+                .map(netexId -> tagsByNetexId.getOrDefault(netexId, Sets.newHashSet()))
+                .toList());
+    }
+
     public static <T> Predicate<T> distinctByKey(Function<? super T, Object> keyExtractor) {
         Map<Object,Boolean> seen = new ConcurrentHashMap<>();
         return t -> seen.putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
@@ -9,6 +9,7 @@ import org.rutebanken.tiamat.exporter.TopographicPlacesExporter;
 import org.rutebanken.tiamat.exporter.params.ExportParams;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.repository.PrimaryIds;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
 import org.rutebanken.tiamat.repository.search.ChangedStopPlaceSearch;
 import org.rutebanken.tiamat.service.stopplace.ChildStopPlacesFetcher;
@@ -19,11 +20,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.Set;
 import java.util.stream.StreamSupport;
 
-import static java.util.stream.Collectors.toSet;
-
 @Component
 @Transactional
 public class ExportStopPlacesWithEffectiveChangeInPeriod {
@@ -88,7 +86,7 @@ public class ExportStopPlacesWithEffectiveChangeInPeriod {
             tiamatSiteFrameExporter.addAllTariffZones(siteFrame);
         }
 
-        Set<Long> stopPlaceIds = StreamSupport.stream(stopPlaces.spliterator(), false).map(stopPlace -> stopPlace.getId()).collect(toSet());
+        PrimaryIds stopPlaceIds = PrimaryIds.of(StreamSupport.stream(stopPlaces.spliterator(), false).mapToLong(StopPlace::getId));
         tiamatSiteFrameExporter.addRelevantPathLinks(stopPlaceIds, siteFrame);
 
         logger.info("Mapping site frame to netex model");
@@ -32,6 +32,10 @@ import org.rutebanken.tiamat.importer.ImportParams;
 import org.rutebanken.tiamat.importer.ImportType;
 import org.rutebanken.tiamat.importer.PublicationDeliveryImporter;
 import org.rutebanken.tiamat.importer.PublicationDeliveryTariffZoneImporter;
+import org.rutebanken.tiamat.importer.StreamingImportProgress;
+import org.rutebanken.tiamat.importer.StreamingPublicationDeliveryImporter;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.PublicationDeliveryPartialUnmarshaller;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.UnmarshalResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,6 +43,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXException;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Set;
@@ -62,6 +68,10 @@ public class ImportResource {
 
     private final PublicationDeliveryTariffZoneImporter publicationDeliveryTariffZoneImporter;
 
+    private final PublicationDeliveryPartialUnmarshaller publicationDeliveryPartialUnmarshaller;
+
+    private final StreamingPublicationDeliveryImporter streamingPublicationDeliveryImporter;
+
     private final Set<ImportType> enabledImportTypes;
 
     @Autowired
@@ -69,12 +79,16 @@ public class ImportResource {
                                  PublicationDeliveryStreamingOutput publicationDeliveryStreamingOutput,
                                  PublicationDeliveryImporter publicationDeliveryImporter,
                                  PublicationDeliveryTariffZoneImporter publicationDeliveryTariffZoneImporter,
+                                 PublicationDeliveryPartialUnmarshaller publicationDeliveryPartialUnmarshaller,
+                                 StreamingPublicationDeliveryImporter streamingPublicationDeliveryImporter,
                                  @Value("#{'${netex.import.enabled.types:ID_MATCH}'.split(',')}") Set<ImportType> enabledImportTypes) {
 
         this.publicationDeliveryUnmarshaller = publicationDeliveryUnmarshaller;
         this.publicationDeliveryStreamingOutput = publicationDeliveryStreamingOutput;
         this.publicationDeliveryImporter = publicationDeliveryImporter;
         this.publicationDeliveryTariffZoneImporter = publicationDeliveryTariffZoneImporter;
+        this.publicationDeliveryPartialUnmarshaller = publicationDeliveryPartialUnmarshaller;
+        this.streamingPublicationDeliveryImporter = streamingPublicationDeliveryImporter;
         this.enabledImportTypes = enabledImportTypes;
     }
 
@@ -92,6 +106,40 @@ public class ImportResource {
         return importPublicationDelivery(inputStream, importParams, importOnlyTariffZones);
     }
 
+    /**
+     * Import stop places and parkings in batches while the publication delivery is being read.
+     * Meant for large publication deliveries. Responds with a summary of the import instead of the imported entities.
+     */
+    @POST
+    @Path("stream")
+    @Consumes(MediaType.APPLICATION_XML)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response importPublicationDeliveryStreaming(@Parameter(hidden = true) InputStream inputStream, @BeanParam ImportParams importParams)
+            throws IOException, JAXBException, SAXException, XMLStreamException, InterruptedException, ParserConfigurationException {
+        logger.info("Received Netex publication delivery for streaming import");
+        ImportType effectiveImportType = safeGetImportType(importParams);
+        if (!enabledImportTypes.contains(effectiveImportType)) {
+            String error = "ImportType: " + effectiveImportType + " not enabled!";
+            logger.warn(error);
+            return Response.status(Response.Status.BAD_REQUEST).entity(error).build();
+        }
+        if (importParams != null && importParams.importOnlyTariffZones) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("importOnlyTariffZones is not supported by streaming import").build();
+        }
+
+        // Read from the request while importing. The import returns when the whole request has been read.
+        UnmarshalResult unmarshalResult = publicationDeliveryPartialUnmarshaller.unmarshalInOnePass(inputStream);
+        try {
+            StreamingImportProgress progress = streamingPublicationDeliveryImporter.importPublicationDelivery(unmarshalResult, importParams);
+            return Response.ok(progress).build();
+        } catch (NotAuthenticatedException | NotAuthorizedException e) {
+            logger.debug("Access denied for publication delivery: " + e.getMessage(), e);
+            throw e;
+        } catch (RuntimeException e) {
+            logger.warn("Caught exception while streaming import of publication delivery", e);
+            throw e;
+        }
+    }
 
     private Response importPublicationDelivery(InputStream inputStream, ImportParams importParams, boolean importOnlyTariffZones) throws JAXBException, IOException, SAXException {
         ImportType effectiveImportType = safeGetImportType(importParams);
@@ -0,0 +1,260 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.rest.netex.publicationdelivery.async;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import org.rutebanken.netex.model.EntityInVersionStructure;
+import org.rutebanken.netex.model.FareZone;
+import org.rutebanken.netex.model.Parking;
+import org.rutebanken.netex.model.PathLink;
+import org.rutebanken.netex.model.StopPlace;
+import org.rutebanken.netex.model.TariffZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.EventReaderDelegate;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import static org.rutebanken.tiamat.rest.netex.publicationdelivery.async.RunnableUnmarshaller.POISON_PARKING;
+import static org.rutebanken.tiamat.rest.netex.publicationdelivery.async.RunnableUnmarshaller.POISON_STOP_PLACE;
+import static org.rutebanken.tiamat.rest.netex.publicationdelivery.async.RunnableUnmarshaller.POISON_TARIFF_ZONE_OR_PATH_LINK;
+
+/**
+ * Event reader for unmarshalling a publication delivery in one pass.
+ * Stop places and parkings are unmarshalled one by one and put on the queues of the {@link UnmarshalResult},
+ * and are never seen by the unmarshaller reading from this reader. Navigation paths are skipped.
+ * Tariff zones, fare zones and path links come after the stop places and parkings, and are put on one queue in the order they are read,
+ * as their order in the site frame varies between producers.
+ * <p>
+ * Putting on a full queue blocks, so reading waits for the entities to be imported.
+ * Before the first stop places or parkings are read, the head listener is called.
+ * Everything in the document before them, like frame defaults and topographic places, has then been unmarshalled.
+ */
+public class EntityQueueingEventReader extends EventReaderDelegate {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityQueueingEventReader.class);
+
+    private static final String STOP_PLACES = "stopPlaces";
+    private static final String PARKINGS = "parkings";
+    private static final String NAVIGATION_PATHS = "navigationPaths";
+    private static final String TARIFF_ZONES = "tariffZones";
+    private static final String PATH_LINKS = "pathLinks";
+
+    private final Unmarshaller entityUnmarshaller;
+    private final UnmarshalResult unmarshalResult;
+    private final Runnable headListener;
+
+    private boolean headReached;
+    private boolean stopPlacesFinished;
+    private boolean parkingsFinished;
+    private boolean tariffZonesAndPathLinksFinished;
+    private int stops;
+    private int parkings;
+    private int tariffZonesAndPathLinks;
+
+    /**
+     * @param entityUnmarshaller unmarshaller for stop places and parkings. Must not be the unmarshaller reading from this reader.
+     */
+    public EntityQueueingEventReader(XMLEventReader reader, Unmarshaller entityUnmarshaller, UnmarshalResult unmarshalResult, Runnable headListener) {
+        super(reader);
+        this.entityUnmarshaller = entityUnmarshaller;
+        this.unmarshalResult = unmarshalResult;
+        this.headListener = headListener;
+    }
+
+    @Override
+    public XMLEvent peek() throws XMLStreamException {
+        queueEntities();
+        return super.peek();
+    }
+
+    @Override
+    public XMLEvent nextEvent() throws XMLStreamException {
+        queueEntities();
+        return super.nextEvent();
+    }
+
+    @Override
+    public Object next() {
+        try {
+            return nextEvent();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            queueEntities();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+        return super.hasNext();
+    }
+
+    /**
+     * Mark stop places, parkings, tariff zones and path links as finished, for documents where they were missing.
+     * Must be called when the document has been read, or reading has failed.
+     */
+    public void finish() throws InterruptedException {
+        reachHead();
+        finishStopPlaces();
+        finishParkings();
+        finishTariffZonesAndPathLinks();
+        logger.info("Unmarshalling finished after {} stops, {} parkings, {} tariff zones and path links.", stops, parkings, tariffZonesAndPathLinks);
+    }
+
+    private void queueEntities() throws XMLStreamException {
+        while (getParent().hasNext()) {
+            XMLEvent event = getParent().peek();
+            if (!event.isStartElement()) {
+                return;
+            }
+            String localPartOfName = event.asStartElement().getName().getLocalPart();
+            try {
+                switch (localPartOfName) {
+                    case STOP_PLACES -> {
+                        reachHead();
+                        if (stopPlacesFinished) {
+                            throw new XMLStreamException("Stop places must come before parkings and can only be given once per import", event.getLocation());
+                        }
+                        queueEntities(unmarshalResult.getStopPlaceQueue(), List.of(StopPlace.class));
+                        finishStopPlaces();
+                    }
+                    case PARKINGS -> {
+                        reachHead();
+                        if (parkingsFinished) {
+                            throw new XMLStreamException("Parkings must come before tariff zones and path links and can only be given once per import", event.getLocation());
+                        }
+                        // Stop places are before parkings in a site frame
+                        finishStopPlaces();
+                        queueEntities(unmarshalResult.getParkingQueue(), List.of(Parking.class));
+                        finishParkings();
+                    }
+                    case TARIFF_ZONES, PATH_LINKS -> {
+                        reachHead();
+                        // Stop places and parkings are before tariff zones and path links in a site frame
+                        finishStopPlaces();
+                        finishParkings();
+                        queueEntities(unmarshalResult.getTariffZoneAndPathLinkQueue(), List.of(TariffZone.class, FareZone.class, PathLink.class));
+                    }
+                    case NAVIGATION_PATHS -> skipElement();
+                    default -> {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XMLStreamException("Interrupted while waiting for " + localPartOfName + " to be imported", e);
+            } catch (JAXBException e) {
+                throw new XMLStreamException("Could not unmarshal " + localPartOfName, event.getLocation(), e);
+            }
+        }
+    }
+
+    /**
+     * Unmarshal the entities of the given types in the container element the reader is at, and put them on the queue.
+     * Elements of other types are skipped.
+     */
+    private <T extends EntityInVersionStructure> void queueEntities(BlockingQueue<T> queue, List<Class<? extends T>> types) throws XMLStreamException, JAXBException, InterruptedException {
+        getParent().nextEvent();
+        while (true) {
+            XMLEvent event = getParent().peek();
+            if (event.isEndElement()) {
+                getParent().nextEvent();
+                return;
+            }
+            if (event.isStartElement()) {
+                String localPartOfName = event.asStartElement().getName().getLocalPart();
+                Class<? extends T> type = types.stream()
+                        .filter(candidate -> candidate.getSimpleName().equals(localPartOfName))
+                        .findFirst()
+                        .orElse(null);
+                if (type != null) {
+                    queue.put(entityUnmarshaller.unmarshal(getParent(), type).getValue());
+                    countUnmarshalled(type);
+                } else {
+                    skipElement();
+                }
+            } else {
+                getParent().nextEvent();
+            }
+        }
+    }
+
+    private void countUnmarshalled(Class<?> type) {
+        if (type == StopPlace.class) {
+            if (++stops % 200 == 0) {
+                logger.info("Unmarshalled stop number {}", stops);
+            }
+        } else if (type == Parking.class) {
+            if (++parkings % 20 == 0) {
+                logger.info("Unmarshalled parking number {}", parkings);
+            }
+        } else if (++tariffZonesAndPathLinks % 200 == 0) {
+            logger.info("Unmarshalled tariff zone or path link number {}", tariffZonesAndPathLinks);
+        }
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 0;
+        do {
+            XMLEvent event = getParent().nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void reachHead() {
+        if (!headReached) {
+            headReached = true;
+            headListener.run();
+        }
+    }
+
+    private void finishStopPlaces() throws InterruptedException {
+        if (!stopPlacesFinished) {
+            stopPlacesFinished = true;
+            logger.info("End of stop places in incoming XML. Counter ended at {}. Adding poison pill to the queue.", stops);
+            unmarshalResult.getStopPlaceQueue().put(POISON_STOP_PLACE);
+        }
+    }
+
+    private void finishParkings() throws InterruptedException {
+        if (!parkingsFinished) {
+            parkingsFinished = true;
+            logger.info("End of parkings in incoming XML. Counter ended at {}. Adding poison pill to the queue.", parkings);
+            unmarshalResult.getParkingQueue().put(POISON_PARKING);
+        }
+    }
+
+    private void finishTariffZonesAndPathLinks() throws InterruptedException {
+        if (!tariffZonesAndPathLinksFinished) {
+            tariffZonesAndPathLinksFinished = true;
+            logger.info("End of tariff zones and path links in incoming XML. Counter ended at {}. Adding poison pill to the queue.", tariffZonesAndPathLinks);
+            unmarshalResult.getTariffZoneAndPathLinkQueue().put(POISON_TARIFF_ZONE_OR_PATH_LINK);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import org.rutebanken.netex.model.PublicationDeliveryStructure;
+import org.rutebanken.netex.model.SiteFrame;
 import org.rutebanken.netex.model.StopPlace;
 import org.rutebanken.netex.model.TopographicPlace;
 import org.rutebanken.netex.validation.NeTExValidator;
@@ -43,6 +44,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.io.ByteStreams.toByteArray;
 import static jakarta.xml.bind.JAXBContext.newInstance;
@@ -60,6 +62,11 @@ public class PublicationDeliveryPartialUnmarshaller {
 
     private static final Logger logger = LoggerFactory.getLogger(PublicationDeliveryPartialUnmarshaller.class);
 
+    /**
+     * Number of unmarshalled entities of each type waiting to be imported. Unmarshalling blocks when the queue is full.
+     */
+    private static final int QUEUE_SIZE = 100;
+
     private static final JAXBContext jaxbContext = getContext(new Class[]{PublicationDeliveryStructure.class, StopPlace.class, TopographicPlace.class});
 
     private static JAXBContext getContext(Class[] classes) {
@@ -110,8 +117,8 @@ public class PublicationDeliveryPartialUnmarshaller {
         PublicationDeliveryStructure publicationDeliveryStructure = readPublicationDeliveryStructure(xmlInputFactory, new FileInputStream(file), unmarshaller);
         updateMappingContext(publicationDeliveryHelper.findSiteFrame(publicationDeliveryStructure));
 
-        // Read the rest from the same file
-        UnmarshalResult unmarshalResult = readWithXmlEventReaderAsync(new FileInputStream(file), unmarshaller);
+        // Read the rest from the same file. The file is deleted when unmarshalling has finished.
+        UnmarshalResult unmarshalResult = readWithXmlEventReaderAsync(new FileInputStream(file), unmarshaller, file);
         unmarshalResult.setPublicationDeliveryStructure(publicationDeliveryStructure);
 
         logger.debug("Done unmarshalling incoming publication delivery structure with schema validation enabled: {}", validateAgainstSchema);
@@ -119,6 +126,71 @@ public class PublicationDeliveryPartialUnmarshaller {
     }
 
 
+    /**
+     * Unmarshal publication delivery in one pass over the input stream, without a temp file.
+     * Stop places and parkings are put on the queues of the result while the rest of the publication delivery is unmarshalled,
+     * see {@link EntityQueueingEventReader}. The site frame head is completed when the first stop places or parkings are reached,
+     * and the publication delivery when the whole input has been read.
+     * The input stream must stay open until then.
+     */
+    public UnmarshalResult unmarshalInOnePass(InputStream inputStream) throws JAXBException, SAXException {
+        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+        Unmarshaller entityUnmarshaller = jaxbContext.createUnmarshaller();
+        if (validateAgainstSchema) {
+            unmarshaller.setSchema(neTExValidator.getSchema());
+            entityUnmarshaller.setSchema(neTExValidator.getSchema());
+        }
+
+        UnmarshalResult unmarshalResult = new UnmarshalResult(QUEUE_SIZE);
+        Thread thread = new Thread(() -> readInOnePass(inputStream, unmarshaller, entityUnmarshaller, unmarshalResult));
+        thread.setName("unmarshalling-thread");
+        unmarshalResult.setUnmarshallingThread(thread);
+        logger.info("Starting unmarshalling thread {}", thread);
+        thread.start();
+        return unmarshalResult;
+    }
+
+    private void readInOnePass(InputStream inputStream, Unmarshaller unmarshaller, Unmarshaller entityUnmarshaller, UnmarshalResult unmarshalResult) {
+        AtomicReference<SiteFrame> siteFrame = new AtomicReference<>();
+        unmarshaller.setListener(new Unmarshaller.Listener() {
+            @Override
+            public void beforeUnmarshal(Object target, Object parent) {
+                if (target instanceof SiteFrame frame) {
+                    siteFrame.compareAndSet(null, frame);
+                }
+            }
+        });
+
+        EntityQueueingEventReader reader = null;
+        try {
+            reader = new EntityQueueingEventReader(XMLInputFactory.newFactory().createXMLEventReader(inputStream), entityUnmarshaller, unmarshalResult,
+                    () -> unmarshalResult.getSiteFrameHead().complete(siteFrame.get()));
+            PublicationDeliveryStructure publicationDeliveryStructure = unmarshaller.unmarshal(reader, PublicationDeliveryStructure.class).getValue();
+            reader.finish();
+            unmarshalResult.setPublicationDeliveryStructure(publicationDeliveryStructure);
+            unmarshalResult.getUnmarshalledPublicationDelivery().complete(publicationDeliveryStructure);
+        } catch (XMLStreamException | JAXBException | InterruptedException | RuntimeException e) {
+            logger.error("Could not read netex from events. Stopping. " + e.getMessage(), e);
+            unmarshalResult.getSiteFrameHead().completeExceptionally(e);
+            unmarshalResult.getUnmarshalledPublicationDelivery().completeExceptionally(e);
+            finishAfterFailure(reader);
+        } finally {
+            closeAndDelete(inputStream, null);
+        }
+    }
+
+    private void finishAfterFailure(EntityQueueingEventReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            // Let the importing threads exit
+            reader.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Unmarshal publication delivery structure without stop places, topographic places and navigation paths.
      */
@@ -134,15 +206,38 @@ public class PublicationDeliveryPartialUnmarshaller {
     }
 
     public UnmarshalResult readWithXmlEventReaderAsync(InputStream inputStream, Unmarshaller unmarshaller) throws XMLStreamException, JAXBException, InterruptedException, IOException {
+        return readWithXmlEventReaderAsync(inputStream, unmarshaller, null);
+    }
 
-        UnmarshalResult unmarshalResult = new UnmarshalResult(100);
+    private UnmarshalResult readWithXmlEventReaderAsync(InputStream inputStream, Unmarshaller unmarshaller, File tempFile) {
 
-        Thread thread = new Thread(new RunnableUnmarshaller(inputStream, unmarshaller, unmarshalResult));
+        UnmarshalResult unmarshalResult = new UnmarshalResult(QUEUE_SIZE);
+
+        RunnableUnmarshaller runnableUnmarshaller = new RunnableUnmarshaller(inputStream, unmarshaller, unmarshalResult);
+        Thread thread = new Thread(() -> {
+            try {
+                runnableUnmarshaller.run();
+            } finally {
+                closeAndDelete(inputStream, tempFile);
+            }
+        });
 
         thread.setName("unmarshalling-thread");
-        logger.info("Starting unmarshalling thread ", thread);
+        unmarshalResult.setUnmarshallingThread(thread);
+        logger.info("Starting unmarshalling thread {}", thread);
         thread.start();
         return unmarshalResult;
     }
 
+    private void closeAndDelete(InputStream inputStream, File tempFile) {
+        try {
+            inputStream.close();
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean up after unmarshalling {}", tempFile, e);
+        }
+    }
+
 }
@@ -17,7 +17,9 @@ package org.rutebanken.tiamat.rest.netex.publicationdelivery.async;
 
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
+import org.rutebanken.netex.model.EntityInVersionStructure;
 import org.rutebanken.netex.model.Parking;
+import org.rutebanken.netex.model.PathLink;
 import org.rutebanken.netex.model.StopPlace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +39,7 @@ public class RunnableUnmarshaller implements Runnable {
 
     public static final StopPlace POISON_STOP_PLACE = new StopPlace().withId("-100");
     public static final Parking POISON_PARKING = new Parking().withId("-100");
+    public static final EntityInVersionStructure POISON_TARIFF_ZONE_OR_PATH_LINK = new PathLink().withId("-100");
 
     private final InputStream inputStream;
     private final Unmarshaller unmarshaller;
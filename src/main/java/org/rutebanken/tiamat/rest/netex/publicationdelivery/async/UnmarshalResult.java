@@ -16,14 +16,17 @@
 package org.rutebanken.tiamat.rest.netex.publicationdelivery.async;
 
 import com.google.common.base.MoreObjects;
+import org.rutebanken.netex.model.EntityInVersionStructure;
 import org.rutebanken.netex.model.NavigationPath;
 import org.rutebanken.netex.model.Parking;
 import org.rutebanken.netex.model.PublicationDeliveryStructure;
+import org.rutebanken.netex.model.SiteFrame;
 import org.rutebanken.netex.model.StopPlace;
 import org.rutebanken.netex.model.TopographicPlace;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 
 public class UnmarshalResult {
 
@@ -32,13 +35,32 @@ public class UnmarshalResult {
     private final BlockingQueue<TopographicPlace> topographicPlaceQueue;
     private final BlockingQueue<NavigationPath> navigationPathsQueue;
 
+    /**
+     * When unmarshalling in one pass: tariff zones, fare zones and path links, in the order they are read.
+     */
+    private final BlockingQueue<EntityInVersionStructure> tariffZoneAndPathLinkQueue;
+
     private PublicationDeliveryStructure publicationDeliveryStructure;
 
+    private volatile Thread unmarshallingThread;
+
+    /**
+     * When unmarshalling in one pass: the site frame as far as it is unmarshalled when the first stop places or parkings are reached,
+     * or null if there is no site frame.
+     */
+    private final CompletableFuture<SiteFrame> siteFrameHead = new CompletableFuture<>();
+
+    /**
+     * When unmarshalling in one pass: completed when the whole publication delivery is unmarshalled.
+     */
+    private final CompletableFuture<PublicationDeliveryStructure> unmarshalledPublicationDelivery = new CompletableFuture<>();
+
     public UnmarshalResult(int size) {
         stopPlaceQueue = new ArrayBlockingQueue<>(size);
         parkingQueue = new ArrayBlockingQueue<>(size);
         topographicPlaceQueue = new ArrayBlockingQueue<>(size);
         navigationPathsQueue = new ArrayBlockingQueue<>(size);
+        tariffZoneAndPathLinkQueue = new ArrayBlockingQueue<>(size);
     }
 
     public BlockingQueue<StopPlace> getStopPlaceQueue() {
@@ -49,6 +71,38 @@ public class UnmarshalResult {
         return parkingQueue;
     }
 
+    public BlockingQueue<EntityInVersionStructure> getTariffZoneAndPathLinkQueue() {
+        return tariffZoneAndPathLinkQueue;
+    }
+
+    public CompletableFuture<SiteFrame> getSiteFrameHead() {
+        return siteFrameHead;
+    }
+
+    public CompletableFuture<PublicationDeliveryStructure> getUnmarshalledPublicationDelivery() {
+        return unmarshalledPublicationDelivery;
+    }
+
+    public void setUnmarshallingThread(Thread unmarshallingThread) {
+        this.unmarshallingThread = unmarshallingThread;
+    }
+
+    /**
+     * Stop unmarshalling when the entities will not be consumed, for instance because the import failed.
+     * The unmarshalling thread is interrupted and the queues are cleared, so that it does not stay blocked on a full queue.
+     */
+    public void abort() {
+        Thread thread = unmarshallingThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        stopPlaceQueue.clear();
+        parkingQueue.clear();
+        topographicPlaceQueue.clear();
+        navigationPathsQueue.clear();
+        tariffZoneAndPathLinkQueue.clear();
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -57,6 +111,7 @@ public class UnmarshalResult {
                 .add("parkingQueue", parkingQueue.size())
                 .add("topographicPlaceQueue", topographicPlaceQueue.size())
                 .add("navigationPathsQueue", navigationPathsQueue.size())
+                .add("tariffZoneAndPathLinkQueue", tariffZoneAndPathLinkQueue.size())
                 .toString();
     }
 
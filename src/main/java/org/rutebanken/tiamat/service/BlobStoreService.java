@@ -6,4 +6,19 @@ public interface BlobStoreService {
     void upload(String fileName, InputStream inputStream);
 
     InputStream download(String fileName);
+
+    /**
+     * Copy a blob to another name. Used for publishing a blob that has been uploaded under a temporary name.
+     */
+    void copy(String sourceFileName, String targetFileName);
+
+    /**
+     * Whether {@link #copy} is done within the store, without transferring the blob through this application.
+     * If not, blobs are uploaded straight to their final name rather than under a temporary name and copied.
+     */
+    default boolean hasNativeCopy() {
+        return true;
+    }
+
+    void delete(String fileName);
 }
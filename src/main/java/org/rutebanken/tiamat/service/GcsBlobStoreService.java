@@ -15,6 +15,7 @@
 
 package org.rutebanken.tiamat.service;
 
+import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.Storage;
 import org.rutebanken.helper.gcp.BlobStoreHelper;
 import org.slf4j.Logger;
@@ -79,6 +80,23 @@ public class GcsBlobStoreService implements BlobStoreService {
         return BlobStoreHelper.getBlob(getStorage(), bucketName, blobIdName);
     }
 
+    public void copy(String sourceFileName, String targetFileName) {
+        String sourceBlobIdName = createBlobIdName(blobPath, sourceFileName);
+        String targetBlobIdName = createBlobIdName(blobPath, targetFileName);
+        try {
+            logger.info("Copying {} to {} in bucket {}", sourceBlobIdName, targetBlobIdName, bucketName);
+            getStorage().copy(Storage.CopyRequest.of(bucketName, sourceBlobIdName, BlobId.of(bucketName, targetBlobIdName))).getResult();
+        } catch (Exception e) {
+            throw new RuntimeException("Error copying blob " + sourceBlobIdName + " to " + targetBlobIdName + " in bucket " + bucketName, e);
+        }
+    }
+
+    public void delete(String fileName) {
+        String blobIdName = createBlobIdName(blobPath, fileName);
+        logger.info("Deleting {} in bucket {}", blobIdName, bucketName);
+        getStorage().delete(BlobId.of(bucketName, blobIdName));
+    }
+
     public String createBlobIdName(String blobPath, String fileName) {
         return blobPath + '/' + fileName;
     }
@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 @Service
 @Profile("local-blobstore")
@@ -58,4 +59,26 @@ public class LocalBlobStoreService implements BlobStoreService {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public void copy(String sourceFileName, String targetFileName) {
+        logger.debug("Copy blob called in local-disk blob store from " + sourceFileName + " to " + targetFileName);
+        try {
+            Path targetPath = Paths.get(baseFolder).resolve(targetFileName);
+            Files.createDirectories(targetPath.getParent());
+            Files.copy(Paths.get(baseFolder).resolve(sourceFileName), targetPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void delete(String fileName) {
+        logger.debug("Delete blob called in local-disk blob store on " + fileName);
+        try {
+            Files.deleteIfExists(Paths.get(baseFolder).resolve(fileName));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
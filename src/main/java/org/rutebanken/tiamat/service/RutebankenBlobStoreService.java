@@ -5,6 +5,7 @@ import org.rutebanken.helper.storage.repository.BlobStoreRepository;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -31,4 +32,26 @@ public class RutebankenBlobStoreService implements BlobStoreService {
     public InputStream download(String fileName) {
         return blobStoreRepository.getBlob(fileName);
     }
+
+    /**
+     * Downloads and uploads the blob again, as the repository has no copy within the store.
+     */
+    @Override
+    public void copy(String sourceFileName, String targetFileName) {
+        try (InputStream inputStream = blobStoreRepository.getBlob(sourceFileName)) {
+            blobStoreRepository.uploadBlob(new BlobDescriptor(targetFileName, inputStream));
+        } catch (IOException e) {
+            throw new RuntimeException("Error copying blob " + sourceFileName + " to " + targetFileName, e);
+        }
+    }
+
+    @Override
+    public boolean hasNativeCopy() {
+        return false;
+    }
+
+    @Override
+    public void delete(String fileName) {
+        blobStoreRepository.delete(fileName);
+    }
 }
@@ -44,7 +44,7 @@ public class TariffZoneTerminator {
     }
 
     public TariffZone terminateTariffZone(String tariffZoneId, Instant suggestedTimeOfTermination, String versionComment) {
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(tariffZoneId, () -> {
             String usernameForAuthenticatedUser = usernameFetcher.getUserNameForAuthenticatedUser();
             logger.warn("About to terminate tariff zone by ID {}. User: {}", tariffZoneId, usernameForAuthenticatedUser);
             DataManagedObjectStructure resolved = referenceResolver.resolve(new VersionOfObjectRefStructure(tariffZoneId));
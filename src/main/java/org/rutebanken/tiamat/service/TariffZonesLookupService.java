@@ -18,36 +18,39 @@ package org.rutebanken.tiamat.service;
 
 import com.google.common.collect.Sets;
 import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.geom.Polygon;
 import org.rutebanken.tiamat.general.ResettableMemoizer;
+import org.rutebanken.tiamat.geo.GeometryIndex;
 import org.rutebanken.tiamat.model.EntityInVersionStructure;
 import org.rutebanken.tiamat.model.FareZone;
 import org.rutebanken.tiamat.model.ScopingMethodEnumeration;
 import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.StopPlaceReference;
 import org.rutebanken.tiamat.model.TariffZone;
 import org.rutebanken.tiamat.model.TariffZoneRef;
+import org.rutebanken.tiamat.model.ValidBetween;
 import org.rutebanken.tiamat.repository.FareZoneRepository;
 import org.rutebanken.tiamat.repository.TariffZoneRepository;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.maxBy;
-import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
 @Service
 @Transactional
@@ -55,8 +58,8 @@ public class TariffZonesLookupService {
 
     private static final Logger logger = LoggerFactory.getLogger(TariffZonesLookupService.class);
 
-    private final ResettableMemoizer<List<Pair<String, Polygon>>> tariffZones = new ResettableMemoizer<>(getTariffZones());
-    private final ResettableMemoizer<List<Pair<String, Polygon>>> fareZones = new ResettableMemoizer<>(getFareZones());
+    private final ResettableMemoizer<GeometryIndex<IndexedZone>> tariffZones;
+    private final ResettableMemoizer<GeometryIndex<IndexedZone>> fareZones;
 
     private final TariffZoneRepository tariffZoneRepository;
     private final FareZoneRepository fareZoneRepository;
@@ -66,10 +69,17 @@ public class TariffZonesLookupService {
     @Autowired
     public TariffZonesLookupService(TariffZoneRepository tariffZoneRepository,
                                     FareZoneRepository fareZoneRepository,
-                                    @Value("${tariffzoneLookupService.resetReferences:false}") boolean removeExistingReferences) {
+                                    @Value("${tariffzoneLookupService.resetReferences:false}") boolean removeExistingReferences,
+                                    PrometheusMetricsService prometheusMetricsService) {
         this.tariffZoneRepository = tariffZoneRepository;
         this.fareZoneRepository =fareZoneRepository;
         this.removeExistingReferences = removeExistingReferences;
+        this.tariffZones = new ResettableMemoizer<>(getTariffZones(),
+                prometheusMetricsService.memoizerTimer("tariffZones", "load"),
+                prometheusMetricsService.memoizerTimer("tariffZones", "refresh"));
+        this.fareZones = new ResettableMemoizer<>(getFareZones(),
+                prometheusMetricsService.memoizerTimer("fareZones", "load"),
+                prometheusMetricsService.memoizerTimer("fareZones", "refresh"));
     }
 
     public boolean populateTariffZone(StopPlace stopPlace) {
@@ -89,8 +99,8 @@ public class TariffZonesLookupService {
                     .stream()
                     .filter(tariffZone -> stopPlace.getTariffZones().isEmpty() || stopPlace.getTariffZones()
                             .stream()
-                            .noneMatch(tariffZoneRef -> tariffZone.getNetexId().equals(tariffZoneRef.getRef()) && tariffZoneRef.getVersion().equals(String.valueOf(tariffZone.getVersion()))))
-                    .map(TariffZoneRef::new)
+                            .noneMatch(tariffZoneRef -> tariffZone.netexId().equals(tariffZoneRef.getRef()) && tariffZoneRef.getVersion().equals(String.valueOf(tariffZone.version()))))
+                    .map(IndexedZone::toTariffZoneRef)
                     .collect(toSet());
 
             Set<TariffZoneRef> allMatches = new HashSet<>(tariffZoneMatches);
@@ -98,7 +108,7 @@ public class TariffZonesLookupService {
             Set<TariffZoneRef> fareZoneMatches = findFareZones(stopPlace.getCentroid())
                     .stream()
                     .filter(fareZone -> stopPlace.getTariffZones().isEmpty() || isNoneMatch(stopPlace, fareZone))
-                    .map(TariffZoneRef::new)
+                    .map(IndexedZone::toTariffZoneRef)
                     .collect(toSet());
 
 
@@ -113,15 +123,14 @@ public class TariffZonesLookupService {
         return false;
     }
 
-    private boolean isNoneMatch(StopPlace stopPlace, FareZone fareZone) {
-        if (fareZone.getScopingMethod().equals(ScopingMethodEnumeration.IMPLICIT_SPATIAL_PROJECTION)) {
+    private boolean isNoneMatch(StopPlace stopPlace, IndexedZone fareZone) {
+        if (ScopingMethodEnumeration.IMPLICIT_SPATIAL_PROJECTION.equals(fareZone.scopingMethod())) {
             return stopPlace.getTariffZones()
                     .stream()
-                    .noneMatch(tariffZoneRef -> fareZone.getNetexId().equals(tariffZoneRef.getRef()) && tariffZoneRef.getVersion().equals(String.valueOf(fareZone.getVersion())));
+                    .noneMatch(tariffZoneRef -> fareZone.netexId().equals(tariffZoneRef.getRef()) && tariffZoneRef.getVersion().equals(String.valueOf(fareZone.version())));
         }
-        if (fareZone.getScopingMethod().equals(ScopingMethodEnumeration.EXPLICIT_STOPS) && !fareZone.getFareZoneMembers().isEmpty()) {
-            return fareZone.getFareZoneMembers().stream()
-                    .anyMatch(member -> member.getRef().equals(stopPlace.getNetexId()));
+        if (ScopingMethodEnumeration.EXPLICIT_STOPS.equals(fareZone.scopingMethod()) && !fareZone.memberRefs().isEmpty()) {
+            return fareZone.memberRefs().contains(stopPlace.getNetexId());
         }
         return true;
 
@@ -130,28 +139,27 @@ public class TariffZonesLookupService {
         return tariffZoneRefs.stream().map(tzr -> tzr.getRef()).collect(toSet());
     }
 
-    public List<TariffZone> findTariffZones(Point point) {
-        return tariffZones.get()
-                       .stream()
-                       .filter(pair -> point.coveredBy(pair.getSecond()))
-                       .map(pair -> tariffZoneRepository.findValidTariffZone(pair.getFirst()).orElse(null))
-                       .filter(Objects::nonNull)
-                       .collect(toList());
+    /**
+     * @return the versions of tariff zones covering the point, resolved when the index was built, and still valid
+     */
+    public List<IndexedZone> findTariffZones(Point point) {
+        Instant now = Instant.now();
+        return tariffZones.get().findCovering(point, indexedZone -> indexedZone.isValidAt(now));
     }
 
-    public List<FareZone> findFareZones(Point point) {
-        return fareZones.get()
-                .stream()
-                .filter(pair -> point.coveredBy(pair.getSecond()))
-                .map(pair -> fareZoneRepository.findValidFareZone(pair.getFirst()).orElse(null))
-                .filter(Objects::nonNull)
-                .collect(toList());
+    /**
+     * @return the versions of fare zones covering the point, resolved when the index was built, and still valid
+     */
+    public List<IndexedZone> findFareZones(Point point) {
+        Instant now = Instant.now();
+        return fareZones.get().findCovering(point, indexedZone -> indexedZone.isValidAt(now));
     }
 
-    public Supplier<List<Pair<String, Polygon>>> getTariffZones() {
+    public Supplier<GeometryIndex<IndexedZone>> getTariffZones() {
         return () -> {
-            logger.info("Fetching and memoizing tariff zones from repository");
-            return tariffZoneRepository.findAllValidTariffZones()
+            logger.info("Fetching tariff zones from repository and building spatial index");
+            GeometryIndex.Builder<IndexedZone> builder = GeometryIndex.builder();
+            tariffZoneRepository.findAllValidTariffZones()
                     .stream()
                     .filter(tariffZone -> tariffZone.getPolygon() != null)
                     .collect(
@@ -161,17 +169,20 @@ public class TariffZonesLookupService {
                     .stream()
                     .filter(Optional::isPresent)
                     .map(Optional::get)
-                    .peek(tariffZone -> logger.debug("Memoizing tariff zone {} {}", tariffZone.getNetexId(), tariffZone.getVersion()))
-                    .map(tariffZone -> Pair.of(tariffZone.getNetexId(), tariffZone.getPolygon()))
-                    .collect(toList());
-
+                    .peek(tariffZone -> logger.debug("Indexing tariff zone {} {}", tariffZone.getNetexId(), tariffZone.getVersion()))
+                    .forEach(tariffZone -> builder.add(tariffZone.getPolygon(),
+                            new IndexedZone(tariffZone.getNetexId(), tariffZone.getVersion(), null, Set.of(), tariffZone.getValidBetween())));
+            GeometryIndex<IndexedZone> index = builder.build();
+            logger.info("Indexed {} tariff zones", index.size());
+            return index;
         };
     }
 
-    public Supplier<List<Pair<String, Polygon>>> getFareZones() {
+    public Supplier<GeometryIndex<IndexedZone>> getFareZones() {
         return () -> {
-            logger.info("Fetching and memoizing fare zones from repository");
-            return fareZoneRepository.findAllValidFareZones()
+            logger.info("Fetching fare zones from repository and building spatial index");
+            GeometryIndex.Builder<IndexedZone> builder = GeometryIndex.builder();
+            fareZoneRepository.findAllValidFareZones()
                     .stream()
                     .filter(fareZone -> fareZone.getPolygon() != null)
                     .collect(
@@ -181,19 +192,57 @@ public class TariffZonesLookupService {
                     .stream()
                     .filter(Optional::isPresent)
                     .map(Optional::get)
-                    .peek(fareZone -> logger.debug("Memoizing fare zone {} {}", fareZone.getNetexId(), fareZone.getVersion()))
-                    .map(fareZone -> Pair.of(fareZone.getNetexId(), fareZone.getPolygon()))
-                    .collect(toList());
-
+                    .peek(fareZone -> logger.debug("Indexing fare zone {} {}", fareZone.getNetexId(), fareZone.getVersion()))
+                    .forEach(fareZone -> builder.add(fareZone.getPolygon(),
+                            new IndexedZone(fareZone.getNetexId(), fareZone.getVersion(), fareZone.getScopingMethod(),
+                                    fareZone.getFareZoneMembers().stream().map(StopPlaceReference::getRef).collect(toUnmodifiableSet()),
+                                    fareZone.getValidBetween())));
+            GeometryIndex<IndexedZone> index = builder.build();
+            logger.info("Indexed {} fare zones", index.size());
+            return index;
         };
     }
 
+    /**
+     * Refresh the tariff zone index in the background after commit. The current transaction sees its own changes until then.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void resetTariffZone() {
-        tariffZones.reset();
+        tariffZones.refreshAfterCommit();
     }
 
+    /**
+     * Refresh the fare zone index in the background after commit. The current transaction sees its own changes until then.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void resetFareZone() {
-        fareZones.reset();
+        fareZones.refreshAfterCommit();
+    }
+
+    /**
+     * Tariff or fare zone version in the spatial index, with the fields needed for populating references.
+     * Member refs are only set for fare zones.
+     */
+    public record IndexedZone(String netexId, long version, ScopingMethodEnumeration scopingMethod, Set<String> memberRefs,
+                              Instant fromDate, Instant toDate) {
+
+        IndexedZone(String netexId, long version, ScopingMethodEnumeration scopingMethod, Set<String> memberRefs, ValidBetween validBetween) {
+            this(netexId, version, scopingMethod, memberRefs,
+                    validBetween != null ? validBetween.getFromDate() : null,
+                    validBetween != null ? validBetween.getToDate() : null);
+        }
+
+        /**
+         * The index is built with the versions valid at that time, which might have expired since.
+         */
+        public boolean isValidAt(Instant pointInTime) {
+            return (fromDate == null || !fromDate.isAfter(pointInTime))
+                    && (toDate == null || toDate.isAfter(pointInTime));
+        }
+
+        public TariffZoneRef toTariffZoneRef() {
+            return new TariffZoneRef(netexId, String.valueOf(version));
+        }
     }
 
 
@@ -15,26 +15,28 @@
 
 package org.rutebanken.tiamat.service;
 
-import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.geom.Polygon;
 import org.rutebanken.tiamat.exporter.params.ExportParams;
 import org.rutebanken.tiamat.exporter.params.TopographicPlaceSearch;
 import org.rutebanken.tiamat.general.ResettableMemoizer;
+import org.rutebanken.tiamat.geo.GeometryIndex;
 import org.rutebanken.tiamat.model.Site_VersionStructure;
 import org.rutebanken.tiamat.model.TopographicPlace;
 import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
+import org.rutebanken.tiamat.model.ValidBetween;
 import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -48,48 +50,54 @@ public class TopographicPlaceLookupService {
 
     private static final List<TopographicPlaceTypeEnumeration> ADMIN_LEVEL_ORDER = Arrays.asList(TopographicPlaceTypeEnumeration.MUNICIPALITY, TopographicPlaceTypeEnumeration.COUNTY, TopographicPlaceTypeEnumeration.COUNTRY);
 
-    private final ResettableMemoizer<List<ImmutableTriple<String, TopographicPlaceTypeEnumeration, Polygon>>> memoizedTopographicPlaces = new ResettableMemoizer<>(getTopographicPlaceSupplier());
+    private final ResettableMemoizer<GeometryIndex<IndexedTopographicPlace>> topographicPlaceIndex;
 
     @Autowired
     private TopographicPlaceRepository topographicPlaceRepository;
 
+    @Autowired
+    public TopographicPlaceLookupService(PrometheusMetricsService prometheusMetricsService) {
+        this.topographicPlaceIndex = new ResettableMemoizer<>(getTopographicPlaceSupplier(),
+                prometheusMetricsService.memoizerTimer("topographicPlaces", "load"),
+                prometheusMetricsService.memoizerTimer("topographicPlaces", "refresh"));
+    }
+
     public boolean populateTopographicPlaceRelation(Site_VersionStructure siteVersionStructure) {
 
         if (!siteVersionStructure.hasCoordinates()) {
             return false;
         }
 
-        Optional<TopographicPlace> topographicPlace = findTopographicPlace(siteVersionStructure.getCentroid());
+        Optional<IndexedTopographicPlace> topographicPlace = findTopographicPlace(siteVersionStructure.getCentroid());
 
         if (topographicPlace.isPresent()) {
             logger.trace("Found topographic place {} for site {}", siteVersionStructure.getTopographicPlace(), siteVersionStructure);
-            TopographicPlace topographicPlaceMatch = topographicPlace.get();
+            IndexedTopographicPlace topographicPlaceMatch = topographicPlace.get();
 
             if(siteVersionStructure.getTopographicPlace() != null) {
 
-                if(siteVersionStructure.getTopographicPlace().getNetexId().equals(topographicPlaceMatch.getNetexId())
-                        && siteVersionStructure.getTopographicPlace().getVersion() == topographicPlaceMatch.getVersion()) {
-                    logger.trace("Version and id is the same for {}-{} not doing update", topographicPlaceMatch.getNetexId(), topographicPlaceMatch.getVersion());
+                if(siteVersionStructure.getTopographicPlace().getNetexId().equals(topographicPlaceMatch.netexId())
+                        && siteVersionStructure.getTopographicPlace().getVersion() == topographicPlaceMatch.version()) {
+                    logger.trace("Version and id is the same for {}-{} not doing update", topographicPlaceMatch.netexId(), topographicPlaceMatch.version());
                     return false;
                 }
                 logger.debug("Changed topographic place from {}-{} to {}-{} for {}-{}",
                         siteVersionStructure.getTopographicPlace().getNetexId(),
                         siteVersionStructure.getTopographicPlace().getVersion(),
-                        topographicPlaceMatch.getNetexId(),
-                        topographicPlaceMatch.getVersion(),
+                        topographicPlaceMatch.netexId(),
+                        topographicPlaceMatch.version(),
                         siteVersionStructure.getNetexId(),
                         siteVersionStructure.getVersion());
             } else {
                 logger.debug("Set topographic place to {}-{} for {}-{}",
-                        topographicPlaceMatch.getNetexId(),
-                        topographicPlaceMatch.getVersion(),
+                        topographicPlaceMatch.netexId(),
+                        topographicPlaceMatch.version(),
                         siteVersionStructure.getNetexId(),
                         siteVersionStructure.getVersion());
             }
 
-
-
-            siteVersionStructure.setTopographicPlace(topographicPlaceMatch);
+            // Reference by primary key, to avoid loading the topographic place only for setting the relation
+            siteVersionStructure.setTopographicPlace(topographicPlaceRepository.getReferenceById(topographicPlaceMatch.id()));
 
             return true;
         } else {
@@ -98,37 +106,37 @@ public class TopographicPlaceLookupService {
         }
     }
 
-    public Optional<TopographicPlace> findTopographicPlace(Point point) {
-        return memoizedTopographicPlaces.get()
+    /**
+     * Find the most specific topographic place covering the point and valid now, without touching the database.
+     */
+    public Optional<IndexedTopographicPlace> findTopographicPlace(Point point) {
+        Instant now = Instant.now();
+        return topographicPlaceIndex.get()
+                .findCovering(point, indexedTopographicPlace -> indexedTopographicPlace.isValidAt(now))
                 .stream()
-                .filter(triple -> point.coveredBy(triple.getRight()))
-                .peek(triple -> logger.debug("Found matching topographic place {} for point {}", triple.getLeft(), point))
-                .map(triple -> {
-                    TopographicPlace topographicPlace = topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(triple.getLeft());
-                    if(topographicPlace == null) {
-                        logger.warn("Cannot find topographic place from ID: {}", triple.getLeft());
-                    }
-                    return topographicPlace;
-                })
-                .filter(Objects::nonNull)
-                .findAny();
+                .peek(indexedTopographicPlace -> logger.debug("Found matching topographic place {} for point {}", indexedTopographicPlace.netexId(), point))
+                .findFirst();
     }
 
-    public Optional<TopographicPlace> findTopographicPlaceByReference(List<String> topographicPlaceReferences, Point point) {
-        return memoizedTopographicPlaces.get()
+    public Optional<IndexedTopographicPlace> findTopographicPlaceByReference(List<String> topographicPlaceReferences, Point point) {
+        Instant now = Instant.now();
+        return topographicPlaceIndex.get()
+                .findCovering(point, indexedTopographicPlace -> topographicPlaceReferences.contains(indexedTopographicPlace.netexId())
+                        && indexedTopographicPlace.isValidAt(now))
                 .stream()
-                .filter(triple -> topographicPlaceReferences.contains(triple.getLeft()))
-                .filter(triple -> point.coveredBy(triple.getRight()))
-                .map(triple -> topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(triple.getLeft()))
-                .peek(topographicPlace -> logger.debug("Found topographic place match: {}", topographicPlace.getNetexId()))
-                .findAny();
+                .peek(indexedTopographicPlace -> logger.debug("Found topographic place match: {}", indexedTopographicPlace.netexId()))
+                .findFirst();
     }
 
+    /**
+     * Refresh the topographic place index in the background after commit. The current transaction sees its own changes until then.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void reset() {
-        memoizedTopographicPlaces.reset();
+        topographicPlaceIndex.refreshAfterCommit();
     }
 
-    private Supplier<List<ImmutableTriple<String, TopographicPlaceTypeEnumeration, Polygon>>> getTopographicPlaceSupplier() {
+    private Supplier<GeometryIndex<IndexedTopographicPlace>> getTopographicPlaceSupplier() {
         return () -> {
 
             TopographicPlaceSearch topographicPlaceSearch = TopographicPlaceSearch.newTopographicPlaceSearchBuilder()
@@ -136,18 +144,42 @@ public class TopographicPlaceLookupService {
                     .build();
 
             logger.info("Fetching topographic places from repository");
-            List<ImmutableTriple<String, TopographicPlaceTypeEnumeration, Polygon>> topographicPlaces = topographicPlaceRepository.findTopographicPlace(topographicPlaceSearch)
+            // Most specific admin level first, and the newest version first within each level
+            List<TopographicPlace> topographicPlaces = topographicPlaceRepository.findTopographicPlace(topographicPlaceSearch)
                     .stream()
                     .filter(topographicPlace -> topographicPlace.getPolygon() != null)
                     .filter(topographicPlace -> ADMIN_LEVEL_ORDER.contains(topographicPlace.getTopographicPlaceType()))
-                    .sorted(new TopographicPlaceByAdminLevelComparator())
-                    .map(topographicPlace -> ImmutableTriple.of(topographicPlace.getNetexId(), topographicPlace.getTopographicPlaceType(), topographicPlace.getPolygon()))
+                    .sorted(new TopographicPlaceByAdminLevelComparator()
+                            .thenComparing(Comparator.comparingLong(TopographicPlace::getVersion).reversed()))
                     .collect(toList());
-            logger.info("Fetched {} topographic places from repository", topographicPlaces.size());
-            return topographicPlaces;
+
+            GeometryIndex.Builder<IndexedTopographicPlace> builder = GeometryIndex.builder();
+            for (TopographicPlace topographicPlace : topographicPlaces) {
+                ValidBetween validBetween = topographicPlace.getValidBetween();
+                builder.add(topographicPlace.getPolygon(), new IndexedTopographicPlace(topographicPlace.getId(), topographicPlace.getNetexId(),
+                        topographicPlace.getVersion(), topographicPlace.getTopographicPlaceType(),
+                        validBetween != null ? validBetween.getFromDate() : null,
+                        validBetween != null ? validBetween.getToDate() : null));
+            }
+            GeometryIndex<IndexedTopographicPlace> index = builder.build();
+            logger.info("Fetched and indexed {} topographic places from repository", index.size());
+            return index;
         };
     }
 
+    /**
+     * Version of a topographic place in the spatial index. Validity is checked when looking up,
+     * so that versions starting or ending after the index was built are matched correctly.
+     */
+    public record IndexedTopographicPlace(Long id, String netexId, long version, TopographicPlaceTypeEnumeration topographicPlaceType,
+                                          Instant fromDate, Instant toDate) {
+
+        public boolean isValidAt(Instant pointInTime) {
+            return (fromDate == null || !fromDate.isAfter(pointInTime))
+                    && (toDate == null || toDate.isAfter(pointInTime));
+        }
+    }
+
     private static class TopographicPlaceByAdminLevelComparator implements Comparator<TopographicPlace> {
         @Override
         public int compare(TopographicPlace tp1, TopographicPlace tp2) {
@@ -1,6 +1,7 @@
 package org.rutebanken.tiamat.service.batch;
 
 import jakarta.annotation.PostConstruct;
+import org.rutebanken.tiamat.general.BlockingWorkLimiter;
 import org.rutebanken.tiamat.netex.id.GaplessIdGeneratorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,7 +11,6 @@ import org.springframework.stereotype.Service;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Jobs that run periodically in the background
@@ -20,19 +20,18 @@ public class BackgroundJobs {
 
     private static final Logger logger = LoggerFactory.getLogger(BackgroundJobs.class);
 
-    private static final AtomicLong threadNumber = new AtomicLong();
-
-    private final ScheduledExecutorService backgroundJobExecutor =
-            Executors.newScheduledThreadPool(3, (runnable) -> new Thread(runnable, "background-job-"+threadNumber.incrementAndGet()));
+    private final ScheduledExecutorService backgroundJobExecutor;
 
     private final GaplessIdGeneratorService gaplessIdGeneratorService;
 
     private final StopPlaceRefUpdaterService stopPlaceRefUpdaterService;
 
     @Autowired
-    public BackgroundJobs(GaplessIdGeneratorService gaplessIdGeneratorService, StopPlaceRefUpdaterService stopPlaceRefUpdaterService) {
+    public BackgroundJobs(GaplessIdGeneratorService gaplessIdGeneratorService, StopPlaceRefUpdaterService stopPlaceRefUpdaterService,
+                          BlockingWorkLimiter blockingWorkLimiter) {
         this.gaplessIdGeneratorService = gaplessIdGeneratorService;
         this.stopPlaceRefUpdaterService = stopPlaceRefUpdaterService;
+        this.backgroundJobExecutor = Executors.newScheduledThreadPool(3, blockingWorkLimiter.threadFactory("background-job"));
     }
 
     @PostConstruct
@@ -4,7 +4,8 @@ import jakarta.persistence.EntityManager;
 import org.hibernate.Session;
 import org.hibernate.internal.SessionImpl;
 import org.rutebanken.tiamat.exporter.async.ParentStopFetchingIterator;
-import org.rutebanken.tiamat.exporter.eviction.SessionEntitiesEvictor;
+import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
+import org.rutebanken.tiamat.exporter.eviction.LoadedEntitiesListener;
 import org.rutebanken.tiamat.exporter.params.ExportParams;
 import org.rutebanken.tiamat.exporter.params.StopPlaceSearch;
 import org.rutebanken.tiamat.lock.LockException;
@@ -47,6 +48,7 @@ public class StopPlaceRefUpdaterService {
     private final TopographicPlaceLookupService topographicPlaceLookupService;
     private final EntityManager entityManager;
     private final TimeoutMaxLeaseTimeLock timeoutMaxLeaseTimeLock;
+    private final LoadedEntitiesListener loadedEntitiesListener;
 
     private final boolean enableLegacyUpdater;
 
@@ -58,6 +60,7 @@ public class StopPlaceRefUpdaterService {
                                       TopographicPlaceLookupService topographicPlaceLookupService,
                                       EntityManager entityManager,
                                       TimeoutMaxLeaseTimeLock timeoutMaxLeaseTimeLock,
+                                      LoadedEntitiesListener loadedEntitiesListener,
                                       @Value("${stopPlaceRefUpdaterService.enableLegacyUpdater:false}") boolean enableLegacyUpdater) {
         this.stopPlaceRepository = stopPlaceRepository;
         this.tariffZoneRepository = tariffZoneRepository;
@@ -66,6 +69,7 @@ public class StopPlaceRefUpdaterService {
         this.topographicPlaceLookupService = topographicPlaceLookupService;
         this.entityManager = entityManager;
         this.timeoutMaxLeaseTimeLock = timeoutMaxLeaseTimeLock;
+        this.loadedEntitiesListener = loadedEntitiesListener;
         this.enableLegacyUpdater = enableLegacyUpdater;
     }
 
@@ -123,7 +127,7 @@ public class StopPlaceRefUpdaterService {
         Session session = entityManager.unwrap(SessionImpl.class);
         logger.info("About to update all currently valid stop places (tariff zone and topographic place refs)");
 
-        SessionEntitiesEvictor sessionEntitiesEvictor = new SessionEntitiesEvictor((SessionImpl) session);
+        EntitiesEvictor entitiesEvictor = loadedEntitiesListener.startTracking((SessionImpl) session);
 
         ExportParams exportParams = ExportParams.newExportParamsBuilder()
                 .setStopPlaceSearch(
@@ -177,7 +181,7 @@ public class StopPlaceRefUpdaterService {
                             logger.trace("Flushing and clearing session at count {}", stopsIterated.get());
                             session.clear();
                         } else {
-                            sessionEntitiesEvictor.evictKnownEntitiesFromSession(stopPlaceToSave);
+                            entitiesEvictor.evictKnownEntitiesFromSession(stopPlaceToSave);
                         }
                 } else if (!stopPlaceIterator.hasNextParent()) {
                     session.flush();
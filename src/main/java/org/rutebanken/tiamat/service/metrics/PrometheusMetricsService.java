@@ -1,7 +1,9 @@
 package org.rutebanken.tiamat.service.metrics;
 
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.prometheus.PrometheusConfig;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
 import jakarta.annotation.PreDestroy;
@@ -12,6 +14,8 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 @Component
 public class PrometheusMetricsService extends PrometheusMeterRegistry {
@@ -21,6 +25,12 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
     private static final String CLIENT_COUNTER= METRICS_PREFIX + "client";
     private static final String USER_COUNTER= METRICS_PREFIX + "user";
     private static final String ENTITY_COUNTER= METRICS_PREFIX + "entity";
+    private static final String MEMOIZER_TIMER= METRICS_PREFIX + "memoizer";
+    private static final String GRAPHQL_DOCUMENT_CACHE_COUNTER= METRICS_PREFIX + "graphql.document.cache";
+    private static final String NETEX_REFERENCE_VALIDATION= METRICS_PREFIX + "netex.reference.validation";
+    private static final String MUTATE_LOCK_TIMER= METRICS_PREFIX + "mutate.lock";
+    private static final String CACHE_HIT_RATIO= METRICS_PREFIX + "cache.hit.ratio";
+    private static final String CACHE_OWNED_PARTITIONS_HIT_RATIO= METRICS_PREFIX + "cache.owned.partitions.hit.ratio";
 
     public PrometheusMetricsService() {
         super(PrometheusConfig.DEFAULT);
@@ -53,4 +63,80 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
         counterTags.add(new ImmutableTag("IdentifiedEntity", entityClass.getSimpleName()));
         counter(ENTITY_COUNTER,counterTags).increment(total);
     }
+
+    /**
+     * Timer for loading or refreshing memoized values, like the spatial indexes of zones.
+     * @param memoizerName name of the memoized value
+     * @param operation load or refresh
+     */
+    public Timer memoizerTimer(String memoizerName, String operation) {
+        List<Tag> timerTags = new ArrayList<>();
+        timerTags.add(new ImmutableTag("name", memoizerName));
+        timerTags.add(new ImmutableTag("operation", operation));
+        return timer(MEMOIZER_TIMER, timerTags);
+    }
+
+    /**
+     * Count lookups of parsed and validated GraphQL documents.
+     * @param hit true if the document was cached, false if it had to be parsed and validated
+     */
+    public void registerGraphQLDocumentCacheAccess(boolean hit) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag("result", hit ? "hit" : "miss"));
+        counter(GRAPHQL_DOCUMENT_CACHE_COUNTER, counterTags).increment();
+    }
+
+    /**
+     * Register the result of validating the references of a NeTEx document.
+     * @param valid true if all references could be resolved
+     * @param identifiers number of distinct identifiers, with and without version
+     * @param references number of distinct references
+     * @param unresolvedReferences number of distinct references that could not be resolved
+     * @param duplicateIdentifiers number of elements with an id and version that was already seen
+     * @param durationMillis time spent validating
+     */
+    public void registerNetexReferenceValidation(boolean valid, long identifiers, long references, long unresolvedReferences,
+                                                 long duplicateIdentifiers, long durationMillis) {
+        List<Tag> tags = new ArrayList<>();
+        tags.add(new ImmutableTag("result", valid ? "valid" : "invalid"));
+        timer(NETEX_REFERENCE_VALIDATION, tags).record(durationMillis, TimeUnit.MILLISECONDS);
+        summary(NETEX_REFERENCE_VALIDATION + ".identifiers", tags).record(identifiers);
+        summary(NETEX_REFERENCE_VALIDATION + ".references", tags).record(references);
+        summary(NETEX_REFERENCE_VALIDATION + ".unresolved", tags).record(unresolvedReferences);
+        summary(NETEX_REFERENCE_VALIDATION + ".duplicates", tags).record(duplicateIdentifiers);
+    }
+
+    /**
+     * Histogram of the time spent waiting for, or holding, the locks of mutations.
+     * @param phase wait or hold
+     */
+    public Timer mutateLockTimer(String phase) {
+        return Timer.builder(MUTATE_LOCK_TIMER)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(this);
+    }
+
+    /**
+     * Gauge of the hit ratio of the requests of this node to a second level cache region, between 0 and 1.
+     * @param region name of the cache region
+     */
+    public <T> void registerCacheHitRatio(String region, T source, ToDoubleFunction<T> hitRatio) {
+        Gauge.builder(CACHE_HIT_RATIO, source, hitRatio)
+                .tag("region", region)
+                .strongReference(true)
+                .register(this);
+    }
+
+    /**
+     * Gauge of the hit ratio of the entries of a second level cache region that are owned by this node, between 0 and 1.
+     * Includes the requests of all nodes to those entries, but none of the requests of this node to entries owned by other nodes.
+     * @param region name of the cache region
+     */
+    public <T> void registerOwnedPartitionsCacheHitRatio(String region, T source, ToDoubleFunction<T> hitRatio) {
+        Gauge.builder(CACHE_OWNED_PARTITIONS_HIT_RATIO, source, hitRatio)
+                .tag("region", region)
+                .strongReference(true)
+                .register(this);
+    }
 }
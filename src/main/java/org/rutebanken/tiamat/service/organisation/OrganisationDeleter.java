@@ -54,7 +54,7 @@ public class OrganisationDeleter {
     @Transactional
     public boolean deleteOrganisation(String organisationId) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(organisationId, () -> {
             String usernameForAuthenticatedUser = usernameFetcher.getUserNameForAuthenticatedUser();
             logger.warn("About to delete organisation by ID {}. User: {}", organisationId, usernameForAuthenticatedUser);
 
@@ -34,6 +34,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -73,7 +74,7 @@ public class MultiModalStopPlaceEditor {
                                                      PrivateCodeStructure privateCode, List<AlternativeName> alternativeNames,
                                                      Map<String, Value> keyValues) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(childStopPlaceIds, () -> {
 
             logger.info("Create parent stop place with name {} and child stop place {}", name, childStopPlaceIds);
 
@@ -120,7 +121,7 @@ public class MultiModalStopPlaceEditor {
 
     public StopPlace addToMultiModalParentStopPlace(String parentStopPlaceId, List<String> childStopPlaceIds, ValidBetween validBetween, String versionComment) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(lockKeys(parentStopPlaceId, childStopPlaceIds), () -> {
 
             logger.info("Add childs: {} to parent stop place {}", childStopPlaceIds, parentStopPlaceId);
 
@@ -167,7 +168,7 @@ public class MultiModalStopPlaceEditor {
 
     public StopPlace removeFromMultiModalStopPlace(String parentStopPlaceId, List<String> childStopPlaceIds) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(lockKeys(parentStopPlaceId, childStopPlaceIds), () -> {
 
             logger.info("Remove childs: {} from parent stop place {}", childStopPlaceIds, parentStopPlaceId);
 
@@ -278,4 +279,13 @@ public class MultiModalStopPlaceEditor {
             return Instant.now();
         }
     }
+
+    private static List<String> lockKeys(String parentStopPlaceId, List<String> childStopPlaceIds) {
+        List<String> keys = new ArrayList<>();
+        keys.add(parentStopPlaceId);
+        if (childStopPlaceIds != null) {
+            keys.addAll(childStopPlaceIds);
+        }
+        return keys;
+    }
 }
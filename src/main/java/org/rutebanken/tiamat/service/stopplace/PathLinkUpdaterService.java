@@ -59,7 +59,7 @@ public class PathLinkUpdaterService {
 
     public PathLink createOrUpdatePathLink(PathLink incomingPathLink) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(incomingPathLink.getNetexId(), () -> {
 
             final Set<EntityStructure> entitiesRequiringAuthorization = new HashSet<>();
             final PathLink resultPathLink;
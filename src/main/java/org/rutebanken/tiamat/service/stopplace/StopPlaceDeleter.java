@@ -63,7 +63,7 @@ public class StopPlaceDeleter {
     @Transactional
     public boolean deleteStopPlace(String stopPlaceId) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(stopPlaceId, () -> {
             String usernameForAuthenticatedUser = usernameFetcher.getUserNameForAuthenticatedUser();
             logger.warn("About to delete stop place by ID {}. User: {}", stopPlaceId, usernameForAuthenticatedUser);
 
@@ -86,7 +86,7 @@ public class StopPlaceMerger {
 
     public StopPlace mergeStopPlaces(String fromStopPlaceId, String toStopPlaceId, String fromVersionComment, String toVersionComment, boolean isDryRun) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(Arrays.asList(fromStopPlaceId, toStopPlaceId), () -> {
             logger.info("About to merge stop place {} into stop place {} with from comment {} and to comment {} ", fromStopPlaceId, toStopPlaceId, fromVersionComment, toVersionComment);
 
             StopPlace fromStopPlace = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(fromStopPlaceId);
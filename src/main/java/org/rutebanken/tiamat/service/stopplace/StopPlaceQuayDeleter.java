@@ -59,7 +59,7 @@ public class StopPlaceQuayDeleter {
 
     public StopPlace deleteQuay(String stopPlaceId, String quayId, String versionComment) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(stopPlaceId, () -> {
             logger.warn("{} is deleting quay {} from stop place {} with comment {}", usernameFetcher.getUserNameForAuthenticatedUser(), quayId, stopPlaceId, versionComment);
 
             StopPlace stopPlace = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(stopPlaceId);
@@ -78,7 +78,7 @@ public class StopPlaceQuayMerger {
 
     public StopPlace mergeQuays(final String stopPlaceId, String fromQuayId, String toQuayId, String versionComment, boolean isDryRun) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(stopPlaceId, () -> {
             logger.info("{} is about to merge quays {} -> {} of stop place {}", usernameFetcher.getUserNameForAuthenticatedUser(), fromQuayId, toQuayId, stopPlaceId);
 
             final StopPlace stopPlace = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(stopPlaceId);
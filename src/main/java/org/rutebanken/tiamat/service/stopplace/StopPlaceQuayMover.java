@@ -36,6 +36,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -72,7 +73,7 @@ public class StopPlaceQuayMover {
 
     public StopPlace moveQuays(List<String> quayIds, String destinationStopPlaceId, LocalDate moveQuayFromDate, String fromVersionComment, String toVersionComment) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(moveQuaysLockKeys(quayIds, destinationStopPlaceId), () -> {
             Set<StopPlace> sourceStopPlaces = resolveSourceStopPlaces(resolveQuays(quayIds));
             verifySize(quayIds, sourceStopPlaces);
 
@@ -304,4 +305,16 @@ public class StopPlaceQuayMover {
                 .map(stopPlaceRepository::findByQuay)
                 .collect(toSet());
     }
+
+    /**
+     * Lock the stop places of the quays, and the destination stop place.
+     */
+    private static List<String> moveQuaysLockKeys(List<String> quayIds, String destinationStopPlaceId) {
+        List<String> keys = new ArrayList<>();
+        if (quayIds != null) {
+            keys.addAll(quayIds);
+        }
+        keys.add(destinationStopPlaceId);
+        return keys;
+    }
 }
@@ -48,7 +48,7 @@ public class StopPlaceReopener {
 
     public StopPlace reopenStopPlace(String stopPlaceId, String versionComment) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(stopPlaceId, () -> {
             logger.info("User {} is reopening stop place {} with comment {}", usernameFetcher.getUserNameForAuthenticatedUser(), stopPlaceId, versionComment);
 
             StopPlace stopPlace = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(stopPlaceId);
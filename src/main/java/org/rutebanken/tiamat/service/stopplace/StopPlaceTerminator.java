@@ -52,7 +52,7 @@ public class StopPlaceTerminator {
 
     public StopPlace terminateStopPlace(String stopPlaceId, Instant suggestedTimeOfTermination, String versionComment, ModificationEnumeration modificationEnumeration) {
 
-        return mutateLock.executeInLock(() -> {
+        return mutateLock.executeInLock(stopPlaceId, () -> {
 
             Instant now = Instant.now();
             Instant timeOfTermination;
@@ -15,19 +15,10 @@
 
 package org.rutebanken.tiamat.versioning;
 
-import ma.glasnost.orika.CustomConverter;
-import ma.glasnost.orika.MapperFacade;
-import ma.glasnost.orika.MapperFactory;
-import ma.glasnost.orika.MappingContext;
-import ma.glasnost.orika.converter.builtin.PassThroughConverter;
-import ma.glasnost.orika.impl.DefaultMapperFactory;
-import ma.glasnost.orika.metadata.Type;
-import org.locationtech.jts.geom.Point;
 import org.rutebanken.tiamat.model.AlternativeName;
 import org.rutebanken.tiamat.model.CycleStorageEquipment;
 import org.rutebanken.tiamat.model.EntityInVersionStructure;
 import org.rutebanken.tiamat.model.GeneralSign;
-import org.rutebanken.tiamat.model.InstalledEquipment_VersionStructure;
 import org.rutebanken.tiamat.model.PathLink;
 import org.rutebanken.tiamat.model.PathLinkEnd;
 import org.rutebanken.tiamat.model.PlaceEquipment;
@@ -37,17 +28,16 @@ import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.model.TicketingEquipment;
 import org.rutebanken.tiamat.model.TopographicPlace;
 import org.rutebanken.tiamat.model.WaitingRoomEquipment;
+import org.rutebanken.tiamat.versioning.copy.EntityCopier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
-import java.util.Arrays;
 import java.util.List;
 
 /**
- * Creates new version of already existing objects, by mapping with Orika and ignore primary key "id".
+ * Creates new version of already existing objects, by deep copying with {@link EntityCopier} and ignore primary key "id".
  */
 @Service
 public class VersionCreator {
@@ -65,76 +55,35 @@ public class VersionCreator {
 
     private final VersionIncrementor versionIncrementor;
 
-    private final MapperFacade defaultMapperFacade;
+    private final EntityCopier entityCopier;
 
     @Autowired
     public VersionCreator(VersionIncrementor versionIncrementor) {
         this.versionIncrementor = versionIncrementor;
+        this.entityCopier = createEntityCopier();
+    }
 
-        MapperFactory mapperFactory = new DefaultMapperFactory.Builder().build();
-
-
-        final String stopPlacePassThroughId = "stopPlacePassThroughId";
-
-        mapperFactory.getConverterFactory()
-                .registerConverter(stopPlacePassThroughId, new PassThroughConverter(TopographicPlace.class));
-
-        mapperFactory.getConverterFactory()
-                .registerConverter(new PassThroughConverter(Point.class));
-
-        mapperFactory.getConverterFactory()
-                .registerConverter(new CustomConverter<Instant, Instant>() {
-                    @Override
-                    public Instant convert(Instant instant, Type<? extends Instant> type, MappingContext mappingContext) {
-                        return Instant.from(instant);
-                    }
-                });
-
-
-        mapperFactory.classMap(PathLinkEnd.class, PathLinkEnd.class)
-                .exclude(ID_FIELD)
-                .byDefault()
-                .register();
-
-        List<Class<? extends EntityInVersionStructure>> excludeNetexIdAndVersionsForEntities =
-                List.of(PlaceEquipment.class);
-
-        excludeNetexIdAndVersionsForEntities.forEach(clazz -> {
-            mapperFactory.classMap(clazz, clazz)
-                    .exclude("netexId")
-                    .exclude("version")
-                    .byDefault()
-                    .register();
-        });
-
-        mapperFactory.classMap(StopPlace.class, StopPlace.class)
-                .fieldMap("topographicPlace").converter(stopPlacePassThroughId).add()
-                .exclude(ID_FIELD)
-                .exclude(VERSION_COMMENT_FIELD)
-                .exclude(CHANGED_BY_FIELD)
-                .exclude(VALID_BETWEEN)
-                .exclude(MODIFICATION_ENUMERATION)
-                .byDefault()
-                .register();
+    /**
+     * Points, instants and other immutable values are shared with the copy.
+     * The topographic place of a stop place is referenced, not copied.
+     */
+    static EntityCopier createEntityCopier() {
+        EntityCopier.EntityCopierBuilder builder = EntityCopier.builder()
+                .exclude(PathLinkEnd.class, ID_FIELD)
+                .share(StopPlace.class, "topographicPlace")
+                .exclude(StopPlace.class, ID_FIELD, VERSION_COMMENT_FIELD, CHANGED_BY_FIELD, VALID_BETWEEN, MODIFICATION_ENUMERATION);
 
         List<Class<? extends EntityInVersionStructure>> commonClassesToConfigure =
-                Arrays.asList(TopographicPlace.class,
+                List.of(TopographicPlace.class,
                         PathLink.class, PlaceEquipment.class,
                         WaitingRoomEquipment.class, SanitaryEquipment.class,
                         TicketingEquipment.class, ShelterEquipment.class,
                         CycleStorageEquipment.class, GeneralSign.class,
                         AlternativeName.class);
 
+        commonClassesToConfigure.forEach(clazz -> builder.exclude(clazz, VERSION_COMMENT_FIELD, CHANGED_BY_FIELD, ID_FIELD, VALID_BETWEEN));
 
-        commonClassesToConfigure.forEach(clazz -> mapperFactory.classMap(clazz, clazz)
-                .exclude(VERSION_COMMENT_FIELD)
-                .exclude(CHANGED_BY_FIELD)
-                .exclude(ID_FIELD)
-                .exclude(VALID_BETWEEN)
-                .byDefault()
-                .register());
-
-        defaultMapperFacade = mapperFactory.getMapperFacade();
+        return builder.build();
     }
 
     /**
@@ -148,9 +97,9 @@ public class VersionCreator {
     public <T extends EntityInVersionStructure> T createCopy(EntityInVersionStructure entityInVersionStructure, Class<T> type) {
         logger.debug("Create new version for entity: {}", entityInVersionStructure);
 
-        EntityInVersionStructure copy = defaultMapperFacade.map(entityInVersionStructure, type);
+        T copy = entityCopier.copy(entityInVersionStructure, type);
         logger.debug("Created copy of entity: {}", copy);
 
-        return type.cast(copy);
+        return copy;
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.versioning.copy;
+
+import org.hibernate.Hibernate;
+import org.locationtech.jts.geom.Geometry;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies entity graphs property by property.
+ * Each class gets an {@link EntityCopyPlan} the first time it is copied.
+ * Immutable values like strings, enums, instants and geometries are shared with the copy instead of being copied.
+ * An object referenced several times in the graph is copied once, and the copy is referenced in the same places.
+ */
+public class EntityCopier {
+
+    private final Map<Class<?>, Set<String>> excludedProperties;
+
+    private final Map<Class<?>, Set<String>> sharedProperties;
+
+    private final Map<Class<?>, EntityCopyPlan> copyPlans = new ConcurrentHashMap<>();
+
+    private EntityCopier(Map<Class<?>, Set<String>> excludedProperties, Map<Class<?>, Set<String>> sharedProperties) {
+        this.excludedProperties = excludedProperties;
+        this.sharedProperties = sharedProperties;
+    }
+
+    public static EntityCopierBuilder builder() {
+        return new EntityCopierBuilder();
+    }
+
+    /**
+     * @param source object to copy
+     * @param type   type of the copy. If the source is of a sub class, the copy will be of the same sub class.
+     * @return a deep copy of the source
+     */
+    public <T> T copy(Object source, Class<T> type) {
+        if (source == null) {
+            return null;
+        }
+        Object unproxied = Hibernate.unproxy(source);
+        if (!type.isInstance(unproxied)) {
+            throw new IllegalArgumentException("Cannot copy " + unproxied.getClass() + " to " + type);
+        }
+        return type.cast(copyValue(unproxied, new IdentityHashMap<>()));
+    }
+
+    private Object copyValue(Object value, Map<Object, Object> copies) {
+        if (value == null) {
+            return null;
+        }
+        value = Hibernate.unproxy(value);
+        if (isImmutable(value.getClass())) {
+            return value;
+        }
+        if (value instanceof Collection<?> collection) {
+            Collection<Object> copy = newCollection(collection.getClass());
+            copyItems(collection, copy, copies);
+            return copy;
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = newMap(map.getClass());
+            copyEntries(map, copy, copies);
+            return copy;
+        }
+        Object copy = copies.get(value);
+        if (copy == null) {
+            copy = copyObject(value, copies);
+        }
+        return copy;
+    }
+
+    private Object copyObject(Object source, Map<Object, Object> copies) {
+        EntityCopyPlan copyPlan = copyPlan(source.getClass());
+        EntityCopyPlan.PropertyCopy property = null;
+        try {
+            Object target = copyPlan.newInstance();
+            copies.put(source, target);
+
+            for (EntityCopyPlan.PropertyCopy propertyCopy : copyPlan.properties) {
+                property = propertyCopy;
+                copyProperty(propertyCopy, source, target, copies);
+            }
+            return target;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not copy " + (property != null ? "property " + property.name + " of " : "")
+                    + copyPlan.type.getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void copyProperty(EntityCopyPlan.PropertyCopy property, Object source, Object target, Map<Object, Object> copies) throws Throwable {
+        Object sourceValue = property.get(source);
+
+        switch (property.kind) {
+            case SHARED -> setOrClear(property, target, sourceValue);
+            case VALUE -> setOrClear(property, target, copyValue(sourceValue, copies));
+            case COLLECTION -> {
+                if (sourceValue == null) {
+                    setOrClear(property, target, null);
+                    return;
+                }
+                Collection<Object> targetValue = (Collection<Object>) property.get(target);
+                if (targetValue == null) {
+                    if (!property.hasSetter()) {
+                        return;
+                    }
+                    targetValue = newCollection(property.type);
+                    property.set(target, targetValue);
+                }
+                targetValue.clear();
+                copyItems((Collection<?>) sourceValue, targetValue, copies);
+            }
+            case MAP -> {
+                if (sourceValue == null) {
+                    setOrClear(property, target, null);
+                    return;
+                }
+                Map<Object, Object> targetValue = (Map<Object, Object>) property.get(target);
+                if (targetValue == null) {
+                    if (!property.hasSetter()) {
+                        return;
+                    }
+                    targetValue = newMap(property.type);
+                    property.set(target, targetValue);
+                }
+                targetValue.clear();
+                copyEntries((Map<?, ?>) sourceValue, targetValue, copies);
+            }
+        }
+    }
+
+    /**
+     * Null values are only written if the new instance has a default value, to avoid calling setters that create holders for null.
+     */
+    private void setOrClear(EntityCopyPlan.PropertyCopy property, Object target, Object value) throws Throwable {
+        if (value != null) {
+            property.set(target, value);
+            return;
+        }
+        Object defaultValue = property.get(target);
+        if (defaultValue == null) {
+            return;
+        }
+        if (property.hasSetter() && !property.type.isPrimitive()) {
+            property.set(target, null);
+        } else if (defaultValue instanceof Collection<?> collection) {
+            collection.clear();
+        } else if (defaultValue instanceof Map<?, ?> map) {
+            map.clear();
+        }
+    }
+
+    private void copyItems(Collection<?> source, Collection<Object> target, Map<Object, Object> copies) {
+        for (Object item : source) {
+            target.add(copyValue(item, copies));
+        }
+    }
+
+    private void copyEntries(Map<?, ?> source, Map<Object, Object> target, Map<Object, Object> copies) {
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            target.put(copyValue(entry.getKey(), copies), copyValue(entry.getValue(), copies));
+        }
+    }
+
+    private EntityCopyPlan copyPlan(Class<?> type) {
+        return copyPlans.computeIfAbsent(type, clazz -> EntityCopyPlan.create(clazz,
+                excludedProperties.getOrDefault(clazz, Set.of()),
+                sharedProperties.getOrDefault(clazz, Set.of())));
+    }
+
+    private static Collection<Object> newCollection(Class<?> type) {
+        if (SortedSet.class.isAssignableFrom(type)) {
+            return new TreeSet<>();
+        } else if (Set.class.isAssignableFrom(type)) {
+            return new LinkedHashSet<>();
+        }
+        return new ArrayList<>();
+    }
+
+    private static Map<Object, Object> newMap(Class<?> type) {
+        if (SortedMap.class.isAssignableFrom(type)) {
+            return new TreeMap<>();
+        } else if (LinkedHashMap.class.isAssignableFrom(type)) {
+            return new LinkedHashMap<>();
+        }
+        return new HashMap<>();
+    }
+
+    static boolean isImmutable(Class<?> type) {
+        return type.isPrimitive()
+                || type == String.class
+                || type == Boolean.class
+                || type == Character.class
+                || type == Integer.class
+                || type == Long.class
+                || type == Short.class
+                || type == Byte.class
+                || type == Double.class
+                || type == Float.class
+                || type == BigDecimal.class
+                || type == BigInteger.class
+                || type == UUID.class
+                || Enum.class.isAssignableFrom(type)
+                || "java.time".equals(type.getPackageName())
+                || Geometry.class.isAssignableFrom(type);
+    }
+
+    public static class EntityCopierBuilder {
+
+        private final Map<Class<?>, Set<String>> excludedProperties = new HashMap<>();
+
+        private final Map<Class<?>, Set<String>> sharedProperties = new HashMap<>();
+
+        /**
+         * Properties of the given class that are not copied. Applies to the exact class only, not to sub classes.
+         */
+        public EntityCopierBuilder exclude(Class<?> type, String... properties) {
+            excludedProperties.computeIfAbsent(type, clazz -> new LinkedHashSet<>()).addAll(List.of(properties));
+            return this;
+        }
+
+        /**
+         * Properties of the given class to reference from the copy instead of copying.
+         */
+        public EntityCopierBuilder share(Class<?> type, String... properties) {
+            sharedProperties.computeIfAbsent(type, clazz -> new LinkedHashSet<>()).addAll(List.of(properties));
+            return this;
+        }
+
+        public EntityCopier build() {
+            return new EntityCopier(Map.copyOf(excludedProperties), Map.copyOf(sharedProperties));
+        }
+    }
+}
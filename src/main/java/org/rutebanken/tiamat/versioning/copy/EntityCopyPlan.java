@@ -0,0 +1,169 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.versioning.copy;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How to copy one class. Resolved once per class from its bean properties, like Orika did when mapping by default.
+ * Constructor, getters and setters are kept as method handles.
+ */
+class EntityCopyPlan {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    enum PropertyKind {
+        /**
+         * Immutable values and references to keep. The value is shared with the copy.
+         */
+        SHARED,
+        COLLECTION,
+        MAP,
+        /**
+         * Copied depending on the type of the value.
+         */
+        VALUE
+    }
+
+    static class PropertyCopy {
+
+        final String name;
+        final PropertyKind kind;
+        final Class<?> type;
+        private final MethodHandle getter;
+
+        /**
+         * Null for collections and maps only exposed by a getter. Those are filled in place.
+         */
+        private final MethodHandle setter;
+
+        private PropertyCopy(String name, PropertyKind kind, Class<?> type, MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.kind = kind;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        Object get(Object object) throws Throwable {
+            return (Object) getter.invokeExact(object);
+        }
+
+        boolean hasSetter() {
+            return setter != null;
+        }
+
+        void set(Object object, Object value) throws Throwable {
+            setter.invokeExact(object, value);
+        }
+    }
+
+    final Class<?> type;
+    final List<PropertyCopy> properties;
+    private final MethodHandle constructor;
+
+    private EntityCopyPlan(Class<?> type, List<PropertyCopy> properties, MethodHandle constructor) {
+        this.type = type;
+        this.properties = properties;
+        this.constructor = constructor;
+    }
+
+    Object newInstance() throws Throwable {
+        return (Object) constructor.invokeExact();
+    }
+
+    static EntityCopyPlan create(Class<?> type, Set<String> excludedProperties, Set<String> sharedProperties) {
+        try {
+            BeanInfo beanInfo = Introspector.getBeanInfo(type, Object.class);
+            List<PropertyCopy> properties = new ArrayList<>();
+
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                Method readMethod = descriptor.getReadMethod() != null ? descriptor.getReadMethod() : booleanReadMethod(type, descriptor);
+                Method writeMethod = descriptor.getWriteMethod();
+                Class<?> propertyType = descriptor.getPropertyType();
+
+                if (readMethod == null || propertyType == null || excludedProperties.contains(descriptor.getName())) {
+                    continue;
+                }
+
+                PropertyKind kind;
+                if (sharedProperties.contains(descriptor.getName()) || EntityCopier.isImmutable(propertyType)) {
+                    kind = PropertyKind.SHARED;
+                } else if (Collection.class.isAssignableFrom(propertyType)) {
+                    kind = PropertyKind.COLLECTION;
+                } else if (Map.class.isAssignableFrom(propertyType)) {
+                    kind = PropertyKind.MAP;
+                } else {
+                    kind = PropertyKind.VALUE;
+                }
+
+                if (writeMethod == null && kind != PropertyKind.COLLECTION && kind != PropertyKind.MAP) {
+                    // Read only property, like a derived value
+                    continue;
+                }
+
+                properties.add(new PropertyCopy(descriptor.getName(), kind, propertyType,
+                        handle(readMethod).asType(GETTER_TYPE),
+                        writeMethod == null ? null : handle(writeMethod).asType(SETTER_TYPE)));
+            }
+            return new EntityCopyPlan(type, List.copyOf(properties), constructor(type));
+        } catch (IntrospectionException | ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create copy plan for " + type, e);
+        }
+    }
+
+    /**
+     * The model has many "is" getters for Boolean objects. They are not bean getters, but Orika copied them, and so do we.
+     */
+    private static Method booleanReadMethod(Class<?> type, PropertyDescriptor descriptor) {
+        if (descriptor.getPropertyType() != Boolean.class) {
+            return null;
+        }
+        String name = descriptor.getName();
+        try {
+            Method method = type.getMethod("is" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            return method.getReturnType() == Boolean.class ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle handle(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    private static MethodHandle constructor(Class<?> type) throws ReflectiveOperationException {
+        Constructor<?> constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.versioning.save;
+
+import com.google.common.collect.Lists;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Bulk save mode for imports.
+ * <p>
+ * Stop places are saved in chunks with JDBC batching. Inserts and updates are ordered by entity (hibernate.order_inserts and
+ * hibernate.order_updates), so that stop places, quays, key values and alternative names of a chunk are written in a few batches.
+ * The original ID lookup rows of a chunk are written after the chunk is flushed, instead of flushing for every stop place.
+ * Cache updates are run after the chunk is committed, while the session of the chunk is still open. They are not run if it is rolled back.
+ * <p>
+ * {@link StopPlaceVersionedSaverService} checks {@link #isActive()} to defer the work for the current chunk.
+ */
+@Component
+public class BulkSaveMode {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkSaveMode.class);
+
+    private static final ThreadLocal<BulkSave> currentBulkSave = new ThreadLocal<>();
+
+    private final StopPlaceRepository stopPlaceRepository;
+
+    private final TransactionTemplate chunkTransactionTemplate;
+
+    private final boolean enabled;
+
+    private final int chunkSize;
+
+    private final int jdbcBatchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BulkSaveMode(StopPlaceRepository stopPlaceRepository,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${netex.import.bulk.save.enabled:true}") boolean enabled,
+                        @Value("${netex.import.bulk.save.chunk.size:200}") int chunkSize,
+                        @Value("${netex.import.bulk.save.jdbc.batch.size:100}") int jdbcBatchSize) {
+        this.stopPlaceRepository = stopPlaceRepository;
+        this.chunkTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
+    /**
+     * @return true if stop places saved by the current thread are part of a bulk save
+     */
+    public boolean isActive() {
+        return currentBulkSave.get() != null;
+    }
+
+    /**
+     * Write the original ID lookup rows of the stop place and its children when the current chunk is flushed.
+     */
+    public void deferOriginalIdLookupUpdate(StopPlace savedStopPlace) {
+        BulkSave bulkSave = requireActive();
+        bulkSave.originalIdLookups.add(savedStopPlace);
+        if (savedStopPlace.getChildren() != null) {
+            bulkSave.originalIdLookups.addAll(savedStopPlace.getChildren());
+        }
+        bulkSave.savedVersions.put(savedStopPlace.getNetexId(), savedStopPlace);
+    }
+
+    /**
+     * Run the cache update when the current chunk is committed, or at once if not in bulk save mode.
+     */
+    public void runOrDeferCacheUpdate(Runnable cacheUpdate) {
+        BulkSave bulkSave = currentBulkSave.get();
+        if (bulkSave == null) {
+            cacheUpdate.run();
+        } else {
+            bulkSave.cacheUpdates.add(cacheUpdate);
+        }
+    }
+
+    /**
+     * The newest version of a stop place does not have to be fetched again if it was saved earlier in this bulk save.
+     *
+     * @return the version saved in the current bulk save, or null if it must be fetched
+     */
+    public StopPlace savedInBulkSave(StopPlace existingVersion) {
+        BulkSave bulkSave = requireActive();
+        return bulkSave.savedVersions.get(existingVersion.getNetexId());
+    }
+
+    /**
+     * Save new stop places in chunks, each chunk in its own transaction. Chunks are saved in parallel.
+     * The session of a chunk is only flushed when all items of the chunk are saved, and when it is committed.
+     * The save function must return values that can be used after the session is closed, like netex objects.
+     * Stop places in one chunk cannot refer to each other by queries, which is fine for initial imports.
+     * If a chunk fails, its transaction is rolled back and the exception is thrown. Chunks already committed are kept.
+     */
+    public <T, R> List<R> saveInChunkTransactions(List<T> items, Function<T, R> save) {
+        if (!enabled) {
+            return items.parallelStream().map(save).collect(toList());
+        }
+        return Lists.partition(items, chunkSize).parallelStream()
+                .map(chunk -> saveChunkInTransaction(chunk, save))
+                .flatMap(List::stream)
+                .collect(toList());
+    }
+
+    /**
+     * Save stop places in chunks in the current transaction.
+     * The session is flushed after each chunk, but not cleared, as the items might be merged with stop places saved earlier in the transaction.
+     * Cache updates are run when the transaction is committed.
+     */
+    public <T, R> List<R> saveInChunks(List<T> items, Function<T, R> save) {
+        if (!enabled || isActive()) {
+            return items.stream().map(save).collect(toList());
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        Integer previousJdbcBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(jdbcBatchSize);
+
+        BulkSave bulkSave = new BulkSave();
+        currentBulkSave.set(bulkSave);
+        try {
+            List<R> results = new ArrayList<>(items.size());
+            for (List<T> chunk : Lists.partition(items, chunkSize)) {
+                chunk.forEach(item -> results.add(save.apply(item)));
+                flushChunk(bulkSave);
+            }
+            runAfterCommit(bulkSave.cacheUpdates);
+            return results;
+        } finally {
+            currentBulkSave.remove();
+            session.setJdbcBatchSize(previousJdbcBatchSize);
+        }
+    }
+
+    private <T, R> List<R> saveChunkInTransaction(List<T> chunk, Function<T, R> save) {
+        BulkSave bulkSave = new BulkSave();
+
+        List<R> results = chunkTransactionTemplate.execute(status -> {
+            Session session = entityManager.unwrap(Session.class);
+            session.setJdbcBatchSize(jdbcBatchSize);
+            session.setHibernateFlushMode(FlushMode.COMMIT);
+
+            currentBulkSave.set(bulkSave);
+            try {
+                List<R> saved = chunk.stream().map(save).collect(toList());
+                flushChunk(bulkSave);
+                runAfterCommit(bulkSave.cacheUpdates);
+                return saved;
+            } finally {
+                currentBulkSave.remove();
+            }
+        });
+
+        logger.debug("Saved chunk of {} items", chunk.size());
+        return results;
+    }
+
+    private void flushChunk(BulkSave bulkSave) {
+        entityManager.flush();
+        stopPlaceRepository.updateOriginalIdLookups(bulkSave.originalIdLookups);
+        bulkSave.originalIdLookups.clear();
+    }
+
+    private void runAfterCommit(List<Runnable> cacheUpdates) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cacheUpdates.forEach(Runnable::run);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cacheUpdates.forEach(Runnable::run);
+            }
+        });
+    }
+
+    private BulkSave requireActive() {
+        BulkSave bulkSave = currentBulkSave.get();
+        if (bulkSave == null) {
+            throw new IllegalStateException("Not in bulk save mode");
+        }
+        return bulkSave;
+    }
+
+    private static class BulkSave {
+
+        private final List<StopPlace> originalIdLookups = new ArrayList<>();
+
+        private final List<Runnable> cacheUpdates = new ArrayList<>();
+
+        /**
+         * Newest versions saved in this bulk save, by netex ID.
+         */
+        private final Map<String, StopPlace> savedVersions = new HashMap<>();
+    }
+}
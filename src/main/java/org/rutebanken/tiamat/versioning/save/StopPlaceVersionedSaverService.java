@@ -138,6 +138,9 @@ public class StopPlaceVersionedSaverService {
     @Autowired
     private InfoSpotLinkageMaintainer infoSpotLinkageMaintainer;
 
+    @Autowired
+    private BulkSaveMode bulkSaveMode;
+
     public StopPlaceVersionedSaverService() {
         this.quayDiffConfig = org.rutebanken.tiamat.diff.generic.GenericDiffConfig.builder()
             .identifiers(Sets.newHashSet("netexId", "ref"))
@@ -223,7 +226,10 @@ public class StopPlaceVersionedSaverService {
             stopPlaceAuthorizationService.assertAuthorizedToEdit(null, newVersion, childStopsUpdated);
         } else {
             logger.debug("About to terminate previous version for {},{}", existingVersion.getNetexId(), existingVersion.getVersion());
-            StopPlace existingVersionRefetched = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(existingVersion.getNetexId());
+            StopPlace existingVersionRefetched = bulkSaveMode.isActive() ? bulkSaveMode.savedInBulkSave(existingVersion) : null;
+            if (existingVersionRefetched == null) {
+                existingVersionRefetched = stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc(existingVersion.getNetexId());
+            }
             logger.debug("Found previous version {},{}. Terminating it.", existingVersionRefetched.getNetexId(), existingVersionRefetched.getVersion());
             validityUpdater.terminateVersion(existingVersionRefetched, newVersionValidFrom.minusMillis(MILLIS_BETWEEN_VERSIONS));
             stopPlaceAuthorizationService.assertAuthorizedToEdit(existingVersionRefetched, newVersion, childStopsUpdated);
@@ -293,6 +299,13 @@ public class StopPlaceVersionedSaverService {
         newVersion = stopPlaceRepository.save(newVersion);
         logger.debug("Saved stop place with id: {} and childs {}", newVersion.getId(), newVersion.getChildren().stream().map(ch -> ch.getId()).collect(toList()));
 
+        if (bulkSaveMode.isActive()) {
+            bulkSaveMode.deferOriginalIdLookupUpdate(newVersion);
+        } else {
+            stopPlaceRepository.updateOriginalIdLookup(newVersion);
+            newVersion.getChildren().forEach(stopPlaceRepository::updateOriginalIdLookup);
+        }
+
         // Copy InfoSpot linkages from old version to new version (with optional exclusion)
         if (existingVersion != null) {
             infoSpotLinkageMaintainer.maintainInfoSpotLinkagesExcluding(existingVersion, newVersion, excludeInfoSpotNetexId);
@@ -320,10 +333,12 @@ public class StopPlaceVersionedSaverService {
         }
         prometheusMetricsService.registerEntitySaved(newVersion.getClass(),1L);
 
-        updateQuaysCache(newVersion);
-
-        nearbyStopPlaceFinder.update(newVersion);
-        newVersion.getChildren().forEach(nearbyStopPlaceFinder::update);
+        final StopPlace savedVersion = newVersion;
+        bulkSaveMode.runOrDeferCacheUpdate(() -> {
+            updateQuaysCache(savedVersion);
+            nearbyStopPlaceFinder.update(savedVersion);
+            savedVersion.getChildren().forEach(nearbyStopPlaceFinder::update);
+        });
         sendToJMS(newVersion);
 
         return newVersion;
@@ -426,12 +441,7 @@ public class StopPlaceVersionedSaverService {
             return true;
         }
 
-        try {
-            return !genericObjectDiffer.compareObjects(existingQuay, newQuay, quayDiffConfig).isEmpty();
-        } catch (IllegalAccessException e) {
-            logger.warn("Could not compare quay {}, marking as modified", newQuay.getNetexId(), e);
-            return true;
-        }
+        return !genericObjectDiffer.compareObjects(existingQuay, newQuay, quayDiffConfig).isEmpty();
     }
 
     /**
@@ -447,22 +457,17 @@ public class StopPlaceVersionedSaverService {
             return true;
         }
 
-        try {
-            List<org.rutebanken.tiamat.diff.generic.Difference> differences = genericObjectDiffer.compareObjects(existingStopPlace, newStopPlace, stopPlaceDiffConfig);
-            boolean hasChanges = !differences.isEmpty();
+        List<org.rutebanken.tiamat.diff.generic.Difference> differences = genericObjectDiffer.compareObjects(existingStopPlace, newStopPlace, stopPlaceDiffConfig);
+        boolean hasChanges = !differences.isEmpty();
 
-            // Manually check if keyValues changed
-            if (!hasChanges && existingStopPlace.getKeyValues() != null && newStopPlace.getKeyValues() != null) {
-                if (!existingStopPlace.getKeyValues().equals(newStopPlace.getKeyValues())) {
-                    hasChanges = true;
-                }
+        // Manually check if keyValues changed
+        if (!hasChanges && existingStopPlace.getKeyValues() != null && newStopPlace.getKeyValues() != null) {
+            if (!existingStopPlace.getKeyValues().equals(newStopPlace.getKeyValues())) {
+                hasChanges = true;
             }
-
-            return hasChanges;
-        } catch (IllegalAccessException e) {
-            logger.warn("Could not compare stop place {}, marking as modified", newStopPlace.getNetexId(), e);
-            return true;
         }
+
+        return hasChanges;
     }
 
     /**
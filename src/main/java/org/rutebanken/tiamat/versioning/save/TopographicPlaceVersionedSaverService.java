@@ -16,6 +16,7 @@
 package org.rutebanken.tiamat.versioning.save;
 
 
+import org.rutebanken.tiamat.auth.check.AdministrativeZoneCache;
 import org.rutebanken.tiamat.model.TopographicPlace;
 import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
 import org.rutebanken.tiamat.service.TopographicPlaceLookupService;
@@ -31,12 +32,16 @@ public class TopographicPlaceVersionedSaverService {
     @Autowired
     private TopographicPlaceLookupService topographicPlaceLookupService;
 
+    @Autowired
+    private AdministrativeZoneCache administrativeZoneCache;
+
     @Autowired
     private DefaultVersionedSaverService defaultVersionedSaverService;
 
     public TopographicPlace saveNewVersion(TopographicPlace newVersion) {
         TopographicPlace saved = defaultVersionedSaverService.saveNewVersion(newVersion, topographicPlaceRepository);
         topographicPlaceLookupService.reset();
+        administrativeZoneCache.reset();
         return saved;
     }
 }
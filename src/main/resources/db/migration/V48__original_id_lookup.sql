@@ -0,0 +1,30 @@
+-- Original and merged IDs of stop places and quays, keyed by full value and by suffix (the part after the last colon).
+-- Replaces leading wildcard LIKE scans on value_items when matching imported stop places.
+-- Rows for quays refer to the stop place version the quay belongs to.
+create table original_id_lookup (
+    stop_place_id bigint not null references stop_place(id) on delete cascade,
+    quay_id bigint references quay(id) on delete cascade,
+    id_key varchar(255) not null,
+    id_value text not null,
+    id_suffix text not null
+);
+
+create index original_id_lookup_key_suffix_index on original_id_lookup(id_key, id_suffix);
+create index original_id_lookup_key_value_index on original_id_lookup(id_key, id_value);
+create index original_id_lookup_stop_place_id_index on original_id_lookup(stop_place_id);
+create index original_id_lookup_quay_id_index on original_id_lookup(quay_id);
+
+insert into original_id_lookup (stop_place_id, quay_id, id_key, id_value, id_suffix)
+select spkv.stop_place_id, null, spkv.key_values_key, v.items, trim(substring(v.items from '[^:]*$'))
+from stop_place_key_values spkv
+         inner join value_items v on v.value_id = spkv.key_values_id
+where spkv.key_values_key in ('imported-id', 'merged-id')
+  and trim(v.items) <> '';
+
+insert into original_id_lookup (stop_place_id, quay_id, id_key, id_value, id_suffix)
+select spq.stop_place_id, qkv.quay_id, qkv.key_values_key, v.items, trim(substring(v.items from '[^:]*$'))
+from stop_place_quays spq
+         inner join quay_key_values qkv on qkv.quay_id = spq.quays_id
+         inner join value_items v on v.value_id = qkv.key_values_id
+where qkv.key_values_key in ('imported-id', 'merged-id')
+  and trim(v.items) <> '';
@@ -0,0 +1,4 @@
+-- Lets the id mapping state tag read the latest validity boundaries and quay change from index ends instead of scanning the tables.
+create index idx_stop_place_from_date on stop_place (from_date);
+create index idx_stop_place_to_date on stop_place (to_date);
+create index idx_quay_changed_desc on quay (changed DESC);
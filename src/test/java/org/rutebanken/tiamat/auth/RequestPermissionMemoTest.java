@@ -0,0 +1,96 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.auth;
+
+import org.junit.After;
+import org.junit.Test;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestPermissionMemoTest {
+
+    private final Authentication user = new TestingAuthenticationToken("user", null);
+
+    private final AtomicInteger checks = new AtomicInteger();
+
+    @After
+    public void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void keepResultsForRequest() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        StopPlace stopPlace = stopPlace(1);
+
+        assertThat(check("editStops", stopPlace)).isTrue();
+        assertThat(check("editStops", stopPlace)).isTrue();
+        assertThat(checks).hasValue(1);
+
+        check("deleteStops", stopPlace);
+        check("editStops", stopPlace(2));
+        check("editStops", stopPlace);
+        assertThat(checks).hasValue(3);
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        check("editStops", stopPlace);
+        assertThat(checks).hasValue(4);
+    }
+
+    @Test
+    public void checkEveryTimeWithoutRequest() {
+        StopPlace stopPlace = stopPlace(1);
+
+        check("editStops", stopPlace);
+        check("editStops", stopPlace);
+
+        assertThat(checks).hasValue(2);
+    }
+
+    @Test
+    public void checkEveryTimeWithoutNetexId() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        StopPlace stopPlace = new StopPlace();
+
+        check("editStops", stopPlace);
+        check("editStops", stopPlace);
+
+        assertThat(checks).hasValue(2);
+    }
+
+    private boolean check(String check, StopPlace stopPlace) {
+        return RequestPermissionMemo.isAuthorized(user, check, stopPlace, () -> {
+            checks.incrementAndGet();
+            return true;
+        });
+    }
+
+    private StopPlace stopPlace(long version) {
+        StopPlace stopPlace = new StopPlace();
+        stopPlace.setNetexId("NSR:StopPlace:1");
+        stopPlace.setVersion(version);
+        return stopPlace;
+    }
+}
@@ -9,10 +9,12 @@ import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.rutebanken.helper.organisation.RoleAssignment;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.importer.TopographicPlaceErasor;
 import org.rutebanken.tiamat.model.BusSubmodeEnumeration;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.model.StopTypeEnumeration;
 import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
@@ -45,6 +47,9 @@ public class TiamatAuthorizationServiceLocationPermissionsTest extends TiamatInt
     @Autowired
     private StopPlaceRepository stopPlaceRepository;
 
+    @Autowired
+    private TopographicPlaceErasor topographicPlaceErasor;
+
 
     @Test
     @Transactional
@@ -149,6 +154,35 @@ public class TiamatAuthorizationServiceLocationPermissionsTest extends TiamatInt
         assertThat("Banned stop place types", locationBannedStopPlaceTypes.contains(StopTypeEnumeration.AIRPORT), is(true));
     }
 
+    @Test
+    public void noLocationPermissionAfterZoneIsErased() {
+        setUpSecurityContext();
+
+        RoleAssignment roleAssignment = RoleAssignment.builder()
+                .withRole(ROLE_EDIT_STOPS)
+                .withOrganisation("OST")
+                .withAdministrativeZone("KVE:TopographicalPlace:01")
+                .withEntityClassification(ENTITY_TYPE, "*")
+                .build();
+
+        Point point = geometryFactory.createPoint(new Coordinate(9.536819, 61.772281));
+
+        TopographicPlace municipality = new TopographicPlace();
+        municipality.setNetexId("KVE:TopographicalPlace:01");
+        municipality.setVersion(1);
+        municipality.setTopographicPlaceType(TopographicPlaceTypeEnumeration.MUNICIPALITY);
+        municipality.setPolygon(createPolygon(point));
+        topographicPlaceRepository.saveAndFlush(municipality);
+
+        roleAssignmentExtractor.setNextReturnedRoleAssignment(roleAssignment);
+        assertThat("Can edit stop places in zone", authorizationService.canEditEntity(point), is(true));
+
+        topographicPlaceErasor.erase("KVE:TopographicalPlace", TopographicPlaceTypeEnumeration.MUNICIPALITY);
+
+        roleAssignmentExtractor.setNextReturnedRoleAssignment(roleAssignment);
+        assertThat("Can edit stop places in erased zone", authorizationService.canEditEntity(point), is(false));
+    }
+
     private Polygon createPolygon(Point point) {
         Geometry bufferedPoint = point.buffer(10);
         LinearRing linearRing = new LinearRing(new CoordinateArraySequence(bufferedPoint.getCoordinates()), geometryFactory);
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.auth.check;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.topic.ITopic;
+import com.hazelcast.topic.Message;
+import com.hazelcast.topic.MessageListener;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.rutebanken.tiamat.config.GeometryFactoryConfig;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.repository.TopographicPlaceRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdministrativeZoneCacheTest {
+
+    private static final String ZONE_ID = "KVE:TopographicPlace:1";
+
+    private final GeometryFactory geometryFactory = new GeometryFactoryConfig().geometryFactory();
+
+    private final TopographicPlaceRepository topographicPlaceRepository = mock(TopographicPlaceRepository.class);
+
+    @SuppressWarnings("unchecked")
+    private final ITopic<Long> resetTopic = mock(ITopic.class);
+
+    private final AdministrativeZoneCache administrativeZoneCache = new AdministrativeZoneCache(topographicPlaceRepository, hazelcastInstance(resetTopic));
+
+    @Test
+    public void loadZoneOnce() {
+        when(topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(ZONE_ID)).thenReturn(topographicPlace(2));
+
+        for (int i = 0; i < 10; i++) {
+            AdministrativeZoneCache.AdministrativeZone zone = administrativeZoneCache.findZone(ZONE_ID).orElseThrow();
+            assertThat(zone.version()).isEqualTo(2);
+            assertThat(zone.contains(point(10.5, 59.5))).isTrue();
+            assertThat(zone.contains(point(12, 59.5))).isFalse();
+        }
+
+        verify(topographicPlaceRepository, times(1)).findFirstByNetexIdOrderByVersionDesc(ZONE_ID);
+    }
+
+    @Test
+    public void rememberUnknownZone() {
+        assertThat(administrativeZoneCache.findZone(ZONE_ID)).isEmpty();
+        assertThat(administrativeZoneCache.findZone(ZONE_ID)).isEmpty();
+
+        verify(topographicPlaceRepository, times(1)).findFirstByNetexIdOrderByVersionDesc(ZONE_ID);
+    }
+
+    @Test
+    public void loadNewVersionAfterReset() {
+        when(topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(ZONE_ID))
+                .thenReturn(topographicPlace(1))
+                .thenReturn(topographicPlace(2));
+
+        assertThat(administrativeZoneCache.findZone(ZONE_ID).orElseThrow().version()).isEqualTo(1);
+
+        administrativeZoneCache.reset();
+
+        assertThat(administrativeZoneCache.findZone(ZONE_ID).orElseThrow().version()).isEqualTo(2);
+    }
+
+    @Test
+    public void publishReset() {
+        administrativeZoneCache.reset();
+
+        verify(resetTopic).publish(anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void loadNewVersionAfterResetOnOtherNode() {
+        ArgumentCaptor<MessageListener<Long>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(resetTopic).addMessageListener(listener.capture());
+        when(topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(ZONE_ID))
+                .thenReturn(topographicPlace(1))
+                .thenReturn(topographicPlace(2));
+
+        assertThat(administrativeZoneCache.findZone(ZONE_ID).orElseThrow().version()).isEqualTo(1);
+
+        Message<Long> message = mock(Message.class);
+        when(message.getMessageObject()).thenReturn(System.currentTimeMillis());
+        listener.getValue().onMessage(message);
+
+        assertThat(administrativeZoneCache.findZone(ZONE_ID).orElseThrow().version()).isEqualTo(2);
+    }
+
+    @Test
+    public void zoneWithoutPolygonContainsNothing() {
+        TopographicPlace topographicPlace = topographicPlace(1);
+        topographicPlace.setPolygon(null);
+        when(topographicPlaceRepository.findFirstByNetexIdOrderByVersionDesc(ZONE_ID)).thenReturn(topographicPlace);
+
+        assertThat(administrativeZoneCache.findZone(ZONE_ID).orElseThrow().contains(point(10.5, 59.5))).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HazelcastInstance hazelcastInstance(ITopic<Long> resetTopic) {
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<Long>getTopic(AdministrativeZoneCache.RESET_TOPIC)).thenReturn(resetTopic);
+        return hazelcastInstance;
+    }
+
+    private TopographicPlace topographicPlace(long version) {
+        TopographicPlace topographicPlace = new TopographicPlace(new EmbeddableMultilingualString("Zone"));
+        topographicPlace.setNetexId(ZONE_ID);
+        topographicPlace.setVersion(version);
+        topographicPlace.setPolygon(geometryFactory.createPolygon(new Coordinate[]{
+                new Coordinate(10, 59),
+                new Coordinate(11, 59),
+                new Coordinate(11, 60),
+                new Coordinate(10, 60),
+                new Coordinate(10, 59)}));
+        return topographicPlace;
+    }
+
+    private Point point(double x, double y) {
+        return geometryFactory.createPoint(new Coordinate(x, y));
+    }
+}
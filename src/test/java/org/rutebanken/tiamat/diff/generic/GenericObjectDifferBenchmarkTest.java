@@ -0,0 +1,135 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.diff.generic;
+
+import com.google.common.collect.Sets;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.rutebanken.tiamat.config.GeometryFactoryConfig;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares diffing a stop place with 40 quays against the reflective implementation.
+ */
+public class GenericObjectDifferBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenericObjectDifferBenchmarkTest.class);
+
+    private static final int QUAYS = 40;
+
+    private final GeometryFactory geometryFactory = new GeometryFactoryConfig().geometryFactory();
+
+    private final GenericObjectDiffer genericObjectDiffer = new GenericObjectDiffer();
+
+    private final ReflectiveObjectDiffer reflectiveObjectDiffer = new ReflectiveObjectDiffer();
+
+    private final GenericDiffConfig diffConfig = GenericDiffConfig.builder()
+            .identifiers(Sets.newHashSet("netexId", "ref"))
+            .ignoreFields(Sets.newHashSet("id", "version", "changed", "status", "modification", "envelope"))
+            .onlyDoEqualsCheck(Sets.newHashSet(Geometry.class))
+            .build();
+
+    @Test
+    public void findChangedQuaysAmongManyQuays() {
+        StopPlace oldStopPlace = stopPlace(false);
+        StopPlace newStopPlace = stopPlace(true);
+
+        List<Difference> differences = genericObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+
+        assertThat(differences).extracting(difference -> difference.property)
+                .containsExactlyInAnyOrder(
+                        "StopPlace.quays[NSR:Quay:0].name.value",
+                        "StopPlace.quays[NSR:Quay:10].name.value",
+                        "StopPlace.quays[NSR:Quay:20].name.value",
+                        "StopPlace.quays[NSR:Quay:30].name.value",
+                        "StopPlace.quays[NSR:Quay:" + (QUAYS - 1) + "].centroid");
+    }
+
+    @Test
+    public void sameDifferencesAsReflectiveDiffer() throws IllegalAccessException {
+        StopPlace oldStopPlace = stopPlace(false);
+        StopPlace newStopPlace = stopPlace(true);
+
+        List<Difference> differences = genericObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+        List<Difference> expected = reflectiveObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+
+        assertThat(differences).extracting(Difference::toString)
+                .containsExactlyInAnyOrderElementsOf(expected.stream().map(Difference::toString).toList());
+    }
+
+    @Ignore("Benchmark. Run manually to compare with the reflective differ.")
+    @Test
+    public void benchmarkDiffStopPlaceWithQuays() throws IllegalAccessException {
+        StopPlace oldStopPlace = stopPlace(false);
+        StopPlace newStopPlace = stopPlace(true);
+
+        int warmup = 2_000;
+        int iterations = 10_000;
+
+        for (int i = 0; i < warmup; i++) {
+            genericObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+            reflectiveObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            reflectiveObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+        }
+        long reflective = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            genericObjectDiffer.compareObjects(oldStopPlace, newStopPlace, diffConfig);
+        }
+        long planned = System.nanoTime() - start;
+
+        logger.info("Diffing stop place with {} quays: reflective {} µs/op, with diff plans {} µs/op",
+                QUAYS, reflective / iterations / 1000, planned / iterations / 1000);
+    }
+
+    /**
+     * @param changed change the name of every tenth quay, and move the last quay
+     */
+    private StopPlace stopPlace(boolean changed) {
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("Stop place"));
+        stopPlace.setNetexId("NSR:StopPlace:1");
+        stopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(24.9, 60.1)));
+        stopPlace.getOriginalIds().add("HSL:StopPlace:1");
+
+        for (int i = 0; i < QUAYS; i++) {
+            String name = changed && i % 10 == 0 ? "Quay " + i + " renamed" : "Quay " + i;
+            Quay quay = new Quay(new EmbeddableMultilingualString(name, "fi"));
+            quay.setNetexId("NSR:Quay:" + i);
+            quay.setPublicCode(String.valueOf(i));
+            quay.getOriginalIds().add("HSL:Quay:" + i);
+            double shift = changed && i == QUAYS - 1 ? 0.001 : 0;
+            quay.setCentroid(geometryFactory.createPoint(new Coordinate(24.9 + i * 0.0001 + shift, 60.1)));
+            stopPlace.getQuays().add(quay);
+        }
+        return stopPlace;
+    }
+}
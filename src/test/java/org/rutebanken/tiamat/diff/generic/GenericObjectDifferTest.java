@@ -309,6 +309,30 @@ public class GenericObjectDifferTest {
 
     }
 
+    /**
+     * Max depth applies to nesting, not to the number of objects compared.
+     */
+    @Test
+    public void diffChangeInLastOfManyQuays() throws IllegalAccessException {
+        StopPlace oldStopPlace = new StopPlace();
+        StopPlace newStopPlace = new StopPlace();
+
+        for (int i = 0; i < 40; i++) {
+            Quay oldQuay = new Quay(new EmbeddableMultilingualString("quay " + i));
+            oldQuay.setNetexId("NSR:Quay:" + i);
+            oldStopPlace.getQuays().add(oldQuay);
+
+            Quay newQuay = new Quay(new EmbeddableMultilingualString(i == 39 ? "changed quay" : "quay " + i));
+            newQuay.setNetexId("NSR:Quay:" + i);
+            newStopPlace.getQuays().add(newQuay);
+        }
+
+        String diffString = compareObjectsAndPrint(oldStopPlace, newStopPlace);
+        assertThat(diffString)
+                .contains("quays[NSR:Quay:39]")
+                .contains("changed quay");
+    }
+
     @Test
     public void maxDepth() throws IllegalAccessException {
 
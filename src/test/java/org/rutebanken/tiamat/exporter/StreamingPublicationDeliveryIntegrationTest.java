@@ -18,6 +18,7 @@ package org.rutebanken.tiamat.exporter;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
+import org.junit.Before;
 import org.junit.Test;
 import org.rutebanken.netex.model.PublicationDeliveryStructure;
 import org.rutebanken.netex.validation.NeTExValidator;
@@ -40,6 +41,7 @@ import org.rutebanken.tiamat.netex.validation.NetexReferenceValidatorException;
 import org.rutebanken.tiamat.netex.validation.NetexXmlReferenceValidator;
 import org.rutebanken.tiamat.rest.netex.publicationdelivery.PublicationDeliveryTestHelper;
 import org.rutebanken.tiamat.rest.netex.publicationdelivery.PublicationDeliveryUnmarshaller;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 import org.rutebanken.tiamat.versioning.save.GroupOfStopPlacesSaverService;
 import org.rutebanken.tiamat.versioning.save.PurposeOfGroupingSaverService;
 import org.rutebanken.tiamat.versioning.save.TariffZoneSaverService;
@@ -90,7 +92,15 @@ public class StreamingPublicationDeliveryIntegrationTest extends TiamatIntegrati
     @Autowired
     private PublicationDeliveryTestHelper publicationDeliveryTestHelper;
 
-    private NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true);
+    @Autowired
+    private PrometheusMetricsService prometheusMetricsService;
+
+    private NetexXmlReferenceValidator netexXmlReferenceValidator;
+
+    @Before
+    public void setUp() {
+        netexXmlReferenceValidator = new NetexXmlReferenceValidator(true, 100, prometheusMetricsService);
+    }
 
 
     /**
@@ -0,0 +1,181 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.rutebanken.tiamat.exporter.StreamingPublicationDelivery;
+import org.rutebanken.tiamat.model.job.ExportJob;
+import org.rutebanken.tiamat.model.job.JobStatus;
+import org.rutebanken.tiamat.netex.validation.NetexXmlReferenceValidator;
+import org.rutebanken.tiamat.repository.ExportJobRepository;
+import org.rutebanken.tiamat.service.BlobStoreService;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ExportJobWorkerTest {
+
+    private static final String VALID_XML = """
+            <PublicationDelivery xmlns="http://www.netex.org.uk/netex">
+                <StopPlace version="1" id="NSR:StopPlace:1">
+                    <ParentSiteRef ref="NSR:StopPlace:1" version="1"/>
+                </StopPlace>
+            </PublicationDelivery>
+            """;
+
+    private static final String INVALID_XML = """
+            <PublicationDelivery xmlns="http://www.netex.org.uk/netex">
+                <StopPlace version="1" id="NSR:StopPlace:1">
+                    <ParentSiteRef ref="NSR:StopPlace:2" version="1"/>
+                </StopPlace>
+            </PublicationDelivery>
+            """;
+
+    private final Map<String, byte[]> uploaded = new ConcurrentHashMap<>();
+
+    private final Set<String> uploadedTo = ConcurrentHashMap.newKeySet();
+
+    private boolean nativeCopy = true;
+
+    /**
+     * Like a blob store writing to disk, what has been read is stored even if the upload fails.
+     */
+    private final BlobStoreService blobStoreService = new BlobStoreService() {
+        @Override
+        public void upload(String fileName, InputStream inputStream) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16];
+            try {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                    uploaded.put(fileName, outputStream.toByteArray());
+                    uploadedTo.add(fileName);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public InputStream download(String fileName) {
+            return new ByteArrayInputStream(uploaded.get(fileName));
+        }
+
+        @Override
+        public void copy(String sourceFileName, String targetFileName) {
+            uploaded.put(targetFileName, uploaded.get(sourceFileName));
+        }
+
+        @Override
+        public boolean hasNativeCopy() {
+            return nativeCopy;
+        }
+
+        @Override
+        public void delete(String fileName) {
+            uploaded.remove(fileName);
+        }
+    };
+
+    @Test
+    public void uploadZippedExport() throws Exception {
+        ExportJob exportJob = runExportJob(VALID_XML);
+
+        assertThat(exportJob.getStatus()).isEqualTo(JobStatus.FINISHED);
+        assertThat(uploaded).containsOnlyKeys("folder/export.zip");
+        byte[] zip = uploaded.get("folder/export.zip");
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry = zipInputStream.getNextEntry();
+            assertThat(entry.getName()).isEqualTo("export.xml");
+            assertThat(new String(ByteStreams.toByteArray(zipInputStream), StandardCharsets.UTF_8)).isEqualTo(VALID_XML);
+        }
+    }
+
+    @Test
+    public void deletePartialUploadOfExportWithInvalidReferences() throws Exception {
+        // Large enough to be partly uploaded before the validation fails at the end of the document
+        Random random = new Random(1);
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 512 * 1024; i++) {
+            comment.append((char) ('a' + random.nextInt(26)));
+        }
+        String xml = INVALID_XML.replace("</PublicationDelivery>", "<!-- " + comment + " -->\n</PublicationDelivery>");
+
+        ExportJob exportJob = runExportJob(xml);
+
+        assertThat(exportJob.getStatus()).isEqualTo(JobStatus.FAILED);
+        assertThat(exportJob.getMessage()).contains("NOT valid");
+        assertThat(uploadedTo).containsExactly("folder/export.zip.part");
+        assertThat(uploaded).isEmpty();
+    }
+
+    @Test
+    public void uploadStraightToFileNameWithoutNativeCopy() throws Exception {
+        nativeCopy = false;
+
+        ExportJob exportJob = runExportJob(VALID_XML);
+
+        assertThat(exportJob.getStatus()).isEqualTo(JobStatus.FINISHED);
+        assertThat(uploadedTo).containsExactly("folder/export.zip");
+        assertThat(uploaded).containsOnlyKeys("folder/export.zip");
+    }
+
+    @Test
+    public void deleteUploadOfInvalidExportWithoutNativeCopy() throws Exception {
+        nativeCopy = false;
+
+        ExportJob exportJob = runExportJob(INVALID_XML);
+
+        assertThat(exportJob.getStatus()).isEqualTo(JobStatus.FAILED);
+        assertThat(uploaded).isEmpty();
+    }
+
+    private ExportJob runExportJob(String xml) throws Exception {
+        StreamingPublicationDelivery streamingPublicationDelivery = mock(StreamingPublicationDelivery.class);
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write(xml.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(streamingPublicationDelivery).stream(any(), any(OutputStream.class), anyBoolean());
+
+        ExportJob exportJob = new ExportJob(JobStatus.PROCESSING);
+        exportJob.setFileName("export.zip");
+        exportJob.setSubFolder("folder");
+
+        new ExportJobWorker(exportJob, streamingPublicationDelivery, "export", blobStoreService,
+                mock(ExportJobRepository.class), new NetexXmlReferenceValidator(true, 100, mock(PrometheusMetricsService.class))).run();
+        return exportJob;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Marshaller;
+import org.hibernate.internal.SessionImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.rutebanken.netex.model.ObjectFactory;
+import org.rutebanken.netex.model.PublicationDeliveryStructure;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
+import org.rutebanken.tiamat.exporter.eviction.LoadedEntitiesListener;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.model.TopographicPlaceTypeEnumeration;
+import org.rutebanken.tiamat.model.Value;
+import org.rutebanken.tiamat.model.tag.Tag;
+import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.netex.mapping.mapper.TagKeyValuesMapper;
+import org.rutebanken.tiamat.repository.TagRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Transactional
+public class ParallelNetexMappingIteratorIntegrationTest extends TiamatIntegrationTest {
+
+    @Autowired
+    private NetexMapper netexMapper;
+
+    @Autowired
+    private TagKeyValuesMapper tagKeyValuesMapper;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private LoadedEntitiesListener loadedEntitiesListener;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void parallelMappingGivesSameOutputAsSequentialMapping() throws Exception {
+        TopographicPlace municipality = new TopographicPlace(new EmbeddableMultilingualString("municipality"));
+        municipality.setTopographicPlaceType(TopographicPlaceTypeEnumeration.MUNICIPALITY);
+        municipality.setNetexId("NSR:TopographicPlace:1");
+        municipality.setVersion(1L);
+        municipality = topographicPlaceRepository.save(municipality);
+
+        for (int i = 0; i < 50; i++) {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("stop place " + i));
+            stopPlace.setNetexId("NSR:StopPlace:" + i);
+            stopPlace.setVersion(1L);
+            stopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(10.0 + i / 100.0, 60.0)));
+            stopPlace.setTopographicPlace(municipality);
+            stopPlace.getKeyValues().put("imported-id", new Value("TEST:StopPlace:" + i));
+            for (int q = 0; q < 3; q++) {
+                Quay quay = new Quay(new EmbeddableMultilingualString("quay " + q));
+                quay.setNetexId("NSR:Quay:" + (i * 10 + q));
+                quay.setVersion(1L);
+                quay.setCentroid(geometryFactory.createPoint(new Coordinate(10.0 + i / 100.0, 60.0 + q / 1000.0)));
+                quay.getKeyValues().put("imported-id", new Value("TEST:Quay:" + (i * 10 + q)));
+                stopPlace.getQuays().add(quay);
+            }
+            stopPlaceRepository.save(stopPlace);
+
+            if (i % 3 == 0) {
+                for (String name : new String[]{"second", "first"}) {
+                    Tag tag = new Tag();
+                    tag.setIdreference(stopPlace.getNetexId());
+                    tag.setName(name);
+                    tag.setCreatedBy("test");
+                    tagRepository.save(tag);
+                }
+            }
+        }
+        stopPlaceRepository.flush();
+        tagRepository.flush();
+        entityManager.clear();
+
+        String sequential = mapAll(new NetexMappingIterator<>(netexMapper, stopPlaceRepository.scrollStopPlaces(),
+                org.rutebanken.netex.model.StopPlace.class, new AtomicInteger(), evictor()));
+        entityManager.clear();
+
+        String parallel = mapAll(new ParallelNetexMappingIterator<>(netexMapper, tagKeyValuesMapper, stopPlaceRepository.scrollStopPlaces(),
+                org.rutebanken.netex.model.StopPlace.class, new AtomicInteger(), evictor(), executorService, 7, 3));
+
+        assertThat(sequential).contains("TAG-1-name", "NSR:TopographicPlace:1", "NSR:Quay:492");
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    private EntitiesEvictor evictor() {
+        return loadedEntitiesListener.startTracking(entityManager.unwrap(SessionImpl.class));
+    }
+
+    private String mapAll(Iterator<org.rutebanken.netex.model.StopPlace> iterator) throws Exception {
+        Marshaller marshaller = JAXBContext.newInstance(PublicationDeliveryStructure.class).createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        ObjectFactory objectFactory = new ObjectFactory();
+
+        StringWriter writer = new StringWriter();
+        while (iterator.hasNext()) {
+            marshaller.marshal(objectFactory.createStopPlace(iterator.next()), writer);
+        }
+        // The topographic place ref is stamped with the time it was mapped
+        return writer.toString().replaceAll(" created=\"[^\"]*\"", "");
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.async;
+
+import ma.glasnost.orika.MapperFacade;
+import org.junit.After;
+import org.junit.Test;
+import org.rutebanken.netex.model.KeyListStructure;
+import org.rutebanken.netex.model.KeyValueStructure;
+import org.rutebanken.tiamat.exporter.eviction.EntitiesEvictor;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.tag.Tag;
+import org.rutebanken.tiamat.netex.mapping.NetexMapper;
+import org.rutebanken.tiamat.netex.mapping.mapper.TagKeyValuesMapper;
+import org.rutebanken.tiamat.repository.TagRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParallelNetexMappingIteratorTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    private final NetexMapper netexMapper = mock(NetexMapper.class);
+
+    private final MapperFacade mapperFacade = mock(MapperFacade.class);
+
+    private final TagRepository tagRepository = mock(TagRepository.class);
+
+    private final TagKeyValuesMapper tagKeyValuesMapper = new TagKeyValuesMapper(tagRepository);
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void keepOrderOfSourceIterator() {
+        when(netexMapper.getFacade()).thenReturn(mapperFacade);
+        when(mapperFacade.map(any(StopPlace.class), eq(org.rutebanken.netex.model.StopPlace.class))).thenAnswer(invocation -> {
+            // Random delay to let batches complete out of order
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            StopPlace stopPlace = invocation.getArgument(0);
+            return new org.rutebanken.netex.model.StopPlace().withId(stopPlace.getNetexId());
+        });
+
+        List<StopPlace> stopPlaces = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("stop " + i));
+            stopPlace.setNetexId("NSR:StopPlace:" + i);
+            stopPlace.getQuays().add(new Quay());
+            stopPlaces.add(stopPlace);
+        }
+
+        List<Object> evicted = new ArrayList<>();
+        EntitiesEvictor evictor = evicted::add;
+        AtomicInteger mappedCount = new AtomicInteger();
+
+        ParallelNetexMappingIterator<StopPlace, org.rutebanken.netex.model.StopPlace> iterator = new ParallelNetexMappingIterator<>(
+                netexMapper, tagKeyValuesMapper, stopPlaces.iterator(), org.rutebanken.netex.model.StopPlace.class, mappedCount, evictor, executorService, 7, 3);
+
+        List<String> actualIds = new ArrayList<>();
+        while (iterator.hasNext()) {
+            actualIds.add(iterator.next().getId());
+        }
+
+        assertThat(actualIds).containsExactlyElementsOf(stopPlaces.stream().map(StopPlace::getNetexId).toList());
+        assertThat(mappedCount.get()).isEqualTo(stopPlaces.size());
+        assertThat(evicted).containsExactlyElementsOf(stopPlaces);
+    }
+
+    @Test
+    public void loadTagsInCallingThreadOncePerBatch() {
+        Thread callingThread = Thread.currentThread();
+        List<Thread> tagLoadingThreads = new ArrayList<>();
+        when(tagRepository.findByIdReferenceIn(any())).thenAnswer(invocation -> {
+            tagLoadingThreads.add(Thread.currentThread());
+            Tag tag = new Tag();
+            tag.setIdreference("NSR:StopPlace:1");
+            tag.setName("tag");
+            return Set.of(tag);
+        });
+
+        when(netexMapper.getFacade()).thenReturn(mapperFacade);
+        when(mapperFacade.map(any(StopPlace.class), eq(org.rutebanken.netex.model.StopPlace.class))).thenAnswer(invocation -> {
+            StopPlace stopPlace = invocation.getArgument(0);
+            org.rutebanken.netex.model.StopPlace netexStopPlace = new org.rutebanken.netex.model.StopPlace()
+                    .withId(stopPlace.getNetexId())
+                    .withKeyList(new KeyListStructure());
+            tagKeyValuesMapper.mapTagsToProperties(stopPlace, netexStopPlace);
+            return netexStopPlace;
+        });
+
+        List<StopPlace> stopPlaces = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            StopPlace stopPlace = new StopPlace();
+            stopPlace.setNetexId("NSR:StopPlace:" + i);
+            stopPlaces.add(stopPlace);
+        }
+
+        ParallelNetexMappingIterator<StopPlace, org.rutebanken.netex.model.StopPlace> iterator = new ParallelNetexMappingIterator<>(
+                netexMapper, tagKeyValuesMapper, stopPlaces.iterator(), org.rutebanken.netex.model.StopPlace.class, new AtomicInteger(), entity -> {}, executorService, 10, 2);
+
+        List<org.rutebanken.netex.model.StopPlace> mapped = new ArrayList<>();
+        iterator.forEachRemaining(mapped::add);
+
+        assertThat(mapped.get(1).getKeyList().getKeyValue()).extracting(KeyValueStructure::getValue).contains("tag");
+        assertThat(mapped.get(2).getKeyList().getKeyValue()).isEmpty();
+        assertThat(tagLoadingThreads).containsExactly(callingThread, callingThread);
+        verify(tagRepository, never()).findByIdReference(any());
+    }
+
+    @Test
+    public void propagateMappingException() {
+        when(netexMapper.getFacade()).thenReturn(mapperFacade);
+        when(mapperFacade.map(any(StopPlace.class), eq(org.rutebanken.netex.model.StopPlace.class)))
+                .thenThrow(new IllegalStateException("cannot map"));
+
+        ParallelNetexMappingIterator<StopPlace, org.rutebanken.netex.model.StopPlace> iterator = new ParallelNetexMappingIterator<>(
+                netexMapper, tagKeyValuesMapper, List.of(new StopPlace()).iterator(), org.rutebanken.netex.model.StopPlace.class, new AtomicInteger(), entity -> {}, executorService, 10, 2);
+
+        assertThatThrownBy(iterator::next)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
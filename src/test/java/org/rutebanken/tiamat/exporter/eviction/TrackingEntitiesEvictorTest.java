@@ -0,0 +1,160 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.exporter.eviction;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.internal.SessionImpl;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Transactional
+public class TrackingEntitiesEvictorTest extends TiamatIntegrationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingEntitiesEvictorTest.class);
+
+    @Autowired
+    private LoadedEntitiesListener loadedEntitiesListener;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Test
+    public void evictStopPlaceAndLoadedQuays() {
+        saveStopPlaces(3, 2);
+
+        SessionImpl session = entityManager.unwrap(SessionImpl.class);
+        TrackingEntitiesEvictor evictor = loadedEntitiesListener.startTracking(session);
+
+        Iterator<StopPlace> iterator = stopPlaceRepository.scrollStopPlaces();
+        int count = 0;
+        while (iterator.hasNext()) {
+            StopPlace stopPlace = iterator.next();
+            List<Quay> quays = new ArrayList<>(stopPlace.getQuays());
+            assertThat(quays).hasSize(2);
+
+            evictor.evictKnownEntitiesFromSession(stopPlace);
+
+            assertThat(session.contains(stopPlace)).isFalse();
+            quays.forEach(quay -> assertThat(session.contains(quay)).isFalse());
+            count++;
+        }
+        assertThat(count).isEqualTo(3);
+        assertThat(session.getPersistenceContext().getNumberOfManagedEntities()).isZero();
+    }
+
+    @Test
+    public void keepEntitiesOfSameTypeAsRootUntilEvictedAsRoot() {
+        saveStopPlaces(2, 0);
+
+        SessionImpl session = entityManager.unwrap(SessionImpl.class);
+        TrackingEntitiesEvictor evictor = loadedEntitiesListener.startTracking(session);
+
+        Iterator<StopPlace> iterator = stopPlaceRepository.scrollStopPlaces();
+        StopPlace first = iterator.next();
+        StopPlace second = iterator.next();
+
+        evictor.evictKnownEntitiesFromSession(first);
+        assertThat(session.contains(first)).isFalse();
+        assertThat(session.contains(second))
+                .as("stop place loaded before the first root was evicted should be kept as pending root")
+                .isTrue();
+
+        evictor.evictKnownEntitiesFromSession(second);
+        assertThat(session.contains(second)).isFalse();
+    }
+
+    /**
+     * Benchmark for eviction of 100k stop places with quays.
+     * Eviction time per entity should stay flat while the number of scrolled entities grows.
+     * Ignored because it takes several minutes to populate the database.
+     */
+    @Ignore
+    @Test
+    public void benchmarkEvictionOfManyStopPlaces() {
+        final int numberOfStopPlaces = 100_000;
+        final int chunkSize = 10_000;
+        saveStopPlaces(numberOfStopPlaces, 2);
+
+        SessionImpl session = entityManager.unwrap(SessionImpl.class);
+        TrackingEntitiesEvictor evictor = loadedEntitiesListener.startTracking(session);
+
+        List<Long> nanosPerChunk = new ArrayList<>();
+        long chunkNanos = 0;
+        int count = 0;
+
+        Iterator<StopPlace> iterator = stopPlaceRepository.scrollStopPlaces();
+        while (iterator.hasNext()) {
+            StopPlace stopPlace = iterator.next();
+            stopPlace.getQuays().forEach(Quay::getNetexId);
+            stopPlace.getKeyValues().size();
+
+            long start = System.nanoTime();
+            evictor.evictKnownEntitiesFromSession(stopPlace);
+            chunkNanos += System.nanoTime() - start;
+
+            if (++count % chunkSize == 0) {
+                logger.info("Evicted {} stop places. Average eviction time for last chunk: {} µs",
+                        count, chunkNanos / chunkSize / 1000.0);
+                nanosPerChunk.add(chunkNanos);
+                chunkNanos = 0;
+            }
+        }
+
+        assertThat(count).isEqualTo(numberOfStopPlaces);
+        assertThat(session.getPersistenceContext().getNumberOfManagedEntities()).isZero();
+
+        // Skip the first chunk, as it includes warmup
+        long secondChunk = nanosPerChunk.get(1);
+        long lastChunk = nanosPerChunk.getLast();
+        assertThat(lastChunk)
+                .as("Eviction cost for the last chunk should not grow with the number of scrolled stop places")
+                .isLessThan(secondChunk * 2);
+    }
+
+    private void saveStopPlaces(int numberOfStopPlaces, int quaysPerStopPlace) {
+        for (int i = 0; i < numberOfStopPlaces; i++) {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("stop place " + i));
+            stopPlace.setVersion(1L);
+            for (int q = 0; q < quaysPerStopPlace; q++) {
+                Quay quay = new Quay(new EmbeddableMultilingualString("quay " + q));
+                quay.setVersion(1L);
+                stopPlace.getQuays().add(quay);
+            }
+            stopPlaceRepository.save(stopPlace);
+            if (i % 1000 == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.general;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlockingWorkLimiterTest {
+
+    @Test
+    public void noPermitsWithPlatformThreads() throws InterruptedException {
+        BlockingWorkLimiter blockingWorkLimiter = new BlockingWorkLimiter(false, 1, 10);
+
+        assertThat(blockingWorkLimiter.tryAcquire()).isTrue();
+        assertThat(blockingWorkLimiter.tryAcquire()).isTrue();
+        assertThat(blockingWorkLimiter.threadFactory("test").newThread(() -> {}).isVirtual()).isFalse();
+    }
+
+    @Test
+    public void rejectWhenNoPermitWithinTimeout() throws InterruptedException {
+        BlockingWorkLimiter blockingWorkLimiter = new BlockingWorkLimiter(true, 1, 10);
+
+        assertThat(blockingWorkLimiter.tryAcquire()).isTrue();
+        assertThat(blockingWorkLimiter.tryAcquire()).isFalse();
+
+        blockingWorkLimiter.release();
+        assertThat(blockingWorkLimiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void defaultPermitsLeaveConnectionsForJobs() throws InterruptedException {
+        BlockingWorkLimiter blockingWorkLimiter = new BlockingWorkLimiter(true, 0, 10, 10);
+
+        for (int i = 0; i < 10 - BlockingWorkLimiter.RESERVED_CONNECTIONS; i++) {
+            assertThat(blockingWorkLimiter.tryAcquire()).isTrue();
+        }
+        assertThat(blockingWorkLimiter.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void virtualThreads() {
+        BlockingWorkLimiter blockingWorkLimiter = new BlockingWorkLimiter(true, 1, 10);
+
+        Thread thread = blockingWorkLimiter.threadFactory("exporter").newThread(() -> {});
+        assertThat(thread.isVirtual()).isTrue();
+        assertThat(thread.getName()).isEqualTo("exporter-1");
+    }
+}
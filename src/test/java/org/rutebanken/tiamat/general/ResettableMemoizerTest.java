@@ -0,0 +1,152 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.general;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResettableMemoizerTest {
+
+    @After
+    public void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    public void loadOnlyOnceUntilReset() {
+        AtomicInteger loads = new AtomicInteger();
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet);
+
+        assertThat(memoizer.get()).isEqualTo(1);
+        assertThat(memoizer.get()).isEqualTo(1);
+
+        memoizer.reset();
+        assertThat(memoizer.get()).isEqualTo(2);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void servePreviousValueUntilRefreshed() {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Timer loadTimer = meterRegistry.timer("load");
+        Timer refreshTimer = meterRegistry.timer("refresh");
+
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet, loadTimer, refreshTimer, pendingRefreshes::add);
+
+        assertThat(memoizer.get()).isEqualTo(1);
+
+        memoizer.refresh();
+        assertThat(memoizer.get()).as("value before refresh has completed").isEqualTo(1);
+
+        pendingRefreshes.forEach(Runnable::run);
+        assertThat(memoizer.get()).as("value after refresh").isEqualTo(2);
+
+        assertThat(loadTimer.count()).isEqualTo(1);
+        assertThat(refreshTimer.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void discardRefreshedValueWhenResetWhileRefreshing() {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet, null, null, pendingRefreshes::add);
+
+        assertThat(memoizer.get()).isEqualTo(1);
+        memoizer.refresh();
+        memoizer.reset();
+        assertThat(memoizer.get()).isEqualTo(2);
+
+        pendingRefreshes.forEach(Runnable::run);
+        assertThat(memoizer.get()).as("value loaded after reset is kept").isEqualTo(2);
+    }
+
+    @Test
+    public void loadOnceAfterCommit() {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet, null, null, pendingRefreshes::add);
+        assertThat(memoizer.get()).isEqualTo(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        memoizer.refreshAfterCommit();
+        memoizer.refreshAfterCommit();
+        commit();
+
+        assertThat(memoizer.get()).as("value before refresh has completed").isEqualTo(1);
+        pendingRefreshes.forEach(Runnable::run);
+        assertThat(memoizer.get()).isEqualTo(2);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void transactionSeesOwnValueUntilCommitted() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet, null, null, pendingRefreshes::add);
+        assertThat(memoizer.get()).isEqualTo(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        memoizer.refreshAfterCommit();
+
+        assertThat(memoizer.get()).as("value in transaction").isEqualTo(2);
+        assertThat(memoizer.get()).as("value in transaction is loaded once").isEqualTo(2);
+        assertThat(CompletableFuture.supplyAsync(memoizer::get).get()).as("value in other thread").isEqualTo(1);
+
+        commit();
+        pendingRefreshes.forEach(Runnable::run);
+        assertThat(memoizer.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void resetWhenRefreshingAfterCommitWithoutTransaction() {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> pendingRefreshes = new ArrayList<>();
+        ResettableMemoizer<Integer> memoizer = new ResettableMemoizer<>(loads::incrementAndGet, null, null, pendingRefreshes::add);
+        assertThat(memoizer.get()).isEqualTo(1);
+
+        memoizer.refreshAfterCommit();
+
+        assertThat(memoizer.get()).isEqualTo(2);
+        assertThat(pendingRefreshes).isEmpty();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package org.rutebanken.tiamat.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.LocalMapStats;
+import com.hazelcast.nearcache.NearCacheStats;
+import org.junit.Test;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SecondLevelCacheMetricsTest {
+
+    @Test
+    public void registerHitRatioGauges() {
+        IMap<Object, Object> map = mockMap(80, 100, 30, 10);
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.getMap(anyString())).thenReturn(map);
+        PrometheusMetricsService metricsService = new PrometheusMetricsService();
+
+        new SecondLevelCacheMetrics(hazelcastInstance, metricsService, true).registerGauges();
+
+        String topographicPlaceRegion = SecondLevelCacheRegion.TOPOGRAPHIC_PLACE.getRegionName();
+        assertThat(metricsService.get("app.tiamat.cache.owned.partitions.hit.ratio").tag("region", topographicPlaceRegion).gauge().value())
+                .isEqualTo(0.8);
+        assertThat(metricsService.get("app.tiamat.cache.hit.ratio").tag("region", topographicPlaceRegion).gauge().value())
+                .isEqualTo(0.75);
+        assertThat(metricsService.get("app.tiamat.cache.owned.partitions.hit.ratio").tag("region", SecondLevelCacheRegion.STOP_PLACE.getRegionName()).gauge())
+                .isNotNull();
+        assertThat(metricsService.find("app.tiamat.cache.hit.ratio").tag("region", SecondLevelCacheRegion.STOP_PLACE.getRegionName()).gauge())
+                .as("stop places have no near cache")
+                .isNull();
+        assertThat(metricsService.find("app.tiamat.cache.owned.partitions.hit.ratio").tag("region", SecondLevelCacheRegion.KEY_VALUES.getRegionName()).gauge())
+                .isNull();
+    }
+
+    @Test
+    public void noGaugesWithoutSecondLevelCache() {
+        PrometheusMetricsService metricsService = new PrometheusMetricsService();
+
+        new SecondLevelCacheMetrics(mock(HazelcastInstance.class), metricsService, false).registerGauges();
+
+        assertThat(metricsService.find("app.tiamat.cache.hit.ratio").gauges()).isEmpty();
+        assertThat(metricsService.find("app.tiamat.cache.owned.partitions.hit.ratio").gauges()).isEmpty();
+    }
+
+    @Test
+    public void hitRatioWithoutRequests() {
+        assertThat(SecondLevelCacheMetrics.ownedPartitionsHitRatio(mockMap(0, 0, 0, 0))).isZero();
+        assertThat(SecondLevelCacheMetrics.nearCacheHitRatio(mockMap(0, 0, 0, 0))).isZero();
+    }
+
+    @SuppressWarnings("unchecked")
+    private IMap<Object, Object> mockMap(long hits, long gets, long nearCacheHits, long nearCacheMisses) {
+        NearCacheStats nearCacheStats = mock(NearCacheStats.class);
+        when(nearCacheStats.getHits()).thenReturn(nearCacheHits);
+        when(nearCacheStats.getMisses()).thenReturn(nearCacheMisses);
+
+        LocalMapStats localMapStats = mock(LocalMapStats.class);
+        when(localMapStats.getHits()).thenReturn(hits);
+        when(localMapStats.getGetOperationCount()).thenReturn(gets);
+        when(localMapStats.getNearCacheStats()).thenReturn(nearCacheStats);
+
+        IMap<Object, Object> map = mock(IMap.class);
+        when(map.getLocalMapStats()).thenReturn(localMapStats);
+        return map;
+    }
+}
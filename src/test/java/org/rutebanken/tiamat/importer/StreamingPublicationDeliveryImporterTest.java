@@ -0,0 +1,260 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rutebanken.netex.model.KeyListStructure;
+import org.rutebanken.netex.model.KeyValueStructure;
+import org.rutebanken.netex.model.LocationStructure;
+import org.rutebanken.netex.model.MultilingualString;
+import org.rutebanken.netex.model.ObjectFactory;
+import org.rutebanken.netex.model.PathLink;
+import org.rutebanken.netex.model.PublicationDeliveryStructure;
+import org.rutebanken.netex.model.SimplePoint_VersionStructure;
+import org.rutebanken.netex.model.SiteFrame;
+import org.rutebanken.netex.model.SiteRefStructure;
+import org.rutebanken.netex.model.StopPlace;
+import org.rutebanken.netex.model.TariffZone;
+import org.rutebanken.netex.model.TariffZonesInFrame_RelStructure;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.importer.handler.GroupOfTariffZonesImportHandler;
+import org.rutebanken.tiamat.importer.handler.ParkingsImportHandler;
+import org.rutebanken.tiamat.importer.handler.PathLinkImportHandler;
+import org.rutebanken.tiamat.importer.handler.StopPlaceImportHandler;
+import org.rutebanken.tiamat.importer.handler.TariffZoneImportHandler;
+import org.rutebanken.tiamat.importer.handler.TopographicPlaceImportHandler;
+import org.rutebanken.tiamat.netex.mapping.PublicationDeliveryHelper;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.PublicationDeliveryTestHelper;
+import org.rutebanken.tiamat.rest.netex.publicationdelivery.async.PublicationDeliveryPartialUnmarshaller;
+import org.rutebanken.tiamat.service.batch.BackgroundJobs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.ORIGINAL_ID_KEY;
+import static org.rutebanken.tiamat.netex.mapping.mapper.StopPlaceMapper.IS_PARENT_STOP_PLACE;
+
+public class StreamingPublicationDeliveryImporterTest extends TiamatIntegrationTest {
+
+    @Autowired
+    private PublicationDeliveryImporter publicationDeliveryImporter;
+
+    @Autowired
+    private PublicationDeliveryHelper publicationDeliveryHelper;
+
+    @Autowired
+    private PublicationDeliveryPartialUnmarshaller publicationDeliveryPartialUnmarshaller;
+
+    @Autowired
+    private PublicationDeliveryTestHelper publicationDeliveryTestHelper;
+
+    @Autowired
+    private TopographicPlaceImportHandler topographicPlaceImportHandler;
+
+    @Autowired
+    private TariffZoneImportHandler tariffZoneImportHandler;
+
+    @Autowired
+    private GroupOfTariffZonesImportHandler groupOfTariffZonesImportHandler;
+
+    @Autowired
+    private StopPlaceImportHandler stopPlaceImportHandler;
+
+    @Autowired
+    private ParkingsImportHandler parkingsImportHandler;
+
+    @Autowired
+    private PathLinkImportHandler pathLinkImportHandler;
+
+    @Autowired
+    private BackgroundJobs backgroundJobs;
+
+    @Before
+    public void setUp() {
+        setUpSecurityContext();
+    }
+
+    @Test
+    public void importStopPlacesInSeveralBatches() throws Exception {
+        StreamingPublicationDeliveryImporter importer = new StreamingPublicationDeliveryImporter(publicationDeliveryImporter,
+                publicationDeliveryHelper, topographicPlaceImportHandler, tariffZoneImportHandler, groupOfTariffZonesImportHandler,
+                stopPlaceImportHandler, parkingsImportHandler, pathLinkImportHandler, backgroundJobs, 2);
+
+        List<StopPlace> stopPlaces = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            stopPlaces.add(stopPlace("RUT:StopPlace:" + i, "Batched stop " + i, i));
+        }
+
+        PublicationDeliveryStructure publicationDelivery = publicationDeliveryTestHelper.createPublicationDeliveryWithStopPlace(stopPlaces.toArray(new StopPlace[0]));
+
+        StreamingImportProgress progress = importer.importPublicationDelivery(
+                publicationDeliveryPartialUnmarshaller.unmarshalInOnePass(publicationDeliveryTestHelper.toInputStream(publicationDelivery)), null);
+
+        assertThat(progress.getStopPlacesReceived()).isEqualTo(5);
+        assertThat(progress.getStopPlacesImported()).isEqualTo(5);
+        assertThat(progress.getBatches()).isEqualTo(3);
+
+        for (StopPlace stopPlace : stopPlaces) {
+            assertThat(stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(stopPlace.getId())))
+                    .as("stop place imported for " + stopPlace.getId())
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    public void keepParentAndChildrenInOneBatchWhenSplitByBatchBoundary() throws Exception {
+        StopPlaceImportHandler capturingStopPlaceImportHandler = mock(StopPlaceImportHandler.class);
+        List<List<String>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            SiteFrame batchSiteFrame = invocation.getArgument(0);
+            batches.add(batchSiteFrame.getStopPlaces().getStopPlace().stream().map(StopPlace::getId).collect(toList()));
+            return null;
+        }).when(capturingStopPlaceImportHandler).handleStops(any(), any(), any(AtomicInteger.class), any());
+
+        StreamingPublicationDeliveryImporter importer = new StreamingPublicationDeliveryImporter(publicationDeliveryImporter,
+                publicationDeliveryHelper, mock(TopographicPlaceImportHandler.class), mock(TariffZoneImportHandler.class),
+                mock(GroupOfTariffZonesImportHandler.class), capturingStopPlaceImportHandler, mock(ParkingsImportHandler.class),
+                mock(PathLinkImportHandler.class), mock(BackgroundJobs.class), 2);
+
+        String parentId = "RUT:StopPlace:10";
+
+        StopPlace child1 = stopPlace("RUT:StopPlace:11", "Child 1", 1)
+                .withParentSiteRef(new SiteRefStructure().withRef(parentId).withVersion("1"));
+        StopPlace plain1 = stopPlace("RUT:StopPlace:21", "Plain 1", 2);
+        StopPlace parent = stopPlace(parentId, "Parent", 3)
+                .withKeyList(new KeyListStructure().withKeyValue(new KeyValueStructure().withKey(IS_PARENT_STOP_PLACE).withValue("true")));
+        StopPlace plain2 = stopPlace("RUT:StopPlace:22", "Plain 2", 4);
+        StopPlace child2 = stopPlace("RUT:StopPlace:12", "Child 2", 5)
+                .withParentSiteRef(new SiteRefStructure().withRef(parentId).withVersion("1"));
+        StopPlace plain3 = stopPlace("RUT:StopPlace:23", "Plain 3", 6);
+
+        PublicationDeliveryStructure publicationDelivery = publicationDeliveryTestHelper.createPublicationDeliveryWithStopPlace(
+                child1, plain1, parent, plain2, child2, plain3);
+
+        StreamingImportProgress progress = importer.importPublicationDelivery(
+                publicationDeliveryPartialUnmarshaller.unmarshalInOnePass(publicationDeliveryTestHelper.toInputStream(publicationDelivery)), null);
+
+        assertThat(progress.getStopPlacesReceived()).isEqualTo(6);
+        assertThat(batches).containsExactly(
+                List.of(plain1.getId(), plain2.getId()),
+                List.of(plain3.getId()),
+                List.of(child1.getId(), parent.getId(), child2.getId()));
+    }
+
+    @Test
+    public void importTariffZonesAndPathLinksInBatchesFromTheQueue() throws Exception {
+        TariffZoneImportHandler capturingTariffZoneImportHandler = mock(TariffZoneImportHandler.class);
+        PathLinkImportHandler capturingPathLinkImportHandler = mock(PathLinkImportHandler.class);
+        GroupOfTariffZonesImportHandler capturingGroupOfTariffZonesImportHandler = mock(GroupOfTariffZonesImportHandler.class);
+        List<List<String>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            SiteFrame batchSiteFrame = invocation.getArgument(0);
+            batches.add(batchSiteFrame.getTariffZones().getTariffZone().stream().map(zone -> zone.getValue().getId()).collect(toList()));
+            return null;
+        }).when(capturingTariffZoneImportHandler).handleTariffZones(any(), any(), any(AtomicInteger.class), any());
+        doAnswer(invocation -> {
+            SiteFrame batchSiteFrame = invocation.getArgument(0);
+            batches.add(batchSiteFrame.getPathLinks().getPathLink().stream().map(PathLink::getId).collect(toList()));
+            return null;
+        }).when(capturingPathLinkImportHandler).handlePathLinks(any(), any(), any(AtomicInteger.class), any());
+        List<SiteFrame> completeSiteFrames = new ArrayList<>();
+        doAnswer(invocation -> {
+            completeSiteFrames.add(invocation.getArgument(0));
+            return null;
+        }).when(capturingGroupOfTariffZonesImportHandler).handleGroupOfTariffZones(any(), any(), any());
+
+        StreamingPublicationDeliveryImporter importer = new StreamingPublicationDeliveryImporter(publicationDeliveryImporter,
+                publicationDeliveryHelper, mock(TopographicPlaceImportHandler.class), capturingTariffZoneImportHandler,
+                capturingGroupOfTariffZonesImportHandler, mock(StopPlaceImportHandler.class), mock(ParkingsImportHandler.class),
+                capturingPathLinkImportHandler, mock(BackgroundJobs.class), 2);
+
+        PublicationDeliveryStructure publicationDelivery = publicationDeliveryTestHelper.createPublicationDeliveryWithStopPlace(
+                stopPlace("RUT:StopPlace:1", "Stop", 1));
+        ObjectFactory objectFactory = new ObjectFactory();
+        publicationDeliveryTestHelper.findSiteFrame(publicationDelivery)
+                .withTariffZones(new TariffZonesInFrame_RelStructure().withTariffZone(
+                        objectFactory.createTariffZone(tariffZone("RUT:TariffZone:1")),
+                        objectFactory.createTariffZone(tariffZone("RUT:TariffZone:2")),
+                        objectFactory.createTariffZone(tariffZone("RUT:TariffZone:3"))));
+        publicationDeliveryTestHelper.addPathLinks(publicationDelivery, new PathLink().withId("RUT:PathLink:1").withVersion("1"));
+
+        importer.importPublicationDelivery(
+                publicationDeliveryPartialUnmarshaller.unmarshalInOnePass(publicationDeliveryTestHelper.toInputStream(publicationDelivery)), null);
+
+        // Tariff zones and path links are imported in the order of the site frame
+        assertThat(batches).containsExactlyInAnyOrder(
+                List.of("RUT:TariffZone:1", "RUT:TariffZone:2"),
+                List.of("RUT:TariffZone:3"),
+                List.of("RUT:PathLink:1"));
+        assertThat(completeSiteFrames).hasSize(1);
+        assertThat(completeSiteFrames.getFirst().getTariffZones()).as("tariff zones are not held in the site frame").isNull();
+        assertThat(completeSiteFrames.getFirst().getPathLinks()).as("path links are not held in the site frame").isNull();
+    }
+
+    private TariffZone tariffZone(String id) {
+        return new TariffZone()
+                .withId(id)
+                .withVersion("1")
+                .withName(new MultilingualString().withValue(id));
+    }
+
+    private StopPlace stopPlace(String id, String name, int offset) {
+        return new StopPlace()
+                .withId(id)
+                .withVersion("1")
+                .withName(new MultilingualString().withValue(name))
+                .withCentroid(new SimplePoint_VersionStructure()
+                        .withLocation(new LocationStructure()
+                                .withLatitude(new BigDecimal("60").add(new BigDecimal(offset)))
+                                .withLongitude(new BigDecimal("10").add(new BigDecimal(offset)))));
+    }
+
+    private void setUpSecurityContext() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "testuser");
+        claims.put("scope", "ROLE_USER");
+
+        Jwt jwt = new Jwt(
+                "tokenValue",
+                Instant.now(),
+                Instant.now().plusSeconds(3600),
+                Map.of("alg", "none"),
+                claims
+        );
+
+        final AbstractAuthenticationToken authToken = new JwtAuthenticationToken(jwt, Collections.singleton(new SimpleGrantedAuthority("ROLE_EDIT_STOPS")));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+}
@@ -25,13 +25,22 @@ import org.rutebanken.tiamat.importer.AlternativeStopTypes;
 import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
 import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.model.StopTypeEnumeration;
+import org.rutebanken.tiamat.repository.StopPlaceLocation;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -43,7 +52,7 @@ public class NearbyStopPlaceFinderTest {
 
     @Test
     public void nullCentroid() throws Exception {
-        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes);
+        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes, new NearbyStopPlaceIndex(mock(StopPlaceRepository.class)));
         StopPlace stopPlace = new StopPlace();
         StopPlace actual = nearbyStopPlaceFinder.find(stopPlace);
         assertThat(actual).isNull();
@@ -51,7 +60,7 @@ public class NearbyStopPlaceFinderTest {
 
     @Test
     public void nullPoint() throws Exception {
-        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes);
+        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes, new NearbyStopPlaceIndex(mock(StopPlaceRepository.class)));
         StopPlace stopPlace = new StopPlace();
         StopPlace actual = nearbyStopPlaceFinder.find(stopPlace);
         assertThat(actual).isNull();
@@ -59,7 +68,7 @@ public class NearbyStopPlaceFinderTest {
 
     @Test
     public void nullType() throws Exception {
-        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes);
+        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(mock(StopPlaceRepository.class), 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes, new NearbyStopPlaceIndex(mock(StopPlaceRepository.class)));
         StopPlace stopPlace = new StopPlace();
         nearbyStopPlaceFinder.update(stopPlace);
     }
@@ -68,7 +77,7 @@ public class NearbyStopPlaceFinderTest {
     public void leakingEnvelope() throws Exception {
 
         StopPlaceRepository stopPlaceRepository = mock(StopPlaceRepository.class);
-        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(stopPlaceRepository, 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes);
+        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(stopPlaceRepository, 0, 0, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes, new NearbyStopPlaceIndex(stopPlaceRepository));
 
         String stopPlaceId = "NSR:StopPlace:1";
 
@@ -87,4 +96,41 @@ public class NearbyStopPlaceFinderTest {
 
         assertThat(actualEnvelope).isEqualTo(envelope);
     }
+
+    @Test
+    public void findFromIndexWithoutQueryingForEachStop() {
+
+        StopPlaceRepository stopPlaceRepository = mock(StopPlaceRepository.class);
+        NearbyStopPlaceIndex nearbyStopPlaceIndex = new NearbyStopPlaceIndex(stopPlaceRepository);
+        NearbyStopPlaceFinder nearbyStopPlaceFinder = new NearbyStopPlaceFinder(stopPlaceRepository, 100, 1, TimeUnit.DAYS, periodicCacheLogger, alternativeTypes, nearbyStopPlaceIndex);
+
+        StopPlace incomingStopPlace = new StopPlace(new EmbeddableMultilingualString("Rautatientori"));
+        incomingStopPlace.setStopPlaceType(StopTypeEnumeration.ONSTREET_BUS);
+        incomingStopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(24.9413, 60.1708)));
+
+        StopPlace savedStopPlace = new StopPlace(new EmbeddableMultilingualString("Rautatientori"));
+        savedStopPlace.setNetexId("NSR:StopPlace:2");
+        savedStopPlace.setStopPlaceType(StopTypeEnumeration.BUS_STATION);
+        savedStopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(24.94135, 60.17085)));
+
+        when(stopPlaceRepository.findStopPlaceLocations(isA(Envelope.class), isA(Instant.class)))
+                .thenReturn(List.of(new StopPlaceLocation("NSR:StopPlace:1", 24.95, 60.18, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori")));
+        when(stopPlaceRepository.findFirstByNetexIdOrderByVersionDesc("NSR:StopPlace:2")).thenReturn(savedStopPlace);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            nearbyStopPlaceIndex.load(List.of(incomingStopPlace));
+            assertThat(nearbyStopPlaceFinder.find(incomingStopPlace)).isNull();
+
+            nearbyStopPlaceFinder.update(savedStopPlace);
+            assertThat(nearbyStopPlaceFinder.find(incomingStopPlace)).isSameAs(savedStopPlace);
+        } finally {
+            TransactionSynchronizationManager.unbindResourceIfPossible(nearbyStopPlaceIndex);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(stopPlaceRepository, never()).findNearbyStopPlace(any(), anyString(), any());
+        // The matched stop place is fetched in the session of the caller, not kept in the index
+        verify(stopPlaceRepository, times(1)).findFirstByNetexIdOrderByVersionDesc(anyString());
+    }
 }
@@ -0,0 +1,234 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer.finder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.rutebanken.tiamat.config.GeometryFactoryConfig;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.SiteRefStructure;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.StopTypeEnumeration;
+import org.rutebanken.tiamat.model.ValidBetween;
+import org.rutebanken.tiamat.repository.StopPlaceLocation;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NearbyStopPlaceIndexTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactoryConfig().geometryFactory();
+
+    private final StopPlaceRepository stopPlaceRepository = mock(StopPlaceRepository.class);
+
+    private final NearbyStopPlaceIndex nearbyStopPlaceIndex = new NearbyStopPlaceIndex(stopPlaceRepository);
+
+    private final Envelope envelope = new Envelope(24.93, 24.95, 60.16, 60.18);
+
+    @Before
+    public void initSynchronization() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void clearSynchronization() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(nearbyStopPlaceIndex);
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void coversEnvelopeAroundIncomingStopPlaces() {
+        load();
+
+        assertThat(nearbyStopPlaceIndex.covers(envelope)).isTrue();
+        assertThat(nearbyStopPlaceIndex.covers(new Envelope(24.0, 25.0, 60.0, 61.0))).isFalse();
+        assertThatThrownBy(() -> nearbyStopPlaceIndex.findNearbyStopPlace(new Envelope(24.0, 25.0, 60.0, 61.0), StopTypeEnumeration.ONSTREET_BUS))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void notCoveredWithoutLoading() {
+        assertThat(nearbyStopPlaceIndex.covers(envelope)).isFalse();
+    }
+
+    @Test
+    public void findMostSimilarNameOfType() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"),
+                new StopPlaceLocation("NSR:StopPlace:2", 24.942, 60.172, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori 2"),
+                new StopPlaceLocation("NSR:StopPlace:3", 24.943, 60.173, StopTypeEnumeration.BUS_STATION, "Rautatientori"),
+                new StopPlaceLocation("NSR:StopPlace:4", 24.97, 60.173, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "rautatientori", StopTypeEnumeration.ONSTREET_BUS)).isEqualTo("NSR:StopPlace:1");
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Rautatientori", StopTypeEnumeration.BUS_STATION)).isEqualTo("NSR:StopPlace:3");
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Kamppi", StopTypeEnumeration.ONSTREET_BUS)).isNull();
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Rautatientori", StopTypeEnumeration.TRAM_STOP)).isNull();
+    }
+
+    @Test
+    public void findSameName() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori 2"),
+                new StopPlaceLocation("NSR:StopPlace:2", 24.942, 60.172, null, "Rautatientori"));
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Rautatientori")).isEqualTo("NSR:StopPlace:2");
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "rautatientori")).isNull();
+    }
+
+    @Test
+    public void findByTypeOnlyWithinEnvelope() {
+        load(new StopPlaceLocation("NSR:StopPlace:2", 24.941, 60.171, StopTypeEnumeration.AIRPORT, "B"),
+                new StopPlaceLocation("NSR:StopPlace:1", 24.949, 60.179, StopTypeEnumeration.AIRPORT, "A"),
+                new StopPlaceLocation("NSR:StopPlace:3", 24.95, 60.17, StopTypeEnumeration.AIRPORT, "On the boundary"),
+                new StopPlaceLocation("NSR:StopPlace:4", 24.942, 60.172, StopTypeEnumeration.RAIL_STATION, "Rail"));
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.AIRPORT))
+                .containsExactly("NSR:StopPlace:1", "NSR:StopPlace:2");
+    }
+
+    @Test
+    public void updateWithSavedStopPlace() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+
+        StopPlace savedStopPlace = stopPlace("NSR:StopPlace:1", "Kamppi", 24.932, 60.169);
+        nearbyStopPlaceIndex.update(savedStopPlace);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Rautatientori", StopTypeEnumeration.ONSTREET_BUS)).isNull();
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(new Envelope(24.93, 24.935, 60.165, 60.17), "Kamppi", StopTypeEnumeration.ONSTREET_BUS))
+                .isEqualTo("NSR:StopPlace:1");
+    }
+
+    @Test
+    public void removeTerminatedStopPlace() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+
+        StopPlace terminatedStopPlace = stopPlace("NSR:StopPlace:1", "Rautatientori", 24.941, 60.171);
+        terminatedStopPlace.setValidBetween(new ValidBetween(Instant.now().minus(1, ChronoUnit.DAYS), Instant.now().minusSeconds(1)));
+        nearbyStopPlaceIndex.update(terminatedStopPlace);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS)).isEmpty();
+    }
+
+    @Test
+    public void doNotAddStopPlaceValidInTheFuture() {
+        load();
+
+        StopPlace futureStopPlace = stopPlace("NSR:StopPlace:1", "Rautatientori", 24.941, 60.171);
+        futureStopPlace.setValidBetween(new ValidBetween(Instant.now().plus(1, ChronoUnit.DAYS)));
+        nearbyStopPlaceIndex.update(futureStopPlace);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS)).isEmpty();
+    }
+
+    @Test
+    public void useValidityOfParentForChildStopPlace() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+
+        StopPlace terminatedParent = stopPlace("NSR:StopPlace:10", "Rautatientori", 24.941, 60.171);
+        terminatedParent.setValidBetween(new ValidBetween(Instant.now().minus(1, ChronoUnit.DAYS), Instant.now().minusSeconds(1)));
+        when(stopPlaceRepository.findFirstByNetexIdAndVersion("NSR:StopPlace:10", 2L)).thenReturn(terminatedParent);
+
+        StopPlace child = stopPlace("NSR:StopPlace:1", "Rautatientori", 24.941, 60.171);
+        child.setParentSiteRef(new SiteRefStructure("NSR:StopPlace:10", "2"));
+        nearbyStopPlaceIndex.update(child);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS)).isEmpty();
+
+        StopPlace parent = stopPlace("NSR:StopPlace:10", "Rautatientori", 24.941, 60.171);
+        parent.setParentStopPlace(true);
+        parent.setValidBetween(new ValidBetween(Instant.now().minus(1, ChronoUnit.DAYS)));
+        StopPlace childOfValidParent = stopPlace("NSR:StopPlace:1", "Rautatientori", 24.941, 60.171);
+        childOfValidParent.setValidBetween(new ValidBetween(Instant.now().minus(1, ChronoUnit.DAYS), Instant.now().minusSeconds(1)));
+        parent.getChildren().add(childOfValidParent);
+        nearbyStopPlaceIndex.update(parent);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS))
+                .containsExactly("NSR:StopPlace:1", "NSR:StopPlace:10");
+    }
+
+    @Test
+    public void undoUpdatesOfRolledBackInnerTransaction() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+        nearbyStopPlaceIndex.update(stopPlace("NSR:StopPlace:2", "Hakaniemi", 24.945, 60.165));
+
+        List<TransactionSynchronization> outer = suspendSynchronization();
+        nearbyStopPlaceIndex.update(stopPlace("NSR:StopPlace:1", "Kamppi", 24.932, 60.169));
+        nearbyStopPlaceIndex.update(stopPlace("NSR:StopPlace:1", "Kamppi 2", 24.933, 60.169));
+        nearbyStopPlaceIndex.update(stopPlace("NSR:StopPlace:3", "Kallio", 24.946, 60.176));
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS))
+                .containsExactly("NSR:StopPlace:1", "NSR:StopPlace:2", "NSR:StopPlace:3");
+        completeAndResume(TransactionSynchronization.STATUS_ROLLED_BACK, outer);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Rautatientori", StopTypeEnumeration.ONSTREET_BUS)).isEqualTo("NSR:StopPlace:1");
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Kamppi 2", StopTypeEnumeration.ONSTREET_BUS)).isNull();
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Hakaniemi", StopTypeEnumeration.ONSTREET_BUS)).isEqualTo("NSR:StopPlace:2");
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, StopTypeEnumeration.ONSTREET_BUS))
+                .containsExactly("NSR:StopPlace:1", "NSR:StopPlace:2");
+    }
+
+    @Test
+    public void keepUpdatesOfCommittedInnerTransaction() {
+        load(new StopPlaceLocation("NSR:StopPlace:1", 24.941, 60.171, StopTypeEnumeration.ONSTREET_BUS, "Rautatientori"));
+
+        List<TransactionSynchronization> outer = suspendSynchronization();
+        nearbyStopPlaceIndex.update(stopPlace("NSR:StopPlace:1", "Kamppi", 24.932, 60.169));
+        completeAndResume(TransactionSynchronization.STATUS_COMMITTED, outer);
+
+        assertThat(nearbyStopPlaceIndex.findNearbyStopPlace(envelope, "Kamppi", StopTypeEnumeration.ONSTREET_BUS)).isEqualTo("NSR:StopPlace:1");
+    }
+
+    /**
+     * Like an inner transaction with propagation REQUIRES_NEW. The index stays bound, but the synchronizations are the inner ones.
+     */
+    private List<TransactionSynchronization> suspendSynchronization() {
+        List<TransactionSynchronization> suspended = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        return suspended;
+    }
+
+    private void completeAndResume(int status, List<TransactionSynchronization> suspended) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        suspended.forEach(TransactionSynchronizationManager::registerSynchronization);
+    }
+
+    private void load(StopPlaceLocation... existingStopPlaces) {
+        when(stopPlaceRepository.findStopPlaceLocations(any(), any())).thenReturn(List.of(existingStopPlaces));
+        nearbyStopPlaceIndex.load(List.of(stopPlace(null, "Incoming", 24.94, 60.17)));
+    }
+
+    private StopPlace stopPlace(String netexId, String name, double x, double y) {
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString(name));
+        stopPlace.setNetexId(netexId);
+        stopPlace.setStopPlaceType(StopTypeEnumeration.ONSTREET_BUS);
+        stopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(x, y)));
+        return stopPlace;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer.finder;
+
+import org.junit.Test;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.ValidBetween;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Transactional
+public class StopPlaceByIdFinderTest extends TiamatIntegrationTest {
+
+    @Autowired
+    private StopPlaceByIdFinder stopPlaceByIdFinder;
+
+    @Test
+    public void findStopPlacesLikeOneByOne() {
+        StopPlace first = createSavedStopPlace("First", "TST:StopPlace:1", "TST:Quay:1");
+        StopPlace second = createSavedStopPlace("Second", "TST:StopPlace:2", "TST:Quay:2");
+
+        StopPlace byNetexId = new StopPlace(new EmbeddableMultilingualString("By netex ID"));
+        byNetexId.setNetexId(first.getNetexId());
+
+        StopPlace byQuayNetexId = new StopPlace(new EmbeddableMultilingualString("By quay netex ID"));
+        Quay quayWithNetexId = new Quay();
+        quayWithNetexId.setNetexId(second.getQuays().iterator().next().getNetexId());
+        byQuayNetexId.getQuays().add(quayWithNetexId);
+
+        StopPlace byOriginalId = new StopPlace(new EmbeddableMultilingualString("By original ID"));
+        byOriginalId.getOriginalIds().add("TST:StopPlace:2");
+
+        StopPlace byQuayOriginalId = new StopPlace(new EmbeddableMultilingualString("By quay original ID"));
+        Quay quayWithOriginalId = new Quay();
+        quayWithOriginalId.getOriginalIds().add("TST:Quay:1");
+        byQuayOriginalId.getQuays().add(quayWithOriginalId);
+
+        StopPlace notFound = new StopPlace(new EmbeddableMultilingualString("Not found"));
+        notFound.getOriginalIds().add("TST:StopPlace:3");
+
+        List<StopPlace> incomingStopPlaces = List.of(byNetexId, byQuayNetexId, byOriginalId, byQuayOriginalId, notFound);
+
+        List<List<StopPlace>> found = stopPlaceByIdFinder.findStopPlaces(incomingStopPlaces);
+
+        assertThat(found).hasSize(incomingStopPlaces.size());
+        assertThat(netexIds(found.get(0))).containsExactly(first.getNetexId());
+        assertThat(netexIds(found.get(1))).containsExactly(second.getNetexId());
+        assertThat(netexIds(found.get(2))).containsExactly(second.getNetexId());
+        assertThat(netexIds(found.get(3))).containsExactly(first.getNetexId());
+        assertThat(found.get(4)).isEmpty();
+
+        for (int i = 0; i < incomingStopPlaces.size(); i++) {
+            assertThat(netexIds(found.get(i))).isEqualTo(netexIds(stopPlaceByIdFinder.findStopPlace(incomingStopPlaces.get(i))));
+        }
+    }
+
+    private StopPlace createSavedStopPlace(String name, String originalId, String quayOriginalId) {
+        Quay quay = new Quay(new EmbeddableMultilingualString(name));
+        quay.getOriginalIds().add(quayOriginalId);
+        quayRepository.save(quay);
+
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString(name));
+        stopPlace.getOriginalIds().add(originalId);
+        stopPlace.setValidBetween(new ValidBetween(Instant.EPOCH));
+        stopPlace.getQuays().add(quay);
+        return stopPlaceRepository.save(stopPlace);
+    }
+
+    private List<String> netexIds(List<StopPlace> stopPlaces) {
+        return stopPlaces.stream().map(StopPlace::getNetexId).collect(toList());
+    }
+}
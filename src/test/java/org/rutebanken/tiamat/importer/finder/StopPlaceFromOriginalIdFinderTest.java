@@ -22,15 +22,21 @@ import org.rutebanken.tiamat.model.StopPlace;
 import org.rutebanken.tiamat.netex.id.NetexIdHelper;
 import org.rutebanken.tiamat.netex.id.ValidPrefixList;
 import org.rutebanken.tiamat.repository.StopPlaceRepository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anySet;
 import static org.mockito.Mockito.mock;
@@ -79,4 +85,38 @@ public class StopPlaceFromOriginalIdFinderTest {
         verify(stopPlaceRepository, never()).findById(anyLong());
         assertThat(actual).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findPreloadedStopPlacesWithoutQueryingForEachStop() {
+
+        StopPlaceRepository stopPlaceRepository = mock(StopPlaceRepository.class);
+        StopPlaceFromOriginalIdFinder stopPlaceFromOriginalIdFinder = new StopPlaceFromOriginalIdFinder(stopPlaceRepository, 100, 1, TimeUnit.DAYS, new PeriodicCacheLogger(), netexIdHelper);
+
+        StopPlace existingStopPlace = new StopPlace();
+        existingStopPlace.setNetexId("NSR:StopPlace:1");
+
+        StopPlace incomingMatchingStopPlace = new StopPlace();
+        incomingMatchingStopPlace.getOriginalIds().add("RUT:StopPlace:123");
+
+        StopPlace incomingNewStopPlace = new StopPlace();
+        incomingNewStopPlace.getOriginalIds().add("RUT:StopPlace:999");
+
+        when(stopPlaceRepository.findStopPlacesByOriginalIds(eq(ORIGINAL_ID_KEY), anySet(), any()))
+                .thenReturn(Map.of(":123", Set.of(existingStopPlace.getNetexId())));
+        when(stopPlaceRepository.findNewestVersions(anyCollection())).thenReturn(List.of(existingStopPlace));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            stopPlaceFromOriginalIdFinder.preload(List.of(incomingMatchingStopPlace, incomingNewStopPlace));
+
+            assertThat(stopPlaceFromOriginalIdFinder.find(incomingMatchingStopPlace)).containsExactly(existingStopPlace);
+            assertThat(stopPlaceFromOriginalIdFinder.find(incomingNewStopPlace)).isEmpty();
+        } finally {
+            TransactionSynchronizationManager.unbindResourceIfPossible(stopPlaceFromOriginalIdFinder);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(stopPlaceRepository, never()).findByKeyValues(anyString(), anySet());
+        verify(stopPlaceRepository, never()).findFirstByNetexIdOrderByVersionDesc(anyString());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.importer.finder;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.rutebanken.tiamat.importer.finder.TrigramSimilarity.similarity;
+import static org.rutebanken.tiamat.importer.finder.TrigramSimilarity.trigrams;
+
+/**
+ * Expected values are from the similarity function of pg_trgm.
+ */
+public class TrigramSimilarityTest {
+
+    @Test
+    public void trigramsOfWords() {
+        assertThat(trigrams("Cat")).containsExactlyInAnyOrder("  c", " ca", "cat", "at ");
+        assertThat(trigrams("a-b")).containsExactlyInAnyOrder("  a", " a ", "  b", " b ");
+        assertThat(trigrams("Töölön tori")).contains(" tö", "töö", "ölö", "ön ", "tor");
+        assertThat(trigrams(" ,. ")).isEmpty();
+        assertThat(trigrams(null)).isEmpty();
+    }
+
+    @Test
+    public void similarityOfNames() {
+        assertThat(similarity(trigrams("word"), trigrams("two words"))).isEqualTo(4f / 11);
+        assertThat(similarity(trigrams("Rautatientori"), trigrams("RAUTATIENTORI"))).isEqualTo(1f);
+        assertThat(similarity(trigrams("Nesbru nord"), trigrams("Nesbru N"))).isLessThan(0.6f);
+        assertThat(similarity(trigrams("name"), trigrams(""))).isZero();
+    }
+}
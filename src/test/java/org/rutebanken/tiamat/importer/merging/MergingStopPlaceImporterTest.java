@@ -151,6 +151,7 @@ public class MergingStopPlaceImporterTest extends TiamatIntegrationTest {
         firstStopPlace.setVersion(1L);
 
         stopPlaceRepository.save(firstStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(firstStopPlace);
 
         StopPlace newStopPlace = new StopPlace();
         newStopPlace.setCentroid(point);
@@ -180,6 +181,7 @@ public class MergingStopPlaceImporterTest extends TiamatIntegrationTest {
         firstStopPlace.getQuays().add(terminal1);
 
         stopPlaceRepository.save(firstStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(firstStopPlace);
 
         StopPlace secondStopPlace = new StopPlace();
         secondStopPlace.setCentroid(point(60.000, 10.78));
@@ -215,6 +217,7 @@ public class MergingStopPlaceImporterTest extends TiamatIntegrationTest {
         firstStopPlace.getQuays().add(terminal1);
 
         stopPlaceRepository.save(firstStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(firstStopPlace);
 
         StopPlace secondStopPlace = new StopPlace();
 
@@ -227,6 +230,7 @@ public class MergingStopPlaceImporterTest extends TiamatIntegrationTest {
         secondStopPlace.getQuays().add(terminal2);
 
         stopPlaceRepository.save(secondStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(secondStopPlace);
 
         // Import only the second stop place as the first one is already "saved" (mocked)
         StopPlace importResult = mergingStopPlaceImporter.importStopPlaceWithoutNetexMapping(secondStopPlace);
@@ -251,6 +255,7 @@ public class MergingStopPlaceImporterTest extends TiamatIntegrationTest {
         firstStopPlace.getOrCreateValues(NetexIdMapper.ORIGINAL_ID_KEY).add(chouetteId);
 
         stopPlaceRepository.save(firstStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(firstStopPlace);
 
         StopPlace secondStopPlace = new StopPlace();
 
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.lock;
+
+import com.hazelcast.map.IMap;
+import org.junit.Test;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MutateLockTest extends TiamatIntegrationTest {
+
+    @Autowired
+    private MutateLock mutateLock;
+
+    @Test
+    public void unrelatedEntitiesDoNotWaitForEachOther() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = holdLockInOtherThread(List.of("NSR:StopPlace:1001"), release, new ArrayList<>());
+
+        // Would time out if it had to wait for the other thread
+        assertThat(mutateLock.executeInLock("NSR:StopPlace:1002", () -> "done")).isEqualTo("done");
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void quayIsLockedWithItsStopPlace() throws Exception {
+        Quay quay = new Quay(new EmbeddableMultilingualString("quay"));
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("stop place"));
+        stopPlace.getQuays().add(quay);
+        stopPlace = stopPlaceRepository.save(stopPlace);
+
+        assertThat(mutateLock.lockKeys(List.of(quay.getNetexId()))).containsExactly(stopPlace.getNetexId());
+
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = holdLockInOtherThread(List.of(stopPlace.getNetexId()), release, events);
+
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> mutateLock.executeInLock(quay.getNetexId(), () -> events.add("quay mutated")));
+        release.countDown();
+
+        holder.get(10, TimeUnit.SECONDS);
+        waiter.get(MutateLock.WAIT_FOR_LOCK_SECONDS, TimeUnit.SECONDS);
+        assertThat(events).containsExactly("stop place released", "quay mutated");
+    }
+
+    @Test
+    public void newEntitiesAreCreatedInLock() {
+        IMap<String, Object> locks = hazelcastInstance.getMap(MutateLock.LOCK_NAME);
+
+        boolean locked = mutateLock.executeInLock((String) null, () -> locks.isLocked(MutateLock.NEW_ENTITIES_LOCK_KEY));
+
+        assertThat(locked).isTrue();
+        assertThat(locks.isLocked(MutateLock.NEW_ENTITIES_LOCK_KEY)).isFalse();
+    }
+
+    /**
+     * Hold the locks in another thread until released.
+     * @return completed when the other thread has released the locks
+     */
+    private CompletableFuture<Void> holdLockInOtherThread(List<String> netexIds, CountDownLatch release, List<String> events) throws InterruptedException {
+        CountDownLatch gotLock = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> mutateLock.executeInLock(netexIds, () -> {
+            gotLock.countDown();
+            try {
+                assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            events.add("stop place released");
+            return null;
+        }));
+        assertThat(gotLock.await(10, TimeUnit.SECONDS)).isTrue();
+        return holder;
+    }
+}
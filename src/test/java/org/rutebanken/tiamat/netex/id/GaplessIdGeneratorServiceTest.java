@@ -30,9 +30,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.rutebanken.tiamat.netex.id.GaplessIdGeneratorService.INITIAL_LAST_ID;
 import static org.rutebanken.tiamat.netex.id.GaplessIdGeneratorService.LOW_LEVEL_AVAILABLE_IDS;
 
 public class GaplessIdGeneratorServiceTest extends TiamatIntegrationTest {
@@ -218,4 +221,117 @@ public class GaplessIdGeneratorServiceTest extends TiamatIntegrationTest {
 
     }
 
+    @Test
+    public void insertOverlappingIdsIgnoringDuplicates() {
+        String entityName = "testEntityNameOverlapping";
+        GaplessIdGeneratorService gaplessIdGeneratorService = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, LOW_LEVEL_AVAILABLE_IDS);
+
+        insertIdsInTransaction(gaplessIdGeneratorService, entityName, Set.of(1L, 2L, 3L));
+        insertIdsInTransaction(gaplessIdGeneratorService, entityName, Set.of(2L, 3L, 4L, 5L));
+
+        @SuppressWarnings("unchecked")
+        List<Number> ids = entityManager.createNativeQuery("SELECT id_value FROM id_generator WHERE table_name = :tableName ORDER BY id_value")
+                .setParameter("tableName", entityName)
+                .getResultList();
+
+        assertThat(ids).extracting(Number::longValue).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    private void insertIdsInTransaction(GaplessIdGeneratorService gaplessIdGeneratorService, String entityName, Set<Long> ids) {
+        EntityManager transactionEntityManager = entityManagerFactory.createEntityManager();
+        try {
+            transactionEntityManager.getTransaction().begin();
+            gaplessIdGeneratorService.insertIdsIgnoreDuplicates(entityName, ids, transactionEntityManager);
+            transactionEntityManager.getTransaction().commit();
+        } finally {
+            transactionEntityManager.close();
+        }
+    }
+
+    @Test
+    public void leaseIdsToThreadsWithoutDuplicates() {
+        String entityName = "testEntityNameLeased";
+        int fetchSize = 100;
+        int leaseSize = 20;
+        GaplessIdGeneratorService gaplessIdGeneratorService = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+
+        Set<Long> generatedIds = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 500).parallel()
+                .forEach(i -> assertThat(generatedIds.add(gaplessIdGeneratorService.getNextIdForEntity(entityName))).isTrue());
+
+        assertThat(generatedIds).hasSize(500);
+        assertThat(Collections.max(generatedIds)).as("IDs are handed out from a few leased blocks").isLessThanOrEqualTo(500 + fetchSize);
+
+        gaplessIdGeneratorService.persistClaimedIds();
+        for (long generatedId : generatedIds) {
+            assertThat(selectSingleInsertedId(entityName, generatedId)).isEqualTo(generatedId);
+        }
+    }
+
+    @Test
+    public void returnUnusedLeasedIds() {
+        String entityName = "testEntityNameReturned";
+        int fetchSize = 100;
+        int leaseSize = 20;
+        GaplessIdGeneratorService gaplessIdGeneratorService = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+
+        long first = gaplessIdGeneratorService.getNextIdForEntity(entityName);
+        assertThat(first).isEqualTo(1L);
+
+        long claimed = gaplessIdGeneratorService.getNextIdForEntity(entityName, 2L);
+        assertThat(claimed).isEqualTo(2L);
+
+        gaplessIdGeneratorService.returnLeasedIds();
+
+        IQueue<Long> availableIds = generatedIdState.getQueueForEntity(entityName);
+        assertThat(availableIds).as("unused leased IDs are available again").contains(3L, 20L);
+        assertThat(availableIds).doesNotContain(first, claimed);
+        assertThat(generatedIdState.getClaimedIdListForEntity(entityName)).contains(first, claimed).doesNotContain(3L, 20L);
+    }
+
+    @Test
+    public void doNotHandOutLeasedIdsClaimedOnOtherNode() {
+        String entityName = "testEntityNameClaimedOnOtherNode";
+        int fetchSize = 100;
+        int leaseSize = 20;
+        GaplessIdGeneratorService leasingNode = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+        GaplessIdGeneratorService claimingNode = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+
+        assertThat(leasingNode.getNextIdForEntity(entityName)).isEqualTo(1L);
+        assertThat(claimingNode.getNextIdForEntity(entityName, 5L)).isEqualTo(5L);
+        assertThat(claimingNode.getNextIdForEntity(entityName, 15L)).isEqualTo(15L);
+
+        Set<Long> leasedIds = new HashSet<>();
+        for (int i = 0; i < 2 * leaseSize; i++) {
+            assertThat(leasedIds.add(leasingNode.getNextIdForEntity(entityName))).isTrue();
+        }
+        assertThat(leasedIds).as("IDs claimed on the other node").doesNotContain(1L, 5L, 15L);
+
+        leasingNode.returnLeasedIds();
+        assertThat(generatedIdState.getQueueForEntity(entityName)).doesNotContain(5L, 15L);
+    }
+
+    @Test
+    public void doNotHandOutLeasedIdsAgainWhenNodeStopsWithoutReturningThem() {
+        String entityName = "testEntityNameLost";
+        int fetchSize = 100;
+        int leaseSize = 20;
+        GaplessIdGeneratorService stoppedNode = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+
+        long first = stoppedNode.getNextIdForEntity(entityName);
+        assertThat(first).isEqualTo(1L);
+
+        // The node stops without returning its lease. The claimed IDs are persisted by another node.
+        GaplessIdGeneratorService otherNode = new GaplessIdGeneratorService(entityManagerFactory, hazelcastInstance, generatedIdState, fetchSize, leaseSize);
+        otherNode.persistClaimedIds();
+
+        assertThat(selectSingleInsertedId(entityName, first)).isEqualTo(first);
+        assertThat(selectSingleInsertedId(entityName, leaseSize)).as("unused ID of the lost lease").isEqualTo(leaseSize);
+
+        // Even if the whole cluster is restarted, the IDs of the lost lease are not generated again
+        generatedIdState.getQueueForEntity(entityName).clear();
+        generatedIdState.setLastIdForEntity(entityName, INITIAL_LAST_ID);
+
+        assertThat(otherNode.getNextIdForEntity(entityName)).isEqualTo(leaseSize + 1L);
+    }
 }
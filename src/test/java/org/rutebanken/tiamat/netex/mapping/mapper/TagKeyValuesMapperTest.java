@@ -25,12 +25,16 @@ import org.rutebanken.tiamat.repository.TagRepository;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -78,6 +82,42 @@ public class TagKeyValuesMapperTest {
         assertThat(flattened.get("TAG-0-name")).isEqualTo(tag.getName());
     }
 
+    @Test
+    public void mapPreloadedTagsToPropertiesInLoadedOrder() throws Exception {
+
+        Tag first = new Tag();
+        first.setName("b");
+        first.setIdreference("NSR:StopPlace:1");
+
+        Tag second = new Tag();
+        second.setName("a");
+        second.setIdreference("NSR:StopPlace:1");
+
+        when(tagRepository.findByIdReferenceIn(List.of("NSR:StopPlace:1", "NSR:StopPlace:2"))).thenReturn(Sets.newLinkedHashSet(List.of(first, second)));
+        Map<String, Set<Tag>> tagsByIdReference = tagKeyValuesMapper.findTagsByIdReferences(List.of("NSR:StopPlace:1", "NSR:StopPlace:2"));
+
+        org.rutebanken.tiamat.model.StopPlace tiamatStopPlace = new org.rutebanken.tiamat.model.StopPlace();
+        tiamatStopPlace.setNetexId("NSR:StopPlace:1");
+
+        org.rutebanken.tiamat.model.StopPlace untagged = new org.rutebanken.tiamat.model.StopPlace();
+        untagged.setNetexId("NSR:StopPlace:2");
+
+        StopPlace stopPlace = new StopPlace().withKeyList(new KeyListStructure());
+        StopPlace untaggedStopPlace = new StopPlace().withKeyList(new KeyListStructure());
+
+        tagKeyValuesMapper.withPreloadedTags(tagsByIdReference, () -> {
+            tagKeyValuesMapper.mapTagsToProperties(tiamatStopPlace, stopPlace);
+            tagKeyValuesMapper.mapTagsToProperties(untagged, untaggedStopPlace);
+            return null;
+        });
+
+        Map<String, String> flattened = stopPlace.getKeyList().getKeyValue().stream().collect(Collectors.toMap(KeyValueStructure::getKey, KeyValueStructure::getValue));
+
+        assertThat(flattened.get("TAG-0-name")).isEqualTo("b");
+        assertThat(flattened.get("TAG-1-name")).isEqualTo("a");
+        assertThat(untaggedStopPlace.getKeyList().getKeyValue()).isEmpty();
+        verify(tagRepository, never()).findByIdReference(any());
+    }
 
     @Test
     public void mapPropertiesToTag() throws Exception {
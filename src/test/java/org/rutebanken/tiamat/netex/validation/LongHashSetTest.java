@@ -0,0 +1,48 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.netex.validation;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongHashSetTest {
+
+    @Test
+    public void behaveLikeHashSet() {
+        LongHashSet longHashSet = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(50000) - 25000;
+            assertThat(longHashSet.add(value)).isEqualTo(expected.add(value));
+        }
+
+        for (long value = -30000; value < 30000; value++) {
+            assertThat(longHashSet.contains(value)).isEqualTo(expected.contains(value));
+        }
+        assertThat(longHashSet.size()).isEqualTo(expected.size());
+
+        Set<Long> iterated = new HashSet<>();
+        longHashSet.forEach(iterated::add);
+        assertThat(iterated).isEqualTo(expected);
+    }
+}
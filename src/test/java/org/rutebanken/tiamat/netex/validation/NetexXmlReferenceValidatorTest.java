@@ -16,14 +16,20 @@
 package org.rutebanken.tiamat.netex.validation;
 
 import org.junit.Test;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
 
 public class NetexXmlReferenceValidatorTest {
     @Test
     public void validateNetexReferences() throws Exception {
 
-        NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true);
+        NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true, 100, mock(PrometheusMetricsService.class));
 
         String xmlShouldBeValidNoVersionsInReferences = """
                 <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
@@ -61,4 +67,49 @@ public class NetexXmlReferenceValidatorTest {
 
         netexXmlReferenceValidator.validateNetexReferences(new ByteArrayInputStream(xmlShouldBeValidNoVersionsInReferences.getBytes()), "test");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void detectReferenceToMissingVersion() {
+        NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true, 100, mock(PrometheusMetricsService.class));
+
+        assertThatThrownBy(() -> netexXmlReferenceValidator.validateNetexReferences(new ByteArrayInputStream(XML_WITH_INVALID_REFERENCE.getBytes()), "test"))
+                .isInstanceOf(NetexReferenceValidatorException.class)
+                .hasMessageContaining("Invalid references detected: 1");
+    }
+
+    @Test
+    public void detectReferenceToMissingVersionInFile() throws Exception {
+        NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true, 100, mock(PrometheusMetricsService.class));
+        File file = File.createTempFile("netex-reference-validator", ".xml");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), XML_WITH_INVALID_REFERENCE);
+
+        assertThatThrownBy(() -> netexXmlReferenceValidator.validateNetexReferences(file))
+                .isInstanceOf(NetexReferenceValidatorException.class)
+                .hasMessageContaining("Invalid references detected: 1");
+    }
+
+    @Test
+    public void duplicateIdentificatorsDoNotMakeReferencesInvalid() throws Exception {
+        NetexXmlReferenceValidator netexXmlReferenceValidator = new NetexXmlReferenceValidator(true, 100, mock(PrometheusMetricsService.class));
+
+        String xml = """
+                <PublicationDelivery xmlns="http://www.netex.org.uk/netex">
+                    <StopPlace version="1" id="NSR:StopPlace:1"/>
+                    <StopPlace version="1" id="NSR:StopPlace:1"/>
+                    <StopPlace version="2" id="NSR:StopPlace:2">
+                        <ParentSiteRef ref="NSR:StopPlace:1" version="1"/>
+                    </StopPlace>
+                </PublicationDelivery>""";
+
+        netexXmlReferenceValidator.validateNetexReferences(new ByteArrayInputStream(xml.getBytes()), "test");
+    }
+
+    private static final String XML_WITH_INVALID_REFERENCE = """
+            <PublicationDelivery xmlns="http://www.netex.org.uk/netex">
+                <StopPlace version="2" id="NSR:StopPlace:2">
+                    <ParentSiteRef ref="NSR:StopPlace:1" version="1"/>
+                </StopPlace>
+                <StopPlace version="2" id="NSR:StopPlace:1"/>
+            </PublicationDelivery>""";
+}
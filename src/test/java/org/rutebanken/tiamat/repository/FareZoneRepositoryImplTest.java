@@ -15,7 +15,6 @@
 
 package org.rutebanken.tiamat.repository;
 
-import com.google.common.collect.Sets;
 import org.junit.Test;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
 import org.rutebanken.tiamat.exporter.params.FareZoneSearch;
@@ -168,7 +167,7 @@ public class FareZoneRepositoryImplTest extends TiamatIntegrationTest {
         stopPlace.getTariffZones().add(new TariffZoneRef(fareZoneNetexId));
         stopPlaceRepository.save(stopPlace);
 
-        List<FareZone> fareZones = fareZoneRepository.getFareZonesFromStopPlaceIds(Sets.newHashSet(stopPlace.getId()));
+        List<FareZone> fareZones = fareZoneRepository.getFareZonesFromStopPlaceIds(PrimaryIds.of(stopPlace.getId()));
 
         assertThat(fareZones).hasSize(1);
         assertThat(fareZones.getFirst().getVersion()).isEqualTo(v2.getVersion());
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import jakarta.persistence.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Native updates name the tables they change, so that they do not evict unrelated entities from the second level cache.
+ */
+public class NativeUpdateQuerySpacesTest extends TiamatIntegrationTest {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    public void cachedStopPlaceStaysCachedAfterSave() {
+        StopPlace cachedStopPlace = stopPlaceRepository.save(new StopPlace(new EmbeddableMultilingualString("cached")));
+        loadInNewSession(cachedStopPlace.getId());
+        assertThat(entityManagerFactory.getCache().contains(StopPlace.class, cachedStopPlace.getId())).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("saved"));
+            stopPlace.getOriginalIds().add("TEST:StopPlace:1");
+            stopPlace = stopPlaceRepository.saveAndFlush(stopPlace);
+            stopPlaceRepository.updateOriginalIdLookups(List.of(stopPlace));
+            stopPlaceRepository.deleteStopPlaceTariffZoneRefs();
+        });
+
+        assertThat(entityManagerFactory.getCache().contains(StopPlace.class, cachedStopPlace.getId()))
+                .as("stop place still in the second level cache")
+                .isTrue();
+    }
+
+    private void loadInNewSession(long id) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            assertThat(entityManager.find(StopPlace.class, id)).isNotNull();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OriginalIdLookupTest {
+
+    @Test
+    public void lookupSuffixForValuesWithColon() {
+        assertThat(OriginalIdLookup.lookupSuffix(":0123")).isEqualTo("0123");
+        assertThat(OriginalIdLookup.lookupSuffix("RUT:StopPlace:123")).isEqualTo("123");
+        assertThat(OriginalIdLookup.lookupSuffix("original-id")).isNull();
+        assertThat(OriginalIdLookup.lookupSuffix(":")).isEmpty();
+    }
+
+    @Test
+    public void splitLookupValuesInIndexedAndUnindexedPatterns() {
+        List<String> lookupValues = List.of(":123", "RUT:StopPlace:123", "123");
+
+        assertThat(OriginalIdLookup.lookupSuffixes(lookupValues)).containsExactly("123");
+        assertThat(OriginalIdLookup.endsWithPatterns(lookupValues, true)).containsExactly("%:123", "%RUT:StopPlace:123");
+        assertThat(OriginalIdLookup.endsWithPatterns(lookupValues, false)).containsExactly("%123");
+    }
+
+    @Test
+    public void matchIdsEndingWithLookupValue() {
+        assertThat(OriginalIdLookup.matches(":123", "RUT:StopPlace:123")).isTrue();
+        assertThat(OriginalIdLookup.matches(":123", "RUT:StopPlace:0123")).isFalse();
+        assertThat(OriginalIdLookup.matches("123", "RUT:StopPlace:0123")).isTrue();
+        assertThat(OriginalIdLookup.matches("StopPlace:123", "RUT:StopPlace:123")).isTrue();
+        assertThat(OriginalIdLookup.matches("RUT:StopPlace:123", "StopPlace:123")).isFalse();
+    }
+
+    @Test
+    public void matchQuayOriginalIdsAfterColon() {
+        assertThat(OriginalIdLookup.matches(OriginalIdLookup.quayOriginalIdEnding("11"), "XXX:Quay:11")).isTrue();
+        assertThat(OriginalIdLookup.matches(OriginalIdLookup.quayOriginalIdEnding("11"), "XXX:Quay:111")).isFalse();
+    }
+}
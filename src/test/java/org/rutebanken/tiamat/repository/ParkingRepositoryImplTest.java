@@ -1,6 +1,5 @@
 package org.rutebanken.tiamat.repository;
 
-import com.google.common.collect.Sets;
 import org.junit.Test;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
 import org.rutebanken.tiamat.model.Parking;
@@ -9,7 +8,6 @@ import org.rutebanken.tiamat.model.StopPlace;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Iterator;
-import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -43,7 +41,7 @@ public class ParkingRepositoryImplTest extends TiamatIntegrationTest {
 
         parkingRepository.flush();
 
-        Set<Long> stopPlaceIds = Sets.newHashSet(stopPlace.getId());
+        PrimaryIds stopPlaceIds = PrimaryIds.of(stopPlace.getId());
         int count = parkingRepository.countResult(stopPlaceIds);
         assertThat(count).isEqualTo(1);
 
@@ -17,7 +17,6 @@ package org.rutebanken.tiamat.repository;
 
 import org.junit.Ignore;
 import org.junit.Test;
-import org.mockito.internal.util.collections.Sets;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
 import org.rutebanken.tiamat.model.AddressablePlaceRefStructure;
 import org.rutebanken.tiamat.model.PathLink;
@@ -26,7 +25,6 @@ import org.rutebanken.tiamat.model.Quay;
 import org.rutebanken.tiamat.model.StopPlace;
 
 import java.util.List;
-import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -55,7 +53,7 @@ public class PathLinkRepositoryTest extends TiamatIntegrationTest {
         pathLinkRepository.flush();
         System.out.println("saved "+pathLink);
 
-        Set<Long> stopPlaceIds = Sets.newSet(stopPlace.getId(), stopPlace2.getId());
+        PrimaryIds stopPlaceIds = PrimaryIds.of(stopPlace.getId(), stopPlace2.getId());
         List<PathLink> pathLinkList = pathLinkRepository.findByStopPlaceIds(stopPlaceIds);
 
         assertThat(pathLinkList).extracting("id").contains(pathLink.getId());
@@ -87,7 +85,7 @@ public class PathLinkRepositoryTest extends TiamatIntegrationTest {
         pathLinkRepository.save(pathLink);
         pathLinkRepository.flush();
 
-        Set<Long> stopPlaceIds = Sets.newSet(stopPlace.getId(), stopPlace2.getId());
+        PrimaryIds stopPlaceIds = PrimaryIds.of(stopPlace.getId(), stopPlace2.getId());
         List<PathLink> pathLinkList = pathLinkRepository.findByStopPlaceIds(stopPlaceIds);
 
         assertThat(pathLinkList).extracting("id").contains(pathLink.getId());
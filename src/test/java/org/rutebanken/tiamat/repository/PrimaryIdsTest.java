@@ -0,0 +1,41 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.repository;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrimaryIdsTest {
+
+    @Test
+    public void sortAndRemoveDuplicates() {
+        PrimaryIds primaryIds = PrimaryIds.of(List.of(5L, 1L, 3L, 1L, 5L));
+
+        assertThat(primaryIds.size()).isEqualTo(3);
+        assertThat(primaryIds.stream().toArray()).containsExactly(1L, 3L, 5L);
+        assertThat(primaryIds.contains(3L)).isTrue();
+        assertThat(primaryIds.contains(2L)).isFalse();
+    }
+
+    @Test
+    public void emptyWhenNoIds() {
+        assertThat(PrimaryIds.of(List.of()).isEmpty()).isTrue();
+        assertThat(PrimaryIds.of((List<Long>) null)).isSameAs(PrimaryIds.empty());
+    }
+}
@@ -90,7 +90,7 @@ public class QuayRepositoryImplTest extends TiamatIntegrationTest {
         childStop.setParentSiteRef(new SiteRefStructure(parentStop.getNetexId(), String.valueOf(parentStop.getVersion())));
         stopPlaceRepository.save(childStop);
 
-        List<IdMappingDto> idMapping = quayRepository.findKeyValueMappingsForQuay(now, now, 0, 10);
+        List<IdMappingDto> idMapping = quayRepository.findKeyValueMappingsForQuay(now, now, null, 10);
         assertThat(idMapping).extracting(idMappingDto -> idMappingDto.netexId).contains(quay.getNetexId());
     }
 
@@ -119,7 +119,7 @@ public class QuayRepositoryImplTest extends TiamatIntegrationTest {
         childStop.setParentSiteRef(new SiteRefStructure(notCurrentlyValidParentStop.getNetexId(), String.valueOf(notCurrentlyValidParentStop.getVersion())));
         stopPlaceRepository.save(childStop);
 
-        List<IdMappingDto> idMapping = quayRepository.findKeyValueMappingsForQuay(now, now, 0, 10);
+        List<IdMappingDto> idMapping = quayRepository.findKeyValueMappingsForQuay(now, now, null, 10);
         assertThat(idMapping).extracting(idMappingDto -> idMappingDto.netexId)
                 .as("Quay " + quay.getNetexId() + " should not be returned in mapping as it belongs to a stop place with parent stop place wich is currently not valid")
                 .isEmpty();
@@ -145,7 +145,7 @@ public class QuayRepositoryImplTest extends TiamatIntegrationTest {
         StopPlace currentMatchingStop = saveStop("NSR:StopPlace:2", 1l, now.minusSeconds(10), null);
         Quay currentMatchingQuay = saveQuay(currentMatchingStop, "NSR:Quay:2", 1l, orgIdKey, orgId);
 
-        List<IdMappingDto> currentMapping = quayRepository.findKeyValueMappingsForQuay(now, now, 0, 2000);
+        List<IdMappingDto> currentMapping = quayRepository.findKeyValueMappingsForQuay(now, now, null, 2000);
         Assert.assertEquals(1, currentMapping.size());
         Assert.assertEquals(orgId, currentMapping.getFirst().originalId);
         Assert.assertEquals(currentMatchingQuay.getNetexId(), currentMapping.getFirst().netexId);
@@ -153,7 +153,7 @@ public class QuayRepositoryImplTest extends TiamatIntegrationTest {
         Assert.assertEquals(currentMatchingStop.getValidBetween().getToDate(), currentMapping.getFirst().validTo);
 
         Instant hundredSecondsAgo = now.minusSeconds(100);
-        List<IdMappingDto> historicMapping = quayRepository.findKeyValueMappingsForQuay(hundredSecondsAgo, hundredSecondsAgo, 0, 2000);
+        List<IdMappingDto> historicMapping = quayRepository.findKeyValueMappingsForQuay(hundredSecondsAgo, hundredSecondsAgo, null, 2000);
         Assert.assertEquals(1, historicMapping.size());
         Assert.assertEquals(orgId, historicMapping.getFirst().originalId);
         Assert.assertEquals(historicMatchingQuay.getNetexId(), historicMapping.getFirst().netexId);
@@ -163,9 +163,9 @@ public class QuayRepositoryImplTest extends TiamatIntegrationTest {
 
         // No imported-ids or merged-ids are valid for point in time 300 seconds ago
         Instant threeHundredSecondsAgo = now.minusSeconds(300);
-        Assert.assertTrue(quayRepository.findKeyValueMappingsForQuay(threeHundredSecondsAgo, threeHundredSecondsAgo, 0, 2000).isEmpty());
+        Assert.assertTrue(quayRepository.findKeyValueMappingsForQuay(threeHundredSecondsAgo, threeHundredSecondsAgo, null, 2000).isEmpty());
 
-        List<IdMappingDto> allMappings = quayRepository.findKeyValueMappingsForQuay(hundredSecondsAgo, now, 0, 2000);
+        List<IdMappingDto> allMappings = quayRepository.findKeyValueMappingsForQuay(hundredSecondsAgo, now, null, 2000);
         Assert.assertEquals(2, allMappings.size());
     }
 
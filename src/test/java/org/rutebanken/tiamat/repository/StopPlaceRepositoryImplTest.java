@@ -403,6 +403,23 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         assertThat(result).isNull();
     }
 
+    @Test
+    public void findStopPlaceLocations() throws Exception {
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("name"));
+        stopPlace.setStopPlaceType(StopTypeEnumeration.ONSTREET_BUS);
+        stopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(10.500430, 59.875679)));
+        stopPlaceRepository.save(stopPlace);
+
+        StopPlace farAway = new StopPlace(new EmbeddableMultilingualString("far away"));
+        farAway.setCentroid(geometryFactory.createPoint(new Coordinate(15, 60)));
+        stopPlaceRepository.save(farAway);
+
+        Envelope envelope = new Envelope(10.500340, 10.500699, 59.875649, 59.875924);
+
+        List<StopPlaceLocation> locations = stopPlaceRepository.findStopPlaceLocations(envelope, Instant.now());
+        assertThat(locations).containsExactly(new StopPlaceLocation(stopPlace.getNetexId(), 10.500430, 59.875679, StopTypeEnumeration.ONSTREET_BUS, "name"));
+    }
+
     @Test
     public void noNearbyStopPlaceIfNameIsDifferent() throws Exception {
         StopPlace stopPlace = new StopPlace();
@@ -1125,6 +1142,82 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         Assert.assertTrue(CollectionUtils.isEmpty(stopPlaceRepository.findStopPlaceFromQuayOriginalId(orgIdSuffix, now.minusSeconds(300))));
     }
 
+    @Test
+    public void findStopPlacesByOriginalIdsMatchesEndOfId() {
+        StopPlace stopPlace = new StopPlace();
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:0123");
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("YYY:StopPlace:456");
+        stopPlaceRepository.save(stopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(stopPlace);
+
+        StopPlace anotherStopPlace = new StopPlace();
+        anotherStopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:1123");
+        stopPlaceRepository.save(anotherStopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(anotherStopPlace);
+
+        Map<String, Set<String>> matches = stopPlaceRepository.findStopPlacesByOriginalIds(ORIGINAL_ID_KEY, Set.of(":0123", ":123", "YYY:StopPlace:456", "XXX:StopPlace:456", "StopPlace:456", "123"), now);
+
+        assertThat(matches).containsOnlyKeys(":0123", "YYY:StopPlace:456", "StopPlace:456", "123");
+        assertThat(matches.get(":0123")).containsExactly(stopPlace.getNetexId());
+        assertThat(matches.get("YYY:StopPlace:456")).containsExactly(stopPlace.getNetexId());
+        assertThat(matches.get("StopPlace:456")).containsExactly(stopPlace.getNetexId());
+        assertThat(matches.get("123")).containsExactlyInAnyOrder(stopPlace.getNetexId(), anotherStopPlace.getNetexId());
+
+        assertThat(stopPlaceRepository.findByKeyValues(ORIGINAL_ID_KEY, Set.of(":1123"))).containsExactly(anotherStopPlace.getNetexId());
+        assertThat(stopPlaceRepository.findByKeyValues(ORIGINAL_ID_KEY, Set.of("0123"), true)).isEmpty();
+    }
+
+    @Test
+    public void searchByKeyValueMatchesPartOfOriginalId() {
+        StopPlace stopPlace = new StopPlace();
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:0123");
+        stopPlaceRepository.save(stopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(stopPlace);
+
+        assertThat(stopPlaceRepository.searchByKeyValue(ORIGINAL_ID_KEY, "StopPlace:01")).containsExactly(stopPlace.getNetexId());
+        assertThat(stopPlaceRepository.searchByKeyValue(ORIGINAL_ID_KEY, "YYY")).isNull();
+    }
+
+    @Test
+    public void updateOriginalIdLookupsForManyStopPlaces() {
+        StopPlace stopPlace = new StopPlace();
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:0123");
+        stopPlaceRepository.save(stopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(stopPlace);
+
+        StopPlace anotherStopPlace = new StopPlace();
+        anotherStopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:456");
+        stopPlaceRepository.saveAndFlush(anotherStopPlace);
+
+        // The old original ID of the first stop place is replaced
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).clear();
+        stopPlace.getOrCreateValues(ORIGINAL_ID_KEY).add("XXX:StopPlace:789");
+        stopPlaceRepository.updateOriginalIdLookups(List.of(stopPlace, anotherStopPlace));
+
+        Map<String, Set<String>> matches = stopPlaceRepository.findStopPlacesByOriginalIds(ORIGINAL_ID_KEY, Set.of(":0123", ":456", ":789"), now);
+
+        assertThat(matches).containsOnlyKeys(":456", ":789");
+        assertThat(matches.get(":456")).containsExactly(anotherStopPlace.getNetexId());
+        assertThat(matches.get(":789")).containsExactly(stopPlace.getNetexId());
+    }
+
+    @Test
+    public void findStopPlacesByQuayOriginalIdsInOneQuery() {
+        StopPlace stopPlace1 = saveStop("NSR:StopPlace:1", 1L, now.minusSeconds(10), null);
+        saveQuay(stopPlace1, "NSR:Quay:1", 1L, ORIGINAL_ID_KEY, "XXX:Quay:11");
+        StopPlace stopPlace2 = saveStop("NSR:StopPlace:2", 1L, now.minusSeconds(10), null);
+        saveQuay(stopPlace2, "NSR:Quay:2", 1L, ORIGINAL_ID_KEY, "XXX:Quay:22");
+
+        Map<String, Set<String>> matches = stopPlaceRepository.findStopPlacesByQuayOriginalIds(Set.of("11", "22", "33"), now);
+
+        assertThat(matches).containsOnlyKeys("11", "22");
+        assertThat(matches.get("11")).containsExactly(stopPlace1.getNetexId());
+        assertThat(matches.get("22")).containsExactly(stopPlace2.getNetexId());
+        assertThat(stopPlaceRepository.findStopPlacesByOriginalIds(ORIGINAL_ID_KEY, Set.of("11"), now))
+                .as("quay original IDs are not stop place original IDs")
+                .isEmpty();
+    }
+
     @Test
     public void listStopPlaceIdsAndQuayIds() {
         Instant startOfPeriod = now.minusSeconds(100);
@@ -1174,7 +1267,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         childStop.setParentSiteRef(new SiteRefStructure(parentStop.getNetexId(), String.valueOf(parentStop.getVersion())));
         stopPlaceRepository.save(childStop);
 
-        List<IdMappingDto> idMapping = stopPlaceRepository.findKeyValueMappingsForStop(now, now, 0, 2000);
+        List<IdMappingDto> idMapping = stopPlaceRepository.findKeyValueMappingsForStop(now, now, null, 2000);
         assertThat(idMapping).extracting(idMappingDto -> idMappingDto.netexId).contains(childStop.getNetexId());
     }
 
@@ -1203,6 +1296,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
 
         childStop.setParentSiteRef(new SiteRefStructure(parentStop.getNetexId(), String.valueOf(parentStop.getVersion())));
         stopPlaceRepository.save(childStop);
+        stopPlaceRepository.updateOriginalIdLookup(childStop);
 
         List<String> idMapping = stopPlaceRepository.findStopPlaceFromQuayOriginalId(importedIdPosix, now);
         assertThat(idMapping).contains(childStop.getNetexId());
@@ -1234,6 +1328,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
 
         childStop.setParentSiteRef(new SiteRefStructure(parentStop.getNetexId(), String.valueOf(parentStop.getVersion())));
         stopPlaceRepository.save(childStop);
+        stopPlaceRepository.updateOriginalIdLookup(childStop);
 
         List<String> idMapping = stopPlaceRepository.findStopPlaceFromQuayOriginalId(importedIdPosix, now.minusSeconds(20));
         assertThat(idMapping).isEmpty();
@@ -1474,7 +1569,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         currentMatchingStop.getKeyValues().put(orgIdKey, new Value(orgId));
         stopPlaceRepository.save(currentMatchingStop);
 
-        List<IdMappingDto> currentMapping = stopPlaceRepository.findKeyValueMappingsForStop(now, now, 0, 2000);
+        List<IdMappingDto> currentMapping = stopPlaceRepository.findKeyValueMappingsForStop(now, now, null, 2000);
         Assert.assertEquals(1, currentMapping.size());
         Assert.assertEquals(orgId, currentMapping.getFirst().originalId);
         Assert.assertEquals(currentMatchingStop.getNetexId(), currentMapping.getFirst().netexId);
@@ -1482,7 +1577,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         Assert.assertEquals(currentMatchingStop.getValidBetween().getToDate(), currentMapping.getFirst().validTo);
 
         Instant hundredSecondsAgo = now.minusSeconds(100);
-        List<IdMappingDto> historicMapping = stopPlaceRepository.findKeyValueMappingsForStop(hundredSecondsAgo, hundredSecondsAgo, 0, 2000);
+        List<IdMappingDto> historicMapping = stopPlaceRepository.findKeyValueMappingsForStop(hundredSecondsAgo, hundredSecondsAgo, null, 2000);
         Assert.assertEquals(1, historicMapping.size());
         Assert.assertEquals(orgId, historicMapping.getFirst().originalId);
         Assert.assertEquals(historicMatchingStopV1.getNetexId(), historicMapping.getFirst().netexId);
@@ -1491,12 +1586,60 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
 
         // No imported-ids or merged-ids are valid for point in time 300 seconds ago
         Instant threeHundredSecondsAgo = now.minusSeconds(300);
-        Assert.assertTrue(stopPlaceRepository.findKeyValueMappingsForStop(threeHundredSecondsAgo, threeHundredSecondsAgo, 0, 2000).isEmpty());
+        Assert.assertTrue(stopPlaceRepository.findKeyValueMappingsForStop(threeHundredSecondsAgo, threeHundredSecondsAgo, null, 2000).isEmpty());
 
-        List<IdMappingDto> allMappings = stopPlaceRepository.findKeyValueMappingsForStop(hundredSecondsAgo, now, 0, 2000);
+        List<IdMappingDto> allMappings = stopPlaceRepository.findKeyValueMappingsForStop(hundredSecondsAgo, now, null, 2000);
         Assert.assertEquals(2, allMappings.size());
     }
 
+    @Test
+    public void findKeyValueMappingsForStopPlacePageByPage() {
+        StopPlace stopPlace = saveStop("NSR:StopPlace:1", 1L, now.minusSeconds(10), null);
+        stopPlace.getKeyValues().put(ORIGINAL_ID_KEY, new Value("XXX:StopPlace:1", "XXX:StopPlace:2", "XXX:StopPlace:3"));
+        stopPlace.getKeyValues().put(MERGED_ID_KEY, new Value("XXX:StopPlace:1"));
+        stopPlaceRepository.save(stopPlace);
+
+        List<IdMappingDto> allMappings = stopPlaceRepository.findKeyValueMappingsForStop(now, now, null, 2000);
+        Assert.assertEquals(4, allMappings.size());
+
+        List<IdMappingDto> pagedMappings = new ArrayList<>();
+        IdMappingDto lastMapping = null;
+        List<IdMappingDto> page;
+        do {
+            page = stopPlaceRepository.findKeyValueMappingsForStop(now, now, lastMapping, 3);
+            pagedMappings.addAll(page);
+            lastMapping = page.isEmpty() ? lastMapping : page.getLast();
+        } while (!page.isEmpty());
+
+        assertThat(pagedMappings)
+                .extracting(mapping -> mapping.originalId + "," + mapping.keyValuesId)
+                .containsExactlyElementsOf(allMappings.stream().map(mapping -> mapping.originalId + "," + mapping.keyValuesId).toList());
+    }
+
+    @Test
+    public void idMappingStateTagChangesWithNewStopPlace() {
+        String stateTag = stopPlaceRepository.findIdMappingStateTag(now);
+        assertThat(stopPlaceRepository.findIdMappingStateTag(now)).isEqualTo(stateTag);
+
+        saveStop("NSR:StopPlace:1", 1L, now.minusSeconds(10), null);
+
+        assertThat(stopPlaceRepository.findIdMappingStateTag(now)).isNotEqualTo(stateTag);
+    }
+
+    @Test
+    public void idMappingStateTagChangesWhenStopPlaceBecomesValidOrExpires() {
+        saveStop("NSR:StopPlace:1", 1L, now.plusSeconds(10), now.plusSeconds(20));
+
+        String beforeValid = stopPlaceRepository.findIdMappingStateTag(now);
+        String valid = stopPlaceRepository.findIdMappingStateTag(now.plusSeconds(10));
+        String expired = stopPlaceRepository.findIdMappingStateTag(now.plusSeconds(20));
+
+        assertThat(stopPlaceRepository.findIdMappingStateTag(now.plusSeconds(5))).isEqualTo(beforeValid);
+        assertThat(valid).isNotEqualTo(beforeValid);
+        assertThat(stopPlaceRepository.findIdMappingStateTag(now.plusSeconds(15))).isEqualTo(valid);
+        assertThat(expired).isNotEqualTo(valid);
+    }
+
     @Test
     public void findByCodeParamEmpty() {
 
@@ -1533,6 +1676,7 @@ public class StopPlaceRepositoryImplTest extends TiamatIntegrationTest {
         quay.setVersion(version);
         quay.getKeyValues().put(orgIdKeyName, new Value(orgId));
         stopPlaceRepository.save(stopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(stopPlace);
         return quay;
     }
 
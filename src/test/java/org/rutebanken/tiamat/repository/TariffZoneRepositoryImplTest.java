@@ -15,7 +15,6 @@
 
 package org.rutebanken.tiamat.repository;
 
-import com.google.common.collect.Sets;
 import org.junit.Test;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
 import org.rutebanken.tiamat.exporter.params.TariffZoneSearch;
@@ -195,7 +194,7 @@ public class TariffZoneRepositoryImplTest extends TiamatIntegrationTest {
         stopPlace.getTariffZones().add(new TariffZoneRef(tariffZoneNetexId));
         stopPlaceRepository.save(stopPlace);
 
-        List<TariffZone> tariffZones = tariffZoneRepository.getTariffZonesFromStopPlaceIds(Sets.newHashSet(stopPlace.getId()));
+        List<TariffZone> tariffZones = tariffZoneRepository.getTariffZonesFromStopPlaceIds(PrimaryIds.of(stopPlace.getId()));
 
         assertThat(tariffZones).hasSize(1);
         assertThat(tariffZones.getFirst().getVersion()).isEqualTo(v2.getVersion());
@@ -18,10 +18,14 @@ package org.rutebanken.tiamat.repository.reference;
 import org.junit.Test;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
 import org.rutebanken.tiamat.model.AddressablePlaceRefStructure;
+import org.rutebanken.tiamat.model.DataManagedObjectStructure;
 import org.rutebanken.tiamat.model.Quay;
 import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.VersionOfObjectRefStructure;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ReferenceResolverTest extends TiamatIntegrationTest {
@@ -50,4 +54,24 @@ public class ReferenceResolverTest extends TiamatIntegrationTest {
         assertThat(actual.getNetexId()).isEqualTo(quay.getNetexId());
         assertThat(actual.getVersion()).isEqualTo(quay.getVersion());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void resolveAllInTheOrderOfTheReferences() {
+
+        StopPlace stopPlace = stopPlaceRepository.save(new StopPlace());
+        Quay quay = quayRepository.save(new Quay());
+
+        List<DataManagedObjectStructure> actual = referenceResolver.resolveAll(List.of(
+                new AddressablePlaceRefStructure(quay),
+                new VersionOfObjectRefStructure(stopPlace.getNetexId()),
+                new VersionOfObjectRefStructure(stopPlace.getNetexId(), "999"),
+                new AddressablePlaceRefStructure(stopPlace)));
+
+        assertThat(actual).hasSize(4);
+        assertThat(actual.get(0).getNetexId()).isEqualTo(quay.getNetexId());
+        assertThat(actual.get(1).getNetexId()).isEqualTo(stopPlace.getNetexId());
+        assertThat(actual.get(2)).as("reference to a version that does not exist").isNull();
+        assertThat(actual.get(3).getNetexId()).isEqualTo(stopPlace.getNetexId());
+        assertThat(actual.get(3).getVersion()).isEqualTo(stopPlace.getVersion());
+    }
+}
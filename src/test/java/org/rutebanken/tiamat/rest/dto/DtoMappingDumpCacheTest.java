@@ -0,0 +1,226 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package org.rutebanken.tiamat.rest.dto;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DtoMappingDumpCacheTest {
+
+    private final StopPlaceRepository stopPlaceRepository = mock(StopPlaceRepository.class);
+
+    private final DtoMappingSemaphore dtoMappingSemaphore = mock(DtoMappingSemaphore.class);
+
+    private final DtoMappingDumpCache dtoMappingDumpCache = new DtoMappingDumpCache(stopPlaceRepository, dtoMappingSemaphore, 1000);
+
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private final DtoMappingDumpCache.DumpWriter dumpWriter = output -> {
+        writes.incrementAndGet();
+        output.write("TST:1,NSR:StopPlace:1\n".getBytes(StandardCharsets.UTF_8));
+    };
+
+    @Test
+    public void keepFinishedDumpUntilStateChanges() throws IOException {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+
+        Response first = dtoMappingDumpCache.response("dump", null, dumpWriter);
+        assertThat(write(first)).isEqualTo("TST:1,NSR:StopPlace:1\n");
+
+        Response second = dtoMappingDumpCache.response("dump", null, dumpWriter);
+        assertThat(second.getEntityTag()).isEqualTo(first.getEntityTag());
+        assertThat(write(second)).isEqualTo("TST:1,NSR:StopPlace:1\n");
+        assertThat(writes).hasValue(1);
+
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("2");
+
+        Response third = dtoMappingDumpCache.response("dump", null, dumpWriter);
+        assertThat(third.getEntityTag()).isNotEqualTo(first.getEntityTag());
+        write(third);
+        assertThat(writes).hasValue(2);
+    }
+
+    @Test
+    public void reuseStateTagWithinCachePeriod() {
+        DtoMappingDumpCache cachingStateTag = new DtoMappingDumpCache(stopPlaceRepository, dtoMappingSemaphore, 1000, 60);
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+
+        EntityTag first = cachingStateTag.response("dump", null, dumpWriter).getEntityTag();
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("2");
+        EntityTag second = cachingStateTag.response("other", null, dumpWriter).getEntityTag();
+        EntityTag third = cachingStateTag.response("dump", null, dumpWriter).getEntityTag();
+
+        assertThat(third).isEqualTo(first);
+        assertThat(second).isNotEqualTo(first);
+        verify(stopPlaceRepository, times(1)).findIdMappingStateTag(any(Instant.class));
+    }
+
+    @Test
+    public void notModifiedWhenETagMatches() {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        EntityTag entityTag = dtoMappingDumpCache.response("dump", null, dumpWriter).getEntityTag();
+
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(entityTag)).thenReturn(Response.notModified(entityTag));
+
+        Response response = dtoMappingDumpCache.response("dump", request, dumpWriter);
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        assertThat(writes).hasValue(0);
+    }
+
+    @Test
+    public void holdSemaphoreWhileWriting() throws Exception {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        DtoMappingDumpCache.DumpWriter failingWriter = output -> {
+            throw new IOException("Broken pipe");
+        };
+
+        Response response = dtoMappingDumpCache.response("dump", null, failingWriter);
+        verify(dtoMappingSemaphore, never()).aquire();
+
+        assertThatThrownBy(() -> write(response)).isInstanceOf(IOException.class);
+        InOrder inOrder = inOrder(dtoMappingSemaphore);
+        inOrder.verify(dtoMappingSemaphore).aquire();
+        inOrder.verify(dtoMappingSemaphore).release();
+    }
+
+    @Test
+    public void doNotKeepDumpsLargerThanMaxBytes() throws IOException {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        DtoMappingDumpCache smallCache = new DtoMappingDumpCache(stopPlaceRepository, dtoMappingSemaphore, 10);
+
+        write(smallCache.response("dump", null, dumpWriter));
+        assertThat(write(smallCache.response("dump", null, dumpWriter))).isEqualTo("TST:1,NSR:StopPlace:1\n");
+
+        assertThat(writes).hasValue(2);
+        verify(dtoMappingSemaphore, times(2)).release();
+    }
+
+    @Test
+    public void keepDumpCloseToMaxBytes() throws IOException {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        byte[] content = new byte[900];
+        DtoMappingDumpCache.DumpWriter largeDumpWriter = output -> {
+            writes.incrementAndGet();
+            output.write(content);
+        };
+
+        write(dtoMappingDumpCache.response("dump", null, largeDumpWriter));
+        write(dtoMappingDumpCache.response("dump", null, largeDumpWriter));
+
+        assertThat(writes).hasValue(1);
+    }
+
+    @Test
+    public void regenerateDumpAfterFailedWrite() throws IOException {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        DtoMappingDumpCache.DumpWriter pagedDumpWriter = output -> {
+            writes.incrementAndGet();
+            output.write("TST:1,NSR:StopPlace:1\n".getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            output.write("TST:2,NSR:StopPlace:2\n".getBytes(StandardCharsets.UTF_8));
+        };
+
+        StreamingOutput first = (StreamingOutput) dtoMappingDumpCache.response("dump", null, pagedDumpWriter).getEntity();
+        assertThatThrownBy(() -> first.write(new FailingOutputStream(30))).isInstanceOf(IOException.class);
+        String second = write(dtoMappingDumpCache.response("dump", null, pagedDumpWriter));
+
+        assertThat(second).isEqualTo("TST:1,NSR:StopPlace:1\nTST:2,NSR:StopPlace:2\n");
+        assertThat(writes).hasValue(2);
+        verify(dtoMappingSemaphore, times(2)).release();
+    }
+
+    @Test
+    public void doNotKeepDumpWhenWriterSwallowsFailure() throws IOException {
+        when(stopPlaceRepository.findIdMappingStateTag(any(Instant.class))).thenReturn("1");
+        DtoMappingDumpCache.DumpWriter printWriterDumpWriter = output -> {
+            writes.incrementAndGet();
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.println("TST:1,NSR:StopPlace:1");
+            writer.println("TST:2,NSR:StopPlace:2");
+            writer.close();
+        };
+
+        StreamingOutput first = (StreamingOutput) dtoMappingDumpCache.response("dump", null, printWriterDumpWriter).getEntity();
+        assertThatThrownBy(() -> first.write(new FailingOutputStream(30))).isInstanceOf(IOException.class);
+        String second = write(dtoMappingDumpCache.response("dump", null, printWriterDumpWriter));
+
+        assertThat(second).isEqualTo("TST:1,NSR:StopPlace:1\nTST:2,NSR:StopPlace:2\n");
+        assertThat(writes).hasValue(2);
+    }
+
+    @Test
+    public void checkErrorThrowsWhenPrintWriterFailed() {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FailingOutputStream(0), StandardCharsets.UTF_8));
+        writer.println("TST:1,NSR:StopPlace:1");
+        writer.flush();
+
+        assertThatThrownBy(() -> DtoMappingDumpCache.checkError(writer)).isInstanceOf(IOException.class);
+    }
+
+    private static String write(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like a response to a client that disconnects after the given number of bytes.
+     */
+    private static class FailingOutputStream extends OutputStream {
+
+        private final int failAfterBytes;
+
+        private int written;
+
+        FailingOutputStream(int failAfterBytes) {
+            this.failAfterBytes = failAfterBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (written++ >= failAfterBytes) {
+                throw new IOException("Connection reset");
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDto;
 import org.rutebanken.tiamat.dtoassembling.dto.IdMappingDtoCsvMapper;
 import org.rutebanken.tiamat.model.StopTypeEnumeration;
 import org.rutebanken.tiamat.repository.QuayRepository;
+import org.rutebanken.tiamat.repository.StopPlaceRepository;
 import org.rutebanken.tiamat.time.ExportTimeZone;
 
 import java.io.ByteArrayOutputStream;
@@ -53,7 +54,7 @@ public class DtoQuayResourceTest {
 
     @Before
     public void setUp() {
-        dtoQuayResource = new DtoQuayResource(quayRepository, mock(DtoMappingSemaphore.class), new IdMappingDtoCsvMapper(new ExportTimeZone()));
+        dtoQuayResource = new DtoQuayResource(quayRepository, new DtoMappingDumpCache(mock(StopPlaceRepository.class), mock(DtoMappingSemaphore.class), 1000), new IdMappingDtoCsvMapper(new ExportTimeZone()));
     }
 
     @Test
@@ -61,30 +62,30 @@ public class DtoQuayResourceTest {
         int keyValueMappingCount = 3;
         int size = 1;
 
-        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), any(Instant.class), anyInt(), anyInt()))
+        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), any(Instant.class), any(), anyInt()))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.FERRY_STOP)))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.TEN.toString(), now, now, StopTypeEnumeration.TRAM_STATION)))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.ZERO.toString(), now, now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(new ArrayList<>());
 
-        Response response = dtoQuayResource.getIdMapping(size, false, false);
+        Response response = dtoQuayResource.getIdMapping(size, false, false, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
         // plus one for the last empty call.
-        verify(quayRepository, times((keyValueMappingCount / size) + 1)).findKeyValueMappingsForQuay(any(Instant.class), any(Instant.class), anyInt(), anyInt());
+        verify(quayRepository, times((keyValueMappingCount / size) + 1)).findKeyValueMappingsForQuay(any(Instant.class), any(Instant.class), any(), anyInt());
     }
 
     @Test
     public void getLocalReferences() throws IOException, InterruptedException {
 
-        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), isNull(), anyInt(), anyInt()))
+        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), isNull(), any(), anyInt()))
                 .thenReturn(List.of(new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.FERRY_STOP),
                         new IdMappingDto("original id", BigInteger.TEN.toString(), now, now, StopTypeEnumeration.TRAM_STATION),
                         new IdMappingDto("original id", BigInteger.ZERO.toString(), now, now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(Collections.emptyList());
 
-        Response response = dtoQuayResource.getQuayLocalReferences(100, true);
+        Response response = dtoQuayResource.getQuayLocalReferences(100, true, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
@@ -98,13 +99,13 @@ public class DtoQuayResourceTest {
     @Test
     public void getMappings() throws IOException, InterruptedException {
 
-        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), isNull(), anyInt(), anyInt()))
+        when(quayRepository.findKeyValueMappingsForQuay(any(Instant.class), isNull(), any(), anyInt()))
                 .thenReturn(List.of(new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.FERRY_STOP),
                         new IdMappingDto("original id", BigInteger.TEN.toString(), now, now, StopTypeEnumeration.TRAM_STATION),
                         new IdMappingDto("original id", BigInteger.ZERO.toString(), now, now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(Collections.emptyList());
 
-        Response response = dtoQuayResource.getIdMapping(100, true,true);
+        Response response = dtoQuayResource.getIdMapping(100, true, true, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
@@ -52,7 +53,7 @@ public class DtoStopPlaceResourceTest {
     private Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
     @Before
     public void setUp() {
-        dtoStopPlaceResource = new DtoStopPlaceResource(stopPlaceRepository, mock(DtoMappingSemaphore.class), new IdMappingDtoCsvMapper(new ExportTimeZone()));
+        dtoStopPlaceResource = new DtoStopPlaceResource(stopPlaceRepository, new DtoMappingDumpCache(mock(StopPlaceRepository.class), mock(DtoMappingSemaphore.class), 1000), new IdMappingDtoCsvMapper(new ExportTimeZone()));
     }
 
     @Test
@@ -60,30 +61,47 @@ public class DtoStopPlaceResourceTest {
         int keyValueMappingCount = 3;
         int size = 1;
 
-        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), anyInt(), anyInt()))
+        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), any(), anyInt()))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.ONE.toString(),now,now, StopTypeEnumeration.FERRY_STOP)))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.TEN.toString(),now,now, StopTypeEnumeration.TRAM_STATION)))
                 .thenReturn(Arrays.asList(new IdMappingDto("original id", BigInteger.ZERO.toString(),now,now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(new ArrayList<>());
 
-        Response response = dtoStopPlaceResource.getIdMapping(size, false, false);
+        Response response = dtoStopPlaceResource.getIdMapping(size, false, false, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
         // plus one for the last empty call.
-        verify(stopPlaceRepository, times((keyValueMappingCount / size) + 1)).findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), anyInt(), anyInt());
+        verify(stopPlaceRepository, times((keyValueMappingCount / size) + 1)).findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), any(), anyInt());
+    }
+
+    @Test
+    public void nextRoundTripStartsAfterLastMapping() throws IOException {
+        IdMappingDto mapping = new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.BUS_STATION, 1L, 2L);
+
+        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), isNull(), anyInt()))
+                .thenReturn(List.of(mapping));
+        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), eq(mapping), anyInt()))
+                .thenReturn(Collections.emptyList());
+
+        Response response = dtoStopPlaceResource.getIdMapping(1, false, false, null);
+        StreamingOutput output = (StreamingOutput) response.getEntity();
+        output.write(new ByteArrayOutputStream());
+
+        verify(stopPlaceRepository).findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), isNull(), anyInt());
+        verify(stopPlaceRepository).findKeyValueMappingsForStop(any(Instant.class), any(Instant.class), eq(mapping), anyInt());
     }
 
     @Test
     public void getLocalReferences() throws IOException, InterruptedException {
 
-        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), isNull(), anyInt(), anyInt()))
+        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), isNull(), any(), anyInt()))
                 .thenReturn(List.of(new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.FERRY_STOP),
                         new IdMappingDto("original id", BigInteger.TEN.toString(), now, now, StopTypeEnumeration.TRAM_STATION),
                         new IdMappingDto("original id", BigInteger.ZERO.toString(), now, now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(Collections.emptyList());
 
-        Response response = dtoStopPlaceResource.getStopPlaceLocalReferences(100, true);
+        Response response = dtoStopPlaceResource.getStopPlaceLocalReferences(100, true, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
@@ -97,13 +115,13 @@ public class DtoStopPlaceResourceTest {
     @Test
     public void getMappings() throws IOException, InterruptedException {
 
-        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), isNull(), anyInt(), anyInt()))
+        when(stopPlaceRepository.findKeyValueMappingsForStop(any(Instant.class), isNull(), any(), anyInt()))
                 .thenReturn(List.of(new IdMappingDto("original id", BigInteger.ONE.toString(), now, now, StopTypeEnumeration.FERRY_STOP),
                         new IdMappingDto("original id", BigInteger.TEN.toString(), now, now, StopTypeEnumeration.TRAM_STATION),
                         new IdMappingDto("original id", BigInteger.ZERO.toString(), now, now, StopTypeEnumeration.BUS_STATION)))
                 .thenReturn(Collections.emptyList());
 
-        Response response = dtoStopPlaceResource.getIdMapping(100, true,true);
+        Response response = dtoStopPlaceResource.getIdMapping(100, true, true, null);
         StreamingOutput output = (StreamingOutput) response.getEntity();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         output.write(baos);
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.rest.graphql;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.parser.Parser;
+import org.junit.Test;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GraphQLDocumentCacheTest {
+
+    private static final String QUERY = "{ __typename }";
+
+    private final PrometheusMetricsService metricsService = new PrometheusMetricsService();
+
+    private final GraphQLDocumentCache documentCache = new GraphQLDocumentCache(10, metricsService);
+
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    private final Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidate = executionInput -> {
+        parsed.incrementAndGet();
+        return new PreparsedDocumentEntry(Parser.parse(executionInput.getQuery()));
+    };
+
+    @Test
+    public void parseSameQueryOnlyOnce() {
+        PreparsedDocumentEntry first = getDocument(executionInput(QUERY, Map.of()), parseAndValidate);
+        PreparsedDocumentEntry second = getDocument(executionInput(QUERY, Map.of()), parseAndValidate);
+
+        assertThat(second).isSameAs(first);
+        assertThat(parsed.get()).isEqualTo(1);
+        assertThat(documentCache.size()).isEqualTo(1);
+        assertThat(metricsService.counter("app.tiamat.graphql.document.cache", "result", "hit").count()).isEqualTo(1);
+        assertThat(metricsService.counter("app.tiamat.graphql.document.cache", "result", "miss").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void persistedQueryNotFoundUntilSentWithQuery() {
+        String hash = GraphQLDocumentCache.hash(QUERY);
+        Map<String, Object> extensions = Map.of(GraphQLDocumentCache.PERSISTED_QUERY_EXTENSION, Map.of("sha256Hash", hash));
+
+        PreparsedDocumentEntry notFound = getDocument(executionInput(GraphQLDocumentCache.PERSISTED_QUERY_MARKER, extensions), parseAndValidate);
+        assertThat(notFound.hasErrors()).isTrue();
+        assertThat(notFound.getErrors().get(0).getErrorType()).isInstanceOf(PersistedQueryNotFound.class);
+
+        getDocument(executionInput(QUERY, extensions), parseAndValidate);
+
+        PreparsedDocumentEntry found = getDocument(executionInput(GraphQLDocumentCache.PERSISTED_QUERY_MARKER, extensions), parseAndValidate);
+        assertThat(found.hasErrors()).isFalse();
+        assertThat(parsed.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void rejectQueryNotMatchingPersistedQueryHash() {
+        Map<String, Object> extensions = Map.of(GraphQLDocumentCache.PERSISTED_QUERY_EXTENSION, Map.of("sha256Hash", GraphQLDocumentCache.hash("{ other }")));
+
+        PreparsedDocumentEntry entry = getDocument(executionInput(QUERY, extensions), parseAndValidate);
+
+        assertThat(entry.hasErrors()).isTrue();
+        assertThat(entry.getErrors().get(0).getErrorType()).isInstanceOf(GraphQLDocumentCache.PersistedQueryIdMismatch.class);
+        assertThat(parsed.get()).isZero();
+        assertThat(documentCache.size()).isZero();
+    }
+
+    @Test
+    public void detectQueryOperations() {
+        assertThat(documentCache.isQueryOperation(QUERY, Map.of())).isTrue();
+        assertThat(documentCache.isQueryOperation("query StopPlaces { __typename }", Map.of())).isTrue();
+        assertThat(documentCache.isQueryOperation("mutation { __typename }", Map.of())).isFalse();
+        assertThat(documentCache.isQueryOperation("{ not valid", Map.of())).isFalse();
+    }
+
+    @Test
+    public void detectPersistedQueryOperationFromCachedDocument() {
+        Map<String, Object> extensions = Map.of(GraphQLDocumentCache.PERSISTED_QUERY_EXTENSION, Map.of("sha256Hash", GraphQLDocumentCache.hash(QUERY)));
+        assertThat(documentCache.isQueryOperation(GraphQLDocumentCache.PERSISTED_QUERY_MARKER, extensions)).isFalse();
+
+        getDocument(executionInput(QUERY, extensions), parseAndValidate);
+
+        assertThat(documentCache.isQueryOperation(GraphQLDocumentCache.PERSISTED_QUERY_MARKER, extensions)).isTrue();
+    }
+
+    private PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return documentCache.preparsedDocumentProvider().getDocumentAsync(executionInput, parseAndValidateFunction).join();
+    }
+
+    private static ExecutionInput executionInput(String query, Map<String, Object> extensions) {
+        return ExecutionInput.newExecutionInput()
+                .query(query)
+                .extensions(extensions)
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.rest.graphql;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.StopTypeEnumeration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latency of GraphQL reads and mutations under concurrent load.
+ * Compare platform and virtual threads by running with the production thread settings, -DjettyMaxThreads=10,
+ * with and without -Dtiamat.virtual.threads.enabled=true.
+ */
+public class GraphQLLoadTest extends AbstractGraphQLResourceIntegrationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphQLLoadTest.class);
+
+    private static final int STOP_PLACES = 50;
+
+    private static final int CLIENTS = 100;
+
+    private static final int MUTATION_PERCENT = 20;
+
+    private static final Duration DURATION = Duration.ofSeconds(30);
+
+    @Ignore("Load test. Run manually, see class documentation.")
+    @Test
+    public void mixedReadAndMutationLoad() throws Exception {
+
+        List<String> stopPlaceIds = new ArrayList<>();
+        for (int i = 0; i < STOP_PLACES; i++) {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("Load test " + i));
+            stopPlace.setStopPlaceType(StopTypeEnumeration.ONSTREET_BUS);
+            stopPlace.setCentroid(geometryFactory.createPoint(new Coordinate(24.9 + i * 0.001, 60.1)));
+            stopPlaceIds.add(saveStopPlaceTransactional(stopPlace).getNetexId());
+        }
+
+        HttpClient httpClient = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        URI uri = URI.create("http://localhost:" + port + BASE_URI_GRAPHQL);
+
+        Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+        AtomicInteger errors = new AtomicInteger();
+        Instant end = Instant.now().plus(DURATION);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < CLIENTS; client++) {
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (Instant.now().isBefore(end)) {
+                        boolean mutation = random.nextInt(100) < MUTATION_PERCENT;
+                        String query = mutation
+                                ? createStopPlaceMutation(random.nextDouble(24.8, 25.0), random.nextDouble(60.1, 60.3))
+                                : stopPlaceQuery(stopPlaceIds.get(random.nextInt(stopPlaceIds.size())));
+
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = httpClient.send(graphQLRequest(uri, query), HttpResponse.BodyHandlers.ofString());
+                        long latency = System.nanoTime() - start;
+
+                        if (response.statusCode() != 200 || response.body().contains("\"errors\"")) {
+                            errors.incrementAndGet();
+                        }
+                        latencies.computeIfAbsent(mutation ? "mutation" : "read", type -> Collections.synchronizedList(new ArrayList<>()))
+                                .add(latency);
+                    }
+                    return null;
+                });
+            }
+        }
+
+        latencies.forEach((type, typeLatencies) -> {
+            List<Long> sorted = new ArrayList<>(typeLatencies);
+            Collections.sort(sorted);
+            logger.info("{}: {} requests. p50: {} ms, p99: {} ms, max: {} ms",
+                    type, sorted.size(), percentileMillis(sorted, 50), percentileMillis(sorted, 99), percentileMillis(sorted, 100));
+        });
+        logger.info("{} clients for {}. Errors: {}", CLIENTS, DURATION, errors.get());
+
+        assertThat(latencies).containsKeys("read", "mutation");
+    }
+
+    private static long percentileMillis(List<Long> sortedLatencies, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size()) - 1;
+        return Duration.ofNanos(sortedLatencies.get(Math.max(index, 0))).toMillis();
+    }
+
+    private static String stopPlaceQuery(String stopPlaceId) {
+        return "{ stopPlace(id: \"%s\") { id name { value } stopPlaceType geometry { coordinates } } }".formatted(stopPlaceId);
+    }
+
+    private static String createStopPlaceMutation(double lon, double lat) {
+        return ("mutation { stopPlace: %s(StopPlace: { name: { value: \"Load test mutation\" } stopPlaceType: %s "
+                + "geometry: { type: Point coordinates: [%s,%s] } }) { id } }")
+                .formatted(GraphQLNames.MUTATE_STOPPLACE, StopTypeEnumeration.ONSTREET_BUS.value(), lon, lat);
+    }
+
+    private static HttpRequest graphQLRequest(URI uri, String query) {
+        String body = "{\"query\":\"" + query.replace("\"", "\\\"") + "\",\"variables\":\"\"}";
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
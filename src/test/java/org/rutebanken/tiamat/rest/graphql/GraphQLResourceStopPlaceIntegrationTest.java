@@ -18,6 +18,8 @@ package org.rutebanken.tiamat.rest.graphql;
 import java.time.LocalDate;
 import java.util.Set;
 import org.hamcrest.Matchers;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -74,7 +76,9 @@ import org.rutebanken.tiamat.model.ValidBetween;
 import org.rutebanken.tiamat.model.Value;
 import org.rutebanken.tiamat.model.VehicleModeEnumeration;
 import org.rutebanken.tiamat.model.WaitingRoomEquipment;
+import org.rutebanken.tiamat.model.tag.Tag;
 import org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper;
+import org.rutebanken.tiamat.repository.TagRepository;
 import org.rutebanken.tiamat.service.stopplace.MultiModalStopPlaceEditor;
 import org.rutebanken.tiamat.time.ExportTimeZone;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -114,6 +118,9 @@ public class GraphQLResourceStopPlaceIntegrationTest extends AbstractGraphQLReso
     @Autowired
     private ExportTimeZone exportTimeZone;
 
+    @Autowired
+    private TagRepository tagRepository;
+
     private Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
 
     @Before
@@ -399,6 +406,7 @@ public class GraphQLResourceStopPlaceIntegrationTest extends AbstractGraphQLReso
         Value value = new Value(originalId);
         stopPlace.getKeyValues().put(NetexIdMapper.ORIGINAL_ID_KEY, value);
         stopPlaceRepository.save(stopPlace);
+        stopPlaceRepository.updateOriginalIdLookup(stopPlace);
 
 
         String graphQlJsonQuery = """
@@ -1025,6 +1033,68 @@ public class GraphQLResourceStopPlaceIntegrationTest extends AbstractGraphQLReso
                     .body("tariffZones[0].name.value", equalTo(tariffZone.getName().getValue()));
     }
 
+    @Test
+    public void fetchTagsAndTariffZonesForPageWithConstantNumberOfQueries() {
+
+        TariffZone tariffZone = new TariffZone();
+        tariffZone.setName(new EmbeddableMultilingualString("V03"));
+        tariffZone.setVersion(1L);
+        tariffZoneRepository.save(tariffZone);
+
+        saveTaggedStopPlaces(tariffZone, 0, 2);
+        long statementsForTwo = countStatements(() -> fetchTagsAndTariffZones(tariffZone, 2));
+
+        saveTaggedStopPlaces(tariffZone, 2, 8);
+        long statementsForEight = countStatements(() -> fetchTagsAndTariffZones(tariffZone, 8));
+
+        assertThat(statementsForEight).isLessThanOrEqualTo(statementsForTwo);
+    }
+
+    private void saveTaggedStopPlaces(TariffZone tariffZone, int from, int to) {
+        for (int i = from; i < to; i++) {
+            StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("Pagedstop " + i));
+            stopPlace.getTariffZones().add(new TariffZoneRef(tariffZone));
+            stopPlaceRepository.save(stopPlace);
+
+            Tag tag = new Tag();
+            tag.setName("paged");
+            tag.setIdreference(stopPlace.getNetexId());
+            tag.setCreated(Instant.now());
+            tagRepository.save(tag);
+        }
+    }
+
+    private void fetchTagsAndTariffZones(TariffZone tariffZone, int expectedStopPlaces) {
+        String graphQlJsonQuery = """
+                  {
+                  stopPlace:  stopPlace (query:"Pagedstop", allVersions:true, size:20) {
+                            id
+                            tags { name }
+                            tariffZones { id }
+                        }
+                    }""";
+
+        executeGraphqQLQueryOnly(graphQlJsonQuery)
+                .body("data.stopPlace", hasSize(expectedStopPlaces))
+                .body("data.stopPlace[0].tags[0].name", equalTo("paged"))
+                .body("data.stopPlace[0].tariffZones[0].id", equalTo(tariffZone.getNetexId()));
+    }
+
+    /**
+     * @return number of JDBC statements prepared while running
+     */
+    private long countStatements(Runnable runnable) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            runnable.run();
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
     @Test
     public void testSimpleMutationCreateStopPlace() throws Exception {
 
@@ -286,6 +286,10 @@ public class PublicationDeliveryTestHelper {
     }
 
     public Response postPublicationDelivery(PublicationDeliveryStructure publicationDeliveryStructure, ImportParams importParams) throws JAXBException, IOException, SAXException {
+        return importResource.importPublicationDelivery(toInputStream(publicationDeliveryStructure), importParams);
+    }
+
+    public InputStream toInputStream(PublicationDeliveryStructure publicationDeliveryStructure) throws JAXBException {
         Marshaller marshaller = jaxbContext.createMarshaller();
 
         JAXBElement<PublicationDeliveryStructure> jaxPublicationDelivery = new ObjectFactory().createPublicationDelivery(publicationDeliveryStructure);
@@ -293,9 +297,7 @@ public class PublicationDeliveryTestHelper {
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         marshaller.marshal(jaxPublicationDelivery, outputStream);
-        InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
-
-        return importResource.importPublicationDelivery(inputStream, importParams);
+        return new ByteArrayInputStream(outputStream.toByteArray());
     }
 
     public SiteFrame findSiteFrame(PublicationDeliveryStructure publicationDelivery) {
@@ -24,16 +24,22 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.rutebanken.tiamat.config.GeometryFactoryConfig;
+import org.rutebanken.tiamat.geo.GeometryIndex;
 import org.rutebanken.tiamat.model.TariffZone;
+import org.rutebanken.tiamat.model.ValidBetween;
 import org.rutebanken.tiamat.repository.FareZoneRepository;
 import org.rutebanken.tiamat.repository.TariffZoneRepository;
-import org.springframework.data.util.Pair;
+import org.rutebanken.tiamat.service.metrics.PrometheusMetricsService;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TariffZonesLookupServiceTest {
@@ -44,7 +50,7 @@ public class TariffZonesLookupServiceTest {
 
     private GeometryFactory geometryFactory = new GeometryFactoryConfig().geometryFactory();
 
-    private TariffZonesLookupService tariffZonesLookupService = new TariffZonesLookupService(tariffZoneRepository,fareZoneRepository, false);
+    private TariffZonesLookupService tariffZonesLookupService = new TariffZonesLookupService(tariffZoneRepository,fareZoneRepository, false, new PrometheusMetricsService());
 
     @Test
     public void getTariffZones() {
@@ -71,10 +77,67 @@ public class TariffZonesLookupServiceTest {
         when(tariffZoneRepository.findAllValidTariffZones()).thenReturn(Arrays.asList(firstVersion, secondVersion, anotherOne));
 
 
-        java.util.function.Supplier<List<Pair<String, Polygon>>> actual = tariffZonesLookupService.getTariffZones();
+        GeometryIndex<TariffZonesLookupService.IndexedZone> actual = tariffZonesLookupService.getTariffZones().get();
 
-        assertThat(actual.get()).hasSize(2);
+        assertThat(actual.size()).isEqualTo(2);
 
     }
 
+    @Test
+    public void findTariffZonesFromIndexWithoutQueryingEachZone() {
+
+        Point point = geometryFactory.createPoint(new Coordinate(9.84, 59.26));
+        Geometry geometry =  point.buffer(20);
+        LinearRing linearRing = new LinearRing(new CoordinateArraySequence(geometry.getCoordinates()), geometryFactory);
+
+        TariffZone firstVersion = new TariffZone();
+        firstVersion.setNetexId("NSR:TariffZone:1");
+        firstVersion.setVersion(1L);
+        firstVersion.setPolygon(geometryFactory.createPolygon(linearRing, null));
+
+        TariffZone secondVersion = new TariffZone();
+        secondVersion.setNetexId("NSR:TariffZone:1");
+        secondVersion.setVersion(2L);
+        secondVersion.setPolygon(geometryFactory.createPolygon(linearRing, null));
+
+        TariffZone farAway = new TariffZone();
+        farAway.setNetexId("NSR:TariffZone:2");
+        farAway.setVersion(1L);
+        farAway.setPolygon((Polygon) geometryFactory.createPoint(new Coordinate(100, 10)).buffer(1));
+
+        when(tariffZoneRepository.findAllValidTariffZones()).thenReturn(Arrays.asList(firstVersion, secondVersion, farAway));
+
+        List<TariffZonesLookupService.IndexedZone> actual = tariffZonesLookupService.findTariffZones(point);
+
+        assertThat(actual).hasSize(1);
+        assertThat(actual.getFirst().netexId()).isEqualTo("NSR:TariffZone:1");
+        assertThat(actual.getFirst().version()).isEqualTo(2L);
+        verify(tariffZoneRepository, never()).findValidTariffZone(anyString());
+    }
+
+    @Test
+    public void doNotFindTariffZonesExpiredSinceTheIndexWasBuilt() {
+
+        Point point = geometryFactory.createPoint(new Coordinate(9.84, 59.26));
+        Polygon polygon = (Polygon) point.buffer(20);
+
+        TariffZone expired = new TariffZone();
+        expired.setNetexId("NSR:TariffZone:1");
+        expired.setVersion(1L);
+        expired.setPolygon(polygon);
+        expired.setValidBetween(new ValidBetween(Instant.EPOCH, Instant.now().minusSeconds(1)));
+
+        TariffZone valid = new TariffZone();
+        valid.setNetexId("NSR:TariffZone:2");
+        valid.setVersion(1L);
+        valid.setPolygon(polygon);
+        valid.setValidBetween(new ValidBetween(Instant.EPOCH));
+
+        when(tariffZoneRepository.findAllValidTariffZones()).thenReturn(Arrays.asList(expired, valid));
+
+        List<TariffZonesLookupService.IndexedZone> actual = tariffZonesLookupService.findTariffZones(point);
+
+        assertThat(actual).extracting(TariffZonesLookupService.IndexedZone::netexId).containsExactly("NSR:TariffZone:2");
+    }
+
 }
\ No newline at end of file
@@ -70,8 +70,22 @@ public class TopographicPlaceLookupServiceTest extends TiamatIntegrationTest {
         topographicPlaceRepository.flush();
 
         topographicPlaceLookupService.reset();
-        Optional<TopographicPlace> result = topographicPlaceLookupService.findTopographicPlace(point);
+        Optional<TopographicPlaceLookupService.IndexedTopographicPlace> result = topographicPlaceLookupService.findTopographicPlace(point);
         assertThat(result.isPresent()).describedAs("Found topographic place?").isTrue();
-        assertThat(result.get().getNetexId()).as("Topographic place found").isEqualTo(newTopographicPlace.getNetexId());
+        assertThat(result.get().netexId()).as("Topographic place found").isEqualTo(newTopographicPlace.getNetexId());
+    }
+
+    /**
+     * Validity is checked when looking up, so a version ending after the index was built is no longer matched.
+     */
+    @Test
+    public void indexedTopographicPlaceIsNotValidAfterToDate() {
+        Instant toDate = Instant.now().plusSeconds(60);
+        TopographicPlaceLookupService.IndexedTopographicPlace indexedTopographicPlace = new TopographicPlaceLookupService.IndexedTopographicPlace(
+                1L, "KVE:TopographicPlace:1", 1L, TopographicPlaceTypeEnumeration.MUNICIPALITY, Instant.EPOCH, toDate);
+
+        assertThat(indexedTopographicPlace.isValidAt(Instant.now())).isTrue();
+        assertThat(indexedTopographicPlace.isValidAt(toDate)).isFalse();
+        assertThat(indexedTopographicPlace.isValidAt(Instant.EPOCH.minusSeconds(1))).isFalse();
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
 
 package org.rutebanken.tiamat.service.stopplace;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.rutebanken.tiamat.auth.AuthorizationService;
 import org.rutebanken.tiamat.TiamatIntegrationTest;
@@ -29,6 +30,8 @@ import java.util.Collections;
 import java.util.function.Supplier;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -42,15 +45,15 @@ public class StopPlaceDeleterTest extends TiamatIntegrationTest {
     private EntityChangedListener entityChangedListener = mock(EntityChangedListener.class);
     private AuthorizationService authorizationService = mock(AuthorizationService.class);
     private UsernameFetcher usernameFetcher = mock(UsernameFetcher.class);
-    private MutateLock mutateLock = new MutateLock(null) {
-        @Override
-        public <T> T executeInLock(Supplier<T> supplier) {
-            return supplier.get();
-        }
-    };
+    private MutateLock mutateLock = mock(MutateLock.class);
 
     private StopPlaceDeleter stopPlaceDeleter = new StopPlaceDeleter(stopPlaceRepository, entityChangedListener, authorizationService, usernameFetcher, mutateLock);
 
+    @Before
+    public void executeWithoutLock() {
+        when(mutateLock.executeInLock(anyString(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void doNotDeleteParentWithChildren() {
         StopPlace parent = new StopPlace();
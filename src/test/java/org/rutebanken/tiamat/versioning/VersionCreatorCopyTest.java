@@ -0,0 +1,267 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.versioning;
+
+import com.google.common.collect.Sets;
+import ma.glasnost.orika.CustomConverter;
+import ma.glasnost.orika.MapperFacade;
+import ma.glasnost.orika.MapperFactory;
+import ma.glasnost.orika.MappingContext;
+import ma.glasnost.orika.converter.builtin.PassThroughConverter;
+import ma.glasnost.orika.impl.DefaultMapperFactory;
+import ma.glasnost.orika.metadata.Type;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.rutebanken.tiamat.config.GeometryFactoryConfig;
+import org.rutebanken.tiamat.diff.generic.GenericDiffConfig;
+import org.rutebanken.tiamat.diff.generic.GenericObjectDiffer;
+import org.rutebanken.tiamat.model.AlternativeName;
+import org.rutebanken.tiamat.model.CycleStorageEquipment;
+import org.rutebanken.tiamat.model.EmbeddableMultilingualString;
+import org.rutebanken.tiamat.model.EntityInVersionStructure;
+import org.rutebanken.tiamat.model.GeneralSign;
+import org.rutebanken.tiamat.model.PathLink;
+import org.rutebanken.tiamat.model.PathLinkEnd;
+import org.rutebanken.tiamat.model.PlaceEquipment;
+import org.rutebanken.tiamat.model.Quay;
+import org.rutebanken.tiamat.model.SanitaryEquipment;
+import org.rutebanken.tiamat.model.ShelterEquipment;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.rutebanken.tiamat.model.TicketingEquipment;
+import org.rutebanken.tiamat.model.TopographicPlace;
+import org.rutebanken.tiamat.model.ValidBetween;
+import org.rutebanken.tiamat.model.WaitingRoomEquipment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Copies made by {@link VersionCreator} without a database. Compares with the Orika mapping used before.
+ */
+public class VersionCreatorCopyTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionCreatorCopyTest.class);
+
+    private static final int QUAYS = 40;
+
+    private final GeometryFactory geometryFactory = new GeometryFactoryConfig().geometryFactory();
+
+    private final VersionCreator versionCreator = new VersionCreator(new VersionIncrementor());
+
+    @Test
+    public void copyStopPlaceWithQuays() {
+        StopPlace stopPlace = stopPlace();
+
+        StopPlace copy = versionCreator.createCopy(stopPlace, StopPlace.class);
+
+        assertThat(copy).isNotSameAs(stopPlace);
+        assertThat(copy.getNetexId()).isEqualTo(stopPlace.getNetexId());
+        assertThat(copy.getVersion()).isEqualTo(stopPlace.getVersion());
+        assertThat(copy.getVersionComment()).isNull();
+        assertThat(copy.getChangedBy()).isNull();
+        assertThat(copy.getValidBetween()).isNull();
+
+        assertThat(copy.getName()).isNotSameAs(stopPlace.getName());
+        assertThat(copy.getName().getValue()).isEqualTo(stopPlace.getName().getValue());
+        assertThat(copy.getCentroid()).isSameAs(stopPlace.getCentroid());
+        assertThat(copy.getChanged()).isSameAs(stopPlace.getChanged());
+        assertThat(copy.getTopographicPlace()).isSameAs(stopPlace.getTopographicPlace());
+
+        assertThat(copy.getOriginalIds()).containsExactlyElementsOf(stopPlace.getOriginalIds());
+        assertThat(copy.getKeyValues().get("key")).isNotSameAs(stopPlace.getKeyValues().get("key"));
+
+        assertThat(copy.getQuays()).hasSize(QUAYS);
+        assertThat(copy.getQuays()).doesNotContainAnyElementsOf(stopPlace.getQuays());
+
+        assertThat(copy.getAlternativeNames()).hasSize(1);
+        assertThat(copy.getAlternativeNames().getFirst()).isNotSameAs(stopPlace.getAlternativeNames().getFirst());
+        assertThat(copy.getAlternativeNames().getFirst().getValidBetween()).isNull();
+
+        assertThat(copy.getPlaceEquipments().getInstalledEquipment()).hasSize(1);
+        assertThat(copy.getPlaceEquipments().getInstalledEquipment().getFirst())
+                .isInstanceOf(ShelterEquipment.class)
+                .isNotSameAs(stopPlace.getPlaceEquipments().getInstalledEquipment().getFirst());
+    }
+
+    @Test
+    public void copyToSuperClass() {
+        ShelterEquipment shelterEquipment = new ShelterEquipment();
+        shelterEquipment.setNetexId("NSR:ShelterEquipment:1");
+        shelterEquipment.setEnclosed(true);
+
+        EntityInVersionStructure copy = versionCreator.createCopy(shelterEquipment, EntityInVersionStructure.class);
+
+        assertThat(copy).isInstanceOf(ShelterEquipment.class);
+        assertThat(((ShelterEquipment) copy).isEnclosed()).isTrue();
+    }
+
+    @Test
+    public void sameCopyAsOrika() throws IllegalAccessException {
+        StopPlace stopPlace = stopPlace();
+
+        StopPlace copy = versionCreator.createCopy(stopPlace, StopPlace.class);
+        StopPlace orikaCopy = orikaMapperFacade().map(stopPlace, StopPlace.class);
+
+        // Polygons are not set, and Orika creates an empty polygon holder for them
+        GenericDiffConfig diffConfig = GenericDiffConfig.builder()
+                .identifiers(Sets.newHashSet("netexId", "ref"))
+                .ignoreFields(Sets.newHashSet("id", "polygon"))
+                .onlyDoEqualsCheck(Sets.newHashSet(Geometry.class))
+                .build();
+
+        GenericObjectDiffer genericObjectDiffer = new GenericObjectDiffer();
+        assertThat(genericObjectDiffer.diffListToString(genericObjectDiffer.compareObjects(orikaCopy, copy, diffConfig)))
+                .isBlank();
+    }
+
+    @Ignore("Benchmark. Run manually to compare with Orika.")
+    @Test
+    public void benchmarkCopyStopPlaceWithQuays() {
+        StopPlace stopPlace = stopPlace();
+        MapperFacade mapperFacade = orikaMapperFacade();
+
+        int warmup = 2_000;
+        int iterations = 10_000;
+
+        for (int i = 0; i < warmup; i++) {
+            mapperFacade.map(stopPlace, StopPlace.class);
+            versionCreator.createCopy(stopPlace, StopPlace.class);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mapperFacade.map(stopPlace, StopPlace.class);
+        }
+        long orika = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            versionCreator.createCopy(stopPlace, StopPlace.class);
+        }
+        long copier = System.nanoTime() - start;
+
+        logger.info("Copying stop place with {} quays. Orika: {} µs/op. Entity copier: {} µs/op",
+                QUAYS, orika / iterations / 1000, copier / iterations / 1000);
+    }
+
+    private StopPlace stopPlace() {
+        StopPlace stopPlace = new StopPlace(new EmbeddableMultilingualString("Stop place", "fi"));
+        stopPlace.setNetexId("NSR:StopPlace:1");
+        stopPlace.setVersion(3L);
+        stopPlace.setVersionComment("comment");
+        stopPlace.setChangedBy("someone");
+        stopPlace.setChanged(Instant.now());
+        stopPlace.setValidBetween(new ValidBetween(Instant.now()));
+        stopPlace.setCentroid(point(0));
+        stopPlace.setTopographicPlace(new TopographicPlace(new EmbeddableMultilingualString("Helsinki")));
+        stopPlace.getOriginalIds().add("HSL:StopPlace:1");
+        stopPlace.getOrCreateValues("key").add("value");
+
+        AlternativeName alternativeName = new AlternativeName();
+        alternativeName.setNetexId("NSR:AlternativeName:1");
+        alternativeName.setName(new EmbeddableMultilingualString("Hållplats", "sv"));
+        alternativeName.setValidBetween(new ValidBetween(Instant.now()));
+        stopPlace.getAlternativeNames().add(alternativeName);
+
+        ShelterEquipment shelterEquipment = new ShelterEquipment();
+        shelterEquipment.setNetexId("NSR:ShelterEquipment:1");
+        shelterEquipment.setEnclosed(true);
+        PlaceEquipment placeEquipment = new PlaceEquipment();
+        placeEquipment.setNetexId("NSR:PlaceEquipment:1");
+        placeEquipment.getInstalledEquipment().add(shelterEquipment);
+        stopPlace.setPlaceEquipments(placeEquipment);
+
+        for (int i = 0; i < QUAYS; i++) {
+            Quay quay = new Quay(new EmbeddableMultilingualString("Quay " + i, "fi"));
+            quay.setNetexId("NSR:Quay:" + i);
+            quay.setVersion(2L);
+            quay.setPublicCode(String.valueOf(i));
+            quay.setCentroid(point(i));
+            quay.getOriginalIds().add("HSL:Quay:" + i);
+            stopPlace.getQuays().add(quay);
+        }
+        return stopPlace;
+    }
+
+    private Point point(int i) {
+        return geometryFactory.createPoint(new Coordinate(24.9 + i * 0.0001, 60.1));
+    }
+
+    /**
+     * The Orika configuration VersionCreator used before.
+     */
+    private static MapperFacade orikaMapperFacade() {
+        MapperFactory mapperFactory = new DefaultMapperFactory.Builder().build();
+
+        final String stopPlacePassThroughId = "stopPlacePassThroughId";
+
+        mapperFactory.getConverterFactory()
+                .registerConverter(stopPlacePassThroughId, new PassThroughConverter(TopographicPlace.class));
+
+        mapperFactory.getConverterFactory()
+                .registerConverter(new PassThroughConverter(Point.class));
+
+        mapperFactory.getConverterFactory()
+                .registerConverter(new CustomConverter<Instant, Instant>() {
+                    @Override
+                    public Instant convert(Instant instant, Type<? extends Instant> type, MappingContext mappingContext) {
+                        return Instant.from(instant);
+                    }
+                });
+
+        mapperFactory.classMap(PathLinkEnd.class, PathLinkEnd.class)
+                .exclude("id")
+                .byDefault()
+                .register();
+
+        mapperFactory.classMap(StopPlace.class, StopPlace.class)
+                .fieldMap("topographicPlace").converter(stopPlacePassThroughId).add()
+                .exclude("id")
+                .exclude("versionComment")
+                .exclude("changedBy")
+                .exclude("validBetween")
+                .exclude("modificationEnumeration")
+                .byDefault()
+                .register();
+
+        List<Class<? extends EntityInVersionStructure>> commonClassesToConfigure =
+                Arrays.asList(TopographicPlace.class,
+                        PathLink.class, PlaceEquipment.class,
+                        WaitingRoomEquipment.class, SanitaryEquipment.class,
+                        TicketingEquipment.class, ShelterEquipment.class,
+                        CycleStorageEquipment.class, GeneralSign.class,
+                        AlternativeName.class);
+
+        commonClassesToConfigure.forEach(clazz -> mapperFactory.classMap(clazz, clazz)
+                .exclude("versionComment")
+                .exclude("changedBy")
+                .exclude("id")
+                .exclude("validBetween")
+                .byDefault()
+                .register());
+
+        return mapperFactory.getMapperFacade();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package org.rutebanken.tiamat.versioning.save;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.rutebanken.tiamat.TiamatIntegrationTest;
+import org.rutebanken.tiamat.model.StopPlace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.rutebanken.tiamat.netex.mapping.mapper.NetexIdMapper.ORIGINAL_ID_KEY;
+
+public class BulkSaveModeTest extends TiamatIntegrationTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private EntityManager entityManager;
+
+    private BulkSaveMode bulkSaveMode;
+
+    @Before
+    public void setUp() {
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        bulkSaveMode = bulkSaveMode(true);
+    }
+
+    @Test
+    public void saveEachChunkInItsOwnTransaction() {
+        Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+        List<String> netexIds = bulkSaveMode.saveInChunkTransactions(List.of(0, 1, 2, 3, 4), item -> {
+            assertThat(bulkSaveMode.isActive()).isTrue();
+            sessions.put(item, entityManager.unwrap(Session.class));
+            return save(item).getNetexId();
+        });
+
+        assertThat(netexIds).hasSize(5);
+        assertThat(sessions.get(0)).isSameAs(sessions.get(1));
+        assertThat(sessions.get(2)).isSameAs(sessions.get(3));
+        assertThat(Set.of(sessions.get(0), sessions.get(2), sessions.get(4))).hasSize(3);
+        assertThat(stopPlaceRepository.findAll()).hasSize(5);
+    }
+
+    @Test
+    public void writeOriginalIdLookupsWhenChunkIsFlushed() {
+        Map<Integer, String> foundByFirstOriginalId = new ConcurrentHashMap<>();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                bulkSaveMode.saveInChunks(List.of(0, 1, 2), item -> {
+                    if (item > 0) {
+                        String found = stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(originalId(0)));
+                        foundByFirstOriginalId.put(item, found == null ? "" : found);
+                    }
+                    StopPlace stopPlace = save(item);
+                    bulkSaveMode.deferOriginalIdLookupUpdate(stopPlace);
+                    return stopPlace;
+                }));
+
+        assertThat(foundByFirstOriginalId.get(1)).as("found before the first chunk was flushed").isEmpty();
+        assertThat(foundByFirstOriginalId.get(2)).as("found after the first chunk was flushed").isNotEmpty();
+        assertThat(stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(originalId(2)))).isNotNull();
+    }
+
+    @Test
+    public void rollBackOnlyTheFailingChunk() {
+        List<Integer> cacheUpdated = new CopyOnWriteArrayList<>();
+        CountDownLatch firstChunkCommitted = new CountDownLatch(CHUNK_SIZE);
+
+        assertThatThrownBy(() -> bulkSaveMode.saveInChunkTransactions(List.of(0, 1, 2, 3), item -> {
+            if (item == 3) {
+                // Fail the last chunk only when the first chunk has committed, whatever order the chunks run in
+                try {
+                    assertThat(firstChunkCommitted.await(10, TimeUnit.SECONDS)).as("first chunk committed").isTrue();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalArgumentException("Cannot save " + item);
+            }
+            StopPlace stopPlace = save(item);
+            bulkSaveMode.deferOriginalIdLookupUpdate(stopPlace);
+            bulkSaveMode.runOrDeferCacheUpdate(() -> {
+                cacheUpdated.add(item);
+                if (item < CHUNK_SIZE) {
+                    firstChunkCommitted.countDown();
+                }
+            });
+            return stopPlace.getNetexId();
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(cacheUpdated).containsExactlyInAnyOrder(0, 1);
+        assertThat(stopPlaceRepository.findAll()).hasSize(2);
+        assertThat(stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(originalId(0)))).isNotNull();
+        assertThat(stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(originalId(1)))).isNotNull();
+        assertThat(stopPlaceRepository.findFirstByKeyValues(ORIGINAL_ID_KEY, Set.of(originalId(2)))).isNull();
+    }
+
+    @Test
+    public void runCacheUpdatesAfterCommit() {
+        List<Integer> cacheUpdated = new CopyOnWriteArrayList<>();
+
+        bulkSaveMode.saveInChunkTransactions(List.of(0, 1, 2), item -> {
+            StopPlace stopPlace = save(item);
+            bulkSaveMode.runOrDeferCacheUpdate(() -> {
+                assertThat(entityManager.contains(stopPlace)).isTrue();
+                assertThat(stopPlace.getOriginalIds()).containsOnly(originalId(item));
+                cacheUpdated.add(item);
+            });
+            assertThat(cacheUpdated).doesNotContain(item);
+            return stopPlace.getNetexId();
+        });
+
+        assertThat(cacheUpdated).containsExactlyInAnyOrder(0, 1, 2);
+    }
+
+    @Test
+    public void saveWithoutChunksWhenDisabled() {
+        BulkSaveMode disabled = bulkSaveMode(false);
+        List<Boolean> active = new CopyOnWriteArrayList<>();
+
+        disabled.saveInChunkTransactions(List.of(0, 1, 2), item -> {
+            active.add(disabled.isActive());
+            return save(item).getNetexId();
+        });
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                disabled.saveInChunks(List.of(3, 4), item -> {
+                    active.add(disabled.isActive());
+                    return save(item).getNetexId();
+                }));
+
+        assertThat(active).hasSize(5).containsOnly(false);
+        assertThat(stopPlaceRepository.findAll()).hasSize(5);
+    }
+
+    private BulkSaveMode bulkSaveMode(boolean enabled) {
+        BulkSaveMode bulkSaveMode = new BulkSaveMode(stopPlaceRepository, transactionManager, enabled, CHUNK_SIZE, 10);
+        ReflectionTestUtils.setField(bulkSaveMode, "entityManager", entityManager);
+        return bulkSaveMode;
+    }
+
+    private StopPlace save(int item) {
+        StopPlace stopPlace = new StopPlace();
+        stopPlace.getOriginalIds().add(originalId(item));
+        return stopPlaceRepository.save(stopPlace);
+    }
+
+    private static String originalId(int item) {
+        return "TEST:StopPlace:" + item;
+    }
+}